@@ -0,0 +1,184 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java;
+
+import be.objectify.deadbolt.java.models.CompiledSubject;
+import be.objectify.deadbolt.java.models.RoleRegistry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable, pre-parsed form of the role groups used by restrict constraints.  Within a group, the roles are ANDed;
+ * between groups, they are ORed.  A role name starting with ! is negated.  Negations are resolved and role names
+ * interned when the groups are compiled, so checking a {@link CompiledSubject} against them does not allocate.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public final class CompiledRoleGroups
+{
+    private final RoleRegistry registry;
+
+    private final Group[] groups;
+
+    private CompiledRoleGroups(final RoleRegistry registry,
+                               final Group[] groups)
+    {
+        this.registry = registry;
+        this.groups = groups;
+    }
+
+    /**
+     * Compile the role groups.  Null groups are ignored; empty groups never match.
+     *
+     * @param roleGroups the role groups
+     * @param registry   the registry used to intern role names
+     * @return the compiled role groups
+     */
+    public static CompiledRoleGroups of(final List<String[]> roleGroups,
+                                        final RoleRegistry registry)
+    {
+        final List<Group> groups = new ArrayList<>(roleGroups.size());
+        for (String[] roleNames : roleGroups)
+        {
+            if (roleNames != null)
+            {
+                groups.add(new Group(roleNames,
+                                     registry));
+            }
+        }
+        return new CompiledRoleGroups(registry,
+                                      groups.toArray(new Group[0]));
+    }
+
+    /**
+     * @param subject the subject
+     * @return true iff the subject satisfies at least one group
+     */
+    public boolean test(final CompiledSubject subject)
+    {
+        // ids can only be compared if they come from the same registry, and the subject has an id for every role
+        final boolean sameRegistry = subject.registry() == registry && !subject.hasUnregisteredRoles();
+        boolean roleOk = false;
+        for (int i = 0; !roleOk && i < groups.length; i++)
+        {
+            roleOk = sameRegistry ? groups[i].test(subject)
+                                  : groups[i].test(subject::hasRole);
+        }
+        return roleOk;
+    }
+
+    /**
+     * @param heldRoleNames the names of the roles held by the subject
+     * @return true iff the held roles satisfy at least one group
+     */
+    public boolean test(final Collection<String> heldRoleNames)
+    {
+        boolean roleOk = false;
+        for (int i = 0; !roleOk && i < groups.length; i++)
+        {
+            roleOk = groups[i].test(heldRoleNames::contains);
+        }
+        return roleOk;
+    }
+
+    /**
+     * @return the number of groups
+     */
+    public int size()
+    {
+        return groups.length;
+    }
+
+    private interface RoleTest
+    {
+        boolean hasRole(String roleName);
+    }
+
+    private static final class Group
+    {
+        private final String[] required;
+        private final String[] negated;
+        private final int[] requiredIds;
+        private final int[] negatedIds;
+        // false if a role name has no id because the registry is full, in which case the group is tested by name
+        private final boolean registered;
+
+        private Group(final String[] roleNames,
+                      final RoleRegistry registry)
+        {
+            final List<String> requiredNames = new ArrayList<>();
+            final List<String> negatedNames = new ArrayList<>();
+            for (String roleName : roleNames)
+            {
+                if (roleName.startsWith("!"))
+                {
+                    negatedNames.add(roleName.substring(1));
+                }
+                else
+                {
+                    requiredNames.add(roleName);
+                }
+            }
+            this.required = requiredNames.toArray(new String[0]);
+            this.negated = negatedNames.toArray(new String[0]);
+            this.requiredIds = requiredNames.stream().mapToInt(registry::intern).toArray();
+            this.negatedIds = negatedNames.stream().mapToInt(registry::intern).toArray();
+            this.registered = IntStream.concat(IntStream.of(requiredIds),
+                                               IntStream.of(negatedIds))
+                                       .allMatch(id -> id >= 0);
+        }
+
+        private boolean isEmpty()
+        {
+            return required.length == 0 && negated.length == 0;
+        }
+
+        private boolean test(final CompiledSubject subject)
+        {
+            if (!registered)
+            {
+                return test(subject::hasRole);
+            }
+            boolean roleOk = !isEmpty();
+            for (int i = 0; roleOk && i < requiredIds.length; i++)
+            {
+                roleOk = subject.hasRole(requiredIds[i]);
+            }
+            for (int i = 0; roleOk && i < negatedIds.length; i++)
+            {
+                roleOk = !subject.hasRole(negatedIds[i]);
+            }
+            return roleOk;
+        }
+
+        private boolean test(final RoleTest roleTest)
+        {
+            boolean roleOk = !isEmpty();
+            for (int i = 0; roleOk && i < required.length; i++)
+            {
+                roleOk = roleTest.hasRole(required[i]);
+            }
+            for (int i = 0; roleOk && i < negated.length; i++)
+            {
+                roleOk = !roleTest.hasRole(negated[i]);
+            }
+            return roleOk;
+        }
+    }
+}
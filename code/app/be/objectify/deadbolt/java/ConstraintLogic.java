@@ -15,22 +15,45 @@
  */
 package be.objectify.deadbolt.java;
 
+import be.objectify.deadbolt.java.cache.BoundedCache;
+import be.objectify.deadbolt.java.cache.DecisionCache;
+import be.objectify.deadbolt.java.cache.DefaultRolePermissionsCache;
+import be.objectify.deadbolt.java.cache.DynamicResourceMemo;
 import be.objectify.deadbolt.java.cache.PatternCache;
+import be.objectify.deadbolt.java.cache.RolePermissionsCache;
 import be.objectify.deadbolt.java.cache.SubjectCache;
 import be.objectify.deadbolt.java.models.PatternType;
+import be.objectify.deadbolt.java.models.RoleRegistry;
 import be.objectify.deadbolt.java.models.Subject;
+import be.objectify.deadbolt.java.patterns.LinearPattern;
+import be.objectify.deadbolt.java.patterns.MultiPattern;
+import be.objectify.deadbolt.java.patterns.WildcardPermission;
+import be.objectify.deadbolt.java.utils.BatchUtils;
 import be.objectify.deadbolt.java.utils.TriFunction;
+import com.typesafe.config.Config;
 import play.libs.F;
 import play.mvc.Http;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 /**
  * The logic behind the constraints.
@@ -46,14 +69,118 @@ public class ConstraintLogic
 
     private final PatternCache patternCache;
 
-    @Inject
+    private final RoleRegistry roleRegistry;
+
+    private final CustomPatternEvaluation customPatternEvaluation;
+
+    private final int customPatternMaxConcurrency;
+
+    private final boolean cacheDynamic;
+
+    private final DecisionCache decisionCache;
+
+    private final RolePermissionsCache rolePermissionsCache;
+
+    // role groups built on the fly, e.g. in templates, are cached by content
+    private static final int MAX_ROLE_GROUPS = 1024;
+
+    private final BoundedCache<RoleGroupsKey, CompiledRoleGroups> roleGroupsByContent = new BoundedCache<>(MAX_ROLE_GROUPS,
+                                                                                                           0,
+                                                                                                           TimeUnit.MILLISECONDS);
+
+    // role groups declared by annotations are cached by the identity of the annotation; copy-on-write, because
+    // after the first few requests this is only ever read
+    private volatile Map<Object, CompiledRoleGroups> roleGroupsByOwner = Collections.emptyMap();
+
     public ConstraintLogic(final DeadboltAnalyzer analyzer,
                            final SubjectCache subjectCache,
                            final PatternCache patternCache)
     {
+        this(analyzer,
+             subjectCache,
+             patternCache,
+             new RoleRegistry());
+    }
+
+    public ConstraintLogic(final DeadboltAnalyzer analyzer,
+                           final SubjectCache subjectCache,
+                           final PatternCache patternCache,
+                           final RoleRegistry roleRegistry)
+    {
+        this(analyzer,
+             subjectCache,
+             patternCache,
+             roleRegistry,
+             CustomPatternEvaluation.SEQUENTIAL,
+             1,
+             false,
+             new DecisionCache(),
+             new DefaultRolePermissionsCache(patternCache));
+    }
+
+    @Inject
+    public ConstraintLogic(final DeadboltAnalyzer analyzer,
+                           final SubjectCache subjectCache,
+                           final PatternCache patternCache,
+                           final RoleRegistry roleRegistry,
+                           final Config config,
+                           final DecisionCache decisionCache,
+                           final RolePermissionsCache rolePermissionsCache)
+    {
+        this(analyzer,
+             subjectCache,
+             patternCache,
+             roleRegistry,
+             config.hasPath("deadbolt.java.custom-pattern.evaluation") ? CustomPatternEvaluation.valueOf(config.getString("deadbolt.java.custom-pattern.evaluation").toUpperCase())
+                                                                       : CustomPatternEvaluation.SEQUENTIAL,
+             config.hasPath("deadbolt.java.custom-pattern.max-concurrency") ? config.getInt("deadbolt.java.custom-pattern.max-concurrency")
+                                                                            : 1,
+             config.hasPath("deadbolt.java.cache-dynamic") && config.getBoolean("deadbolt.java.cache-dynamic"),
+             decisionCache,
+             rolePermissionsCache);
+    }
+
+    public ConstraintLogic(final DeadboltAnalyzer analyzer,
+                           final SubjectCache subjectCache,
+                           final PatternCache patternCache,
+                           final RoleRegistry roleRegistry,
+                           final CustomPatternEvaluation customPatternEvaluation,
+                           final int customPatternMaxConcurrency)
+    {
+        this(analyzer,
+             subjectCache,
+             patternCache,
+             roleRegistry,
+             customPatternEvaluation,
+             customPatternMaxConcurrency,
+             false,
+             new DecisionCache(),
+             new DefaultRolePermissionsCache(patternCache));
+    }
+
+    public ConstraintLogic(final DeadboltAnalyzer analyzer,
+                           final SubjectCache subjectCache,
+                           final PatternCache patternCache,
+                           final RoleRegistry roleRegistry,
+                           final CustomPatternEvaluation customPatternEvaluation,
+                           final int customPatternMaxConcurrency,
+                           final boolean cacheDynamic,
+                           final DecisionCache decisionCache,
+                           final RolePermissionsCache rolePermissionsCache)
+    {
+        if (customPatternMaxConcurrency < 1)
+        {
+            throw new IllegalArgumentException("deadbolt.java.custom-pattern.max-concurrency must be at least 1");
+        }
         this.analyzer = analyzer;
         this.subjectCache = subjectCache;
         this.patternCache = patternCache;
+        this.roleRegistry = roleRegistry;
+        this.customPatternEvaluation = customPatternEvaluation;
+        this.customPatternMaxConcurrency = customPatternMaxConcurrency;
+        this.cacheDynamic = cacheDynamic;
+        this.decisionCache = decisionCache;
+        this.rolePermissionsCache = rolePermissionsCache;
     }
 
     public <T> CompletionStage<T> subjectPresent(final Http.RequestHeader requestHeader,
@@ -106,14 +233,14 @@ public class ConstraintLogic
                                                final TriFunction<Http.RequestHeader, DeadboltHandler, Optional<String>, CompletionStage<T>> present,
                                                final TriFunction<Http.RequestHeader, DeadboltHandler, Optional<String>, CompletionStage<T>> notPresent)
     {
-        return getSubject(requestHeader,
-                          deadboltHandler)
-                .thenCompose(maybeSubject -> maybeSubject._1.map(subject -> present.apply(maybeSubject._2,
-                                                                                       deadboltHandler,
-                                                                                       content))
-                                                         .orElseGet(() -> notPresent.apply(maybeSubject._2,
-                                                                                           deadboltHandler,
-                                                                                           content)));
+        return withSubject(requestHeader,
+                           deadboltHandler,
+                           (subject, rh) -> subject.isPresent() ? present.apply(rh,
+                                                                                deadboltHandler,
+                                                                                content)
+                                                                : notPresent.apply(rh,
+                                                                                   deadboltHandler,
+                                                                                   content));
     }
 
     public <T> CompletionStage<T> restrict(final Http.RequestHeader requestHeader,
@@ -124,29 +251,95 @@ public class ConstraintLogic
                                            final TriFunction<Http.RequestHeader, DeadboltHandler, Optional<String>, CompletionStage<T>> fail,
                                            final ConstraintPoint constraintPoint)
     {
-        return getSubject(requestHeader,
-                          deadboltHandler)
-                .thenCompose(subjectOption ->
-                                  {
-                                      boolean roleOk = false;
-                                      if (subjectOption._1.isPresent())
-                                      {
-                                          final List<String[]> roleGroups = roleGroupSupplier.get();
-                                          for (int i = 0; !roleOk && i < roleGroups.size(); i++)
-                                          {
-                                              roleOk = analyzer.checkRole(subjectOption._1,
-                                                                          roleGroups.get(i));
-                                          }
-                                      }
-                                      return roleOk ? pass(subjectOption._2,
-                                                           deadboltHandler,
-                                                           pass,
-                                                           constraintPoint,
-                                                           "restrict")
-                                                    : fail.apply(subjectOption._2,
-                                                                 deadboltHandler,
-                                                                 content);
-                                  });
+        return withSubject(requestHeader,
+                           deadboltHandler,
+                           (subject, rh) ->
+                           {
+                               final boolean roleOk = subject.isPresent()
+                                                      && analyzer.checkRoleGroups(subject,
+                                                                                  compileRoleGroups(roleGroupSupplier.get()));
+                               return roleOk ? pass(rh,
+                                                    deadboltHandler,
+                                                    pass,
+                                                    constraintPoint,
+                                                    "restrict")
+                                             : fail.apply(rh,
+                                                          deadboltHandler,
+                                                          content);
+                           });
+    }
+
+    public <T> CompletionStage<T> restrict(final Http.RequestHeader requestHeader,
+                                           final DeadboltHandler deadboltHandler,
+                                           final Optional<String> content,
+                                           final CompiledRoleGroups roleGroups,
+                                           final Function<Http.RequestHeader, CompletionStage<T>> pass,
+                                           final TriFunction<Http.RequestHeader, DeadboltHandler, Optional<String>, CompletionStage<T>> fail,
+                                           final ConstraintPoint constraintPoint)
+    {
+        return withSubject(requestHeader,
+                           deadboltHandler,
+                           (subject, rh) -> analyzer.checkRoleGroups(subject,
+                                                                     roleGroups) ? pass(rh,
+                                                                                        deadboltHandler,
+                                                                                        pass,
+                                                                                        constraintPoint,
+                                                                                        "restrict")
+                                                                                 : fail.apply(rh,
+                                                                                              deadboltHandler,
+                                                                                              content));
+    }
+
+    /**
+     * Compile role groups that are declared once and used for many requests, such as those of an annotation.  The
+     * compiled form is cached against the identity of the owner, and the supplier is only used the first time, so it
+     * must always supply the same role groups for the same owner; if it may not, e.g. because it is overridden by a
+     * subclass, use {@link #compileRoleGroups(List)} instead.
+     *
+     * @param owner      the object declaring the role groups, e.g. a {@link be.objectify.deadbolt.java.actions.Restrict}
+     * @param roleGroups supplies the role groups
+     * @return the compiled role groups
+     */
+    public CompiledRoleGroups compileRoleGroups(final Object owner,
+                                                final Supplier<List<String[]>> roleGroups)
+    {
+        CompiledRoleGroups compiled = roleGroupsByOwner.get(owner);
+        if (compiled == null)
+        {
+            compiled = CompiledRoleGroups.of(roleGroups.get(),
+                                             roleRegistry);
+            synchronized (this)
+            {
+                if (roleGroupsByOwner.size() < MAX_ROLE_GROUPS && !roleGroupsByOwner.containsKey(owner))
+                {
+                    final Map<Object, CompiledRoleGroups> copy = new IdentityHashMap<>(roleGroupsByOwner);
+                    copy.put(owner,
+                             compiled);
+                    roleGroupsByOwner = copy;
+                }
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Compile role groups, re-using an earlier compilation of the same role groups where possible.
+     *
+     * @param roleGroups the role groups
+     * @return the compiled role groups
+     */
+    public CompiledRoleGroups compileRoleGroups(final List<String[]> roleGroups)
+    {
+        final RoleGroupsKey key = new RoleGroupsKey(roleGroups);
+        CompiledRoleGroups compiled = roleGroupsByContent.getIfPresent(key);
+        if (compiled == null)
+        {
+            compiled = CompiledRoleGroups.of(roleGroups,
+                                             roleRegistry);
+            roleGroupsByContent.put(key.copy(),
+                                    compiled);
+        }
+        return compiled;
     }
 
     public <T> CompletionStage<T> roleBasedPermissions(final Http.RequestHeader requestHeader,
@@ -159,15 +352,11 @@ public class ConstraintLogic
     {
         return getSubject(requestHeader,
                           deadboltHandler)
-                .thenCompose(maybeSubject -> maybeSubject._1.isPresent() ? deadboltHandler.getPermissionsForRole(roleName)
-                                                                                       .thenApply(permissions -> F.Tuple(permissions.stream()
-                                                                                                                            .map(permission -> Optional.ofNullable(patternCache.apply(permission.getValue())))
-                                                                                                                            .map(maybePattern -> analyzer.checkRegexPattern(maybeSubject._1,
-                                                                                                                                                                                      maybePattern))
-                                                                                                                            .filter(matches -> matches)
-                                                                                                                            .findFirst()
-                                                                                                                            .isPresent(), maybeSubject._2))
-
+                .thenCompose(maybeSubject -> maybeSubject._1.isPresent() ? rolePermissionsCache.apply(deadboltHandler,
+                                                                                                      roleName)
+                                                                                               .thenApply(permissions -> F.Tuple(analyzer.checkRegexPatterns(maybeSubject._1,
+                                                                                                                                                             permissions),
+                                                                                                                                 maybeSubject._2))
                                                                       : CompletableFuture.completedFuture(F.Tuple(false, maybeSubject._2)))
                 .thenCompose(allowed -> allowed._1 ? pass(allowed._2,
                                                             deadboltHandler,
@@ -215,7 +404,6 @@ public class ConstraintLogic
                                   deadboltHandler,
                                   content,
                                   values,
-                                  0,
                                   mode,
                                   invert,
                                   pass,
@@ -223,12 +411,33 @@ public class ConstraintLogic
                                   constraintPoint);
                 break;
             case REGEX:
+                // any of several regexes can be tested in one pass; inverted checks keep their per-value semantics
+                result = ConstraintMode.OR.equals(mode) && !invert && values.length > 1 ? regexAny(requestHeader,
+                                                                                                   deadboltHandler,
+                                                                                                   content,
+                                                                                                   values,
+                                                                                                   pass,
+                                                                                                   fail,
+                                                                                                   constraintPoint)
+                                                                                        : regex(requestHeader,
+                                                                                                deadboltHandler,
+                                                                                                content,
+                                                                                                values,
+                                                                                                mode,
+                                                                                                PatternType.REGEX,
+                                                                                                invert,
+                                                                                                pass,
+                                                                                                fail,
+                                                                                                constraintPoint);
+                break;
+            case LINEAR_REGEX:
+            case WILDCARD:
                 result = regex(requestHeader,
                                deadboltHandler,
                                content,
                                values,
-                               0,
                                mode,
+                               patternType,
                                invert,
                                pass,
                                fail,
@@ -239,7 +448,6 @@ public class ConstraintLogic
                                 deadboltHandler,
                                 content,
                                 values,
-                                0,
                                 mode,
                                 meta,
                                 invert,
@@ -263,27 +471,73 @@ public class ConstraintLogic
                                           final TriFunction<Http.RequestHeader, DeadboltHandler, Optional<String>, CompletionStage<T>> fail,
                                           final ConstraintPoint constraintPoint)
     {
-        return deadboltHandler.getDynamicResourceHandler(requestHeader)
-                              .thenApply(option -> option.orElseGet(() -> ExceptionThrowingDynamicResourceHandler.INSTANCE))
-                              .thenCompose(drh -> drh.isAllowed(name,
-                                                                meta,
-                                                                deadboltHandler,
-                                                                requestHeader))
-                              .thenCompose(allowed -> allowed ? pass(requestHeader,
-                                                                          deadboltHandler,
-                                                                          pass,
-                                                                          constraintPoint,
-                                                                          "dynamic")
-                                                                   : fail.apply(requestHeader,
-                                                                                deadboltHandler,
-                                                                                content));
+        final Http.RequestHeader rh = withDynamicMemo(requestHeader);
+        return dynamicResourceHandler(rh,
+                                      deadboltHandler)
+                              .thenCompose(drh -> isAllowed(drh,
+                                                            name,
+                                                            meta,
+                                                            deadboltHandler,
+                                                            rh))
+                              .thenCompose(allowed -> allowed._1 ? pass(allowed._2,
+                                                                        deadboltHandler,
+                                                                        pass,
+                                                                        constraintPoint,
+                                                                        "dynamic")
+                                                                 : fail.apply(allowed._2,
+                                                                              deadboltHandler,
+                                                                              content));
+    }
+
+    /**
+     * Check several dynamic constraints against the same handler with a single call to
+     * {@link DynamicResourceHandler#areAllowed(Collection, Optional, DeadboltHandler, Http.RequestHeader)}.  Outcomes
+     * remembered for the request or kept by the {@link DecisionCache} are used as they would be for a single check, and
+     * only the other constraints are passed to the handler.
+     *
+     * @param requestHeader   the HTTP request header
+     * @param deadboltHandler the Deadbolt handler
+     * @param names           the names of the resources
+     * @param meta            additional information on the resources
+     * @param constraintPoint where the constraints are applied
+     * @return for each name, true iff access is allowed
+     */
+    public CompletionStage<Map<String, Boolean>> dynamic(final Http.RequestHeader requestHeader,
+                                                         final DeadboltHandler deadboltHandler,
+                                                         final Collection<String> names,
+                                                         final Optional<String> meta,
+                                                         final ConstraintPoint constraintPoint)
+    {
+        return dynamicResourceHandler(requestHeader,
+                                      deadboltHandler)
+                              .thenCompose(drh -> areAllowed(drh,
+                                                             names,
+                                                             meta,
+                                                             deadboltHandler,
+                                                             requestHeader))
+                              .thenApply(results ->
+                                         {
+                                             final Map<String, Boolean> allowed = new LinkedHashMap<>();
+                                             for (String name : names)
+                                             {
+                                                 final boolean result = Boolean.TRUE.equals(results.get(name));
+                                                 if (result && !allowed.containsKey(name))
+                                                 {
+                                                     deadboltHandler.onAuthSuccess(requestHeader,
+                                                                                   "dynamic",
+                                                                                   constraintPoint);
+                                                 }
+                                                 allowed.put(name,
+                                                             result);
+                                             }
+                                             return allowed;
+                                         });
     }
 
     private <T> CompletionStage<T> custom(final Http.RequestHeader requestHeader,
                                           final DeadboltHandler deadboltHandler,
                                           final Optional<String> content,
                                           final String[] values,
-                                          final int valueIndex,
                                           final ConstraintMode mode,
                                           final Optional<String> meta,
                                           final boolean invert,
@@ -291,92 +545,384 @@ public class ConstraintLogic
                                           final TriFunction<Http.RequestHeader, DeadboltHandler, Optional<String>, CompletionStage<T>> fail,
                                           final ConstraintPoint constraintPoint)
     {
-        final Http.RequestHeader requestHeaderWithAttr = requestHeader.addAttr(Constants.PATTERN_INVERT,
+        final Http.RequestHeader requestHeaderWithAttr = withDynamicMemo(requestHeader).addAttr(Constants.PATTERN_INVERT,
                      invert);
-        return deadboltHandler.getDynamicResourceHandler(requestHeaderWithAttr)
-                              .thenApply(option -> option.orElseGet(() -> ExceptionThrowingDynamicResourceHandler.INSTANCE))
-                              .thenCompose(resourceHandler -> resourceHandler.checkPermission(values[valueIndex],
-                                                                                              meta,
-                                                                                              deadboltHandler,
-                                                                                              requestHeaderWithAttr))
-                              .thenCompose(allowed -> (invert ? !allowed : allowed) ? (successCallAgain(mode, values, valueIndex) ? custom(requestHeaderWithAttr,
-                                                                                                                                           deadboltHandler,
-                                                                                                                                           content,
-                                                                                                                                           values,
-                                                                                                                                           valueIndex + 1,
-                                                                                                                                           mode,
-                                                                                                                                           meta,
-                                                                                                                                           invert,
-                                                                                                                                           pass,
-                                                                                                                                           fail,
-                                                                                                                                           constraintPoint)
-                                                                                                                                  : pass(requestHeaderWithAttr,
-                                                                                                                                         deadboltHandler,
-                                                                                                                                         pass,
-                                                                                                                                         constraintPoint,
-                                                                                                                                         "pattern - custom"))
-                                                                                    : (failCallAgain(mode, values, valueIndex) ? custom(requestHeaderWithAttr,
-                                                                                                                                        deadboltHandler,
-                                                                                                                                        content,
-                                                                                                                                        values,
-                                                                                                                                        valueIndex + 1,
-                                                                                                                                        mode,
-                                                                                                                                        meta,
-                                                                                                                                        invert,
-                                                                                                                                        pass,
-                                                                                                                                        fail,
-                                                                                                                                        constraintPoint)
-                                                                                                                               : fail.apply(requestHeaderWithAttr,
-                                                                                                                                            deadboltHandler,
-                                                                                                                                            content)));
+        return dynamicResourceHandler(requestHeaderWithAttr,
+                                      deadboltHandler)
+                              .thenCompose(resourceHandler -> values.length <= 1 || CustomPatternEvaluation.SEQUENTIAL.equals(customPatternEvaluation)
+                                                              ? checkCustom(value -> checkPermission(resourceHandler,
+                                                                                                     value,
+                                                                                                     meta,
+                                                                                                     invert,
+                                                                                                     deadboltHandler,
+                                                                                                     requestHeaderWithAttr),
+                                                                            values,
+                                                                            0,
+                                                                            mode,
+                                                                            invert)
+                                                              : CustomPatternEvaluation.BATCH.equals(customPatternEvaluation)
+                                                              ? checkPermissions(resourceHandler,
+                                                                                 values,
+                                                                                 meta,
+                                                                                 invert,
+                                                                                 deadboltHandler,
+                                                                                 requestHeaderWithAttr)
+                                                                               .thenApply(results -> evaluate(values,
+                                                                                                              mode,
+                                                                                                              invert,
+                                                                                                              value -> Boolean.TRUE.equals(results.get(value))))
+                                                              : new ConcurrentCustomCheck(value -> checkPermission(resourceHandler,
+                                                                                                                   value,
+                                                                                                                   meta,
+                                                                                                                   invert,
+                                                                                                                   deadboltHandler,
+                                                                                                                   requestHeaderWithAttr),
+                                                                                          values,
+                                                                                          mode,
+                                                                                          invert).start(customPatternMaxConcurrency))
+                              .thenCompose(allowed -> allowed ? pass(requestHeaderWithAttr,
+                                                                     deadboltHandler,
+                                                                     pass,
+                                                                     constraintPoint,
+                                                                     "pattern - custom")
+                                                              : fail.apply(requestHeaderWithAttr,
+                                                                           deadboltHandler,
+                                                                           content));
+    }
+
+    /**
+     * Check the custom pattern values from the given index onwards.  Values whose check is already complete are
+     * handled in a loop; only a check that is still pending continues asynchronously.
+     */
+    private CompletionStage<Boolean> checkCustom(final Function<String, CompletionStage<Boolean>> check,
+                                                 final String[] values,
+                                                 final int fromIndex,
+                                                 final ConstraintMode mode,
+                                                 final boolean invert)
+    {
+        if (values.length == 0)
+        {
+            return CompletableFuture.completedFuture(false);
+        }
+        final boolean or = ConstraintMode.OR.equals(mode);
+        for (int i = fromIndex; i < values.length; i++)
+        {
+            final CompletionStage<Boolean> allowed = check.apply(values[i]);
+            if (!isCompletedNormally(allowed))
+            {
+                final int nextIndex = i + 1;
+                return allowed.thenCompose(result -> {
+                    final boolean passed = invert != result;
+                    return passed == or || nextIndex == values.length ? CompletableFuture.completedFuture(passed)
+                                                                      : checkCustom(check,
+                                                                                    values,
+                                                                                    nextIndex,
+                                                                                    mode,
+                                                                                    invert);
+                });
+            }
+            if ((invert != ((CompletableFuture<Boolean>) allowed).join()) == or)
+            {
+                // the first pass decides OR, the first failure decides AND
+                return CompletableFuture.completedFuture(or);
+            }
+        }
+        return CompletableFuture.completedFuture(!or);
+    }
+
+    /**
+     * Add a {@link DynamicResourceMemo} to the request if deadbolt.java.cache-dynamic is true and the request
+     * doesn't already have one.
+     */
+    private Http.RequestHeader withDynamicMemo(final Http.RequestHeader requestHeader)
+    {
+        return cacheDynamic && !requestHeader.attrs().containsKey(DynamicResourceMemo.KEY) ? requestHeader.addAttr(DynamicResourceMemo.KEY,
+                                                                                                                   new DynamicResourceMemo())
+                                                                                          : requestHeader;
+    }
+
+    private Optional<DynamicResourceMemo> dynamicMemo(final Http.RequestHeader requestHeader)
+    {
+        return cacheDynamic ? requestHeader.attrs().getOptional(DynamicResourceMemo.KEY)
+                            : Optional.empty();
+    }
+
+    private CompletionStage<DynamicResourceHandler> dynamicResourceHandler(final Http.RequestHeader requestHeader,
+                                                                           final DeadboltHandler deadboltHandler)
+    {
+        final Optional<DynamicResourceMemo> memo = dynamicMemo(requestHeader);
+        final CompletionStage<Optional<DynamicResourceHandler>> drh = memo.isPresent() ? memo.get().handler(deadboltHandler,
+                                                                                                            () -> deadboltHandler.getDynamicResourceHandler(requestHeader))
+                                                                                       : deadboltHandler.getDynamicResourceHandler(requestHeader);
+        return drh.thenApply(option -> option.orElseGet(() -> ExceptionThrowingDynamicResourceHandler.INSTANCE));
+    }
+
+    /**
+     * Check the dynamic rule, through the {@link DecisionCache} if the rule is cacheable.  Rules scoped to the subject
+     * need the subject to be looked up, so the outcome carries the request header the subject was cached in.
+     */
+    private CompletionStage<F.Tuple<Boolean, Http.RequestHeader>> isAllowed(final DynamicResourceHandler drh,
+                                                                            final String name,
+                                                                            final Optional<String> meta,
+                                                                            final DeadboltHandler deadboltHandler,
+                                                                            final Http.RequestHeader requestHeader)
+    {
+        final Optional<DecisionCacheability> cacheability = drh.cacheability(name,
+                                                                             meta);
+        if (cacheability == null || !cacheability.isPresent())
+        {
+            return memoizedIsAllowed(drh,
+                                     name,
+                                     meta,
+                                     deadboltHandler,
+                                     requestHeader).thenApply(allowed -> F.Tuple(allowed,
+                                                                                 requestHeader));
+        }
+        if (cacheability.get().scope() == DecisionCacheability.Scope.GLOBAL)
+        {
+            return decisionCache.apply(deadboltHandler.getId(),
+                                       name,
+                                       meta,
+                                       Optional.empty(),
+                                       cacheability.get(),
+                                       () -> memoizedIsAllowed(drh,
+                                                               name,
+                                                               meta,
+                                                               deadboltHandler,
+                                                               requestHeader))
+                                .thenApply(allowed -> F.Tuple(allowed,
+                                                              requestHeader));
+        }
+        return withSubject(requestHeader,
+                           deadboltHandler,
+                           (subject, rh) -> decisionCache.apply(deadboltHandler.getId(),
+                                                                name,
+                                                                meta,
+                                                                subject.map(Subject::getIdentifier),
+                                                                cacheability.get(),
+                                                                () -> memoizedIsAllowed(drh,
+                                                                                        name,
+                                                                                        meta,
+                                                                                        deadboltHandler,
+                                                                                        rh))
+                                                         .thenApply(allowed -> F.Tuple(allowed,
+                                                                                       rh)));
+    }
+
+    /**
+     * Check the dynamic rules, through the {@link DynamicResourceMemo} and the {@link DecisionCache} as
+     * {@link #isAllowed(DynamicResourceHandler, String, Optional, DeadboltHandler, Http.RequestHeader)} does.  The
+     * rules that neither has an outcome for are checked with a single call to
+     * {@link DynamicResourceHandler#areAllowed(Collection, Optional, DeadboltHandler, Http.RequestHeader)}.
+     */
+    private CompletionStage<Map<String, Boolean>> areAllowed(final DynamicResourceHandler drh,
+                                                             final Collection<String> names,
+                                                             final Optional<String> meta,
+                                                             final DeadboltHandler deadboltHandler,
+                                                             final Http.RequestHeader requestHeader)
+    {
+        final Map<String, Optional<DecisionCacheability>> cacheabilities = new LinkedHashMap<>();
+        for (String name : names)
+        {
+            final Optional<DecisionCacheability> cacheability = drh.cacheability(name,
+                                                                                 meta);
+            cacheabilities.put(name,
+                               cacheability == null ? Optional.empty()
+                                                    : cacheability);
+        }
+        final boolean subjectScoped = cacheabilities.values()
+                                                    .stream()
+                                                    .anyMatch(cacheability -> cacheability.isPresent()
+                                                                              && cacheability.get().scope() != DecisionCacheability.Scope.GLOBAL);
+        final BiFunction<Optional<String>, Http.RequestHeader, CompletionStage<Map<String, Boolean>>> check = (subjectId, rh) ->
+                batched(cacheabilities.keySet(),
+                        (name, miss) -> cacheabilities.get(name)
+                                                      .map(cacheability -> decisionCache.apply(deadboltHandler.getId(),
+                                                                                               name,
+                                                                                               meta,
+                                                                                               cacheability.scope() == DecisionCacheability.Scope.GLOBAL ? Optional.empty()
+                                                                                                                                                        : subjectId,
+                                                                                               cacheability,
+                                                                                               () -> memoizedIsAllowed(name,
+                                                                                                                       meta,
+                                                                                                                       deadboltHandler,
+                                                                                                                       rh,
+                                                                                                                       miss)))
+                                                      .orElseGet(() -> memoizedIsAllowed(name,
+                                                                                         meta,
+                                                                                         deadboltHandler,
+                                                                                         rh,
+                                                                                         miss)),
+                        misses -> drh.areAllowed(misses,
+                                                 meta,
+                                                 deadboltHandler,
+                                                 rh));
+        // rules scoped to the subject need the subject to be looked up, as they do for a single check
+        return subjectScoped ? withSubject(requestHeader,
+                                           deadboltHandler,
+                                           (subject, rh) -> check.apply(subject.map(Subject::getIdentifier),
+                                                                        rh))
+                             : check.apply(Optional.empty(),
+                                           requestHeader);
+    }
+
+    /**
+     * Check the custom pattern values with a single call to
+     * {@link DynamicResourceHandler#checkPermissions(Collection, Optional, DeadboltHandler, Http.RequestHeader)},
+     * leaving out the values whose outcome is remembered for the request.
+     */
+    private CompletionStage<Map<String, Boolean>> checkPermissions(final DynamicResourceHandler drh,
+                                                                   final String[] values,
+                                                                   final Optional<String> meta,
+                                                                   final boolean invert,
+                                                                   final DeadboltHandler deadboltHandler,
+                                                                   final Http.RequestHeader requestHeader)
+    {
+        final Optional<DynamicResourceMemo> memo = dynamicMemo(requestHeader);
+        final Function<List<String>, CompletionStage<Map<String, Boolean>>> check = permissionValues -> drh.checkPermissions(permissionValues,
+                                                                                                                            meta,
+                                                                                                                            deadboltHandler,
+                                                                                                                            requestHeader);
+        return memo.isPresent() ? batched(Arrays.asList(values),
+                                          (value, miss) -> memo.get().checkPermission(deadboltHandler,
+                                                                                      value,
+                                                                                      meta,
+                                                                                      invert,
+                                                                                      miss),
+                                          check)
+                                : check.apply(Arrays.asList(values));
+    }
+
+    /**
+     * Look up the outcome for each distinct key, and check the keys the lookup misses with a single batch check.  The
+     * lookup is given the check of a single key, which it must call before it returns, if at all.
+     */
+    private static CompletionStage<Map<String, Boolean>> batched(final Collection<String> keys,
+                                                                 final BiFunction<String, Supplier<CompletionStage<Boolean>>, CompletionStage<Boolean>> lookup,
+                                                                 final Function<List<String>, CompletionStage<Map<String, Boolean>>> check)
+    {
+        final List<String> misses = new ArrayList<>();
+        final CompletableFuture<Map<String, Boolean>> checked = new CompletableFuture<>();
+        final Map<String, CompletionStage<Boolean>> outcomes = new LinkedHashMap<>();
+        for (String key : keys)
+        {
+            if (!outcomes.containsKey(key))
+            {
+                outcomes.put(key,
+                             lookup.apply(key,
+                                          () ->
+                                          {
+                                              misses.add(key);
+                                              return checked.thenApply(results -> Boolean.TRUE.equals(results.get(key)));
+                                          }));
+            }
+        }
+        if (misses.isEmpty())
+        {
+            checked.complete(Collections.emptyMap());
+        }
+        else
+        {
+            try
+            {
+                check.apply(misses)
+                     .whenComplete((results, throwable) ->
+                                   {
+                                       if (throwable == null)
+                                       {
+                                           checked.complete(results);
+                                       }
+                                       else
+                                       {
+                                           checked.completeExceptionally(throwable);
+                                       }
+                                   });
+            }
+            catch (RuntimeException e)
+            {
+                checked.completeExceptionally(e);
+            }
+        }
+        return BatchUtils.fanOut(outcomes.keySet(),
+                                 outcomes::get);
+    }
+
+    private CompletionStage<Boolean> memoizedIsAllowed(final DynamicResourceHandler drh,
+                                                       final String name,
+                                                       final Optional<String> meta,
+                                                       final DeadboltHandler deadboltHandler,
+                                                       final Http.RequestHeader requestHeader)
+    {
+        return memoizedIsAllowed(name,
+                                 meta,
+                                 deadboltHandler,
+                                 requestHeader,
+                                 () -> drh.isAllowed(name,
+                                                     meta,
+                                                     deadboltHandler,
+                                                     requestHeader));
+    }
+
+    private CompletionStage<Boolean> memoizedIsAllowed(final String name,
+                                                       final Optional<String> meta,
+                                                       final DeadboltHandler deadboltHandler,
+                                                       final Http.RequestHeader requestHeader,
+                                                       final Supplier<CompletionStage<Boolean>> check)
+    {
+        final Optional<DynamicResourceMemo> memo = dynamicMemo(requestHeader);
+        return memo.isPresent() ? memo.get().isAllowed(deadboltHandler,
+                                                       name,
+                                                       meta,
+                                                       check)
+                                : check.get();
+    }
+
+    private CompletionStage<Boolean> checkPermission(final DynamicResourceHandler drh,
+                                                     final String permissionValue,
+                                                     final Optional<String> meta,
+                                                     final boolean invert,
+                                                     final DeadboltHandler deadboltHandler,
+                                                     final Http.RequestHeader requestHeader)
+    {
+        final Optional<DynamicResourceMemo> memo = dynamicMemo(requestHeader);
+        return memo.isPresent() ? memo.get().checkPermission(deadboltHandler,
+                                                             permissionValue,
+                                                             meta,
+                                                             invert,
+                                                             () -> drh.checkPermission(permissionValue,
+                                                                                       meta,
+                                                                                       deadboltHandler,
+                                                                                       requestHeader))
+                                : drh.checkPermission(permissionValue,
+                                                      meta,
+                                                      deadboltHandler,
+                                                      requestHeader);
     }
 
     private <T> CompletionStage<T> equality(final Http.RequestHeader requestHeader,
                                             final DeadboltHandler deadboltHandler,
                                             final Optional<String> content,
                                             final String[] values,
-                                            final int valueIndex,
                                             final ConstraintMode mode,
                                             final boolean invert,
                                             final Function<Http.RequestHeader, CompletionStage<T>> pass,
                                             final TriFunction<Http.RequestHeader, DeadboltHandler, Optional<String>, CompletionStage<T>> fail,
                                             final ConstraintPoint constraintPoint)
     {
-        return getSubject(requestHeader,
-                          deadboltHandler)
-                .thenCompose(subject -> {
-                                      final boolean equal = subject._1.isPresent() ? analyzer.checkPatternEquality(subject._1,
-                                                                                                                Optional.ofNullable(values[valueIndex]))
-                                                                                : invert; // this is a little clumsy - it means no subject + invert is still denied
-                                      return (invert ? !equal : equal) ? (successCallAgain(mode, values, valueIndex) ? equality(subject._2,
-                                                                                                                                deadboltHandler,
-                                                                                                                                content,
-                                                                                                                                values,
-                                                                                                                                valueIndex + 1,
-                                                                                                                                mode,
-                                                                                                                                invert,
-                                                                                                                                pass,
-                                                                                                                                fail,
-                                                                                                                                constraintPoint)
-                                                                                                                     : pass(subject._2,
-                                                                                                                            deadboltHandler,
-                                                                                                                            pass,
-                                                                                                                            constraintPoint,
-                                                                                                                            "pattern - equality"))
-                                                                       : (failCallAgain(mode, values, valueIndex) ? equality(subject._2,
-                                                                                                                             deadboltHandler,
-                                                                                                                             content,
-                                                                                                                             values,
-                                                                                                                             valueIndex + 1,
-                                                                                                                             mode,
-                                                                                                                             invert,
-                                                                                                                             pass,
-                                                                                                                             fail,
-                                                                                                                             constraintPoint)
-                                                                                                                  : fail.apply(subject._2,
-                                                                                                                               deadboltHandler,
-                                                                                                                               content));
-                });
+        return withSubject(requestHeader,
+                           deadboltHandler,
+                           (subject, rh) -> subject.isPresent() && evaluate(values,
+                                                                            mode,
+                                                                            invert,
+                                                                            value -> analyzer.checkPatternEquality(subject,
+                                                                                                                   Optional.ofNullable(value))) ? pass(rh,
+                                                                                                                                                       deadboltHandler,
+                                                                                                                                                       pass,
+                                                                                                                                                       constraintPoint,
+                                                                                                                                                       "pattern - equality")
+                                                                                                                                                  : fail.apply(rh,
+                                                                                                                                                               deadboltHandler,
+                                                                                                                                                               content));
     }
 
     protected CompletionStage<F.Tuple<Optional<? extends Subject>, Http.RequestHeader>> getSubject(final Http.RequestHeader requestHeader,
@@ -387,10 +933,51 @@ public class ConstraintLogic
     }
 
     /**
-     * Checks access to the resource based on the regex
+     * Continue with the subject and the request header it was cached in.  When the subject is already available, e.g.
+     * because it is cached in the request, the continuation is applied directly instead of through
+     * {@link CompletionStage#thenCompose(Function)}, avoiding the intermediate stage.  As with thenCompose, an
+     * exception thrown by the continuation results in an exceptionally-completed stage.
+     *
+     * @param requestHeader   the HTTP request header
+     * @param deadboltHandler the Deadbolt handler
+     * @param then            the continuation
+     * @return the result of the continuation
+     */
+    private <T> CompletionStage<T> withSubject(final Http.RequestHeader requestHeader,
+                                               final DeadboltHandler deadboltHandler,
+                                               final BiFunction<Optional<? extends Subject>, Http.RequestHeader, CompletionStage<T>> then)
+    {
+        final CompletionStage<F.Tuple<Optional<? extends Subject>, Http.RequestHeader>> stage = getSubject(requestHeader,
+                                                                                                        deadboltHandler);
+        if (stage instanceof CompletableFuture)
+        {
+            final CompletableFuture<F.Tuple<Optional<? extends Subject>, Http.RequestHeader>> future = (CompletableFuture<F.Tuple<Optional<? extends Subject>, Http.RequestHeader>>) stage;
+            if (future.isDone() && !future.isCompletedExceptionally())
+            {
+                final F.Tuple<Optional<? extends Subject>, Http.RequestHeader> subject = future.join();
+                try
+                {
+                    return then.apply(subject._1,
+                                      subject._2);
+                }
+                catch (RuntimeException e)
+                {
+                    final CompletableFuture<T> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(e);
+                    return failed;
+                }
+            }
+        }
+        return stage.thenCompose(subject -> then.apply(subject._1,
+                                                       subject._2));
+    }
+
+    /**
+     * Checks access to the resource based on the regex, linear-time regex or wildcard permission
      *
      * @param requestHeader             the HTTP request header
      * @param deadboltHandler the Deadbolt handler
+     * @param patternType     the type of pattern matching, other than EQUALITY and CUSTOM
      * @param invert          if true, invert the application of the constraint
      * @return the necessary result
      */
@@ -398,69 +985,115 @@ public class ConstraintLogic
                                          final DeadboltHandler deadboltHandler,
                                          final Optional<String> content,
                                          final String[] values,
-                                         final int valueIndex,
                                          final ConstraintMode mode,
+                                         final PatternType patternType,
                                          final boolean invert,
                                          final Function<Http.RequestHeader, CompletionStage<T>> pass,
                                          final TriFunction<Http.RequestHeader, DeadboltHandler, Optional<String>, CompletionStage<T>> fail,
                                          final ConstraintPoint constraintPoint)
     {
-        return CompletableFuture.completedFuture(patternCache.apply(values[valueIndex]))
-                                .thenCombine(getSubject(requestHeader,
-                                                             deadboltHandler),
-                                             (patternValue, subject) ->
-                                                     F.Tuple(subject._1.isPresent() ? analyzer.checkRegexPattern(subject._1,
-                                                                                                      Optional.ofNullable(patternValue))
-                                                                         : invert, subject._2)) // this is a little clumsy - it means no subject + invert is still denied
-
-                                .thenCompose(hasPassed -> (invert ? !hasPassed._1 : hasPassed._1) ? (successCallAgain(mode, values, valueIndex) ? regex(hasPassed._2,
-                                                                                                                                                  deadboltHandler,
-                                                                                                                                                  content,
-                                                                                                                                                  values,
-                                                                                                                                                  valueIndex + 1,
-                                                                                                                                                  mode,
-                                                                                                                                                  invert,
-                                                                                                                                                  pass,
-                                                                                                                                                  fail,
-                                                                                                                                                  constraintPoint)
-                                                                                                                                          : pass(hasPassed._2,
-                                                                                                                                                 deadboltHandler,
-                                                                                                                                                 pass,
-                                                                                                                                                 constraintPoint,
-                                                                                                                                                 "pattern - regex"))
-                                                                                            : (failCallAgain(mode, values, valueIndex) ? regex(hasPassed._2,
-                                                                                                                                               deadboltHandler,
-                                                                                                                                               content,
-                                                                                                                                               values,
-                                                                                                                                               valueIndex + 1,
-                                                                                                                                               mode,
-                                                                                                                                               invert,
-                                                                                                                                               pass,
-                                                                                                                                               fail,
-                                                                                                                                               constraintPoint)
-                                                                                                                                       : fail.apply(hasPassed._2,
-                                                                                                                                                    deadboltHandler,
-                                                                                                                                                    content)));
-    }
-
-    private static boolean successCallAgain(final ConstraintMode mode, final String values[], final int valueIndex) {
-        if(mode == null || ConstraintMode.AND.equals(mode)) { // null check because AND is the default mode
-            if(values.length > (valueIndex + 1)) {
-                // there is at least another check left - that one has to pass too in AND mode
-                return true;
-            }
+        final String constraintType = patternType == PatternType.REGEX ? "pattern - regex"
+                                                                       : "pattern - " + patternType.name().toLowerCase();
+        return withSubject(requestHeader,
+                           deadboltHandler,
+                           (subject, rh) -> subject.isPresent() && evaluate(values,
+                                                                            mode,
+                                                                            invert,
+                                                                            value -> patternCheck(patternType,
+                                                                                                  value).apply(subject)) ? pass(rh,
+                                                                                                                                deadboltHandler,
+                                                                                                                                pass,
+                                                                                                                                constraintPoint,
+                                                                                                                                constraintType)
+                                                                                                                         : fail.apply(rh,
+                                                                                                                                      deadboltHandler,
+                                                                                                                                      content));
+    }
+
+    private Function<Optional<? extends Subject>, Boolean> patternCheck(final PatternType patternType,
+                                                                       final String patternValue)
+    {
+        final Function<Optional<? extends Subject>, Boolean> check;
+        switch (patternType)
+        {
+            case LINEAR_REGEX:
+                final Optional<LinearPattern> linearPattern = Optional.ofNullable(patternCache.applyLinear(patternValue));
+                check = subject -> analyzer.checkLinearPattern(subject,
+                                                               linearPattern);
+                break;
+            case WILDCARD:
+                final Optional<WildcardPermission> permission = Optional.ofNullable(patternCache.applyWildcard(patternValue));
+                check = subject -> analyzer.checkWildcardPattern(subject,
+                                                                 permission);
+                break;
+            default:
+                final Optional<Pattern> pattern = Optional.ofNullable(patternCache.apply(patternValue));
+                check = subject -> analyzer.checkRegexPattern(subject,
+                                                              pattern);
         }
-        return false;
+        return check;
     }
 
-    private static boolean failCallAgain(final ConstraintMode mode, final String values[], final int valueIndex) {
-        if(ConstraintMode.OR.equals(mode)) {
-            if(values.length > (valueIndex + 1)) {
-                // there is at least another check left - give that one the chance to pass
-                return true;
+    /**
+     * Checks access to the resource against any of the regexes, testing each of the subject's permissions once.
+     */
+    private <T> CompletionStage<T> regexAny(final Http.RequestHeader requestHeader,
+                                            final DeadboltHandler deadboltHandler,
+                                            final Optional<String> content,
+                                            final String[] values,
+                                            final Function<Http.RequestHeader, CompletionStage<T>> pass,
+                                            final TriFunction<Http.RequestHeader, DeadboltHandler, Optional<String>, CompletionStage<T>> fail,
+                                            final ConstraintPoint constraintPoint)
+    {
+        final MultiPattern patterns = patternCache.applyAll(Arrays.asList(values));
+        return withSubject(requestHeader,
+                           deadboltHandler,
+                           (subject, rh) -> analyzer.checkRegexPatterns(subject,
+                                                                        patterns) ? pass(rh,
+                                                                                         deadboltHandler,
+                                                                                         pass,
+                                                                                         constraintPoint,
+                                                                                         "pattern - regex")
+                                                                                  : fail.apply(rh,
+                                                                                               deadboltHandler,
+                                                                                               content));
+    }
+
+    /**
+     * Check each value in turn, stopping as soon as the outcome is known.  A subject without values never passes.
+     *
+     * @param values the values
+     * @param mode   the mode, where null means {@link ConstraintMode#AND}
+     * @param invert if true, invert the result of each check
+     * @param check  the check for a single value
+     * @return true iff all values (AND) or at least one value (OR) passed
+     */
+    private static boolean evaluate(final String[] values,
+                                    final ConstraintMode mode,
+                                    final boolean invert,
+                                    final Predicate<String> check)
+    {
+        if (values.length == 0)
+        {
+            return false;
+        }
+        final boolean or = ConstraintMode.OR.equals(mode);
+        for (String value : values)
+        {
+            if ((invert != check.test(value)) == or)
+            {
+                // the first pass decides OR, the first failure decides AND
+                return or;
             }
         }
-        return false;
+        return !or;
+    }
+
+    private static boolean isCompletedNormally(final CompletionStage<?> stage)
+    {
+        return stage instanceof CompletableFuture
+               && ((CompletableFuture<?>) stage).isDone()
+               && !((CompletableFuture<?>) stage).isCompletedExceptionally();
     }
 
     private <T> CompletionStage<T> pass(final Http.RequestHeader requestHeader,
@@ -474,4 +1107,180 @@ public class ConstraintLogic
                               constraintPoint);
         return pass.apply(requestHeader);
     }
+
+    /**
+     * Checks the values of a custom pattern concurrently, completing as soon as the AND/OR outcome is known and
+     * cancelling the checks that are still pending.
+     */
+    private static final class ConcurrentCustomCheck
+    {
+        private final Function<String, CompletionStage<Boolean>> check;
+        private final String[] values;
+        private final boolean or;
+        private final boolean invert;
+
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final List<CompletionStage<Boolean>> started = new ArrayList<>();
+
+        private ConcurrentCustomCheck(final Function<String, CompletionStage<Boolean>> check,
+                                      final String[] values,
+                                      final ConstraintMode mode,
+                                      final boolean invert)
+        {
+            this.check = check;
+            this.values = values;
+            this.or = ConstraintMode.OR.equals(mode);
+            this.invert = invert;
+            this.remaining = new AtomicInteger(values.length);
+        }
+
+        private CompletionStage<Boolean> start(final int maxConcurrency)
+        {
+            for (int i = 0; i < maxConcurrency && !result.isDone(); i++)
+            {
+                startNext();
+            }
+            return result;
+        }
+
+        private void startNext()
+        {
+            final int index = nextIndex.getAndIncrement();
+            if (index >= values.length || result.isDone())
+            {
+                return;
+            }
+            final CompletionStage<Boolean> allowed;
+            try
+            {
+                allowed = check.apply(values[index]);
+            }
+            catch (RuntimeException e)
+            {
+                fail(e);
+                return;
+            }
+            synchronized (started)
+            {
+                started.add(allowed);
+            }
+            if (result.isDone())
+            {
+                // the outcome was decided while this check was being started
+                cancel(allowed);
+            }
+            allowed.whenComplete((outcome, throwable) -> {
+                if (throwable != null || outcome == null)
+                {
+                    fail(throwable != null ? throwable
+                                           : new NullPointerException("checkPermission completed with null for " + values[index]));
+                }
+                else if ((invert != outcome) == or)
+                {
+                    // the first pass decides OR, the first failure decides AND
+                    if (result.complete(or))
+                    {
+                        cancelPending();
+                    }
+                }
+                else if (remaining.decrementAndGet() == 0)
+                {
+                    result.complete(!or);
+                }
+                else
+                {
+                    startNext();
+                }
+            });
+        }
+
+        private void fail(final Throwable throwable)
+        {
+            if (result.completeExceptionally(throwable))
+            {
+                cancelPending();
+            }
+        }
+
+        private void cancelPending()
+        {
+            synchronized (started)
+            {
+                started.forEach(ConcurrentCustomCheck::cancel);
+            }
+        }
+
+        // the stages are the caller's own, as the memo and the decision cache hand out copies, so cancelling them
+        // doesn't affect other checks of the request
+        private static void cancel(final CompletionStage<Boolean> check)
+        {
+            if (check instanceof CompletableFuture)
+            {
+                ((CompletableFuture<?>) check).cancel(false);
+            }
+        }
+    }
+
+    private static final class RoleGroupsKey
+    {
+        private final List<String[]> roleGroups;
+        private final int hash;
+
+        private RoleGroupsKey(final List<String[]> roleGroups)
+        {
+            this.roleGroups = roleGroups;
+            int h = 1;
+            for (String[] roleNames : roleGroups)
+            {
+                h = 31 * h + Arrays.hashCode(roleNames);
+            }
+            this.hash = h;
+        }
+
+        private RoleGroupsKey copy()
+        {
+            final List<String[]> copy = new ArrayList<>(roleGroups.size());
+            for (String[] roleNames : roleGroups)
+            {
+                copy.add(roleNames == null ? null
+                                           : roleNames.clone());
+            }
+            return new RoleGroupsKey(copy);
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof RoleGroupsKey))
+            {
+                return false;
+            }
+            final RoleGroupsKey that = (RoleGroupsKey) o;
+            if (hash != that.hash || roleGroups.size() != that.roleGroups.size())
+            {
+                return false;
+            }
+            for (int i = 0; i < roleGroups.size(); i++)
+            {
+                if (!Arrays.equals(roleGroups.get(i),
+                                   that.roleGroups.get(i)))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
 }
@@ -0,0 +1,16 @@
+package be.objectify.deadbolt.java;
+
+public enum CustomPatternEvaluation {
+
+    // The values of a custom pattern are checked one after another, and checking stops when the outcome is known.
+    // The default.
+    SEQUENTIAL,
+
+    // The values of a custom pattern are checked at the same time, up to deadbolt.java.custom-pattern.max-concurrency
+    // at once.  As soon as the outcome is known, checks that are still pending are cancelled where possible.
+    CONCURRENT,
+
+    // The values of a custom pattern are passed to DynamicResourceHandler#checkPermissions in a single call.
+    BATCH
+
+}
@@ -15,27 +15,47 @@
  */
 package be.objectify.deadbolt.java;
 
+import be.objectify.deadbolt.java.cache.BoundedCache;
+import be.objectify.deadbolt.java.models.CompiledSubject;
+import be.objectify.deadbolt.java.models.PatternType;
 import be.objectify.deadbolt.java.models.Permission;
 import be.objectify.deadbolt.java.models.Role;
 import be.objectify.deadbolt.java.models.Subject;
+import be.objectify.deadbolt.java.patterns.LinearPattern;
+import be.objectify.deadbolt.java.patterns.MultiPattern;
+import be.objectify.deadbolt.java.patterns.PermissionTrie;
+import be.objectify.deadbolt.java.patterns.WildcardPermission;
 
 import javax.inject.Singleton;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
- * This carries out static (i.e. non-dynamic) checks.
+ * This carries out static (i.e. non-dynamic) checks.  Role and permission equality checks against a
+ * {@link CompiledSubject} are answered from its bit set and hash set instead of iterating the subject's roles and
+ * permissions, and the outcome of regex checks against it is remembered.  The {@link PermissionTrie} used for wildcard
+ * checks is kept by the compiled subject, or for other subjects in a bounded cache keyed by their permission values,
+ * so it isn't rebuilt for every check.
  *
  * @author Steve Chaloner (steve@objectify.be)
  */
 @Singleton
 public class DeadboltAnalyzer
 {
+    private static final int PERMISSION_TRIE_CACHE_SIZE = 1024;
+
+    private final BoundedCache<List<String>, PermissionTrie> permissionTries = new BoundedCache<>(PERMISSION_TRIE_CACHE_SIZE,
+                                                                                                  0,
+                                                                                                  TimeUnit.MILLISECONDS);
+
     /**
      * Checks if the subject has all the role names.  In other words, this gives AND support.
      *
@@ -86,6 +106,11 @@ public class DeadboltAnalyzer
     public boolean hasRole(final Optional<? extends Subject> subjectOption,
                            final String roleName)
     {
+        final Subject subject = subjectOption.orElse(null);
+        if (subject instanceof CompiledSubject)
+        {
+            return ((CompiledSubject) subject).hasRole(roleName);
+        }
         return getRoleNames(subjectOption).contains(roleName);
     }
 
@@ -100,6 +125,13 @@ public class DeadboltAnalyzer
     public boolean hasAllRoles(final Optional<? extends Subject> subjectOption,
                                final String[] roleNames)
     {
+        final Subject subject = subjectOption.orElse(null);
+        if (subject instanceof CompiledSubject)
+        {
+            return hasAllRoles((CompiledSubject) subject,
+                               roleNames);
+        }
+
         final List<String> heldRoles = getRoleNames(subjectOption);
 
         boolean roleCheckResult = roleNames != null && roleNames.length > 0;
@@ -122,6 +154,37 @@ public class DeadboltAnalyzer
         return roleCheckResult;
     }
 
+    private boolean hasAllRoles(final CompiledSubject subject,
+                                final String[] roleNames)
+    {
+        boolean roleCheckResult = roleNames != null && roleNames.length > 0;
+        for (int i = 0; roleCheckResult && i < roleNames.length; i++)
+        {
+            final String roleName = roleNames[i];
+            roleCheckResult = roleName.startsWith("!") ? !subject.hasRole(roleName.substring(1))
+                                                       : subject.hasRole(roleName);
+        }
+        return roleCheckResult;
+    }
+
+    /**
+     * Check if the subject satisfies at least one of the role groups.
+     *
+     * @param subjectOption an option for the subject
+     * @param roleGroups    the compiled role groups
+     * @return true iff the subject is present and holds all the roles of at least one group
+     */
+    public boolean checkRoleGroups(final Optional<? extends Subject> subjectOption,
+                                   final CompiledRoleGroups roleGroups)
+    {
+        final Subject subject = subjectOption.orElse(null);
+        if (subject instanceof CompiledSubject)
+        {
+            return roleGroups.test((CompiledSubject) subject);
+        }
+        return subject != null && roleGroups.test(new HashSet<>(getRoleNames(subjectOption)));
+    }
+
     /**
      * Check the pattern for a match against the {@link Permission}s of the user.
      *
@@ -132,6 +195,17 @@ public class DeadboltAnalyzer
     public boolean checkRegexPattern(final Optional<? extends Subject> subjectOption,
                                      final Optional<Pattern> patternOption)
     {
+        final Subject compiled = subjectOption.orElse(null);
+        // the pattern value alone only identifies the pattern if no flags were used to compile it
+        if (compiled instanceof CompiledSubject && patternOption.isPresent() && patternOption.get().flags() == 0)
+        {
+            final Pattern pattern = patternOption.get();
+            return ((CompiledSubject) compiled).decide(PatternType.REGEX,
+                                                       pattern.pattern(),
+                                                       () -> anyPermissionMatches(compiled,
+                                                                                  value -> pattern.matcher(value).matches()));
+        }
+
         final boolean[] roleOk = {false};
         subjectOption.ifPresent(subject -> patternOption.ifPresent(pattern ->
                                                                    {
@@ -150,6 +224,108 @@ public class DeadboltAnalyzer
         return roleOk[0];
     }
 
+    /**
+     * Check the patterns for a match against the {@link Permission}s of the user, testing each permission once.
+     *
+     * @param subjectOption an option for the subject
+     * @param patterns      the combined patterns
+     * @return true iff at least one of the patterns matches at least one of the subject's permissions
+     */
+    public boolean checkRegexPatterns(final Optional<? extends Subject> subjectOption,
+                                      final MultiPattern patterns)
+    {
+        return subjectOption.isPresent()
+               && !patterns.isEmpty()
+               && anyPermissionMatches(subjectOption.get(),
+                                       patterns::matchesAny);
+    }
+
+    /**
+     * Check the linear-time pattern for a match against the {@link Permission}s of the user.
+     *
+     * @param subjectOption an option for the subject
+     * @param patternOption an option for the pattern
+     * @return true iff the pattern matches at least one of the subject's permissions
+     */
+    public boolean checkLinearPattern(final Optional<? extends Subject> subjectOption,
+                                      final Optional<LinearPattern> patternOption)
+    {
+        if (!subjectOption.isPresent() || !patternOption.isPresent())
+        {
+            return false;
+        }
+        final Subject subject = subjectOption.get();
+        final LinearPattern pattern = patternOption.get();
+        return subject instanceof CompiledSubject ? ((CompiledSubject) subject).decide(PatternType.LINEAR_REGEX,
+                                                                                       pattern.pattern(),
+                                                                                       () -> anyPermissionMatches(subject,
+                                                                                                                  pattern::matches))
+                                                  : anyPermissionMatches(subject,
+                                                                         pattern::matches);
+    }
+
+    /**
+     * Check if the {@link Permission}s of the user imply the wildcard permission.
+     *
+     * @param subjectOption    an option for the subject
+     * @param permissionOption an option for the required permission
+     * @return true iff at least one of the subject's permissions implies the required permission
+     * @see WildcardPermission
+     */
+    public boolean checkWildcardPattern(final Optional<? extends Subject> subjectOption,
+                                        final Optional<WildcardPermission> permissionOption)
+    {
+        if (!subjectOption.isPresent() || !permissionOption.isPresent())
+        {
+            return false;
+        }
+        final Subject subject = subjectOption.get();
+        final WildcardPermission permission = permissionOption.get();
+        if (subject instanceof CompiledSubject)
+        {
+            final CompiledSubject compiled = (CompiledSubject) subject;
+            return compiled.decide(PatternType.WILDCARD,
+                                   permission.value(),
+                                   () -> compiled.permissionTrie().implies(permission));
+        }
+
+        return permissionTrie(subject).implies(permission);
+    }
+
+    PermissionTrie permissionTrie(final Subject subject)
+    {
+        final List<String> permissionValues = new ArrayList<>();
+        final List<? extends Permission> permissions = subject.getPermissions();
+        if (permissions != null)
+        {
+            for (Permission held : permissions)
+            {
+                if (held != null)
+                {
+                    permissionValues.add(held.getValue());
+                }
+            }
+        }
+        return permissionTries.computeIfAbsent(permissionValues,
+                                               PermissionTrie::of);
+    }
+
+    private boolean anyPermissionMatches(final Subject subject,
+                                         final Predicate<String> matcher)
+    {
+        final List<? extends Permission> permissions = subject.getPermissions();
+        boolean matches = false;
+        if (permissions != null)
+        {
+            for (Iterator<? extends Permission> iterator = permissions.iterator(); !matches && iterator.hasNext(); )
+            {
+                final Permission permission = iterator.next();
+                matches = permission != null && permission.getValue() != null && matcher.test(permission.getValue());
+            }
+        }
+        return matches;
+    }
+
     /**
      * Check the pattern for equality against the {@link Permission}s of the user.
      *
@@ -160,6 +336,12 @@ public class DeadboltAnalyzer
     public boolean checkPatternEquality(final Optional<? extends Subject> subjectOption,
                                         final Optional<String> patternValueOption)
     {
+        final Subject compiled = subjectOption.orElse(null);
+        if (compiled instanceof CompiledSubject)
+        {
+            return patternValueOption.isPresent() && ((CompiledSubject) compiled).hasPermission(patternValueOption.get());
+        }
+
         final boolean[] roleOk = {false};
         subjectOption.ifPresent(subject -> patternValueOption.ifPresent(patternValue ->
                                                                         {
@@ -15,22 +15,34 @@
  */
 package be.objectify.deadbolt.java;
 
+import be.objectify.deadbolt.java.actions.DecisionTimeout;
+import be.objectify.deadbolt.java.cache.CoalescingSubjectCache;
 import be.objectify.deadbolt.java.cache.CompositeCache;
+import be.objectify.deadbolt.java.cache.CrossRequestSubjectCache;
+import be.objectify.deadbolt.java.cache.DecisionCache;
 import be.objectify.deadbolt.java.cache.DefaultCompositeCache;
 import be.objectify.deadbolt.java.cache.DefaultPatternCache;
+import be.objectify.deadbolt.java.cache.DefaultRolePermissionsCache;
 import be.objectify.deadbolt.java.cache.DefaultSubjectCache;
 import be.objectify.deadbolt.java.cache.DefaultBeforeAuthCheckCache;
+import be.objectify.deadbolt.java.cache.DefaultSubjectIdentityExtractor;
 import be.objectify.deadbolt.java.cache.PatternCache;
+import be.objectify.deadbolt.java.cache.RolePermissionsCache;
 import be.objectify.deadbolt.java.cache.SubjectCache;
+import be.objectify.deadbolt.java.cache.SubjectIdentityExtractor;
 import be.objectify.deadbolt.java.cache.BeforeAuthCheckCache;
 import be.objectify.deadbolt.java.composite.ConstraintBuilders;
+import be.objectify.deadbolt.java.composite.PolicyCompiler;
+import be.objectify.deadbolt.java.composite.PolicyLoader;
 import be.objectify.deadbolt.java.filters.FilterConstraints;
+import be.objectify.deadbolt.java.models.RoleRegistry;
 import com.typesafe.config.Config;
 import play.Environment;
 import play.inject.Binding;
 import play.inject.Module;
 
 import javax.inject.Singleton;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -43,16 +55,27 @@ public class DeadboltModule extends Module
     public List<Binding<?>> bindings(final Environment environment,
                                      final Config config)
     {
-        return Arrays.asList(subjectCache(),
+        final List<Binding<?>> bindings = new ArrayList<>(Arrays.asList(subjectCache(config),
+                   subjectIdentityExtractor(),
+                   roleRegistry(),
                    beforeAuthCheckCache(),
                    patternCache(),
+                   decisionCache(),
+                   rolePermissionsCache(),
                    analyzer(),
                    viewSupport(),
                    templateFailureListenerProvider(),
                    constraintLogic(),
+                   decisionTimeout(),
                    compositeCache(),
                    constraintBuilders(),
-                   filterConstraints());
+                   policyCompiler(),
+                   filterConstraints()));
+        if (config.hasPath("deadbolt.java.policies.file") && !config.getString("deadbolt.java.policies.file").isEmpty())
+        {
+            bindings.add(policyLoader());
+        }
+        return bindings;
     }
 
     /**
@@ -65,6 +88,16 @@ public class DeadboltModule extends Module
         return bindClass(TemplateFailureListenerProvider.class).toSelf().in(Singleton.class);
     }
 
+    /**
+     * Create a binding for {@link DecisionTimeout}.
+     *
+     * @return the binding
+     */
+    public Binding<DecisionTimeout> decisionTimeout()
+    {
+        return bindClass(DecisionTimeout.class).toSelf().in(Singleton.class);
+    }
+
     /**
      * Create a binding for {@link ViewSupport}.
      *
@@ -95,6 +128,27 @@ public class DeadboltModule extends Module
         return bindClass(ConstraintBuilders.class).toSelf().in(Singleton.class);
     }
 
+    /**
+     * Create a binding for {@link PolicyCompiler}.
+     *
+     * @return the binding
+     */
+    public Binding<PolicyCompiler> policyCompiler()
+    {
+        return bindClass(PolicyCompiler.class).toSelf().in(Singleton.class);
+    }
+
+    /**
+     * Create an eager binding for {@link PolicyLoader}, so the policy file given by deadbolt.java.policies.file is
+     * loaded at startup.  This is only included in the bindings when a policy file is given.
+     *
+     * @return the binding
+     */
+    public Binding<PolicyLoader> policyLoader()
+    {
+        return bindClass(PolicyLoader.class).toSelf().eagerly();
+    }
+
     /**
      * Create a binding for {@link PatternCache}.
      *
@@ -105,6 +159,26 @@ public class DeadboltModule extends Module
         return bindClass(PatternCache.class).to(DefaultPatternCache.class).in(Singleton.class);
     }
 
+    /**
+     * Create a binding for {@link DecisionCache}.
+     *
+     * @return the binding
+     */
+    public Binding<DecisionCache> decisionCache()
+    {
+        return bindClass(DecisionCache.class).toSelf().in(Singleton.class);
+    }
+
+    /**
+     * Create a binding for {@link RolePermissionsCache}.
+     *
+     * @return the binding
+     */
+    public Binding<RolePermissionsCache> rolePermissionsCache()
+    {
+        return bindClass(RolePermissionsCache.class).to(DefaultRolePermissionsCache.class).in(Singleton.class);
+    }
+
     /**
      * Create a binding for {@link CompositeCache}.
      *
@@ -125,6 +199,52 @@ public class DeadboltModule extends Module
         return bindClass(SubjectCache.class).to(DefaultSubjectCache.class).in(Singleton.class);
     }
 
+    /**
+     * Create a binding for {@link SubjectCache} based on deadbolt.java.subject-cache.  A type of "shared" binds
+     * {@link CrossRequestSubjectCache}; otherwise, {@link CoalescingSubjectCache} is bound if coalesce is true, and
+     * {@link #subjectCache()} is used if it isn't.
+     *
+     * @param config the configuration
+     * @return the binding
+     */
+    public Binding<SubjectCache> subjectCache(final Config config)
+    {
+        final Binding<SubjectCache> binding;
+        if ("shared".equals(config.getString("deadbolt.java.subject-cache.type")))
+        {
+            binding = bindClass(SubjectCache.class).to(CrossRequestSubjectCache.class).in(Singleton.class);
+        }
+        else if (config.getBoolean("deadbolt.java.subject-cache.coalesce"))
+        {
+            binding = bindClass(SubjectCache.class).to(CoalescingSubjectCache.class).in(Singleton.class);
+        }
+        else
+        {
+            binding = subjectCache();
+        }
+        return binding;
+    }
+
+    /**
+     * Create a binding for {@link SubjectIdentityExtractor}.
+     *
+     * @return the binding
+     */
+    public Binding<SubjectIdentityExtractor> subjectIdentityExtractor()
+    {
+        return bindClass(SubjectIdentityExtractor.class).to(DefaultSubjectIdentityExtractor.class).in(Singleton.class);
+    }
+
+    /**
+     * Create a binding for {@link RoleRegistry}.
+     *
+     * @return the binding
+     */
+    public Binding<RoleRegistry> roleRegistry()
+    {
+        return bindClass(RoleRegistry.class).toSelf().in(Singleton.class);
+    }
+
     /**
      * Create a binding for {@link BeforeAuthCheckCache}.
      *
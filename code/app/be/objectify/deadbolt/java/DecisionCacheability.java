@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Declares that the outcome of a dynamic rule can be re-used between requests, for how long, and what it depends on.
+ * See {@link DynamicResourceHandler#cacheability(String, java.util.Optional)}.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public final class DecisionCacheability
+{
+    public enum Scope
+    {
+        // The outcome depends on the rule name and the subject.
+        SUBJECT,
+
+        // The outcome depends on the rule name, the subject and the meta information.
+        SUBJECT_AND_META,
+
+        // The outcome depends on the rule name and the meta information, and is the same for every subject.
+        GLOBAL
+    }
+
+    private final Scope scope;
+
+    private final long ttlMillis;
+
+    private DecisionCacheability(final Scope scope,
+                                 final long ttlMillis)
+    {
+        this.scope = Objects.requireNonNull(scope);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @param scope what the outcome depends on
+     * @param ttl   how long the outcome can be re-used
+     * @param unit  the unit of ttl
+     * @return the cacheability
+     */
+    public static DecisionCacheability of(final Scope scope,
+                                          final long ttl,
+                                          final TimeUnit unit)
+    {
+        if (ttl <= 0)
+        {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        return new DecisionCacheability(scope,
+                                        unit.toMillis(ttl));
+    }
+
+    public Scope scope()
+    {
+        return scope;
+    }
+
+    public long ttlMillis()
+    {
+        return ttlMillis;
+    }
+}
@@ -15,8 +15,11 @@
  */
 package be.objectify.deadbolt.java;
 
+import be.objectify.deadbolt.java.utils.BatchUtils;
 import play.mvc.Http;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletionStage;
 
@@ -84,4 +87,65 @@ public interface DynamicResourceHandler
                                              Optional<String> meta,
                                              DeadboltHandler deadboltHandler,
                                              Http.RequestHeader requestHeader);
-}
\ No newline at end of file
+
+    /**
+     * Check the access of several named resources at once, e.g. for the rows of a listing page.  By default, this
+     * calls {@link #isAllowed(String, Optional, DeadboltHandler, Http.RequestHeader)} for each name; override it if
+     * the names can be checked with a single lookup.
+     *
+     * @param names           the resource names
+     * @param meta            additional information on the resources
+     * @param deadboltHandler the current {@link DeadboltHandler}
+     * @param requestHeader   the current request header
+     * @return for each name, true if access to the resource is allowed, otherwise false
+     */
+    default CompletionStage<Map<String, Boolean>> areAllowed(final Collection<String> names,
+                                                             final Optional<String> meta,
+                                                             final DeadboltHandler deadboltHandler,
+                                                             final Http.RequestHeader requestHeader)
+    {
+        return BatchUtils.fanOut(names,
+                                 name -> isAllowed(name,
+                                                   meta,
+                                                   deadboltHandler,
+                                                   requestHeader));
+    }
+
+    /**
+     * Invoked when several values of a custom pattern need checking at once.  By default, this calls
+     * {@link #checkPermission(String, Optional, DeadboltHandler, Http.RequestHeader)} for each value; override it if
+     * the values can be checked with a single lookup.
+     *
+     * @param permissionValues the permission values
+     * @param meta             additional information on the resource
+     * @param deadboltHandler  the current {@link DeadboltHandler}
+     * @param requestHeader    the current request header
+     * @return for each value, true if access based on the permission is allowed, otherwise false
+     */
+    default CompletionStage<Map<String, Boolean>> checkPermissions(final Collection<String> permissionValues,
+                                                                   final Optional<String> meta,
+                                                                   final DeadboltHandler deadboltHandler,
+                                                                   final Http.RequestHeader requestHeader)
+    {
+        return BatchUtils.fanOut(permissionValues,
+                                 value -> checkPermission(value,
+                                                          meta,
+                                                          deadboltHandler,
+                                                          requestHeader));
+    }
+
+    /**
+     * Declare whether the outcome of {@link #isAllowed(String, Optional, DeadboltHandler, Http.RequestHeader)} for the
+     * named resource can be re-used between requests.  By default, no outcome is re-used.
+     *
+     * @param name the resource name
+     * @param meta additional information on the resource
+     * @return the cacheability of the outcome, or empty if it must be checked on every request
+     * @see be.objectify.deadbolt.java.cache.DecisionCache
+     */
+    default Optional<DecisionCacheability> cacheability(final String name,
+                                                        final Optional<String> meta)
+    {
+        return Optional.empty();
+    }
+}
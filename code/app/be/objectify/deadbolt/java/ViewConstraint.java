@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java;
+
+import be.objectify.deadbolt.java.models.PatternType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A constraint checked by a template tag, e.g. the roles of a restrict tag.  Two view constraints are equal if
+ * they have the same kind and arguments, so the outcome of one can be used for the other.  The Deadbolt handler the
+ * constraint is checked with is not part of the constraint.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ * @see ViewSupport#prefetch(play.mvc.Http.Request, DeadboltHandler, java.util.Collection)
+ */
+public final class ViewConstraint
+{
+    public enum Kind
+    {
+        RESTRICT,
+        DYNAMIC,
+        PATTERN,
+        SUBJECT_PRESENT,
+        SUBJECT_NOT_PRESENT,
+        ROLE_BASED_PERMISSIONS
+    }
+
+    private static final ViewConstraint SUBJECT_PRESENT = new ViewConstraint(Kind.SUBJECT_PRESENT,
+                                                                             null,
+                                                                             null,
+                                                                             Optional.empty(),
+                                                                             null,
+                                                                             false,
+                                                                             Collections.emptyList());
+
+    private static final ViewConstraint SUBJECT_NOT_PRESENT = new ViewConstraint(Kind.SUBJECT_NOT_PRESENT,
+                                                                                 null,
+                                                                                 null,
+                                                                                 Optional.empty(),
+                                                                                 null,
+                                                                                 false,
+                                                                                 Collections.emptyList());
+
+    private final Kind kind;
+    private final List<String[]> roles;
+    private final String value;
+    private final Optional<String> meta;
+    private final PatternType patternType;
+    private final boolean invert;
+
+    // the arguments in a form that can be compared, e.g. role arrays as lists
+    private final List<Object> arguments;
+
+    private final int hashCode;
+
+    private ViewConstraint(final Kind kind,
+                           final List<String[]> roles,
+                           final String value,
+                           final Optional<String> meta,
+                           final PatternType patternType,
+                           final boolean invert,
+                           final List<Object> arguments)
+    {
+        this.kind = kind;
+        this.roles = roles;
+        this.value = value;
+        this.meta = meta;
+        this.patternType = patternType;
+        this.invert = invert;
+        this.arguments = arguments;
+        this.hashCode = Objects.hash(kind,
+                                     arguments);
+    }
+
+    /**
+     * @param roles a list of String arrays.  Within an array, the roles are ANDed.  The arrays in the list are OR'd.
+     * @return the constraint of a restrict tag
+     */
+    public static ViewConstraint restrict(final List<String[]> roles)
+    {
+        final List<String[]> copy = new ArrayList<>(roles.size());
+        final List<Object> arguments = new ArrayList<>(roles.size());
+        for (String[] group : roles)
+        {
+            copy.add(group == null ? null : group.clone());
+            arguments.add(group == null ? null : Arrays.asList(group.clone()));
+        }
+        return new ViewConstraint(Kind.RESTRICT,
+                                  Collections.unmodifiableList(copy),
+                                  null,
+                                  Optional.empty(),
+                                  null,
+                                  false,
+                                  arguments);
+    }
+
+    /**
+     * @param name the name of the resource
+     * @param meta meta information on the resource
+     * @return the constraint of a dynamic tag
+     */
+    public static ViewConstraint dynamic(final String name,
+                                         final Optional<String> meta)
+    {
+        return new ViewConstraint(Kind.DYNAMIC,
+                                  null,
+                                  name,
+                                  meta,
+                                  null,
+                                  false,
+                                  Arrays.asList(name,
+                                                meta));
+    }
+
+    /**
+     * @param value       the pattern value
+     * @param patternType the pattern type
+     * @param meta        meta information on the pattern
+     * @param invert      true if the result of the check should be inverted
+     * @return the constraint of a pattern tag
+     */
+    public static ViewConstraint pattern(final String value,
+                                         final PatternType patternType,
+                                         final Optional<String> meta,
+                                         final boolean invert)
+    {
+        return new ViewConstraint(Kind.PATTERN,
+                                  null,
+                                  value,
+                                  meta,
+                                  patternType,
+                                  invert,
+                                  Arrays.asList(value,
+                                                patternType,
+                                                meta,
+                                                invert));
+    }
+
+    /**
+     * @return the constraint of a subjectPresent tag
+     */
+    public static ViewConstraint subjectPresent()
+    {
+        return SUBJECT_PRESENT;
+    }
+
+    /**
+     * @return the constraint of a subjectNotPresent tag
+     */
+    public static ViewConstraint subjectNotPresent()
+    {
+        return SUBJECT_NOT_PRESENT;
+    }
+
+    /**
+     * @param roleName the role name that is the key for the permission set
+     * @return the constraint of a roleBasedPermissions tag
+     */
+    public static ViewConstraint roleBasedPermissions(final String roleName)
+    {
+        return new ViewConstraint(Kind.ROLE_BASED_PERMISSIONS,
+                                  null,
+                                  roleName,
+                                  Optional.empty(),
+                                  null,
+                                  false,
+                                  Collections.singletonList(roleName));
+    }
+
+    public Kind kind()
+    {
+        return kind;
+    }
+
+    List<String[]> roles()
+    {
+        return roles;
+    }
+
+    String value()
+    {
+        return value;
+    }
+
+    Optional<String> meta()
+    {
+        return meta;
+    }
+
+    PatternType patternType()
+    {
+        return patternType;
+    }
+
+    boolean invert()
+    {
+        return invert;
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof ViewConstraint))
+        {
+            return false;
+        }
+        final ViewConstraint that = (ViewConstraint) o;
+        return kind == that.kind
+               && arguments.equals(that.arguments);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hashCode;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ViewConstraint{" + kind + arguments + '}';
+    }
+}
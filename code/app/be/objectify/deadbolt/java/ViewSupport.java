@@ -16,6 +16,7 @@
 package be.objectify.deadbolt.java;
 
 import be.objectify.deadbolt.java.cache.HandlerCache;
+import be.objectify.deadbolt.java.cache.ViewDecisions;
 import be.objectify.deadbolt.java.models.PatternType;
 import com.typesafe.config.Config;
 import org.slf4j.Logger;
@@ -24,12 +25,20 @@ import play.mvc.Http;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -52,6 +61,8 @@ public class ViewSupport
 
     private final ConstraintLogic constraintLogic;
 
+    private final LongAdder avoidedEvaluations = new LongAdder();
+
     @Inject
     public ViewSupport(final Config config,
                        final HandlerCache handlerCache,
@@ -74,6 +85,76 @@ public class ViewSupport
         };
     }
 
+    /**
+     * Check view constraints ahead of rendering, so the template tags that use them don't have to wait for them.  The
+     * constraints are checked concurrently, and the returned request carries their outcomes; render the template with
+     * that request.  Constraints that fail to complete are left out, and are checked by their tag as usual.  Tags
+     * rendered with the returned request also remember the outcomes of the constraints they check, so to only have
+     * outcomes remembered, prefetch no constraints.
+     *
+     * @param request     the request
+     * @param handler     the handler the template tags will use, or null for the default handler
+     * @param constraints the constraints of the template tags
+     * @return a future for the request, with the outcomes of the constraints in its attributes
+     */
+    public CompletionStage<Http.Request> prefetch(final Http.Request request,
+                                                  final DeadboltHandler handler,
+                                                  final Collection<ViewConstraint> constraints)
+    {
+        final DeadboltHandler deadboltHandler = handler(handler);
+        final Optional<ViewDecisions> existingDecisions = request.attrs().getOptional(ViewDecisions.KEY);
+        final ViewDecisions decisions = existingDecisions.orElseGet(ViewDecisions::new);
+        final List<CompletableFuture<Void>> checks = new ArrayList<>(constraints.size());
+        for (ViewConstraint constraint : new LinkedHashSet<>(constraints))
+        {
+            if (!decisions.get(deadboltHandler,
+                               constraint).isPresent())
+            {
+                checks.add(check(constraint,
+                                 deadboltHandler,
+                                 Optional.empty(),
+                                 request).handle((allowed, throwable) ->
+                                                 {
+                                                     if (throwable == null)
+                                                     {
+                                                         decisions.put(deadboltHandler,
+                                                                       constraint,
+                                                                       allowed);
+                                                     }
+                                                     else
+                                                     {
+                                                         LOGGER.warn("Could not prefetch [{}], it will be checked when the template is rendered",
+                                                                     constraint,
+                                                                     throwable);
+                                                     }
+                                                     return (Void) null;
+                                                 })
+                                         .toCompletableFuture());
+            }
+        }
+        final Http.Request withDecisions = existingDecisions.isPresent() ? request
+                                                                         : request.addAttr(ViewDecisions.KEY,
+                                                                                           decisions);
+        return CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0]))
+                                .thenApply(done -> withDecisions);
+    }
+
+    /**
+     * Check view constraints ahead of rendering, using the default handler.
+     *
+     * @param request     the request
+     * @param constraints the constraints of the template tags
+     * @return a future for the request, with the outcomes of the constraints in its attributes
+     * @see #prefetch(Http.Request, DeadboltHandler, Collection)
+     */
+    public CompletionStage<Http.Request> prefetch(final Http.Request request,
+                                                  final Collection<ViewConstraint> constraints)
+    {
+        return prefetch(request,
+                        null,
+                        constraints);
+    }
+
     /**
      * Used for restrict tags in the template.
      *
@@ -86,27 +167,14 @@ public class ViewSupport
                                 final long timeoutInMillis,
                                 final Http.RequestHeader requestHeader) throws Throwable
     {
-        boolean allowed;
-        try
-        {
-            allowed = constraintLogic.restrict(requestHeader,
-                                               handler(handler),
-                                               content,
-                                               () -> roles,
-                                               rh -> CompletableFuture.completedFuture(Boolean.TRUE),
-                                               (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.FALSE),
-                                               ConstraintPoint.TEMPLATE)
-                                     .toCompletableFuture()
-                                     .get(timeoutInMillis,
-                                          TimeUnit.MILLISECONDS);
-
-        }
-        catch (TimeoutException e)
-        {
-            allowed = timeoutHandler.apply(timeoutInMillis,
-                                           e);
-        }
-        return allowed;
+        return decide(() -> ViewConstraint.restrict(roles),
+                      dh -> restrict(roles,
+                                     dh,
+                                     content,
+                                     requestHeader),
+                      handler,
+                      timeoutInMillis,
+                      requestHeader);
     }
 
     /**
@@ -123,25 +191,85 @@ public class ViewSupport
                                final long timeoutInMillis,
                                final Http.RequestHeader requestHeader) throws Throwable
     {
-        boolean allowed;
+        return decide(() -> ViewConstraint.dynamic(name,
+                                                   meta),
+                      dh -> dynamic(name,
+                                    meta,
+                                    dh,
+                                    content,
+                                    requestHeader),
+                      handler,
+                      timeoutInMillis,
+                      requestHeader);
+    }
+
+    /**
+     * Used when a template checks several dynamic constraints against the same handler, e.g. one per row of a table.
+     * The names are checked with a single call to
+     * {@link DynamicResourceHandler#areAllowed(Collection, Optional, DeadboltHandler, Http.RequestHeader)}.  Names
+     * whose outcome is already known for the request are not checked again.
+     *
+     * @param names the names of the resources
+     * @param meta  meta information on the resources
+     * @return for each name, true if the view can be accessed, otherwise false
+     */
+    public Map<String, Boolean> viewDynamic(final Collection<String> names,
+                                            final Optional<String> meta,
+                                            final DeadboltHandler handler,
+                                            final long timeoutInMillis,
+                                            final Http.RequestHeader requestHeader) throws Throwable
+    {
+        final DeadboltHandler deadboltHandler = handler(handler);
+        final Optional<ViewDecisions> decisions = requestHeader.attrs().getOptional(ViewDecisions.KEY);
+        final Map<String, Boolean> allowed = new LinkedHashMap<>();
+        final List<String> unknown = new ArrayList<>(names.size());
+        for (String name : names)
+        {
+            final Optional<Boolean> decision = decisions.flatMap(d -> d.get(deadboltHandler,
+                                                                            ViewConstraint.dynamic(name,
+                                                                                                   meta)));
+            if (decision.isPresent())
+            {
+                decisions.get().avoidedEvaluation();
+                avoidedEvaluations.increment();
+                allowed.put(name,
+                            decision.get());
+            }
+            else
+            {
+                unknown.add(name);
+            }
+        }
+        if (unknown.isEmpty())
+        {
+            return allowed;
+        }
+
         try
         {
-            allowed = constraintLogic.dynamic(requestHeader,
-                                              handler(handler),
-                                              content,
-                                              name,
-                                              meta,
-                                              rh -> CompletableFuture.completedFuture(Boolean.TRUE),
-                                              (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.FALSE),
-                                              ConstraintPoint.TEMPLATE)
-                                     .toCompletableFuture()
-                                     .get(timeoutInMillis,
-                                          TimeUnit.MILLISECONDS);
+            final Map<String, Boolean> checked = constraintLogic.dynamic(requestHeader,
+                                                                         deadboltHandler,
+                                                                         unknown,
+                                                                         meta,
+                                                                         ConstraintPoint.TEMPLATE)
+                                                                .toCompletableFuture()
+                                                                .get(timeoutInMillis,
+                                                                     TimeUnit.MILLISECONDS);
+            decisions.ifPresent(d -> checked.forEach((name, outcome) -> d.put(deadboltHandler,
+                                                                              ViewConstraint.dynamic(name,
+                                                                                                     meta),
+                                                                              outcome)));
+            allowed.putAll(checked);
         }
         catch (TimeoutException e)
         {
-            allowed = timeoutHandler.apply(timeoutInMillis,
-                                           e);
+            final boolean timeoutResult = timeoutHandler.apply(timeoutInMillis,
+                                                               e);
+            for (String name : unknown)
+            {
+                allowed.put(name,
+                            timeoutResult);
+            }
         }
         return allowed;
     }
@@ -156,26 +284,13 @@ public class ViewSupport
                                       final long timeoutInMillis,
                                       final Http.RequestHeader requestHeader) throws Throwable
     {
-        boolean allowed;
-        try
-        {
-            allowed = constraintLogic.subjectPresent(requestHeader,
-                                                     handler == null ? handlerCache.get()
-                                                                     : handler,
-                                                     content,
-                                                     (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.TRUE),
-                                                     (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.FALSE),
-                                                     ConstraintPoint.TEMPLATE)
-                                     .toCompletableFuture()
-                                     .get(timeoutInMillis,
-                                          TimeUnit.MILLISECONDS);
-        }
-        catch (TimeoutException e)
-        {
-            allowed = timeoutHandler.apply(timeoutInMillis,
-                                           e);
-        }
-        return allowed;
+        return decide(ViewConstraint::subjectPresent,
+                      dh -> subjectPresent(dh,
+                                           content,
+                                           requestHeader),
+                      handler,
+                      timeoutInMillis,
+                      requestHeader);
     }
 
     /**
@@ -188,25 +303,13 @@ public class ViewSupport
                                          final long timeoutInMillis,
                                          final Http.RequestHeader requestHeader) throws Throwable
     {
-        boolean allowed;
-        try
-        {
-            allowed = constraintLogic.subjectNotPresent(requestHeader,
-                                                        handler(handler),
-                                                        content,
-                                                        (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.FALSE),
-                                                        (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.TRUE),
-                                                        ConstraintPoint.TEMPLATE)
-                                     .toCompletableFuture()
-                                     .get(timeoutInMillis,
-                                          TimeUnit.MILLISECONDS);
-        }
-        catch (TimeoutException e)
-        {
-            allowed = timeoutHandler.apply(timeoutInMillis,
-                                           e);
-        }
-        return allowed;
+        return decide(ViewConstraint::subjectNotPresent,
+                      dh -> subjectNotPresent(dh,
+                                              content,
+                                              requestHeader),
+                      handler,
+                      timeoutInMillis,
+                      requestHeader);
     }
 
     public boolean viewPattern(final String value,
@@ -218,30 +321,20 @@ public class ViewSupport
                                final long timeoutInMillis,
                                final Http.RequestHeader requestHeader) throws Exception
     {
-        boolean allowed;
-        try
-        {
-            allowed = constraintLogic.pattern(requestHeader,
-                                              handler(handler),
-                                              content,
-                                              value,
-                                              patternType,
-                                              meta,
-                                              invert,
-                                              rh -> CompletableFuture.completedFuture(Boolean.TRUE),
-                                              (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.FALSE),
-                                              ConstraintPoint.TEMPLATE)
-                                     .toCompletableFuture()
-                                     .get(timeoutInMillis,
-                                          TimeUnit.MILLISECONDS);
-        }
-        catch (TimeoutException e)
-        {
-            allowed = timeoutHandler.apply(timeoutInMillis,
-                                           e);
-        }
-
-        return allowed;
+        return decide(() -> ViewConstraint.pattern(value,
+                                                   patternType,
+                                                   meta,
+                                                   invert),
+                      dh -> pattern(value,
+                                    patternType,
+                                    meta,
+                                    invert,
+                                    dh,
+                                    content,
+                                    requestHeader),
+                      handler,
+                      timeoutInMillis,
+                      requestHeader);
     }
 
     /**
@@ -256,20 +349,55 @@ public class ViewSupport
                                             final long timeoutInMillis,
                                             final Http.RequestHeader requestHeader) throws Throwable
     {
+        return decide(() -> ViewConstraint.roleBasedPermissions(roleName),
+                      dh -> roleBasedPermissions(roleName,
+                                                 dh,
+                                                 content,
+                                                 requestHeader),
+                      handler,
+                      timeoutInMillis,
+                      requestHeader);
+    }
+
+    /**
+     * Use the known outcome of the constraint if there is one, otherwise check it and wait for the outcome.  If the
+     * request carries {@link ViewDecisions}, outcomes are remembered for the rest of the request unless the check
+     * timed out; the constraint is only built to look up and remember the outcome.
+     */
+    private boolean decide(final Supplier<ViewConstraint> constraint,
+                           final Function<DeadboltHandler, CompletionStage<Boolean>> check,
+                           final DeadboltHandler handler,
+                           final long timeoutInMillis,
+                           final Http.RequestHeader requestHeader) throws Exception
+    {
+        final DeadboltHandler deadboltHandler = handler(handler);
+        final Optional<ViewDecisions> decisions = requestHeader.attrs().getOptional(ViewDecisions.KEY);
+        final ViewConstraint key = decisions.isPresent() ? constraint.get()
+                                                         : null;
+        if (key != null)
+        {
+            final Optional<Boolean> known = decisions.get().get(deadboltHandler,
+                                                                key);
+            if (known.isPresent())
+            {
+                decisions.get().avoidedEvaluation();
+                avoidedEvaluations.increment();
+                return known.get();
+            }
+        }
+
         boolean allowed;
         try
         {
-            allowed = constraintLogic.roleBasedPermissions(requestHeader,
-                                                           handler(handler),
-                                                           content,
-                                                           roleName,
-                                                           rh -> CompletableFuture.completedFuture(Boolean.TRUE),
-                                                           (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.FALSE),
-                                                           ConstraintPoint.TEMPLATE)
-                                     .toCompletableFuture()
-                                     .get(timeoutInMillis,
-                                          TimeUnit.MILLISECONDS);
-
+            allowed = safely(() -> check.apply(deadboltHandler)).toCompletableFuture()
+                                                                 .get(timeoutInMillis,
+                                                                      TimeUnit.MILLISECONDS);
+            if (key != null)
+            {
+                decisions.get().put(deadboltHandler,
+                                    key,
+                                    allowed);
+            }
         }
         catch (TimeoutException e)
         {
@@ -279,9 +407,165 @@ public class ViewSupport
         return allowed;
     }
 
+    /**
+     * @return the number of times a template tag used a known outcome instead of checking its constraint
+     */
+    public long avoidedEvaluations()
+    {
+        return avoidedEvaluations.sum();
+    }
+
+    private CompletionStage<Boolean> check(final ViewConstraint constraint,
+                                           final DeadboltHandler handler,
+                                           final Optional<String> content,
+                                           final Http.RequestHeader requestHeader)
+    {
+        return safely(() -> {
+            switch (constraint.kind())
+            {
+                case RESTRICT:
+                    return restrict(constraint.roles(),
+                                    handler,
+                                    content,
+                                    requestHeader);
+                case DYNAMIC:
+                    return dynamic(constraint.value(),
+                                   constraint.meta(),
+                                   handler,
+                                   content,
+                                   requestHeader);
+                case PATTERN:
+                    return pattern(constraint.value(),
+                                   constraint.patternType(),
+                                   constraint.meta(),
+                                   constraint.invert(),
+                                   handler,
+                                   content,
+                                   requestHeader);
+                case SUBJECT_PRESENT:
+                    return subjectPresent(handler,
+                                          content,
+                                          requestHeader);
+                case SUBJECT_NOT_PRESENT:
+                    return subjectNotPresent(handler,
+                                             content,
+                                             requestHeader);
+                case ROLE_BASED_PERMISSIONS:
+                    return roleBasedPermissions(constraint.value(),
+                                                handler,
+                                                content,
+                                                requestHeader);
+                default:
+                    throw new IllegalArgumentException("Unknown view constraint " + constraint);
+            }
+        });
+    }
+
+    private CompletionStage<Boolean> restrict(final List<String[]> roles,
+                                              final DeadboltHandler handler,
+                                              final Optional<String> content,
+                                              final Http.RequestHeader requestHeader)
+    {
+        return constraintLogic.restrict(requestHeader,
+                                        handler,
+                                        content,
+                                        constraintLogic.compileRoleGroups(roles),
+                                        rh -> CompletableFuture.completedFuture(Boolean.TRUE),
+                                        (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.FALSE),
+                                        ConstraintPoint.TEMPLATE);
+    }
+
+    private CompletionStage<Boolean> dynamic(final String name,
+                                             final Optional<String> meta,
+                                             final DeadboltHandler handler,
+                                             final Optional<String> content,
+                                             final Http.RequestHeader requestHeader)
+    {
+        return constraintLogic.dynamic(requestHeader,
+                                       handler,
+                                       content,
+                                       name,
+                                       meta,
+                                       rh -> CompletableFuture.completedFuture(Boolean.TRUE),
+                                       (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.FALSE),
+                                       ConstraintPoint.TEMPLATE);
+    }
+
+    private CompletionStage<Boolean> pattern(final String value,
+                                             final PatternType patternType,
+                                             final Optional<String> meta,
+                                             final boolean invert,
+                                             final DeadboltHandler handler,
+                                             final Optional<String> content,
+                                             final Http.RequestHeader requestHeader)
+    {
+        return constraintLogic.pattern(requestHeader,
+                                       handler,
+                                       content,
+                                       value,
+                                       patternType,
+                                       meta,
+                                       invert,
+                                       rh -> CompletableFuture.completedFuture(Boolean.TRUE),
+                                       (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.FALSE),
+                                       ConstraintPoint.TEMPLATE);
+    }
+
+    private CompletionStage<Boolean> subjectPresent(final DeadboltHandler handler,
+                                                    final Optional<String> content,
+                                                    final Http.RequestHeader requestHeader)
+    {
+        return constraintLogic.subjectPresent(requestHeader,
+                                              handler,
+                                              content,
+                                              (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.TRUE),
+                                              (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.FALSE),
+                                              ConstraintPoint.TEMPLATE);
+    }
+
+    private CompletionStage<Boolean> subjectNotPresent(final DeadboltHandler handler,
+                                                       final Optional<String> content,
+                                                       final Http.RequestHeader requestHeader)
+    {
+        return constraintLogic.subjectNotPresent(requestHeader,
+                                                 handler,
+                                                 content,
+                                                 (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.FALSE),
+                                                 (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.TRUE),
+                                                 ConstraintPoint.TEMPLATE);
+    }
+
+    private CompletionStage<Boolean> roleBasedPermissions(final String roleName,
+                                                          final DeadboltHandler handler,
+                                                          final Optional<String> content,
+                                                          final Http.RequestHeader requestHeader)
+    {
+        return constraintLogic.roleBasedPermissions(requestHeader,
+                                                    handler,
+                                                    content,
+                                                    roleName,
+                                                    rh -> CompletableFuture.completedFuture(Boolean.TRUE),
+                                                    (rh, dh, cnt) -> CompletableFuture.completedFuture(Boolean.FALSE),
+                                                    ConstraintPoint.TEMPLATE);
+    }
+
+    private static CompletionStage<Boolean> safely(final Supplier<CompletionStage<Boolean>> check)
+    {
+        try
+        {
+            return check.get();
+        }
+        catch (RuntimeException e)
+        {
+            final CompletableFuture<Boolean> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
     private DeadboltHandler handler(final DeadboltHandler handler)
     {
         return handler == null ? handlerCache.get()
                                : handler;
     }
-}
\ No newline at end of file
+}
@@ -33,10 +33,9 @@ import play.mvc.Results;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Provides some convenience methods for concrete Deadbolt actions, such as getting the correct {@link DeadboltHandler},
@@ -59,16 +58,32 @@ public abstract class AbstractDeadboltAction<T> extends Action<T>
 
     public final boolean blocking;
     public final long blockingTimeout;
+    private final DecisionTimeout decisionTimeout;
     public final ConstraintAnnotationMode constraintAnnotationMode;
 
     private boolean authorised = false;
 
+    // in blocking mode, the authorization decision of the current call
+    private PendingDecision decision;
+
     protected AbstractDeadboltAction(final HandlerCache handlerCache,
                                      final BeforeAuthCheckCache beforeAuthCheckCache,
                                      final Config config)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout());
+    }
+
+    protected AbstractDeadboltAction(final HandlerCache handlerCache,
+                                     final BeforeAuthCheckCache beforeAuthCheckCache,
+                                     final Config config,
+                                     final DecisionTimeout decisionTimeout)
     {
         this.handlerCache = handlerCache;
         this.beforeAuthCheckCache = beforeAuthCheckCache;
+        this.decisionTimeout = decisionTimeout;
         this.blocking = config.getBoolean("deadbolt.java.blocking");
         this.blockingTimeout = config.getLong("deadbolt.java.blocking-timeout");
         this.constraintAnnotationMode = ConstraintAnnotationMode.valueOf(config.getString("deadbolt.java.constraint-mode"));
@@ -118,7 +133,7 @@ public abstract class AbstractDeadboltAction<T> extends Action<T>
                 }
                 else
                 {
-                    result = maybeBlock(execute(request));
+                    result = maybeBlock(request);
                 }
             }
             return result.thenCompose(r -> {
@@ -274,12 +289,14 @@ public abstract class AbstractDeadboltAction<T> extends Action<T>
      */
     protected CompletionStage<Result> authorizeAndExecute(final Http.RequestHeader request)
     {
-        if(constraintAnnotationMode != ConstraintAnnotationMode.AND)
-        {
-            // In AND mode we don't mark an action as authorised because we want ALL (remaining) constraints to be evaluated as well!
-            return delegate.call((Http.Request)markAsAuthorised(request));
-        }
-        return delegate.call((Http.Request)request);
+        return whenDecided(() -> {
+            if(constraintAnnotationMode != ConstraintAnnotationMode.AND)
+            {
+                // In AND mode we don't mark an action as authorised because we want ALL (remaining) constraints to be evaluated as well!
+                return delegate.call((Http.Request)markAsAuthorised(request));
+            }
+            return delegate.call((Http.Request)request);
+        });
     }
 
     /**
@@ -295,24 +312,113 @@ public abstract class AbstractDeadboltAction<T> extends Action<T>
                                                          final DeadboltHandler handler,
                                                          final Optional<String> content)
     {
-        if(constraintAnnotationMode == ConstraintAnnotationMode.OR && deadboltActionLeftInActionChain(this))
+        return whenDecided(() -> {
+            if(constraintAnnotationMode == ConstraintAnnotationMode.OR && deadboltActionLeftInActionChain(this))
+            {
+                // In OR mode we don't fail immediately but also check remaining constraints (it there is any left). Maybe one of these next ones authorizes...
+                return delegate.call((Http.Request)request);
+            }
+
+            return onAuthFailure(handler,
+                                 content,
+                                 request);
+        });
+    }
+
+    /**
+     * Call the delegate once the action has decided the request may proceed.  Actions that call the delegate without
+     * going through {@link #authorizeAndExecute(Http.RequestHeader)} should use this, so the delegate isn't called
+     * after the blocking timeout has failed the request.
+     *
+     * @param request the request
+     * @return the result
+     */
+    protected CompletionStage<Result> proceed(final Http.RequestHeader request)
+    {
+        return whenDecided(() -> delegate.call((Http.Request)request));
+    }
+
+    /**
+     * In blocking mode, the authorization decision must be made within the blocking timeout or the request is treated
+     * as unauthorised.  Only the decision is timed; once it is made, the delegate runs as it would otherwise.
+     */
+    private CompletionStage<Result> maybeBlock(final Http.Request request) throws Exception
+    {
+        if (!blocking)
         {
-            // In OR mode we don't fail immediately but also check remaining constraints (it there is any left). Maybe one of these next ones authorizes...
-            return delegate.call((Http.Request)request);
+            return execute(request);
+        }
+        final PendingDecision pending = new PendingDecision();
+        this.decision = pending;
+        decisionTimeout.within(pending.made,
+                               blockingTimeout)
+                       .whenComplete((ignored, t) -> {
+                           if (t instanceof TimeoutException)
+                           {
+                               LOGGER.warn("Authorization of [{}] was not decided within [{}]ms",
+                                           request.uri(),
+                                           blockingTimeout,
+                                           t);
+                               complete(pending.result,
+                                        onAuthFailure(getDeadboltHandler(getHandlerKey()),
+                                                      getContent(),
+                                                      request));
+                           }
+                       });
+        final CompletionStage<Result> executed;
+        try
+        {
+            executed = execute(request);
+        }
+        catch (Exception e)
+        {
+            pending.made.complete(null);
+            throw e;
+        }
+        // e.g. beforeAuthCheck gave the result without a decision being made
+        executed.whenComplete((r, t) -> pending.made.complete(null));
+        complete(pending.result,
+                 executed);
+        return pending.result;
+    }
+
+    /**
+     * Continue once the authorization decision is made.  If the blocking timeout expired first, the request is being
+     * failed through onAuthFailure, and that is the result.
+     */
+    private CompletionStage<Result> whenDecided(final Supplier<CompletionStage<Result>> next)
+    {
+        final PendingDecision current = decision;
+        if (current == null)
+        {
+            return next.get();
         }
+        current.made.complete(null);
+        return current.made.isCompletedExceptionally() ? current.result
+                                                       : next.get();
+    }
 
-        return onAuthFailure(handler,
-                             content,
-                             request);
+    private static void complete(final CompletableFuture<Result> result,
+                                 final CompletionStage<Result> stage)
+    {
+        stage.whenComplete((r, t) -> {
+            if (t == null)
+            {
+                result.complete(r);
+            }
+            else
+            {
+                result.completeExceptionally(t);
+            }
+        });
     }
 
-    private CompletionStage<Result> maybeBlock(CompletionStage<Result> eventualResult) throws InterruptedException,
-                                                                                      ExecutionException,
-                                                                                      TimeoutException
+    private static final class PendingDecision
     {
-        return blocking ? CompletableFuture.completedFuture(eventualResult.toCompletableFuture().get(blockingTimeout,
-                                                                                                     TimeUnit.MILLISECONDS))
-                        : eventualResult;
+        // completed when the decision is made, or failed if it isn't made in time
+        private final CompletableFuture<Void> made = new CompletableFuture<>();
+        // the result of the call
+        private final CompletableFuture<Result> result = new CompletableFuture<>();
     }
 
     /**
@@ -39,14 +39,28 @@ public abstract class AbstractRestrictiveAction<T> extends AbstractDeadboltActio
     public AbstractRestrictiveAction(final HandlerCache handlerCache,
                                      final BeforeAuthCheckCache beforeAuthCheckCache,
                                      final Config config,
+                                     final DecisionTimeout decisionTimeout,
                                      final ConstraintLogic constraintLogic)
     {
         super(handlerCache,
               beforeAuthCheckCache,
-              config);
+              config,
+              decisionTimeout);
         this.constraintLogic = constraintLogic;
     }
 
+    public AbstractRestrictiveAction(final HandlerCache handlerCache,
+                                     final BeforeAuthCheckCache beforeAuthCheckCache,
+                                     final Config config,
+                                     final ConstraintLogic constraintLogic)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout(),
+             constraintLogic);
+    }
+
     @Override
     public CompletionStage<Result> execute(final Http.RequestHeader request) throws Exception
     {
@@ -37,14 +37,28 @@ public abstract class AbstractSubjectAction<T> extends AbstractDeadboltAction<T>
     AbstractSubjectAction(final HandlerCache handlerCache,
                           final BeforeAuthCheckCache beforeAuthCheckCache,
                           final com.typesafe.config.Config config,
+                          final DecisionTimeout decisionTimeout,
                           final ConstraintLogic constraintLogic)
     {
         super(handlerCache,
               beforeAuthCheckCache,
-              config);
+              config,
+              decisionTimeout);
         this.constraintLogic = constraintLogic;
     }
 
+    AbstractSubjectAction(final HandlerCache handlerCache,
+                          final BeforeAuthCheckCache beforeAuthCheckCache,
+                          final com.typesafe.config.Config config,
+                          final ConstraintLogic constraintLogic)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout(),
+             constraintLogic);
+    }
+
     @Override
     public CompletionStage<Result> execute(final Http.RequestHeader request) throws Exception
     {
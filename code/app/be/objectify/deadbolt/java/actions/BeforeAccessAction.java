@@ -38,11 +38,23 @@ public class BeforeAccessAction extends AbstractDeadboltAction<BeforeAccess>
     @Inject
     public BeforeAccessAction(final HandlerCache handlerCache,
                               final BeforeAuthCheckCache beforeAuthCheckCache,
-                              final Config config)
+                              final Config config,
+                              final DecisionTimeout decisionTimeout)
     {
         super(handlerCache,
               beforeAuthCheckCache,
-              config);
+              config,
+              decisionTimeout);
+    }
+
+    public BeforeAccessAction(final HandlerCache handlerCache,
+                              final BeforeAuthCheckCache beforeAuthCheckCache,
+                              final Config config)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout());
     }
 
     @Override
@@ -54,7 +66,7 @@ public class BeforeAccessAction extends AbstractDeadboltAction<BeforeAccess>
                          getContent(),
                          deadboltHandler)
                 .thenCompose(preAuthResult -> preAuthResult._1.map(value -> (CompletionStage<Result>) CompletableFuture.completedFuture(value))
-                                                           .orElseGet(() -> delegate.call((Http.Request)preAuthResult._2)));
+                                                           .orElseGet(() -> proceed(preAuthResult._2)));
     }
 
     @Override
@@ -40,16 +40,32 @@ public class CompositeAction extends AbstractRestrictiveAction<Composite>
     public CompositeAction(final HandlerCache handlerCache,
                            final BeforeAuthCheckCache beforeAuthCheckCache,
                            final Config config,
+                           final DecisionTimeout decisionTimeout,
                            final CompositeCache compositeCache,
                            final ConstraintLogic constraintLogic)
     {
         super(handlerCache,
               beforeAuthCheckCache,
               config,
+              decisionTimeout,
               constraintLogic);
         this.compositeCache = compositeCache;
     }
 
+    public CompositeAction(final HandlerCache handlerCache,
+                           final BeforeAuthCheckCache beforeAuthCheckCache,
+                           final Config config,
+                           final CompositeCache compositeCache,
+                           final ConstraintLogic constraintLogic)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout(),
+             compositeCache,
+             constraintLogic);
+    }
+
     @Override
     public CompletionStage<Result> applyRestriction(final Http.RequestHeader request,
                                                     final DeadboltHandler handler)
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.actions;
+
+import play.inject.ApplicationLifecycle;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Enforces the blocking timeout of actions running in blocking mode.  Nothing waits for the authorization decision:
+ * a timer fails it with a {@link TimeoutException} if it isn't made in time, so neither the request thread nor any
+ * other thread is parked.  The timer runs on a single daemon thread, started when first needed, with the context class
+ * loader of the thread that started the wait.  Work that depends on a timed-out decision runs on the timer thread, so
+ * it should not block.  Once the timer is stopped, decisions are no longer timed.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+@Singleton
+public class DecisionTimeout
+{
+    private static final DecisionTimeout DEFAULT = new DecisionTimeout();
+
+    private final LongAdder timed = new LongAdder();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private ScheduledThreadPoolExecutor timer;
+
+    private boolean shutdown;
+
+    @Inject
+    public DecisionTimeout(final ApplicationLifecycle lifecycle)
+    {
+        lifecycle.addStopHook(() -> {
+            shutdown();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    public DecisionTimeout()
+    {
+        // no-op
+    }
+
+    /**
+     * @return the timeout used by actions that are not given one
+     */
+    public static DecisionTimeout defaultTimeout()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Fail the decision with a {@link TimeoutException} if it isn't complete within the given timeout.
+     *
+     * @param decision      the decision
+     * @param timeoutMillis the maximum time to wait, in milliseconds
+     * @param <T>           the type of the decision
+     * @return the decision
+     */
+    public <T> CompletableFuture<T> within(final CompletableFuture<T> decision,
+                                           final long timeoutMillis)
+    {
+        final ScheduledThreadPoolExecutor timer = timer();
+        if (timer == null)
+        {
+            return decision;
+        }
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        final ScheduledFuture<?> timeout;
+        try
+        {
+            timeout = timer.schedule(() -> fail(decision,
+                                                timeoutMillis,
+                                                classLoader),
+                                     timeoutMillis,
+                                     TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // stopped in the meantime
+            return decision;
+        }
+        timed.increment();
+        decision.whenComplete((result, error) -> timeout.cancel(false));
+        return decision;
+    }
+
+    /**
+     * @return the current statistics
+     */
+    public Stats stats()
+    {
+        return new Stats(timed.sum(),
+                         timeouts.sum());
+    }
+
+    /**
+     * Stop the timer.  Pending timeouts are dropped, and new decisions are not timed.
+     */
+    public synchronized void shutdown()
+    {
+        shutdown = true;
+        if (timer != null)
+        {
+            timer.shutdownNow();
+        }
+    }
+
+    private void fail(final CompletableFuture<?> decision,
+                      final long timeoutMillis,
+                      final ClassLoader classLoader)
+    {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader previous = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try
+        {
+            // counted first, so the count is up to date for work that depends on the decision
+            timeouts.increment();
+            if (!decision.completeExceptionally(new TimeoutException("No authorization decision within " + timeoutMillis + "ms")))
+            {
+                timeouts.decrement();
+            }
+        }
+        finally
+        {
+            thread.setContextClassLoader(previous);
+        }
+    }
+
+    private synchronized ScheduledThreadPoolExecutor timer()
+    {
+        if (shutdown)
+        {
+            return null;
+        }
+        if (timer == null)
+        {
+            timer = new ScheduledThreadPoolExecutor(1,
+                                                    runnable -> {
+                                                        final Thread thread = new Thread(runnable,
+                                                                                         "deadbolt-decision-timeout");
+                                                        thread.setDaemon(true);
+                                                        return thread;
+                                                    });
+            timer.setRemoveOnCancelPolicy(true);
+        }
+        return timer;
+    }
+
+    /**
+     * A point-in-time snapshot of the counters of the timeout.
+     */
+    public static final class Stats
+    {
+        private final long timed;
+        private final long timeouts;
+
+        Stats(final long timed,
+              final long timeouts)
+        {
+            this.timed = timed;
+            this.timeouts = timeouts;
+        }
+
+        /**
+         * @return the number of decisions that were timed
+         */
+        public long timed()
+        {
+            return timed;
+        }
+
+        /**
+         * @return the number of decisions that were not made in time
+         */
+        public long timeouts()
+        {
+            return timeouts;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("DecisionTimeout.Stats[timed=%d, timeouts=%d]",
+                                 timed,
+                                 timeouts);
+        }
+    }
+}
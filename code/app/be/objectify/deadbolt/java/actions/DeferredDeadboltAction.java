@@ -38,17 +38,29 @@ public class DeferredDeadboltAction extends AbstractDeadboltAction<DeferredDeadb
     @Inject
     public DeferredDeadboltAction(final HandlerCache handlerCache,
                                   final BeforeAuthCheckCache beforeAuthCheckCache,
-                                  final Config config)
+                                  final Config config,
+                                  final DecisionTimeout decisionTimeout)
     {
         super(handlerCache,
               beforeAuthCheckCache,
-              config);
+              config,
+              decisionTimeout);
+    }
+
+    public DeferredDeadboltAction(final HandlerCache handlerCache,
+                                  final BeforeAuthCheckCache beforeAuthCheckCache,
+                                  final Config config)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout());
     }
 
     @Override
     public CompletionStage<Result> execute(final Http.RequestHeader request) throws Exception
     {
-        return delegate.call((Http.Request)request);
+        return proceed(request);
     }
 
     @Override
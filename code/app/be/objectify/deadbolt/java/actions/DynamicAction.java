@@ -41,17 +41,32 @@ public class DynamicAction extends AbstractRestrictiveAction<Dynamic>
     public DynamicAction(final HandlerCache handlerCache,
                          final BeforeAuthCheckCache beforeAuthCheckCache,
                          final Config config,
+                         final DecisionTimeout decisionTimeout,
                          final ConstraintLogic constraintLogic)
     {
         super(handlerCache,
               beforeAuthCheckCache,
               config,
+              decisionTimeout,
               constraintLogic);
     }
 
     public DynamicAction(final HandlerCache handlerCache,
                          final BeforeAuthCheckCache beforeAuthCheckCache,
                          final Config config,
+                         final ConstraintLogic constraintLogic)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout(),
+             constraintLogic);
+    }
+
+    public DynamicAction(final HandlerCache handlerCache,
+                         final BeforeAuthCheckCache beforeAuthCheckCache,
+                         final Config config,
+                         final DecisionTimeout decisionTimeout,
                          final Dynamic configuration,
                          final Action<?> delegate,
                          final ConstraintLogic constraintLogic)
@@ -59,11 +74,28 @@ public class DynamicAction extends AbstractRestrictiveAction<Dynamic>
         this(handlerCache,
              beforeAuthCheckCache,
              config,
+             decisionTimeout,
              constraintLogic);
         this.configuration = configuration;
         this.delegate = delegate;
     }
 
+    public DynamicAction(final HandlerCache handlerCache,
+                         final BeforeAuthCheckCache beforeAuthCheckCache,
+                         final Config config,
+                         final Dynamic configuration,
+                         final Action<?> delegate,
+                         final ConstraintLogic constraintLogic)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout(),
+             configuration,
+             delegate,
+             constraintLogic);
+    }
+
     @Override
     public CompletionStage<Result> applyRestriction(final Http.RequestHeader request,
                                                     final DeadboltHandler deadboltHandler)
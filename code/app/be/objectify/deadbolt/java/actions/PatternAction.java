@@ -38,17 +38,32 @@ public class PatternAction extends AbstractRestrictiveAction<Pattern>
     public PatternAction(final HandlerCache handlerCache,
                          final BeforeAuthCheckCache beforeAuthCheckCache,
                          final Config config,
+                         final DecisionTimeout decisionTimeout,
                          final ConstraintLogic constraintLogic)
     {
         super(handlerCache,
               beforeAuthCheckCache,
               config,
+              decisionTimeout,
               constraintLogic);
     }
 
     public PatternAction(final HandlerCache handlerCache,
                          final BeforeAuthCheckCache beforeAuthCheckCache,
                          final Config config,
+                         final ConstraintLogic constraintLogic)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout(),
+             constraintLogic);
+    }
+
+    public PatternAction(final HandlerCache handlerCache,
+                         final BeforeAuthCheckCache beforeAuthCheckCache,
+                         final Config config,
+                         final DecisionTimeout decisionTimeout,
                          final Pattern configuration,
                          final Action<?> delegate,
                          final ConstraintLogic constraintLogic)
@@ -56,11 +71,28 @@ public class PatternAction extends AbstractRestrictiveAction<Pattern>
         this(handlerCache,
              beforeAuthCheckCache,
              config,
+             decisionTimeout,
              constraintLogic);
         this.configuration = configuration;
         this.delegate = delegate;
     }
 
+    public PatternAction(final HandlerCache handlerCache,
+                         final BeforeAuthCheckCache beforeAuthCheckCache,
+                         final Config config,
+                         final Pattern configuration,
+                         final Action<?> delegate,
+                         final ConstraintLogic constraintLogic)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout(),
+             configuration,
+             delegate,
+             constraintLogic);
+    }
+
     @Override
     public CompletionStage<Result> applyRestriction(final Http.RequestHeader request,
                                                     final DeadboltHandler deadboltHandler)
@@ -39,21 +39,53 @@ import java.util.concurrent.CompletionStage;
  */
 public class RestrictAction extends AbstractRestrictiveAction<Restrict>
 {
+    // role groups can be cached against the annotation unless a subclass builds them differently
+    private static final ClassValue<Boolean> ROLE_GROUPS_FROM_ANNOTATION = new ClassValue<Boolean>()
+    {
+        @Override
+        protected Boolean computeValue(final Class<?> type)
+        {
+            try
+            {
+                return type.getMethod("getRoleGroups").getDeclaringClass() == RestrictAction.class;
+            }
+            catch (NoSuchMethodException e)
+            {
+                return false;
+            }
+        }
+    };
+
     @Inject
     public RestrictAction(final HandlerCache handlerCache,
                           final BeforeAuthCheckCache beforeAuthCheckCache,
                           final Config config,
+                          final DecisionTimeout decisionTimeout,
                           final ConstraintLogic constraintLogic)
     {
         super(handlerCache,
               beforeAuthCheckCache,
               config,
+              decisionTimeout,
               constraintLogic);
     }
 
     public RestrictAction(final HandlerCache handlerCache,
                           final BeforeAuthCheckCache beforeAuthCheckCache,
                           final Config config,
+                          final ConstraintLogic constraintLogic)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout(),
+             constraintLogic);
+    }
+
+    public RestrictAction(final HandlerCache handlerCache,
+                          final BeforeAuthCheckCache beforeAuthCheckCache,
+                          final Config config,
+                          final DecisionTimeout decisionTimeout,
                           final Restrict configuration,
                           final Action<?> delegate,
                           final ConstraintLogic constraintLogic)
@@ -61,11 +93,28 @@ public class RestrictAction extends AbstractRestrictiveAction<Restrict>
         this(handlerCache,
              beforeAuthCheckCache,
              config,
+             decisionTimeout,
              constraintLogic);
         this.configuration = configuration;
         this.delegate = delegate;
     }
 
+    public RestrictAction(final HandlerCache handlerCache,
+                          final BeforeAuthCheckCache beforeAuthCheckCache,
+                          final Config config,
+                          final Restrict configuration,
+                          final Action<?> delegate,
+                          final ConstraintLogic constraintLogic)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout(),
+             configuration,
+             delegate,
+             constraintLogic);
+    }
+
     @Override
     public CompletionStage<Result> applyRestriction(final Http.RequestHeader request,
                                                     final DeadboltHandler deadboltHandler)
@@ -73,7 +122,9 @@ public class RestrictAction extends AbstractRestrictiveAction<Restrict>
         return constraintLogic.restrict(request,
                                         deadboltHandler,
                                         getContent(),
-                                        this::getRoleGroups,
+                                        ROLE_GROUPS_FROM_ANNOTATION.get(getClass()) ? constraintLogic.compileRoleGroups(configuration,
+                                                                                                                        this::getRoleGroups)
+                                                                                    : constraintLogic.compileRoleGroups(getRoleGroups()),
                                         this::authorizeAndExecute,
                                         this::unauthorizeAndFail,
                                         ConstraintPoint.CONTROLLER);
@@ -42,17 +42,32 @@ public class RoleBasedPermissionsAction extends AbstractRestrictiveAction<RoleBa
     public RoleBasedPermissionsAction(final HandlerCache handlerCache,
                                       final BeforeAuthCheckCache beforeAuthCheckCache,
                                       final Config config,
+                                      final DecisionTimeout decisionTimeout,
                                       final ConstraintLogic constraintLogic)
     {
         super(handlerCache,
               beforeAuthCheckCache,
               config,
+              decisionTimeout,
               constraintLogic);
     }
 
     public RoleBasedPermissionsAction(final HandlerCache handlerCache,
                                       final BeforeAuthCheckCache beforeAuthCheckCache,
                                       final Config config,
+                                      final ConstraintLogic constraintLogic)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout(),
+             constraintLogic);
+    }
+
+    public RoleBasedPermissionsAction(final HandlerCache handlerCache,
+                                      final BeforeAuthCheckCache beforeAuthCheckCache,
+                                      final Config config,
+                                      final DecisionTimeout decisionTimeout,
                                       final RoleBasedPermissions configuration,
                                       final Action<?> delegate,
                                       final ConstraintLogic constraintLogic)
@@ -60,11 +75,28 @@ public class RoleBasedPermissionsAction extends AbstractRestrictiveAction<RoleBa
         this(handlerCache,
              beforeAuthCheckCache,
              config,
+             decisionTimeout,
              constraintLogic);
         this.configuration = configuration;
         this.delegate = delegate;
     }
 
+    public RoleBasedPermissionsAction(final HandlerCache handlerCache,
+                                      final BeforeAuthCheckCache beforeAuthCheckCache,
+                                      final Config config,
+                                      final RoleBasedPermissions configuration,
+                                      final Action<?> delegate,
+                                      final ConstraintLogic constraintLogic)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout(),
+             configuration,
+             delegate,
+             constraintLogic);
+    }
+
     @Override
     public CompletionStage<Result> applyRestriction(final Http.RequestHeader request,
                                                     final DeadboltHandler deadboltHandler)
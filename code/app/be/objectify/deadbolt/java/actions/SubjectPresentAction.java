@@ -41,14 +41,28 @@ public class SubjectPresentAction extends AbstractSubjectAction<SubjectPresent>
     public SubjectPresentAction(final HandlerCache handlerCache,
                                 final BeforeAuthCheckCache beforeAuthCheckCache,
                                 final com.typesafe.config.Config config,
+                                final DecisionTimeout decisionTimeout,
                                 final ConstraintLogic constraintLogic)
     {
         super(handlerCache,
               beforeAuthCheckCache,
               config,
+              decisionTimeout,
               constraintLogic);
     }
 
+    public SubjectPresentAction(final HandlerCache handlerCache,
+                                final BeforeAuthCheckCache beforeAuthCheckCache,
+                                final com.typesafe.config.Config config,
+                                final ConstraintLogic constraintLogic)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout(),
+             constraintLogic);
+    }
+
     @Override
     CompletionStage<Result> present(final Http.RequestHeader request,
                                     final DeadboltHandler handler,
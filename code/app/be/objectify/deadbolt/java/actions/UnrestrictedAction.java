@@ -35,11 +35,23 @@ public class UnrestrictedAction extends AbstractDeadboltAction<Unrestricted>
     @Inject
     public UnrestrictedAction(final HandlerCache handlerCache,
                               final BeforeAuthCheckCache beforeAuthCheckCache,
-                              final Config config)
+                              final Config config,
+                              final DecisionTimeout decisionTimeout)
     {
         super(handlerCache,
               beforeAuthCheckCache,
-              config);
+              config,
+              decisionTimeout);
+    }
+
+    public UnrestrictedAction(final HandlerCache handlerCache,
+                              final BeforeAuthCheckCache beforeAuthCheckCache,
+                              final Config config)
+    {
+        this(handlerCache,
+             beforeAuthCheckCache,
+             config,
+             DecisionTimeout.defaultTimeout());
     }
 
     @Override
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * A thread-safe, size-bounded cache that evicts the least-recently used entries when full.  Entries can optionally
+ * expire a fixed time after they were written.
+ * <p>
+ * Reads don't lock or share a counter: each entry records the time it was last used, and writes that take the cache
+ * over its maximum size scan the entries for the least-recently used ones.  To spread the cost of the scan, caches of
+ * 16 entries or more evict a sixteenth of their entries at a time, so eviction is approximately, not strictly,
+ * least-recently used.
+ * </p>
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class BoundedCache<K, V>
+{
+    private final int maxSize;
+
+    // how many entries beyond the excess are evicted by each scan
+    private final int evictionSlack;
+
+    private final long ttlNanos;
+
+    private final LongSupplier ticker;
+
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    private final Object evictionLock = new Object();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of entries
+     * @param ttl     how long an entry lives after it is written.  Zero or less means entries never expire.
+     * @param unit    the unit of ttl
+     */
+    public BoundedCache(final int maxSize,
+                        final long ttl,
+                        final TimeUnit unit)
+    {
+        this(maxSize,
+             ttl,
+             unit,
+             System::nanoTime);
+    }
+
+    BoundedCache(final int maxSize,
+                 final long ttl,
+                 final TimeUnit unit,
+                 final LongSupplier ticker)
+    {
+        if (maxSize < 1)
+        {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.maxSize = maxSize;
+        this.evictionSlack = maxSize / 16;
+        this.ttlNanos = ttl > 0 ? unit.toNanos(ttl) : 0L;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Get the entry for the key, if it is present and has not expired.
+     *
+     * @param key the key
+     * @return the entry, or null
+     */
+    public Entry<V> getEntry(final K key)
+    {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && isExpired(entry))
+        {
+            if (entries.remove(key,
+                               entry))
+            {
+                evictions.increment();
+            }
+            entry = null;
+        }
+        if (entry == null)
+        {
+            misses.increment();
+        }
+        else
+        {
+            // recency is approximated by the ticker, so reads share no counter; entries read within the same tick
+            // are equally recent
+            final long now = ticker.getAsLong();
+            if (entry.lastUse != now)
+            {
+                entry.lastUse = now;
+            }
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Get the value for the key, if it is present and has not expired.
+     *
+     * @param key the key
+     * @return the value, or null
+     */
+    public V getIfPresent(final K key)
+    {
+        final Entry<V> entry = getEntry(key);
+        return entry == null ? null
+                             : entry.value;
+    }
+
+    /**
+     * Get the value for the key, computing and storing it if it is absent.  The value is computed without locking, so
+     * two threads racing on the same missing key may both compute it; the first value stored wins.
+     *
+     * @param key         the key
+     * @param mappingFunction computes the value.  Must not return null.
+     * @return the cached or computed value
+     */
+    public V computeIfAbsent(final K key,
+                             final Function<? super K, ? extends V> mappingFunction)
+    {
+        final V cached = getIfPresent(key);
+        if (cached != null)
+        {
+            return cached;
+        }
+        final Entry<V> entry = newEntry(mappingFunction.apply(key));
+        Entry<V> raced = entries.putIfAbsent(key,
+                                             entry);
+        while (raced != null)
+        {
+            if (!isExpired(raced))
+            {
+                return raced.value;
+            }
+            raced = entries.replace(key,
+                                    raced,
+                                    entry) ? null
+                                           : entries.putIfAbsent(key,
+                                                                 entry);
+        }
+        evictIfFull();
+        return entry.value;
+    }
+
+    public void put(final K key,
+                    final V value)
+    {
+        entries.put(key,
+                    newEntry(value));
+        evictIfFull();
+    }
+
+    public void invalidate(final K key)
+    {
+        entries.remove(key);
+    }
+
+    /**
+     * Remove the entry of the key only if it still holds the given value, so a newer value is kept.
+     *
+     * @param key   the key
+     * @param value the value to remove
+     * @return true iff the entry was removed
+     */
+    public boolean invalidate(final K key,
+                              final V value)
+    {
+        final Entry<V> entry = entries.get(key);
+        return entry != null
+               && entry.value == value
+               && entries.remove(key,
+                                 entry);
+    }
+
+    /**
+     * Remove every entry whose key matches the predicate.
+     *
+     * @param predicate the test for removal
+     * @return the values that were removed, including expired ones
+     */
+    public List<V> invalidateIf(final Predicate<? super K> predicate)
+    {
+        final List<V> removed = new ArrayList<>();
+        for (Map.Entry<K, Entry<V>> entry : entries.entrySet())
+        {
+            if (predicate.test(entry.getKey()) && entries.remove(entry.getKey(),
+                                                                 entry.getValue()))
+            {
+                removed.add(entry.getValue().value);
+            }
+        }
+        return removed;
+    }
+
+    public void invalidateAll()
+    {
+        entries.clear();
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public CacheStats stats()
+    {
+        return new CacheStats(hits.sum(),
+                              misses.sum(),
+                              evictions.sum(),
+                              size());
+    }
+
+    /**
+     * @param entry the entry
+     * @return the time in nanoseconds since the entry was written
+     */
+    public long ageOf(final Entry<V> entry)
+    {
+        return ticker.getAsLong() - entry.writeTime;
+    }
+
+    private Entry<V> newEntry(final V value)
+    {
+        return new Entry<>(value,
+                           ticker.getAsLong());
+    }
+
+    private boolean isExpired(final Entry<V> entry)
+    {
+        return ttlNanos > 0 && ageOf(entry) >= ttlNanos;
+    }
+
+    private void evictIfFull()
+    {
+        if (entries.size() <= maxSize)
+        {
+            return;
+        }
+        synchronized (evictionLock)
+        {
+            final int excess = entries.size() - maxSize;
+            if (excess <= 0)
+            {
+                return;
+            }
+            // the least-recently used entries, most recently used first
+            final int count = excess + evictionSlack;
+            final PriorityQueue<Map.Entry<K, Entry<V>>> oldest = new PriorityQueue<>(count + 1,
+                                                                                     Comparator.comparingLong((Map.Entry<K, Entry<V>> e) -> e.getValue().lastUse).reversed());
+            for (Map.Entry<K, Entry<V>> entry : entries.entrySet())
+            {
+                oldest.add(entry);
+                if (oldest.size() > count)
+                {
+                    oldest.poll();
+                }
+            }
+            for (Map.Entry<K, Entry<V>> entry : oldest)
+            {
+                if (entries.remove(entry.getKey(),
+                                   entry.getValue()))
+                {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * A cached value and the time it was written.
+     *
+     * @param <V> the value type
+     */
+    public static final class Entry<V>
+    {
+        private final V value;
+        private final long writeTime;
+        private volatile long lastUse;
+
+        private Entry(final V value,
+                      final long writeTime)
+        {
+            this.value = value;
+            this.writeTime = writeTime;
+            this.lastUse = writeTime;
+        }
+
+        public V value()
+        {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+/**
+ * A point-in-time snapshot of the counters of a cache.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public final class CacheStats
+{
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+
+    public CacheStats(final long hits,
+                      final long misses,
+                      final long evictions,
+                      final int size)
+    {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    public long hits()
+    {
+        return hits;
+    }
+
+    public long misses()
+    {
+        return misses;
+    }
+
+    /**
+     * The number of entries removed because the cache was full or the entry had expired.  Explicit invalidation is
+     * not counted.
+     *
+     * @return the number of evictions
+     */
+    public long evictions()
+    {
+        return evictions;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the ratio of hits to lookups, or 0 if there have been no lookups
+     */
+    public double hitRate()
+    {
+        final long lookups = hits + misses;
+        return lookups == 0 ? 0.0
+                            : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("CacheStats[hits=%d, misses=%d, evictions=%d, size=%d]",
+                             hits,
+                             misses,
+                             evictions,
+                             size);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.models.RoleRegistry;
+import be.objectify.deadbolt.java.models.Subject;
+import com.typesafe.config.Config;
+import play.libs.F;
+import play.mvc.Http;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Shares a single in-flight {@link DeadboltHandler#getSubject(Http.RequestHeader)} call between concurrent requests
+ * with the same identity, so a burst of parallel requests from one session results in one load.  Requests without
+ * an identity are loaded individually.  Nothing is kept once the load completes.  Each caller gets its own stage, so a
+ * caller that cancels or completes it doesn't affect the others.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+@Singleton
+public class CoalescingSubjectCache extends DefaultSubjectCache
+{
+    private final SubjectIdentityExtractor identityExtractor;
+
+    private final ConcurrentMap<F.Tuple<Long, String>, CompletableFuture<Optional<? extends Subject>>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder requested = new LongAdder();
+    private final LongAdder loaded = new LongAdder();
+
+    @Inject
+    public CoalescingSubjectCache(final Config config,
+                                  final SubjectIdentityExtractor identityExtractor,
+                                  final RoleRegistry roleRegistry)
+    {
+        super(config,
+              roleRegistry);
+        this.identityExtractor = identityExtractor;
+    }
+
+    @Override
+    protected CompletionStage<Optional<? extends Subject>> loadSubject(final DeadboltHandler deadboltHandler,
+                                                                       final Http.RequestHeader requestHeader)
+    {
+        final Optional<String> identity = identityExtractor.apply(requestHeader);
+        return identity.isPresent() ? loadCoalesced(new F.Tuple<>(deadboltHandler.getId(),
+                                                                  identity.get()),
+                                                    deadboltHandler,
+                                                    requestHeader)
+                                    : loadUncached(deadboltHandler,
+                                                   requestHeader);
+    }
+
+    /**
+     * Load the subject directly from the handler, without coalescing.
+     *
+     * @param deadboltHandler the handler
+     * @param requestHeader   the request header
+     * @return a future for the subject
+     */
+    protected CompletionStage<Optional<? extends Subject>> loadUncached(final DeadboltHandler deadboltHandler,
+                                                                        final Http.RequestHeader requestHeader)
+    {
+        return super.loadSubject(deadboltHandler,
+                                 requestHeader);
+    }
+
+    /**
+     * Load the subject, joining any load already in progress for the same key.
+     *
+     * @param key             the handler id and subject identity
+     * @param deadboltHandler the handler
+     * @param requestHeader   the request header
+     * @return a future for the subject
+     */
+    protected CompletionStage<Optional<? extends Subject>> loadCoalesced(final F.Tuple<Long, String> key,
+                                                                         final DeadboltHandler deadboltHandler,
+                                                                         final Http.RequestHeader requestHeader)
+    {
+        requested.increment();
+        final CompletableFuture<Optional<? extends Subject>> promise = new CompletableFuture<>();
+        final CompletableFuture<Optional<? extends Subject>> existing = inFlight.putIfAbsent(key,
+                                                                                            promise);
+        if (existing != null)
+        {
+            return existing.thenApply(Function.identity());
+        }
+
+        loaded.increment();
+        try
+        {
+            loadUncached(deadboltHandler,
+                         requestHeader)
+                    .whenComplete((subject, throwable) ->
+                                  {
+                                      inFlight.remove(key,
+                                                      promise);
+                                      if (throwable == null)
+                                      {
+                                          promise.complete(subject);
+                                      }
+                                      else
+                                      {
+                                          promise.completeExceptionally(throwable);
+                                      }
+                                  });
+        }
+        catch (RuntimeException e)
+        {
+            inFlight.remove(key,
+                            promise);
+            promise.completeExceptionally(e);
+        }
+        return promise.thenApply(Function.identity());
+    }
+
+    /**
+     * @return the number of loads requested for identified subjects
+     */
+    public long requestedLoads()
+    {
+        return requested.sum();
+    }
+
+    /**
+     * @return the number of loads actually delegated to the handler for identified subjects
+     */
+    public long actualLoads()
+    {
+        return loaded.sum();
+    }
+
+    /**
+     * @return the fraction of requested loads that joined a load already in progress, or 0 if nothing has been loaded
+     */
+    public double coalescingRatio()
+    {
+        final long requestedLoads = requested.sum();
+        return requestedLoads == 0 ? 0.0
+                                   : 1.0 - ((double) loaded.sum() / requestedLoads);
+    }
+}
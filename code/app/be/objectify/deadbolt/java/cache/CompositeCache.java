@@ -16,7 +16,10 @@
 package be.objectify.deadbolt.java.cache;
 
 import be.objectify.deadbolt.java.composite.Constraint;
+import be.objectify.deadbolt.java.composite.ExceptionThrowingConstraint;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 
@@ -27,4 +30,42 @@ public interface CompositeCache extends Function<String, Optional<Constraint>>
 {
     void register(String name,
                   Constraint constraint);
+
+    /**
+     * Replace every registered constraint with the given constraints.  Implementations should make the replacement
+     * atomic, so lookups see either all of the old constraints or all of the new ones, never a mix.
+     * <p>
+     * The default implementation registers the given constraints one at a time.  It can't know which other
+     * constraints are registered, so those are kept.
+     * </p>
+     *
+     * @param constraints the constraints, by name
+     */
+    default void replaceAll(final Map<String, Constraint> constraints)
+    {
+        constraints.forEach(this::register);
+    }
+
+    /**
+     * Remove the constraints with the given names and register the given constraints.  Constraints with other names
+     * are kept.  Implementations should make the replacement atomic, so lookups see either all of the old constraints
+     * or all of the new ones, never a mix.
+     * <p>
+     * The default implementation works one constraint at a time.  Removed constraints are registered as
+     * {@link ExceptionThrowingConstraint}s, which is what a lookup of an unknown name gives in
+     * {@link DefaultCompositeCache}.
+     * </p>
+     *
+     * @param names       the names of the constraints to remove
+     * @param constraints the constraints to register, by name
+     */
+    default void replace(final Collection<String> names,
+                         final Map<String, Constraint> constraints)
+    {
+        names.stream()
+             .filter(name -> !constraints.containsKey(name))
+             .forEach(name -> register(name,
+                                       new ExceptionThrowingConstraint(name)));
+        constraints.forEach(this::register);
+    }
 }
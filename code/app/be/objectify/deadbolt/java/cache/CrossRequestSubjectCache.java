@@ -0,0 +1,183 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.models.RoleRegistry;
+import be.objectify.deadbolt.java.models.Subject;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.libs.F;
+import play.mvc.Http;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps subjects between requests, keyed by the handler and the identity extracted from the request by a
+ * {@link SubjectIdentityExtractor}.  The cache is bounded by deadbolt.java.subject-cache.max-size, and entries
+ * expire deadbolt.java.subject-cache.ttl milliseconds after they are loaded.  If deadbolt.java.subject-cache.refresh-ahead
+ * is greater than zero, a hit on an entry older than that many milliseconds returns the cached subject and
+ * reloads it in the background.
+ * <p>
+ * Absent subjects are never cached, and requests without an identity always go to the handler.  Concurrent misses
+ * for the same identity share a single load.  When a subject's roles or permissions change, call
+ * {@link #invalidate(String)} with its identity.  This also forgets the outcomes the {@link DecisionCache} keeps for
+ * the subject, which are keyed by {@link Subject#getIdentifier()}: outcomes are forgotten for the identity itself and
+ * for the identifier of each subject that was cached with it.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+@Singleton
+public class CrossRequestSubjectCache extends CoalescingSubjectCache
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrossRequestSubjectCache.class);
+
+    private final SubjectIdentityExtractor identityExtractor;
+
+    private final BoundedCache<F.Tuple<Long, String>, Subject> subjects;
+
+    private final long refreshAheadNanos;
+
+    private final Set<F.Tuple<Long, String>> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final DecisionCache decisionCache;
+
+    public CrossRequestSubjectCache(final Config config,
+                                    final SubjectIdentityExtractor identityExtractor,
+                                    final RoleRegistry roleRegistry)
+    {
+        this(config,
+             identityExtractor,
+             roleRegistry,
+             new DecisionCache());
+    }
+
+    @Inject
+    public CrossRequestSubjectCache(final Config config,
+                                    final SubjectIdentityExtractor identityExtractor,
+                                    final RoleRegistry roleRegistry,
+                                    final DecisionCache decisionCache)
+    {
+        super(config,
+              identityExtractor,
+              roleRegistry);
+        this.identityExtractor = identityExtractor;
+        this.decisionCache = decisionCache;
+        this.subjects = new BoundedCache<>(config.getInt("deadbolt.java.subject-cache.max-size"),
+                                           config.getLong("deadbolt.java.subject-cache.ttl"),
+                                           TimeUnit.MILLISECONDS);
+        this.refreshAheadNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("deadbolt.java.subject-cache.refresh-ahead"));
+    }
+
+    @Override
+    protected CompletionStage<Optional<? extends Subject>> loadSubject(final DeadboltHandler deadboltHandler,
+                                                                       final Http.RequestHeader requestHeader)
+    {
+        final Optional<String> identity = identityExtractor.apply(requestHeader);
+        if (!identity.isPresent())
+        {
+            return loadUncached(deadboltHandler,
+                                requestHeader);
+        }
+
+        final F.Tuple<Long, String> key = new F.Tuple<>(deadboltHandler.getId(),
+                                                        identity.get());
+        final BoundedCache.Entry<Subject> entry = subjects.getEntry(key);
+        if (entry == null)
+        {
+            return loadAndStore(key,
+                                deadboltHandler,
+                                requestHeader);
+        }
+
+        if (refreshAheadNanos > 0
+            && subjects.ageOf(entry) >= refreshAheadNanos
+            && refreshing.add(key))
+        {
+            LOGGER.debug("Refreshing subject for handler [{}]",
+                         key._1);
+            loadAndStore(key,
+                         deadboltHandler,
+                         requestHeader).whenComplete((subject, throwable) -> refreshing.remove(key));
+        }
+        return CompletableFuture.completedFuture(Optional.of(entry.value()));
+    }
+
+    /**
+     * Remove the subject with the given identity from the cache, for all handlers, along with the decisions kept for
+     * it.
+     *
+     * @param identity the identity, as returned by the {@link SubjectIdentityExtractor}
+     */
+    public void invalidate(final String identity)
+    {
+        invalidations.incrementAndGet();
+        final List<Subject> removed = subjects.invalidateIf(key -> key._2.equals(identity));
+        decisionCache.invalidateSubject(identity);
+        removed.stream()
+               .map(Subject::getIdentifier)
+               .filter(identifier -> !identity.equals(identifier))
+               .distinct()
+               .forEach(decisionCache::invalidateSubject);
+    }
+
+    /**
+     * Remove all subjects from the cache, along with the decisions kept for subjects.
+     */
+    public void invalidateAll()
+    {
+        invalidations.incrementAndGet();
+        subjects.invalidateAll();
+        decisionCache.invalidateSubjects();
+    }
+
+    public CacheStats stats()
+    {
+        return subjects.stats();
+    }
+
+    private CompletionStage<Optional<? extends Subject>> loadAndStore(final F.Tuple<Long, String> key,
+                                                                      final DeadboltHandler deadboltHandler,
+                                                                      final Http.RequestHeader requestHeader)
+    {
+        // a load that started before an invalidation may return stale data, so it isn't stored
+        final long invalidationsAtStart = invalidations.get();
+        return loadCoalesced(key,
+                             deadboltHandler,
+                             requestHeader)
+                .thenApply(subjectOption ->
+                           {
+                               if (subjectOption.isPresent() && invalidations.get() == invalidationsAtStart)
+                               {
+                                   subjects.put(key,
+                                                subjectOption.get());
+                               }
+                               return subjectOption;
+                           });
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DecisionCacheability;
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the outcome of dynamic rules that declare themselves cacheable, between requests.  Each outcome lives for
+ * the TTL declared by its rule; least-recently used outcomes are evicted when deadbolt.java.decision-cache.max-size
+ * is reached.  An outcome that was still being checked when outcomes were invalidated is not kept.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+@Singleton
+public class DecisionCache
+{
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final BoundedCache<Key, Decision> cache;
+
+    private final LongSupplier clock;
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public DecisionCache()
+    {
+        this(DEFAULT_MAX_SIZE,
+             System::currentTimeMillis);
+    }
+
+    @Inject
+    public DecisionCache(final Config config)
+    {
+        this(config.hasPath("deadbolt.java.decision-cache.max-size") ? config.getInt("deadbolt.java.decision-cache.max-size")
+                                                                    : DEFAULT_MAX_SIZE,
+             System::currentTimeMillis);
+    }
+
+    DecisionCache(final int maxSize,
+                  final LongSupplier clock)
+    {
+        // each decision has its own TTL, checked on read
+        this.cache = new BoundedCache<>(maxSize,
+                                        0,
+                                        TimeUnit.MILLISECONDS);
+        this.clock = clock;
+    }
+
+    /**
+     * Get the outcome of a rule, checking it if there is no outcome that can be re-used.  Outcomes of rules scoped to
+     * the subject are only kept when there is a subject identifier.
+     *
+     * @param handlerId    the id of the Deadbolt handler
+     * @param name         the rule name
+     * @param meta         the meta information of the rule
+     * @param subjectId    the identifier of the subject, if there is one
+     * @param cacheability the declared cacheability of the rule
+     * @param check        checks the rule
+     * @return a future for the outcome
+     */
+    public CompletionStage<Boolean> apply(final long handlerId,
+                                          final String name,
+                                          final Optional<String> meta,
+                                          final Optional<String> subjectId,
+                                          final DecisionCacheability cacheability,
+                                          final Supplier<CompletionStage<Boolean>> check)
+    {
+        final DecisionCacheability.Scope scope = cacheability.scope();
+        if (scope != DecisionCacheability.Scope.GLOBAL && !subjectId.isPresent())
+        {
+            return check.get();
+        }
+        final Key key = new Key(handlerId,
+                                scope,
+                                name,
+                                scope == DecisionCacheability.Scope.SUBJECT ? null : meta.orElse(null),
+                                scope == DecisionCacheability.Scope.GLOBAL ? null : subjectId.get());
+        final Decision cached = cache.getIfPresent(key);
+        if (cached != null && cached.expiresAt > clock.getAsLong())
+        {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached.allowed);
+        }
+        misses.increment();
+        // a check that started before an invalidation may be stale, so it isn't stored
+        final long invalidationsAtStart = invalidations.get();
+        return check.get().thenApply(allowed ->
+                                     {
+                                         if (allowed != null && invalidations.get() == invalidationsAtStart)
+                                         {
+                                             store(key,
+                                                   new Decision(allowed,
+                                                                clock.getAsLong() + cacheability.ttlMillis()),
+                                                   invalidationsAtStart);
+                                         }
+                                         return allowed;
+                                     });
+    }
+
+    /**
+     * Forget the outcomes of rules for the subject.
+     *
+     * @param subjectId the identifier of the subject
+     */
+    public void invalidateSubject(final String subjectId)
+    {
+        invalidations.incrementAndGet();
+        cache.invalidateIf(key -> Objects.equals(subjectId,
+                                                 key.subjectId));
+    }
+
+    /**
+     * Forget the outcomes of rules for all subjects.  Outcomes of rules with global scope are kept.
+     */
+    public void invalidateSubjects()
+    {
+        invalidations.incrementAndGet();
+        cache.invalidateIf(key -> key.subjectId != null);
+    }
+
+    /**
+     * Forget the outcomes of the named rule.
+     *
+     * @param name the rule name
+     */
+    public void invalidateRule(final String name)
+    {
+        invalidations.incrementAndGet();
+        cache.invalidateIf(key -> Objects.equals(name,
+                                                 key.name));
+    }
+
+    public void invalidateAll()
+    {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public CacheStats stats()
+    {
+        return new CacheStats(hits.sum(),
+                              misses.sum(),
+                              cache.stats().evictions(),
+                              cache.size());
+    }
+
+    private void store(final Key key,
+                       final Decision decision,
+                       final long invalidationsAtStart)
+    {
+        cache.put(key,
+                  decision);
+        if (invalidations.get() != invalidationsAtStart)
+        {
+            // an invalidation ran while the outcome was being stored, and may have missed it
+            cache.invalidate(key,
+                             decision);
+        }
+    }
+
+    private static final class Decision
+    {
+        private final boolean allowed;
+        private final long expiresAt;
+
+        private Decision(final boolean allowed,
+                         final long expiresAt)
+        {
+            this.allowed = allowed;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Key
+    {
+        private final long handlerId;
+        private final DecisionCacheability.Scope scope;
+        private final String name;
+        private final String meta;
+        private final String subjectId;
+
+        private Key(final long handlerId,
+                    final DecisionCacheability.Scope scope,
+                    final String name,
+                    final String meta,
+                    final String subjectId)
+        {
+            this.handlerId = handlerId;
+            this.scope = scope;
+            this.name = name;
+            this.meta = meta;
+            this.subjectId = subjectId;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+            final Key that = (Key) o;
+            return handlerId == that.handlerId
+                   && scope == that.scope
+                   && Objects.equals(name, that.name)
+                   && Objects.equals(meta, that.meta)
+                   && Objects.equals(subjectId, that.subjectId);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(handlerId,
+                                scope,
+                                name,
+                                meta,
+                                subjectId);
+        }
+    }
+}
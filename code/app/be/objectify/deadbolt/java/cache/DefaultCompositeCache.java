@@ -16,36 +16,112 @@
 package be.objectify.deadbolt.java.cache;
 
 import be.objectify.deadbolt.java.composite.Constraint;
+import be.objectify.deadbolt.java.composite.ConstraintOptimizer;
 import be.objectify.deadbolt.java.composite.ExceptionThrowingConstraint;
+import com.typesafe.config.Config;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
+ * Holds the constraints in an immutable snapshot that is replaced as a whole when constraints are registered or
+ * replaced, so lookups never lock and always see a consistent set of constraints.  If
+ * deadbolt.java.composite-optimizer.mode is set, constraints are reordered by {@link ConstraintOptimizer} as they are
+ * added.
+ *
  * @author Steve Chaloner (steve@objectify.be)
  */
 @Singleton
 public class DefaultCompositeCache implements CompositeCache
 {
-    private static final String NAMESPACE = "composite.constraint.";
+    private final ConstraintOptimizer.Mode optimizerMode;
+
+    private final int replanInterval;
 
-    private final Map<String, Constraint> constraints = new HashMap<>();
+    private volatile Map<String, Constraint> constraints = Collections.emptyMap();
+
+    public DefaultCompositeCache()
+    {
+        this(ConstraintOptimizer.Mode.OFF,
+             1000);
+    }
+
+    @Inject
+    public DefaultCompositeCache(final Config config)
+    {
+        this(config.hasPath("deadbolt.java.composite-optimizer.mode") ? ConstraintOptimizer.Mode.valueOf(config.getString("deadbolt.java.composite-optimizer.mode").toUpperCase(Locale.ENGLISH))
+                                                                      : ConstraintOptimizer.Mode.OFF,
+             config.hasPath("deadbolt.java.composite-optimizer.replan-interval") ? config.getInt("deadbolt.java.composite-optimizer.replan-interval")
+                                                                                 : 1000);
+    }
+
+    /**
+     * @param optimizerMode  how to reorder constraints as they are added
+     * @param replanInterval for adaptive reordering, the number of tests between rebuilds of a constraint
+     */
+    public DefaultCompositeCache(final ConstraintOptimizer.Mode optimizerMode,
+                                 final int replanInterval)
+    {
+        this.optimizerMode = optimizerMode;
+        this.replanInterval = replanInterval;
+    }
 
     @Override
     public Optional<Constraint> apply(final String name)
     {
-        final Constraint constraint = constraints.get(NAMESPACE + name);
+        final Constraint constraint = constraints.get(name);
         return Optional.of(constraint != null ? constraint
                                               : new ExceptionThrowingConstraint(name));
     }
 
     @Override
-    public void register(final String name,
-                         final Constraint constraint)
+    public synchronized void register(final String name,
+                                      final Constraint constraint)
+    {
+        final Map<String, Constraint> copy = new HashMap<>(constraints);
+        copy.put(name,
+                 optimize(constraint));
+        constraints = Collections.unmodifiableMap(copy);
+    }
+
+    @Override
+    public synchronized void replaceAll(final Map<String, Constraint> constraints)
+    {
+        replace(this.constraints.keySet(),
+                constraints);
+    }
+
+    @Override
+    public synchronized void replace(final Collection<String> names,
+                                     final Map<String, Constraint> constraints)
+    {
+        final Map<String, Constraint> copy = new HashMap<>(this.constraints);
+        copy.keySet().removeAll(names);
+        constraints.forEach((name, constraint) -> copy.put(name,
+                                                           optimize(Objects.requireNonNull(constraint,
+                                                                                           () -> "No constraint given for [" + name + "]"))));
+        this.constraints = Collections.unmodifiableMap(copy);
+    }
+
+    private Constraint optimize(final Constraint constraint)
+    {
+        return ConstraintOptimizer.optimize(constraint,
+                                            optimizerMode,
+                                            replanInterval);
+    }
+
+    /**
+     * @return the registered constraints, by name.  Later registrations are not reflected in the returned map.
+     */
+    public Map<String, Constraint> snapshot()
     {
-        constraints.put(NAMESPACE + name,
-                        constraint);
+        return constraints;
     }
 }
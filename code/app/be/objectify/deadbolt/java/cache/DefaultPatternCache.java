@@ -15,18 +15,79 @@
  */
 package be.objectify.deadbolt.java.cache;
 
+import be.objectify.deadbolt.java.patterns.LinearPattern;
+import be.objectify.deadbolt.java.patterns.MultiPattern;
+import be.objectify.deadbolt.java.patterns.WildcardPermission;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 /**
+ * Caches compiled patterns, evicting the least-recently used pattern once deadbolt.java.pattern-cache.max-size is
+ * reached.  Patterns listed in deadbolt.java.pattern-cache.prewarm are compiled at startup, so an invalid pattern
+ * there fails fast.  Combined patterns, linear-time patterns and wildcard permissions are cached separately, with the same bound.
+ *
  * @author Steve Chaloner (steve@objectify.be)
  */
 @Singleton
 public class DefaultPatternCache implements PatternCache
 {
-    private final Map<String, Pattern> cache = new HashMap<>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultPatternCache.class);
+
+    private static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final BoundedCache<String, Pattern> cache;
+
+    private final BoundedCache<List<String>, MultiPattern> combinedCache;
+
+    private final BoundedCache<String, LinearPattern> linearCache;
+
+    private final BoundedCache<String, WildcardPermission> wildcardCache;
+
+    public DefaultPatternCache()
+    {
+        this(DEFAULT_MAX_SIZE,
+             Collections.emptyList());
+    }
+
+    @Inject
+    public DefaultPatternCache(final Config config)
+    {
+        this(config.getInt("deadbolt.java.pattern-cache.max-size"),
+             config.getStringList("deadbolt.java.pattern-cache.prewarm"));
+    }
+
+    public DefaultPatternCache(final int maxSize,
+                               final List<String> prewarm)
+    {
+        this.cache = new BoundedCache<>(maxSize,
+                                        0,
+                                        TimeUnit.MILLISECONDS);
+        this.combinedCache = new BoundedCache<>(maxSize,
+                                                0,
+                                                TimeUnit.MILLISECONDS);
+        this.linearCache = new BoundedCache<>(maxSize,
+                                              0,
+                                              TimeUnit.MILLISECONDS);
+        this.wildcardCache = new BoundedCache<>(maxSize,
+                                                0,
+                                                TimeUnit.MILLISECONDS);
+        prewarm.forEach(patternValue -> cache.put(patternValue,
+                                                  Pattern.compile(patternValue)));
+        if (!prewarm.isEmpty())
+        {
+            LOGGER.info("Pre-warmed pattern cache with [{}] patterns",
+                        prewarm.size());
+        }
+    }
 
     @Override
     public Pattern apply(final String patternValue)
@@ -34,4 +95,37 @@ public class DefaultPatternCache implements PatternCache
         return cache.computeIfAbsent(patternValue,
                                      Pattern::compile);
     }
+
+    @Override
+    public MultiPattern applyAll(final List<String> patternValues)
+    {
+        MultiPattern combined = combinedCache.getIfPresent(patternValues);
+        if (combined == null)
+        {
+            combined = MultiPattern.compile(patternValues);
+            // the caller's list may change after this, so the key is a copy
+            combinedCache.put(Collections.unmodifiableList(new ArrayList<>(patternValues)),
+                              combined);
+        }
+        return combined;
+    }
+
+    @Override
+    public LinearPattern applyLinear(final String patternValue)
+    {
+        return linearCache.computeIfAbsent(patternValue,
+                                           LinearPattern::compile);
+    }
+
+    @Override
+    public WildcardPermission applyWildcard(final String permissionValue)
+    {
+        return wildcardCache.computeIfAbsent(permissionValue,
+                                             WildcardPermission::parse);
+    }
+
+    public CacheStats stats()
+    {
+        return cache.stats();
+    }
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.models.Permission;
+import be.objectify.deadbolt.java.patterns.MultiPattern;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.libs.F;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Keeps the compiled permissions of each role for deadbolt.java.role-permissions-cache.ttl milliseconds, so that
+ * role-based permission checks don't go to the handler on every request.  A TTL of zero or less disables caching, and
+ * the permissions are loaded on every check.  Roles listed in deadbolt.java.role-permissions-cache.preload are loaded
+ * from the default handler at startup.  Each caller gets its own stage, so a caller that cancels or completes it doesn't
+ * affect the cached permissions.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+@Singleton
+public class DefaultRolePermissionsCache implements RolePermissionsCache
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultRolePermissionsCache.class);
+
+    private static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final PatternCache patternCache;
+
+    private final boolean enabled;
+
+    private final BoundedCache<F.Tuple<Long, String>, CompletableFuture<MultiPattern>> cache;
+
+    /**
+     * A cache that doesn't keep anything, i.e. permissions are loaded on every check.
+     *
+     * @param patternCache compiles the permissions
+     */
+    public DefaultRolePermissionsCache(final PatternCache patternCache)
+    {
+        this(patternCache,
+             DEFAULT_MAX_SIZE,
+             0);
+    }
+
+    @Inject
+    public DefaultRolePermissionsCache(final Config config,
+                                       final PatternCache patternCache,
+                                       final HandlerCache handlerCache)
+    {
+        this(patternCache,
+             config.hasPath("deadbolt.java.role-permissions-cache.max-size") ? config.getInt("deadbolt.java.role-permissions-cache.max-size")
+                                                                            : DEFAULT_MAX_SIZE,
+             config.hasPath("deadbolt.java.role-permissions-cache.ttl") ? config.getLong("deadbolt.java.role-permissions-cache.ttl")
+                                                                       : 0);
+        final List<String> preload = config.hasPath("deadbolt.java.role-permissions-cache.preload") ? config.getStringList("deadbolt.java.role-permissions-cache.preload")
+                                                                                                    : new ArrayList<>();
+        if (enabled && !preload.isEmpty())
+        {
+            preload(handlerCache.get(),
+                    preload);
+        }
+    }
+
+    public DefaultRolePermissionsCache(final PatternCache patternCache,
+                                       final int maxSize,
+                                       final long ttlMillis)
+    {
+        this.patternCache = patternCache;
+        this.enabled = ttlMillis > 0;
+        this.cache = new BoundedCache<>(maxSize,
+                                        ttlMillis,
+                                        TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public CompletionStage<MultiPattern> apply(final DeadboltHandler deadboltHandler,
+                                               final String roleName)
+    {
+        if (!enabled)
+        {
+            return deadboltHandler.getPermissionsForRole(roleName)
+                                  .thenApply(this::compile);
+        }
+        final F.Tuple<Long, String> key = new F.Tuple<>(deadboltHandler.getId(),
+                                                        roleName);
+        final CompletableFuture<MultiPattern> permissions = cache.computeIfAbsent(key,
+                                                                                  k -> load(deadboltHandler,
+                                                                                            k));
+        if (permissions.isCompletedExceptionally())
+        {
+            // a load that failed immediately completed before it was stored
+            cache.invalidate(key,
+                             permissions);
+        }
+        return permissions.thenApply(Function.identity());
+    }
+
+    /**
+     * Load the permissions of the roles into the cache.
+     *
+     * @param deadboltHandler the handler
+     * @param roleNames       the role names
+     * @return a future that completes when all the roles have been loaded
+     */
+    public CompletionStage<Void> preload(final DeadboltHandler deadboltHandler,
+                                         final List<String> roleNames)
+    {
+        LOGGER.info("Preloading the permissions of roles {}",
+                    roleNames);
+        final List<CompletableFuture<MultiPattern>> loads = new ArrayList<>(roleNames.size());
+        for (String roleName : roleNames)
+        {
+            final F.Tuple<Long, String> key = new F.Tuple<>(deadboltHandler.getId(),
+                                                            roleName);
+            final CompletableFuture<MultiPattern> load = load(deadboltHandler,
+                                                              key);
+            cache.put(key,
+                      load);
+            loads.add(load);
+        }
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0]));
+    }
+
+    @Override
+    public void invalidateRole(final String roleName)
+    {
+        cache.invalidateIf(key -> Objects.equals(roleName,
+                                                 key._2));
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        cache.invalidateAll();
+    }
+
+    public CacheStats stats()
+    {
+        return cache.stats();
+    }
+
+    private CompletableFuture<MultiPattern> load(final DeadboltHandler deadboltHandler,
+                                                 final F.Tuple<Long, String> key)
+    {
+        final CompletableFuture<MultiPattern> load = deadboltHandler.getPermissionsForRole(key._2)
+                                                                    .thenApply(this::compile)
+                                                                    .toCompletableFuture();
+        load.whenComplete((permissions, throwable) ->
+                          {
+                              if (throwable != null)
+                              {
+                                  // don't keep the failure, so the next check tries again
+                                  LOGGER.error("Permissions of role [{}] could not be loaded",
+                                               key._2,
+                                               throwable);
+                                  // a newer load may have replaced this one, so only remove this one
+                                  cache.invalidate(key,
+                                                   load);
+                              }
+                          });
+        return load;
+    }
+
+    private MultiPattern compile(final List<? extends Permission> permissions)
+    {
+        final List<String> values = new ArrayList<>(permissions.size());
+        for (Permission permission : permissions)
+        {
+            values.add(permission.getValue());
+        }
+        return patternCache.applyAll(values);
+    }
+}
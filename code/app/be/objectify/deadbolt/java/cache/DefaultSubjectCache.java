@@ -16,6 +16,8 @@
 package be.objectify.deadbolt.java.cache;
 
 import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.models.CompiledSubject;
+import be.objectify.deadbolt.java.models.RoleRegistry;
 import be.objectify.deadbolt.java.models.Subject;
 import com.typesafe.config.Config;
 import play.libs.F;
@@ -37,12 +39,23 @@ import java.util.concurrent.ConcurrentMap;
 public class DefaultSubjectCache implements SubjectCache
 {
     private final boolean cacheUserPerRequestEnabled;
+    private final boolean compileSubjects;
+    private final RoleRegistry roleRegistry;
     private final ConcurrentMap<Long, TypedKey<Subject>> typedKeyCache = new ConcurrentHashMap<>();
 
-    @Inject
     public DefaultSubjectCache(final Config config)
+    {
+        this(config,
+             new RoleRegistry());
+    }
+
+    @Inject
+    public DefaultSubjectCache(final Config config,
+                               final RoleRegistry roleRegistry)
     {
         this.cacheUserPerRequestEnabled = config.getBoolean("deadbolt.java.cache-user");
+        this.compileSubjects = config.hasPath("deadbolt.java.compile-subject") && config.getBoolean("deadbolt.java.compile-subject");
+        this.roleRegistry = roleRegistry;
     }
 
     @Override
@@ -59,9 +72,27 @@ public class DefaultSubjectCache implements SubjectCache
             }
             else
             {
-                return deadboltHandler.getSubject(requestHeader).thenApply(subjectOption -> subjectOption.map(s -> F.<Optional<? extends Subject>, Http.RequestHeader>Tuple(Optional.of(s), requestHeader.addAttr(deadboltHandlerCacheId, s))).orElseGet(() -> F.Tuple(Optional.empty(), requestHeader)));
+                return loadSubject(deadboltHandler, requestHeader).thenApply(subjectOption -> subjectOption.map(s -> F.<Optional<? extends Subject>, Http.RequestHeader>Tuple(Optional.of(s), requestHeader.addAttr(deadboltHandlerCacheId, s))).orElseGet(() -> F.Tuple(Optional.empty(), requestHeader)));
             }
         }
-        return deadboltHandler.getSubject(requestHeader).thenApply(subjectOption -> subjectOption.map(s -> F.<Optional<? extends Subject>, Http.RequestHeader>Tuple(Optional.of(s), requestHeader)).orElseGet(() -> F.Tuple(Optional.empty(), requestHeader)));
+        return loadSubject(deadboltHandler, requestHeader).thenApply(subjectOption -> subjectOption.map(s -> F.<Optional<? extends Subject>, Http.RequestHeader>Tuple(Optional.of(s), requestHeader)).orElseGet(() -> F.Tuple(Optional.empty(), requestHeader)));
+    }
+
+    /**
+     * Load the subject when it is not present in the request.  By default, this is delegated to
+     * {@link DeadboltHandler#getSubject(Http.RequestHeader)}.  If deadbolt.java.compile-subject is true, the loaded
+     * subject is replaced by a {@link CompiledSubject} view of it.
+     *
+     * @param deadboltHandler the handler
+     * @param requestHeader   the request header
+     * @return a future for the subject
+     */
+    protected CompletionStage<Optional<? extends Subject>> loadSubject(final DeadboltHandler deadboltHandler,
+                                                                       final Http.RequestHeader requestHeader)
+    {
+        final CompletionStage<Optional<? extends Subject>> subject = deadboltHandler.getSubject(requestHeader);
+        return compileSubjects ? subject.thenApply(subjectOption -> subjectOption.map(s -> CompiledSubject.of(s,
+                                                                                                             roleRegistry)))
+                               : subject;
     }
 }
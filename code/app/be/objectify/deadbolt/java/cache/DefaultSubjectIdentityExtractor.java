@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import com.typesafe.config.Config;
+import play.mvc.Http;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Optional;
+
+/**
+ * Identifies subjects using the source configured by deadbolt.java.subject-cache.identity, which is one of
+ * session, cookie, header or bearer.  The name is the session key, cookie name or header name, and is ignored
+ * for bearer.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+@Singleton
+public class DefaultSubjectIdentityExtractor implements SubjectIdentityExtractor
+{
+    private final SubjectIdentityExtractor delegate;
+
+    @Inject
+    public DefaultSubjectIdentityExtractor(final Config config)
+    {
+        final String source = config.getString("deadbolt.java.subject-cache.identity.source");
+        final String name = config.getString("deadbolt.java.subject-cache.identity.name");
+        switch (source)
+        {
+            case "session":
+                this.delegate = SubjectIdentityExtractor.session(name);
+                break;
+            case "cookie":
+                this.delegate = SubjectIdentityExtractor.cookie(name);
+                break;
+            case "header":
+                this.delegate = SubjectIdentityExtractor.header(name);
+                break;
+            case "bearer":
+                this.delegate = SubjectIdentityExtractor.bearerToken();
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown subject identity source [%s]",
+                                                                 source));
+        }
+    }
+
+    @Override
+    public Optional<String> apply(final Http.RequestHeader requestHeader)
+    {
+        return delegate.apply(requestHeader);
+    }
+}
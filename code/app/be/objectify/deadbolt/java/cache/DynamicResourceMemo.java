@@ -0,0 +1,188 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.DynamicResourceHandler;
+import play.libs.typedmap.TypedKey;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Remembers, for the duration of a request, the {@link DynamicResourceHandler} of each {@link DeadboltHandler} and
+ * the outcome of its isAllowed and checkPermission calls.  The memo is carried in the request attributes, so it is
+ * shared by every check made with the request it was added to, or with a request derived from it.  Checks that
+ * complete exceptionally are not remembered.  Each caller gets its own dependent stage, so a caller that cancels or
+ * completes its stage doesn't affect the remembered outcome.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public final class DynamicResourceMemo
+{
+    public static final TypedKey<DynamicResourceMemo> KEY = TypedKey.create("deadbolt.java.cache-dynamic");
+
+    private final ConcurrentMap<Long, CompletionStage<Optional<DynamicResourceHandler>>> handlers = new ConcurrentHashMap<>(2);
+
+    private final ConcurrentMap<Decision, CompletionStage<Boolean>> decisions = new ConcurrentHashMap<>();
+
+    /**
+     * Get the dynamic resource handler of the Deadbolt handler, loading it the first time.
+     *
+     * @param deadboltHandler the Deadbolt handler
+     * @param load            loads the dynamic resource handler
+     * @return a future for the dynamic resource handler
+     */
+    public CompletionStage<Optional<DynamicResourceHandler>> handler(final DeadboltHandler deadboltHandler,
+                                                                     final Supplier<CompletionStage<Optional<DynamicResourceHandler>>> load)
+    {
+        return remember(handlers,
+                        deadboltHandler.getId(),
+                        load);
+    }
+
+    /**
+     * Get the outcome of {@link DynamicResourceHandler#isAllowed}, checking it the first time.
+     *
+     * @param deadboltHandler the Deadbolt handler
+     * @param name            the resource name
+     * @param meta            additional information on the resource
+     * @param check           the check
+     * @return a future for the outcome
+     */
+    public CompletionStage<Boolean> isAllowed(final DeadboltHandler deadboltHandler,
+                                              final String name,
+                                              final Optional<String> meta,
+                                              final Supplier<CompletionStage<Boolean>> check)
+    {
+        return remember(decisions,
+                        new Decision(deadboltHandler.getId(),
+                                     false,
+                                     false,
+                                     name,
+                                     meta),
+                        check);
+    }
+
+    /**
+     * Get the outcome of {@link DynamicResourceHandler#checkPermission}, checking it the first time.  The handler may
+     * look at whether the pattern is inverted, so outcomes are remembered separately for inverted patterns.
+     *
+     * @param deadboltHandler the Deadbolt handler
+     * @param permissionValue the permission value
+     * @param meta            additional information on the resource
+     * @param invert          true if the pattern is inverted
+     * @param check           the check
+     * @return a future for the outcome
+     */
+    public CompletionStage<Boolean> checkPermission(final DeadboltHandler deadboltHandler,
+                                                    final String permissionValue,
+                                                    final Optional<String> meta,
+                                                    final boolean invert,
+                                                    final Supplier<CompletionStage<Boolean>> check)
+    {
+        return remember(decisions,
+                        new Decision(deadboltHandler.getId(),
+                                     true,
+                                     invert,
+                                     permissionValue,
+                                     meta),
+                        check);
+    }
+
+    private static <K, V> CompletionStage<V> remember(final ConcurrentMap<K, CompletionStage<V>> memo,
+                                                      final K key,
+                                                      final Supplier<CompletionStage<V>> load)
+    {
+        CompletionStage<V> stage = memo.get(key);
+        if (stage == null)
+        {
+            final CompletionStage<V> loaded = load.get();
+            stage = memo.putIfAbsent(key,
+                                     loaded);
+            if (stage == null)
+            {
+                stage = loaded;
+                loaded.whenComplete((value, throwable) ->
+                                    {
+                                        if (throwable != null)
+                                        {
+                                            memo.remove(key,
+                                                        loaded);
+                                        }
+                                    });
+            }
+        }
+        return stage.toCompletableFuture()
+                    .thenApply(Function.identity());
+    }
+
+    private static final class Decision
+    {
+        private final long handlerId;
+        private final boolean permission;
+        private final boolean invert;
+        private final String value;
+        private final Optional<String> meta;
+
+        private Decision(final long handlerId,
+                         final boolean permission,
+                         final boolean invert,
+                         final String value,
+                         final Optional<String> meta)
+        {
+            this.handlerId = handlerId;
+            this.permission = permission;
+            this.invert = invert;
+            this.value = value;
+            this.meta = meta;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof Decision))
+            {
+                return false;
+            }
+            final Decision that = (Decision) o;
+            return handlerId == that.handlerId
+                   && permission == that.permission
+                   && invert == that.invert
+                   && Objects.equals(value, that.value)
+                   && Objects.equals(meta, that.meta);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(handlerId,
+                                permission,
+                                invert,
+                                value,
+                                meta);
+        }
+    }
+}
@@ -15,6 +15,11 @@
  */
 package be.objectify.deadbolt.java.cache;
 
+import be.objectify.deadbolt.java.patterns.LinearPattern;
+import be.objectify.deadbolt.java.patterns.MultiPattern;
+import be.objectify.deadbolt.java.patterns.WildcardPermission;
+
+import java.util.List;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 
@@ -23,4 +28,36 @@ import java.util.regex.Pattern;
  */
 public interface PatternCache extends Function<String, Pattern>
 {
+    /**
+     * Get a matcher that tests values against all of the patterns in one pass.  By default, this is not cached.
+     *
+     * @param patternValues the patterns
+     * @return the combined patterns
+     */
+    default MultiPattern applyAll(final List<String> patternValues)
+    {
+        return MultiPattern.compile(patternValues);
+    }
+
+    /**
+     * Get the linear-time form of the pattern.  By default, this is not cached.
+     *
+     * @param patternValue the pattern
+     * @return the compiled pattern
+     */
+    default LinearPattern applyLinear(final String patternValue)
+    {
+        return LinearPattern.compile(patternValue);
+    }
+
+    /**
+     * Get the parsed form of the wildcard permission.  By default, this is not cached.
+     *
+     * @param permissionValue the permission
+     * @return the parsed permission
+     */
+    default WildcardPermission applyWildcard(final String permissionValue)
+    {
+        return WildcardPermission.parse(permissionValue);
+    }
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.patterns.MultiPattern;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Provides the permissions associated with a role, compiled into a single matcher.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public interface RolePermissionsCache
+{
+    /**
+     * Get the permissions associated with the role by {@link DeadboltHandler#getPermissionsForRole(String)}.
+     *
+     * @param deadboltHandler the handler
+     * @param roleName        the role name
+     * @return a future for the compiled permissions
+     */
+    CompletionStage<MultiPattern> apply(DeadboltHandler deadboltHandler,
+                                        String roleName);
+
+    /**
+     * Forget the permissions of the role, for every handler.
+     *
+     * @param roleName the role name
+     */
+    void invalidateRole(String roleName);
+
+    void invalidateAll();
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import play.mvc.Http;
+
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Extracts a value from the request that identifies the subject making it, such as a session id or bearer token.
+ * Requests that share an identity are considered to be made by the same subject, so the value must be something
+ * that cannot be forged by the client.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public interface SubjectIdentityExtractor extends Function<Http.RequestHeader, Optional<String>>
+{
+    /**
+     * Identify the subject by a value held in the Play session.
+     *
+     * @param key the session key
+     * @return the extractor
+     */
+    static SubjectIdentityExtractor session(final String key)
+    {
+        return requestHeader -> requestHeader.session().get(key);
+    }
+
+    /**
+     * Identify the subject by the value of a cookie.
+     *
+     * @param name the cookie name
+     * @return the extractor
+     */
+    static SubjectIdentityExtractor cookie(final String name)
+    {
+        return requestHeader -> requestHeader.getCookie(name)
+                                             .map(Http.Cookie::value);
+    }
+
+    /**
+     * Identify the subject by the value of a request header.
+     *
+     * @param name the header name
+     * @return the extractor
+     */
+    static SubjectIdentityExtractor header(final String name)
+    {
+        return requestHeader -> requestHeader.header(name);
+    }
+
+    /**
+     * Identify the subject by the token of a bearer Authorization header.
+     *
+     * @return the extractor
+     */
+    static SubjectIdentityExtractor bearerToken()
+    {
+        return requestHeader -> requestHeader.header(Http.HeaderNames.AUTHORIZATION)
+                                             .filter(value -> value.regionMatches(true,
+                                                                                  0,
+                                                                                  "Bearer ",
+                                                                                  0,
+                                                                                  7))
+                                             .map(value -> value.substring(7).trim())
+                                             .filter(token -> !token.isEmpty());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.ViewConstraint;
+import play.libs.typedmap.TypedKey;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The outcomes of view constraints for a request, e.g. as evaluated up front by
+ * {@link be.objectify.deadbolt.java.ViewSupport#prefetch}.  The decisions are carried in the request attributes, so
+ * template tags rendered with the request can use them instead of waiting for the constraint to be checked.  Tags
+ * that do check their constraint add the outcome, so the same constraint is only checked once per request.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public final class ViewDecisions
+{
+    public static final TypedKey<ViewDecisions> KEY = TypedKey.create("deadbolt.java.view-decisions");
+
+    private final ConcurrentMap<Decision, Boolean> decisions = new ConcurrentHashMap<>();
+
+    private final LongAdder avoidedEvaluations = new LongAdder();
+
+    /**
+     * @param deadboltHandler the Deadbolt handler the constraint is checked with
+     * @param constraint      the constraint
+     * @return the outcome of the constraint, if known
+     */
+    public Optional<Boolean> get(final DeadboltHandler deadboltHandler,
+                                 final ViewConstraint constraint)
+    {
+        return Optional.ofNullable(decisions.get(new Decision(deadboltHandler.getId(),
+                                                              constraint)));
+    }
+
+    /**
+     * @param deadboltHandler the Deadbolt handler the constraint was checked with
+     * @param constraint      the constraint
+     * @param allowed         the outcome of the constraint
+     */
+    public void put(final DeadboltHandler deadboltHandler,
+                    final ViewConstraint constraint,
+                    final boolean allowed)
+    {
+        decisions.put(new Decision(deadboltHandler.getId(),
+                                   constraint),
+                      allowed);
+    }
+
+    /**
+     * Record that a known outcome was used instead of checking the constraint.
+     */
+    public void avoidedEvaluation()
+    {
+        avoidedEvaluations.increment();
+    }
+
+    /**
+     * @return the number of times a known outcome was used instead of checking the constraint
+     */
+    public long avoidedEvaluations()
+    {
+        return avoidedEvaluations.sum();
+    }
+
+    /**
+     * @return the number of known outcomes
+     */
+    public int size()
+    {
+        return decisions.size();
+    }
+
+    private static final class Decision
+    {
+        private final long handlerId;
+        private final ViewConstraint constraint;
+
+        private Decision(final long handlerId,
+                         final ViewConstraint constraint)
+        {
+            this.handlerId = handlerId;
+            this.constraint = constraint;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof Decision))
+            {
+                return false;
+            }
+            final Decision that = (Decision) o;
+            return handlerId == that.handlerId
+                   && constraint.equals(that.constraint);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(handlerId,
+                                constraint);
+        }
+    }
+}
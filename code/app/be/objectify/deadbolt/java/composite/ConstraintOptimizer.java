@@ -0,0 +1,413 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.composite;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.models.PatternType;
+import play.libs.F;
+import play.mvc.Http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Reorders the branches of AND and OR trees so cheap constraints are tested before expensive ones, e.g. a subject
+ * present constraint before a dynamic constraint.  AND and OR are commutative, so the outcome doesn't change - only
+ * the number of constraints tested to reach it.
+ * <p>
+ * Only side-effect free constraints are moved.  Subject present, subject not present, restrict and non-custom pattern
+ * constraints are side-effect free, and any other constraint can be marked as such with
+ * {@link #sideEffectFree(Constraint, int)}.  Other constraints, such as dynamic constraints, keep their order relative
+ * to each other; they may be tested less often, but never in a different order.
+ * </p>
+ * <p>
+ * Static reordering uses a fixed estimate of the cost of each type of constraint.  Adaptive reordering measures the
+ * latency and pass rate of each branch as the tree is used, and periodically rebuilds the tree so the branch most
+ * likely to decide the outcome at the least cost is tested first.
+ * </p>
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public final class ConstraintOptimizer
+{
+    public enum Mode
+    {
+        // constraints are tested in the order they are declared.  The default.
+        OFF,
+
+        // branches are ordered by the estimated cost of their constraints
+        STATIC,
+
+        // branches are ordered by their measured cost and pass rate
+        ADAPTIVE
+    }
+
+    // the estimated cost of constraints that call into application code
+    private static final int UNKNOWN_COST = 10;
+
+    private ConstraintOptimizer()
+    {
+        // no-op
+    }
+
+    /**
+     * @param constraint     the constraint
+     * @param mode           how to reorder the constraint
+     * @param replanInterval for adaptive reordering, the number of tests between rebuilds of the tree
+     * @return the reordered constraint
+     */
+    public static Constraint optimize(final Constraint constraint,
+                                      final Mode mode,
+                                      final int replanInterval)
+    {
+        switch (mode)
+        {
+            case STATIC:
+                return reorder(constraint);
+            case ADAPTIVE:
+                return adaptive(constraint,
+                                replanInterval);
+            default:
+                return constraint;
+        }
+    }
+
+    /**
+     * Reorder the branches of the constraint, and of any trees within it, by their estimated cost.
+     *
+     * @param constraint the constraint
+     * @return the reordered constraint, or the constraint itself if it isn't an AND or OR tree
+     */
+    public static Constraint reorder(final Constraint constraint)
+    {
+        if (!isReorderable(constraint))
+        {
+            return constraint;
+        }
+        final ConstraintTree tree = (ConstraintTree) constraint;
+        return rebuild(tree,
+                       order(tree.constraints().stream()
+                                 .map(ConstraintOptimizer::reorder)
+                                 .collect(Collectors.toList()),
+                             ConstraintOptimizer::isSideEffectFree,
+                             ConstraintOptimizer::cost));
+    }
+
+    /**
+     * Reorder the branches of the constraint, and of any trees within it, by how they behave when tested.  Until a
+     * branch has been tested, its estimated cost is used.
+     *
+     * @param constraint     the constraint
+     * @param replanInterval the number of tests between rebuilds of the tree
+     * @return the adaptive constraint, or the constraint itself if it isn't an AND or OR tree
+     */
+    public static Constraint adaptive(final Constraint constraint,
+                                      final int replanInterval)
+    {
+        if (replanInterval < 1)
+        {
+            throw new IllegalArgumentException("replanInterval must be at least 1");
+        }
+        return isReorderable(constraint) ? new AdaptiveTree(new Node(constraint),
+                                                            replanInterval)
+                                         : constraint;
+    }
+
+    /**
+     * Mark a constraint as side-effect free, so it can be reordered.
+     *
+     * @param constraint the constraint
+     * @param cost       the estimated cost of the constraint.  For comparison, a subject present constraint costs 1 and
+     *                   a dynamic constraint costs 10.
+     * @return the marked constraint
+     */
+    public static Constraint sideEffectFree(final Constraint constraint,
+                                            final int cost)
+    {
+        return new SideEffectFree(constraint,
+                                  cost);
+    }
+
+    static int cost(final Constraint constraint)
+    {
+        if (constraint instanceof SubjectPresentConstraint || constraint instanceof SubjectNotPresentConstraint)
+        {
+            return 1;
+        }
+        if (constraint instanceof RestrictConstraint)
+        {
+            return 2;
+        }
+        if (constraint instanceof PatternConstraint)
+        {
+            final PatternType patternType = ((PatternConstraint) constraint).patternType();
+            return patternType == PatternType.EQUALITY ? 2
+                                                       : patternType == PatternType.CUSTOM ? UNKNOWN_COST
+                                                                                           : 3;
+        }
+        if (constraint instanceof SideEffectFree)
+        {
+            return ((SideEffectFree) constraint).cost;
+        }
+        if (constraint instanceof ConstraintTree)
+        {
+            return Math.max(1,
+                            ((ConstraintTree) constraint).constraints().stream()
+                                                         .mapToInt(ConstraintOptimizer::cost)
+                                                         .sum());
+        }
+        return UNKNOWN_COST;
+    }
+
+    static boolean isSideEffectFree(final Constraint constraint)
+    {
+        if (constraint instanceof PatternConstraint)
+        {
+            return ((PatternConstraint) constraint).patternType() != PatternType.CUSTOM;
+        }
+        if (constraint instanceof ConstraintTree)
+        {
+            return ((ConstraintTree) constraint).constraints().stream()
+                                                .allMatch(ConstraintOptimizer::isSideEffectFree);
+        }
+        return constraint instanceof SubjectPresentConstraint
+               || constraint instanceof SubjectNotPresentConstraint
+               || constraint instanceof RestrictConstraint
+               || constraint instanceof SideEffectFree;
+    }
+
+    private static boolean isReorderable(final Constraint constraint)
+    {
+        return constraint instanceof ConstraintTree
+               && (((ConstraintTree) constraint).operator() == Operator.AND || ((ConstraintTree) constraint).operator() == Operator.OR);
+    }
+
+    private static Constraint rebuild(final ConstraintTree tree,
+                                      final List<Constraint> constraints)
+    {
+        final ConstraintTree rebuilt = new ConstraintTree(tree.operator(),
+                                                          constraints.toArray(new Constraint[0]));
+        return tree.negated() ? rebuilt.negate()
+                              : rebuilt;
+    }
+
+    /**
+     * Sort the movable items by rank, and merge them with the other items so those keep their relative order.
+     */
+    private static <T> List<T> order(final List<T> items,
+                                     final Predicate<T> movable,
+                                     final ToDoubleFunction<T> rank)
+    {
+        final List<T> moved = new ArrayList<>();
+        final List<T> fixed = new ArrayList<>();
+        for (T item : items)
+        {
+            (movable.test(item) ? moved : fixed).add(item);
+        }
+        moved.sort(Comparator.comparingDouble(rank));
+
+        final List<T> ordered = new ArrayList<>(items.size());
+        int i = 0;
+        int j = 0;
+        while (i < moved.size() && j < fixed.size())
+        {
+            ordered.add(rank.applyAsDouble(moved.get(i)) <= rank.applyAsDouble(fixed.get(j)) ? moved.get(i++)
+                                                                                              : fixed.get(j++));
+        }
+        ordered.addAll(moved.subList(i, moved.size()));
+        ordered.addAll(fixed.subList(j, fixed.size()));
+        return ordered;
+    }
+
+    private static final class SideEffectFree implements Constraint
+    {
+        private final Constraint constraint;
+        private final int cost;
+
+        private SideEffectFree(final Constraint constraint,
+                               final int cost)
+        {
+            this.constraint = constraint;
+            this.cost = cost;
+        }
+
+        @Override
+        public CompletionStage<F.Tuple<Boolean, Http.RequestHeader>> test(final Http.RequestHeader requestHeader,
+                                                                          final DeadboltHandler handler,
+                                                                          final Optional<String> globalMetaData,
+                                                                          final BiFunction<Optional<String>, Optional<String>, Optional<String>> metaFn)
+        {
+            return constraint.test(requestHeader,
+                                   handler,
+                                   globalMetaData,
+                                   metaFn);
+        }
+    }
+
+    /**
+     * Tests the current ordering of the tree, and rebuilds it from the measurements every replanInterval tests.
+     */
+    private static final class AdaptiveTree implements Constraint
+    {
+        private final Node root;
+        private final int replanInterval;
+        private final AtomicLong tests = new AtomicLong();
+        private volatile Constraint current;
+
+        private AdaptiveTree(final Node root,
+                             final int replanInterval)
+        {
+            this.root = root;
+            this.replanInterval = replanInterval;
+            this.current = root.build();
+        }
+
+        @Override
+        public CompletionStage<F.Tuple<Boolean, Http.RequestHeader>> test(final Http.RequestHeader requestHeader,
+                                                                          final DeadboltHandler handler,
+                                                                          final Optional<String> globalMetaData,
+                                                                          final BiFunction<Optional<String>, Optional<String>, Optional<String>> metaFn)
+        {
+            if (tests.incrementAndGet() % replanInterval == 0)
+            {
+                current = root.build();
+            }
+            return current.test(requestHeader,
+                                handler,
+                                globalMetaData,
+                                metaFn);
+        }
+    }
+
+    /**
+     * A branch of an adaptive tree, and what has been measured about it.
+     */
+    private static final class Node
+    {
+        private final Constraint constraint;
+        private final List<Node> children;
+        private final boolean movable;
+        private final int estimatedCost;
+
+        private final LongAdder samples = new LongAdder();
+        private final LongAdder passes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        private Node(final Constraint constraint)
+        {
+            this.constraint = constraint;
+            this.children = isReorderable(constraint) ? ((ConstraintTree) constraint).constraints().stream()
+                                                                                     .map(Node::new)
+                                                                                     .collect(Collectors.toList())
+                                                      : Collections.emptyList();
+            this.movable = isSideEffectFree(constraint);
+            this.estimatedCost = cost(constraint);
+        }
+
+        private void record(final boolean passed,
+                            final long elapsed)
+        {
+            samples.increment();
+            nanos.add(elapsed);
+            if (passed)
+            {
+                passes.increment();
+            }
+        }
+
+        /**
+         * @return the constraint with its branches in the best order known so far
+         */
+        private Constraint build()
+        {
+            if (children.isEmpty())
+            {
+                return constraint;
+            }
+            final ConstraintTree tree = (ConstraintTree) constraint;
+
+            // converts estimated costs into nanoseconds, using the branches that have been measured
+            final double nanosPerCost = children.stream()
+                                                .filter(child -> child.samples.sum() > 0)
+                                                .mapToDouble(child -> child.meanNanos() / Math.max(1, child.estimatedCost))
+                                                .average()
+                                                .orElse(1.0);
+            final boolean and = tree.operator() == Operator.AND;
+            final ToDoubleFunction<Node> rank = child -> {
+                final double cost = child.samples.sum() > 0 ? child.meanNanos()
+                                                            : child.estimatedCost * nanosPerCost;
+                // a branch decides an AND when it fails, and an OR when it passes
+                final double passRate = (child.passes.sum() + 1.0) / (child.samples.sum() + 2.0);
+                return cost / (and ? 1.0 - passRate : passRate);
+            };
+            return rebuild(tree,
+                           order(children,
+                                 child -> child.movable,
+                                 rank).stream()
+                                      .map(child -> (Constraint) new Measured(child,
+                                                                              child.build()))
+                                      .collect(Collectors.toList()));
+        }
+
+        private double meanNanos()
+        {
+            return (double) nanos.sum() / samples.sum();
+        }
+    }
+
+    private static final class Measured implements Constraint
+    {
+        private final Node node;
+        private final Constraint constraint;
+
+        private Measured(final Node node,
+                         final Constraint constraint)
+        {
+            this.node = node;
+            this.constraint = constraint;
+        }
+
+        @Override
+        public CompletionStage<F.Tuple<Boolean, Http.RequestHeader>> test(final Http.RequestHeader requestHeader,
+                                                                          final DeadboltHandler handler,
+                                                                          final Optional<String> globalMetaData,
+                                                                          final BiFunction<Optional<String>, Optional<String>, Optional<String>> metaFn)
+        {
+            final long start = System.nanoTime();
+            return constraint.test(requestHeader,
+                                   handler,
+                                   globalMetaData,
+                                   metaFn)
+                             .whenComplete((result, error) -> {
+                                 if (error == null)
+                                 {
+                                     node.record(result._1,
+                                                 System.nanoTime() - start);
+                                 }
+                             });
+        }
+    }
+}
@@ -19,8 +19,9 @@ import be.objectify.deadbolt.java.DeadboltHandler;
 import play.libs.F;
 import play.mvc.Http;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -31,22 +32,84 @@ import java.util.stream.Collectors;
 
 /**
  * A list of constraints combined by {@link Operator}.  Those constraints may themselves be trees.
+ * <p>
+ * The tree is compiled when it is created into a flat evaluation plan: each constraint that isn't itself a tree is a
+ * step, and each step knows which step to jump to when it passes and when it fails.  Nested trees and negated trees
+ * are inlined into the plan, so testing the tree only steps through the plan, short-circuiting exactly as the
+ * equivalent chain of {@link Constraint#and(Constraint)} and {@link Constraint#or(Constraint)} would.
+ * </p>
+ * <p>
+ * Trees using {@link Operator#PARALLEL_AND} or {@link Operator#PARALLEL_OR} are a single step of the plan that tests
+ * all of their constraints at the same time.
+ * </p>
  *
  * @author Steve Chaloner (steve@objectify.be)
  */
 public class ConstraintTree implements Constraint
 {
+    // jump targets that end the evaluation
+    private static final int PASS = -1;
+    private static final int FAIL = -2;
+
     private final Operator operator;
 
-    private final List<Constraint> constraints = new LinkedList<>();
+    private final List<Constraint> constraints;
+
+    private final boolean negated;
+
+    private final Constraint[] steps;
+    private final int[] onPass;
+    private final int[] onFail;
+    private final int entry;
 
     public ConstraintTree(final Operator operator,
                           final Constraint... constraints)
+    {
+        this(operator,
+             Collections.unmodifiableList(Arrays.stream(constraints)
+                                                .filter(Objects::nonNull)
+                                                .collect(Collectors.toList())),
+             false);
+    }
+
+    private ConstraintTree(final Operator operator,
+                           final List<Constraint> constraints,
+                           final boolean negated)
     {
         this.operator = operator;
-        Arrays.stream(constraints)
-              .filter(Objects::nonNull)
-              .collect(Collectors.toCollection(() -> this.constraints));
+        this.constraints = constraints;
+        this.negated = negated;
+
+        final PlanBuilder plan = new PlanBuilder();
+        this.entry = plan.compile(this,
+                                  PASS,
+                                  FAIL);
+        this.steps = plan.steps.toArray(new Constraint[0]);
+        this.onPass = plan.onPass.stream().mapToInt(Integer::intValue).toArray();
+        this.onFail = plan.onFail.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Override
+    public Constraint negate()
+    {
+        return new ConstraintTree(operator,
+                                  constraints,
+                                  !negated);
+    }
+
+    Operator operator()
+    {
+        return operator;
+    }
+
+    List<Constraint> constraints()
+    {
+        return constraints;
+    }
+
+    boolean negated()
+    {
+        return negated;
     }
 
     @Override
@@ -55,24 +118,104 @@ public class ConstraintTree implements Constraint
                                          final Optional<String> globalMetaData,
                                          final BiFunction<Optional<String>, Optional<String>, Optional<String>> metaFn)
     {
-        final CompletionStage<F.Tuple<Boolean, Http.RequestHeader>> result;
-        if (constraints.isEmpty())
+        return run(entry,
+                   requestHeader,
+                   handler,
+                   globalMetaData,
+                   metaFn);
+    }
+
+    /**
+     * Step through the plan from the given step.  Steps that complete immediately are followed in a loop; the
+     * evaluation only continues asynchronously when a step has to be waited for.
+     */
+    private CompletionStage<F.Tuple<Boolean, Http.RequestHeader>> run(final int from,
+                                                                      final Http.RequestHeader requestHeader,
+                                                                      final DeadboltHandler handler,
+                                                                      final Optional<String> globalMetaData,
+                                                                      final BiFunction<Optional<String>, Optional<String>, Optional<String>> metaFn)
+    {
+        int step = from;
+        Http.RequestHeader current = requestHeader;
+        while (step >= 0)
         {
-            result = CompletableFuture.completedFuture(F.Tuple(false, requestHeader));
+            final CompletionStage<F.Tuple<Boolean, Http.RequestHeader>> stage = steps[step].test(current,
+                                                                                                 handler,
+                                                                                                 globalMetaData,
+                                                                                                 metaFn);
+            if (!isCompletedNormally(stage))
+            {
+                final int pending = step;
+                return stage.thenCompose(result -> run(result._1 ? onPass[pending] : onFail[pending],
+                                                       result._2,
+                                                       handler,
+                                                       globalMetaData,
+                                                       metaFn));
+            }
+            final F.Tuple<Boolean, Http.RequestHeader> result = stage.toCompletableFuture().join();
+            current = result._2;
+            step = result._1 ? onPass[step] : onFail[step];
         }
-        else
+        return CompletableFuture.completedFuture(F.Tuple(step == PASS,
+                                                         current));
+    }
+
+    private static boolean isCompletedNormally(final CompletionStage<?> stage)
+    {
+        return stage instanceof CompletableFuture
+               && ((CompletableFuture<?>) stage).isDone()
+               && !((CompletableFuture<?>) stage).isCompletedExceptionally();
+    }
+
+    /**
+     * Compiles trees into steps, working backwards from the end of each list of constraints so the jump targets of a
+     * step are known when it is added.
+     */
+    private static final class PlanBuilder
+    {
+        private final List<Constraint> steps = new ArrayList<>();
+        private final List<Integer> onPass = new ArrayList<>();
+        private final List<Integer> onFail = new ArrayList<>();
+
+        /**
+         * @return the step to start from to evaluate the constraint, or PASS or FAIL if the outcome is already known
+         */
+        private int compile(final Constraint constraint,
+                            final int passTarget,
+                            final int failTarget)
         {
-            Constraint current = constraints.get(0);
-            for (int i = 1; i < constraints.size(); i++)
+            if (!(constraint instanceof ConstraintTree))
+            {
+                steps.add(constraint);
+                onPass.add(passTarget);
+                onFail.add(failTarget);
+                return steps.size() - 1;
+            }
+
+            final ConstraintTree tree = (ConstraintTree) constraint;
+            final int treePass = tree.negated ? failTarget : passTarget;
+            final int treeFail = tree.negated ? passTarget : failTarget;
+            if (tree.operator == Operator.PARALLEL_AND || tree.operator == Operator.PARALLEL_OR)
+            {
+                steps.add(new ParallelConstraint(tree.operator == Operator.PARALLEL_AND,
+                                                 tree.constraints));
+                onPass.add(treePass);
+                onFail.add(treeFail);
+                return steps.size() - 1;
+            }
+            // an empty tree always fails
+            int next = treeFail;
+            for (int i = tree.constraints.size() - 1; i >= 0; i--)
             {
-                current = operator.apply(current,
-                                         constraints.get(i));
+                final boolean last = i == tree.constraints.size() - 1;
+                next = tree.operator == Operator.AND ? compile(tree.constraints.get(i),
+                                                               last ? treePass : next,
+                                                               treeFail)
+                                                     : compile(tree.constraints.get(i),
+                                                               treePass,
+                                                               last ? treeFail : next);
             }
-            result = current.test(requestHeader,
-                                  handler,
-                                  globalMetaData,
-                                  metaFn);
+            return next;
         }
-        return result;
     }
 }
@@ -15,6 +15,7 @@
  */
 package be.objectify.deadbolt.java.composite;
 
+import java.util.Arrays;
 import java.util.function.BiFunction;
 
 /**
@@ -39,5 +40,35 @@ public enum Operator implements BiFunction<Constraint, Constraint, Constraint>
                 {
                     return c1.or(c2);
                 }
+            },
+
+    /**
+     * Like {@link #AND}, but the constraints are tested at the same time.  See {@link ParallelConstraint}.
+     */
+    PARALLEL_AND
+            {
+                @Override
+                public Constraint apply(final Constraint c1,
+                                        final Constraint c2)
+                {
+                    return new ParallelConstraint(true,
+                                                  Arrays.asList(c1,
+                                                                c2));
+                }
+            },
+
+    /**
+     * Like {@link #OR}, but the constraints are tested at the same time.  See {@link ParallelConstraint}.
+     */
+    PARALLEL_OR
+            {
+                @Override
+                public Constraint apply(final Constraint c1,
+                                        final Constraint c2)
+                {
+                    return new ParallelConstraint(false,
+                                                  Arrays.asList(c1,
+                                                                c2));
+                }
             }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.composite;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import play.libs.F;
+import play.mvc.Http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Starts all of its constraints at once.  The first constraint to decide the outcome - the first to fail for AND, the
+ * first to pass for OR - completes the test, and the constraints that are still pending are cancelled.
+ * <p>
+ * Every constraint is tested with the request header given to this constraint, so attributes added by one constraint
+ * are not seen by the others.  The outcome carries the request header of the constraint that decided it; if none
+ * did, it carries the request header of the last constraint.  A constraint that fails with an exception only fails the
+ * test if no other constraint decides the outcome.  No constraints always fails, as an empty {@link ConstraintTree}
+ * does.
+ * </p>
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+final class ParallelConstraint implements Constraint
+{
+    private final boolean and;
+
+    private final List<Constraint> constraints;
+
+    ParallelConstraint(final boolean and,
+                       final List<Constraint> constraints)
+    {
+        this.and = and;
+        this.constraints = constraints;
+    }
+
+    @Override
+    public CompletionStage<F.Tuple<Boolean, Http.RequestHeader>> test(final Http.RequestHeader requestHeader,
+                                                                      final DeadboltHandler handler,
+                                                                      final Optional<String> globalMetaData,
+                                                                      final BiFunction<Optional<String>, Optional<String>, Optional<String>> metaFn)
+    {
+        if (constraints.isEmpty())
+        {
+            return CompletableFuture.completedFuture(F.Tuple(false,
+                                                             requestHeader));
+        }
+
+        final CompletableFuture<F.Tuple<Boolean, Http.RequestHeader>> outcome = new CompletableFuture<>();
+        final int count = constraints.size();
+        final List<CompletableFuture<F.Tuple<Boolean, Http.RequestHeader>>> started = new ArrayList<>(count);
+        final AtomicInteger remaining = new AtomicInteger(count);
+        for (int i = 0; i < count && !outcome.isDone(); i++)
+        {
+            final CompletableFuture<F.Tuple<Boolean, Http.RequestHeader>> stage = start(constraints.get(i),
+                                                                                       requestHeader,
+                                                                                       handler,
+                                                                                       globalMetaData,
+                                                                                       metaFn);
+            started.add(stage);
+            stage.whenComplete((result, error) -> {
+                if (error == null && result._1 != and)
+                {
+                    outcome.complete(result);
+                }
+                else if (remaining.decrementAndGet() == 0)
+                {
+                    final Throwable failure = firstFailure(started);
+                    if (failure != null)
+                    {
+                        outcome.completeExceptionally(failure);
+                    }
+                    else
+                    {
+                        // nothing decided the outcome, so it's the outcome of the last constraint
+                        outcome.complete(started.get(count - 1).join());
+                    }
+                }
+            });
+        }
+        // registered once every constraint has been started, so none are missed
+        return outcome.whenComplete((result, error) -> cancelPending(started));
+    }
+
+    private static void cancelPending(final List<? extends CompletableFuture<?>> started)
+    {
+        for (CompletableFuture<?> stage : started)
+        {
+            if (!stage.isDone())
+            {
+                stage.cancel(false);
+            }
+        }
+    }
+
+    private static CompletableFuture<F.Tuple<Boolean, Http.RequestHeader>> start(final Constraint constraint,
+                                                                                 final Http.RequestHeader requestHeader,
+                                                                                 final DeadboltHandler handler,
+                                                                                 final Optional<String> globalMetaData,
+                                                                                 final BiFunction<Optional<String>, Optional<String>, Optional<String>> metaFn)
+    {
+        try
+        {
+            return constraint.test(requestHeader,
+                                   handler,
+                                   globalMetaData,
+                                   metaFn)
+                             .toCompletableFuture();
+        }
+        catch (RuntimeException e)
+        {
+            final CompletableFuture<F.Tuple<Boolean, Http.RequestHeader>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    private static Throwable firstFailure(final List<? extends CompletableFuture<?>> started)
+    {
+        for (CompletableFuture<?> stage : started)
+        {
+            if (stage.isCompletedExceptionally())
+            {
+                try
+                {
+                    stage.join();
+                }
+                catch (CompletionException e)
+                {
+                    return e.getCause();
+                }
+                catch (RuntimeException e)
+                {
+                    return e;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -54,6 +54,11 @@ public class PatternConstraint implements Constraint
         this.constraintLogic = constraintLogic;
     }
 
+    PatternType patternType()
+    {
+        return patternType;
+    }
+
     @Override
     public CompletionStage<F.Tuple<Boolean, Http.RequestHeader>> test(final Http.RequestHeader requestHeader,
                                          final DeadboltHandler handler,
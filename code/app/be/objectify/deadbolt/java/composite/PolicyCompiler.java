@@ -0,0 +1,281 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.composite;
+
+import be.objectify.deadbolt.java.models.PatternType;
+import be.objectify.deadbolt.java.patterns.LinearPattern;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigList;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigValue;
+import com.typesafe.config.ConfigValueType;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiles composite constraints declared in HOCON or JSON.  Each top-level key of the configuration is the name of a
+ * constraint, and its value is a node with exactly one of the following keys:
+ * <ul>
+ * <li>subjectPresent - an object, optionally with content</li>
+ * <li>subjectNotPresent - an object, optionally with content</li>
+ * <li>restrict - a list of role groups, e.g. [["admin"], ["editor", "!guest"]].  Within a group, the roles are
+ * ANDed.  The groups are OR'd.</li>
+ * <li>pattern - an object with value, and optionally type (EQUALITY by default), invert and meta</li>
+ * <li>dynamic - the name of the resource, or an object with name and optionally meta</li>
+ * <li>and, or - a list of nodes</li>
+ * <li>not - a node</li>
+ * </ul>
+ * For example:
+ * <pre>
+ * curatorOrSubjectNotPresent {
+ *   or = [
+ *     { subjectNotPresent = {} },
+ *     { pattern { value = "curator.museum.*", type = REGEX } }
+ *   ]
+ * }
+ * </pre>
+ * Everything is checked when the constraints are compiled, including the syntax of regular expressions, so a
+ * mistake is reported with its location instead of failing a request.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+@Singleton
+public class PolicyCompiler
+{
+    private final ConstraintBuilders builders;
+
+    @Inject
+    public PolicyCompiler(final ConstraintBuilders builders)
+    {
+        this.builders = builders;
+    }
+
+    /**
+     * @param policies the declared constraints
+     * @return the compiled constraints, by name
+     * @throws ConfigException if a constraint is invalid
+     */
+    public Map<String, Constraint> compile(final Config policies)
+    {
+        final Map<String, Constraint> constraints = new LinkedHashMap<>();
+        policies.root().forEach((name, node) -> constraints.put(name,
+                                                                compile(node,
+                                                                        name)));
+        return constraints;
+    }
+
+    private Constraint compile(final ConfigValue node,
+                               final String path)
+    {
+        if (node.valueType() != ConfigValueType.OBJECT || ((ConfigObject) node).size() != 1)
+        {
+            throw new ConfigException.BadValue(node.origin(),
+                                               path,
+                                               "A constraint must be an object with exactly one of subjectPresent, subjectNotPresent, restrict, pattern, dynamic, and, or, not");
+        }
+        final Map.Entry<String, ConfigValue> entry = ((ConfigObject) node).entrySet().iterator().next();
+        final String type = entry.getKey();
+        final ConfigValue value = entry.getValue();
+        final String at = path + '.' + type;
+        switch (type)
+        {
+            case "subjectPresent":
+                return builders.subjectPresent()
+                               .content(optionalString(settings(value, at), "content"))
+                               .build();
+            case "subjectNotPresent":
+                return builders.subjectNotPresent()
+                               .content(optionalString(settings(value, at), "content"))
+                               .build();
+            case "restrict":
+                return builders.restrict(roleGroups(value,
+                                                    at))
+                               .build();
+            case "pattern":
+                return pattern(settings(value, at),
+                               value,
+                               at);
+            case "dynamic":
+                return dynamic(value,
+                               at);
+            case "and":
+                return new ConstraintTree(Operator.AND,
+                                          children(value, at));
+            case "or":
+                return new ConstraintTree(Operator.OR,
+                                          children(value, at));
+            case "not":
+                return compile(value,
+                               at).negate();
+            default:
+                throw new ConfigException.BadValue(node.origin(),
+                                                   at,
+                                                   "Unknown constraint type [" + type + "]");
+        }
+    }
+
+    private Constraint pattern(final Config settings,
+                               final ConfigValue value,
+                               final String path)
+    {
+        if (!settings.hasPath("value"))
+        {
+            throw new ConfigException.BadValue(value.origin(),
+                                               path,
+                                               "A pattern needs a value");
+        }
+        final String patternValue = settings.getString("value");
+        final PatternType patternType;
+        try
+        {
+            patternType = settings.hasPath("type") ? PatternType.valueOf(settings.getString("type").toUpperCase(Locale.ENGLISH))
+                                                   : PatternType.EQUALITY;
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new ConfigException.BadValue(value.origin(),
+                                               path + ".type",
+                                               "Unknown pattern type [" + settings.getString("type") + "]");
+        }
+        try
+        {
+            if (patternType == PatternType.REGEX)
+            {
+                Pattern.compile(patternValue);
+            }
+            else if (patternType == PatternType.LINEAR_REGEX)
+            {
+                LinearPattern.compile(patternValue);
+            }
+        }
+        catch (PatternSyntaxException e)
+        {
+            throw new ConfigException.BadValue(value.origin(),
+                                               path + ".value",
+                                               "Invalid pattern: " + e.getMessage(),
+                                               e);
+        }
+        return builders.pattern(patternValue,
+                                patternType)
+                       .invert(settings.hasPath("invert") && settings.getBoolean("invert"))
+                       .meta(optionalString(settings, "meta"))
+                       .build();
+    }
+
+    private Constraint dynamic(final ConfigValue value,
+                               final String path)
+    {
+        if (value.valueType() == ConfigValueType.STRING)
+        {
+            return builders.dynamic(String.valueOf(value.unwrapped()))
+                           .build();
+        }
+        final Config settings = settings(value,
+                                         path);
+        if (!settings.hasPath("name"))
+        {
+            throw new ConfigException.BadValue(value.origin(),
+                                               path,
+                                               "A dynamic constraint needs a name");
+        }
+        return builders.dynamic(settings.getString("name"))
+                       .meta(optionalString(settings, "meta"))
+                       .build();
+    }
+
+    private List<String[]> roleGroups(final ConfigValue value,
+                                      final String path)
+    {
+        final List<String[]> roleGroups = new ArrayList<>();
+        for (ConfigValue group : list(value, path))
+        {
+            if (group.valueType() != ConfigValueType.LIST || ((ConfigList) group).isEmpty())
+            {
+                throw new ConfigException.BadValue(group.origin(),
+                                                   path,
+                                                   "A role group must be a non-empty list of role names");
+            }
+            final List<String> roles = new ArrayList<>();
+            for (ConfigValue role : (ConfigList) group)
+            {
+                if (role.valueType() != ConfigValueType.STRING)
+                {
+                    throw new ConfigException.BadValue(role.origin(),
+                                                       path,
+                                                       "A role name must be a string");
+                }
+                roles.add(String.valueOf(role.unwrapped()));
+            }
+            roleGroups.add(roles.toArray(new String[0]));
+        }
+        return roleGroups;
+    }
+
+    private Constraint[] children(final ConfigValue value,
+                                  final String path)
+    {
+        final List<Constraint> children = new ArrayList<>();
+        final ConfigList nodes = list(value,
+                                      path);
+        for (int i = 0; i < nodes.size(); i++)
+        {
+            children.add(compile(nodes.get(i),
+                                 path + '[' + i + ']'));
+        }
+        return children.toArray(new Constraint[0]);
+    }
+
+    private static ConfigList list(final ConfigValue value,
+                                   final String path)
+    {
+        if (value.valueType() != ConfigValueType.LIST || ((ConfigList) value).isEmpty())
+        {
+            throw new ConfigException.BadValue(value.origin(),
+                                               path,
+                                               "Expected a non-empty list");
+        }
+        return (ConfigList) value;
+    }
+
+    private static Config settings(final ConfigValue value,
+                                   final String path)
+    {
+        if (value.valueType() != ConfigValueType.OBJECT)
+        {
+            throw new ConfigException.BadValue(value.origin(),
+                                               path,
+                                               "Expected an object");
+        }
+        return ((ConfigObject) value).toConfig();
+    }
+
+    private static Optional<String> optionalString(final Config settings,
+                                                   final String path)
+    {
+        return settings.hasPath(path) ? Optional.of(settings.getString(path))
+                                      : Optional.empty();
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.composite;
+
+import be.objectify.deadbolt.java.cache.CompositeCache;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigParseOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.Environment;
+import play.inject.ApplicationLifecycle;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Registers the composite constraints declared in the file given by deadbolt.java.policies.file, compiled by
+ * {@link PolicyCompiler}.  The file is loaded when the loader is created, so an invalid file stops the application
+ * from starting.  When the file is loaded again, the constraints from its previous version are replaced in a single
+ * step if the {@link CompositeCache} supports it; constraints registered in code are kept.  A constraint in the file
+ * may not have the same name as a constraint registered in code, and a constraint from the file that is later
+ * registered again in code belongs to the code from then on.  If deadbolt.java.policies.watch is true, the file is
+ * loaded again whenever it changes, and an invalid change is logged and ignored.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+@Singleton
+public class PolicyLoader
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(PolicyLoader.class);
+
+    private final File file;
+
+    private final PolicyCompiler compiler;
+
+    private final CompositeCache compositeCache;
+
+    // the constraints registered from the file, as the cache holds them
+    private Map<String, Constraint> loaded = Collections.emptyMap();
+
+    private WatchService watchService;
+
+    @Inject
+    public PolicyLoader(final Config config,
+                        final Environment environment,
+                        final PolicyCompiler compiler,
+                        final CompositeCache compositeCache,
+                        final ApplicationLifecycle lifecycle)
+    {
+        this(resolve(config.getString("deadbolt.java.policies.file"),
+                     environment),
+             compiler,
+             compositeCache);
+        if (config.hasPath("deadbolt.java.policies.watch") && config.getBoolean("deadbolt.java.policies.watch"))
+        {
+            watch();
+        }
+        lifecycle.addStopHook(() -> {
+            stop();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    public PolicyLoader(final File file,
+                        final PolicyCompiler compiler,
+                        final CompositeCache compositeCache)
+    {
+        this.file = file;
+        this.compiler = compiler;
+        this.compositeCache = compositeCache;
+        load();
+    }
+
+    /**
+     * Load the file, and replace the constraints from its previous version with the ones it declares now.
+     *
+     * @throws ConfigException if the file can't be read, a constraint is invalid or a constraint has the name of one
+     *                         registered in code, in which case the current constraints are kept
+     */
+    public synchronized void load()
+    {
+        final Config policies = ConfigFactory.parseFile(file,
+                                                        ConfigParseOptions.defaults()
+                                                                          .setAllowMissing(false))
+                                             .resolve();
+        final Map<String, Constraint> constraints = compiler.compile(policies);
+        final Set<String> owned = new HashSet<>();
+        loaded.forEach((name, constraint) -> {
+            if (compositeCache.apply(name).orElse(null) == constraint)
+            {
+                owned.add(name);
+            }
+        });
+        for (String name : constraints.keySet())
+        {
+            if (!owned.contains(name) && registered(name))
+            {
+                throw new ConfigException.BadValue(policies.root().get(name).origin(),
+                                                   name,
+                                                   "A composite constraint named [" + name + "] is already registered in code");
+            }
+        }
+        compositeCache.replace(owned,
+                               constraints);
+        final Map<String, Constraint> registered = new HashMap<>();
+        constraints.keySet().forEach(name -> registered.put(name,
+                                                            compositeCache.apply(name).orElse(null)));
+        loaded = registered;
+        LOGGER.info("Loaded [{}] composite constraints from [{}]",
+                    constraints.size(),
+                    file);
+    }
+
+    /**
+     * Load the file again whenever it changes.
+     */
+    public synchronized void watch()
+    {
+        if (watchService != null)
+        {
+            return;
+        }
+        final Path directory = file.getAbsoluteFile().toPath().getParent();
+        try
+        {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService,
+                               StandardWatchEventKinds.ENTRY_CREATE,
+                               StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not watch [" + file + "] for changes",
+                                           e);
+        }
+        final WatchService service = watchService;
+        final Thread watcher = new Thread(() -> watch(service),
+                                          "deadbolt-policy-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stop watching the file.
+     */
+    public synchronized void stop()
+    {
+        if (watchService != null)
+        {
+            try
+            {
+                watchService.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.warn("Could not stop watching [{}]",
+                            file,
+                            e);
+            }
+            watchService = null;
+        }
+    }
+
+    private void watch(final WatchService service)
+    {
+        while (true)
+        {
+            final WatchKey key;
+            try
+            {
+                key = service.take();
+            }
+            catch (InterruptedException | ClosedWatchServiceException e)
+            {
+                return;
+            }
+            final boolean changed = key.pollEvents().stream()
+                                       .anyMatch(event -> file.getName().equals(String.valueOf(event.context())));
+            if (changed)
+            {
+                try
+                {
+                    load();
+                }
+                catch (RuntimeException e)
+                {
+                    LOGGER.error("Could not load [{}], the current composite constraints are kept",
+                                 file,
+                                 e);
+                }
+            }
+            if (!key.reset())
+            {
+                return;
+            }
+        }
+    }
+
+    private boolean registered(final String name)
+    {
+        return compositeCache.apply(name)
+                             .filter(constraint -> !(constraint instanceof ExceptionThrowingConstraint))
+                             .isPresent();
+    }
+
+    private static File resolve(final String path,
+                                final Environment environment)
+    {
+        final File file = new File(path);
+        return file.isAbsolute() ? file
+                                 : environment.getFile(path);
+    }
+}
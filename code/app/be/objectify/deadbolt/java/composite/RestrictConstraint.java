@@ -15,27 +15,25 @@
  */
 package be.objectify.deadbolt.java.composite;
 
+import be.objectify.deadbolt.java.CompiledRoleGroups;
 import be.objectify.deadbolt.java.ConstraintLogic;
 import be.objectify.deadbolt.java.ConstraintPoint;
 import be.objectify.deadbolt.java.DeadboltHandler;
 import play.libs.F;
 import play.mvc.Http;
 
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.function.BiFunction;
-import java.util.stream.Collectors;
 
 /**
  * @author Steve Chaloner (steve@objectify.be)
  */
 public class RestrictConstraint implements Constraint
 {
-    private final List<String[]> roleGroups = new LinkedList<>();
+    private final CompiledRoleGroups roleGroups;
     private final ConstraintLogic constraintLogic;
     private final Optional<String> content;
 
@@ -44,9 +42,7 @@ public class RestrictConstraint implements Constraint
                               final ConstraintLogic constraintLogic)
     {
         this.content = content;
-        roleGroups.stream()
-                  .filter(Objects::nonNull)
-                  .collect(Collectors.toCollection(() -> this.roleGroups));
+        this.roleGroups = constraintLogic.compileRoleGroups(roleGroups);
         this.constraintLogic = constraintLogic;
     }
 
@@ -59,7 +55,7 @@ public class RestrictConstraint implements Constraint
         return constraintLogic.restrict(requestHeader,
                                         handler,
                                         content,
-                                        () -> roleGroups,
+                                        roleGroups,
                                         rh -> CompletableFuture.completedFuture(F.Tuple(Boolean.TRUE, rh)),
                                         (rh, dh, cnt) -> CompletableFuture.completedFuture(F.Tuple(Boolean.FALSE, rh)),
                                         ConstraintPoint.CONTROLLER);
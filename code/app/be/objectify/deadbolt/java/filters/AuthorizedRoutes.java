@@ -16,13 +16,22 @@
 package be.objectify.deadbolt.java.filters;
 
 import javax.inject.Provider;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.BiFunction;
 
 /**
  * Matches an invoked route to a constraint.  If a constraint is present for that route, it
  * determines if the corresponding action should be invoked.
+ * <p>
+ * The routes are indexed by path and method the first time a route is looked up, so a lookup costs the same no matter
+ * how many routes there are.  As with a scan of {@link #routes()}, the first route that matches is used, so an earlier
+ * route for {@link Methods#ANY} takes precedence over a later route for a specific method.  If the routes change after
+ * the first lookup, call {@link #reindex()}.
+ * </p>
  *
  * @author Steve Chaloner (steve@objectify.be)
  * @since 2.5.1
@@ -31,6 +40,8 @@ public abstract class AuthorizedRoutes implements BiFunction<String, String, Opt
 {
     public final FilterConstraints filterConstraints;
 
+    private volatile Map<String, PathRoutes> index;
+
     public AuthorizedRoutes(final Provider<FilterConstraints> filterConstraints)
     {
         this.filterConstraints = filterConstraints.get();
@@ -40,12 +51,90 @@ public abstract class AuthorizedRoutes implements BiFunction<String, String, Opt
     public Optional<AuthorizedRoute> apply(final String method,
                                            final String path)
     {
-        return routes().stream()
-                       .filter(authRoute -> authRoute.method()
-                                                     .map(routeMethod -> routeMethod.equals(method) && authRoute.path().equals(path))
-                                                     .orElseGet(() -> authRoute.path().equals(path)))
-                       .findFirst();
+        final PathRoutes pathRoutes = index().get(path);
+        return pathRoutes == null ? Optional.empty()
+                                  : Optional.ofNullable(pathRoutes.firstMatch(method));
+    }
+
+    /**
+     * Rebuild the index from {@link #routes()}.
+     */
+    public void reindex()
+    {
+        index = buildIndex(routes());
     }
 
     public abstract List<AuthorizedRoute> routes();
+
+    private Map<String, PathRoutes> index()
+    {
+        Map<String, PathRoutes> current = index;
+        if (current == null)
+        {
+            synchronized (this)
+            {
+                current = index;
+                if (current == null)
+                {
+                    current = buildIndex(routes());
+                    index = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static Map<String, PathRoutes> buildIndex(final List<AuthorizedRoute> routes)
+    {
+        final Map<String, PathRoutes> index = new HashMap<>();
+        for (int i = 0; i < routes.size(); i++)
+        {
+            final AuthorizedRoute route = routes.get(i);
+            index.computeIfAbsent(route.path(),
+                                  path -> new PathRoutes())
+                 .add(route,
+                      i);
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * The routes of a single path.  Only the first route for each method, and the first route for any method, can
+     * ever match, so the others are not kept.
+     */
+    private static final class PathRoutes
+    {
+        private final Map<String, Integer> positions = new HashMap<>();
+        private final Map<String, AuthorizedRoute> byMethod = new HashMap<>();
+        private AuthorizedRoute anyMethod;
+        private int anyMethodPosition = Integer.MAX_VALUE;
+
+        private void add(final AuthorizedRoute route,
+                         final int position)
+        {
+            if (route.method().isPresent())
+            {
+                final String method = route.method().get();
+                if (!byMethod.containsKey(method))
+                {
+                    byMethod.put(method,
+                                 route);
+                    positions.put(method,
+                                  position);
+                }
+            }
+            else if (anyMethod == null)
+            {
+                anyMethod = route;
+                anyMethodPosition = position;
+            }
+        }
+
+        private AuthorizedRoute firstMatch(final String method)
+        {
+            final AuthorizedRoute specific = byMethod.get(method);
+            return specific != null && positions.get(method) < anyMethodPosition ? specific
+                                                                                  : anyMethod;
+        }
+    }
 }
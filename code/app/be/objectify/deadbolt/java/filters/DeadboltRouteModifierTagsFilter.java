@@ -18,6 +18,8 @@ package be.objectify.deadbolt.java.filters;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -61,7 +63,7 @@ import play.routing.Router;
  * <li>handler - optional.  The name of a handler in the HandlerCache</li>
  * </ul>
  * </li>
- * <li>deadbolt:pattern:value[constraint value]:type[EQUALITY|REGEX|CUSTOM]:invert[true|false]:handler[handler name]
+ * <li>deadbolt:pattern:value[constraint value]:type[EQUALITY|REGEX|LINEAR_REGEX|WILDCARD|CUSTOM]:invert[true|false]:handler[handler name]
  * <ul>
  * <li>value - required.  Used to test the permissions of a subject.</li>
  * <li>type - required.  The pattern type, case sensitive.</li>
@@ -91,6 +93,9 @@ import play.routing.Router;
  * <p>
  * Restrict is a tricky one, because the possible combinations of roles leads to a nightmare to parse.  Instead, define your role constraints within the
  * composite cache and use the named constraint instead.  deadbolt:restrict is actually a synonym for deadbolt:composite.
+ * <p>
+ * The modifier tags of a route are parsed the first time the route is requested, and the resulting constraints are reused for every later request
+ * to the route.  Unknown tags are reported when they are parsed; requests to routes with unknown tags are always denied.
  *
  * @author Steve Chaloner (steve@objectify.be)
  * @since 2.5.1
@@ -103,7 +108,7 @@ public class DeadboltRouteModifierTagsFilter extends AbstractDeadboltFilter
     final Pattern subjectPresentModifierTag = Pattern.compile("deadbolt\\:(subjectPresent)(?:\\:content\\[(?<content>.+?)\\]){0,1}(?:\\:handler\\[(?<handler>.+?)\\]){0,1}");
     final Pattern subjectNotPresentModifierTag = Pattern.compile("deadbolt\\:(subjectNotPresent)(?:\\:content\\[(?<content>.+?)\\]){0,1}(?:\\:handler\\[(?<handler>.+?)\\]){0,1}");
     final Pattern dynamicModifierTag = Pattern.compile("deadbolt\\:(dynamic)\\:name\\[(?<name>.+?)\\](?:\\:meta\\[(?<meta>.+?)\\]){0,1}(?:\\:content\\[(?<content>.+?)\\]){0,1}(?:\\:handler\\[(?<handler>.+?)\\]){0,1}");
-    final Pattern patternModifierTag = Pattern.compile("deadbolt\\:(pattern)\\:value\\[(?<value>.+?)\\]\\:type\\[(?<type>EQUALITY|REGEX|CUSTOM)\\](?:\\:meta\\[(?<meta>.+?)\\]){0,1}(?:\\:invert\\[(?<invert>true|false)\\]){0,1}(?:\\:content\\[(?<content>.+?)\\]){0,1}(?:\\:handler\\[(?<handler>.+?)\\]){0,1}");
+    final Pattern patternModifierTag = Pattern.compile("deadbolt\\:(pattern)\\:value\\[(?<value>.+?)\\]\\:type\\[(?<type>EQUALITY|REGEX|LINEAR_REGEX|WILDCARD|CUSTOM)\\](?:\\:meta\\[(?<meta>.+?)\\]){0,1}(?:\\:invert\\[(?<invert>true|false)\\]){0,1}(?:\\:content\\[(?<content>.+?)\\]){0,1}(?:\\:handler\\[(?<handler>.+?)\\]){0,1}");
     final Pattern compositeModifierTag = Pattern.compile("deadbolt\\:(composite)\\:name\\[(?<name>.+?)\\](?:\\:content\\[(?<content>.+?)\\]){0,1}(?:\\:handler\\[(?<handler>.+?)\\]){0,1}");
     final Pattern restrictModifierTag = Pattern.compile("deadbolt\\:(restrict)\\:name\\[(?<name>.+?)\\](?:\\:content\\[(?<content>.+?)\\]){0,1}(?:\\:handler\\[(?<handler>.+?)\\]){0,1}");
     final Pattern roleBasedPermissionsModifierTag = Pattern.compile("deadbolt\\:(rbp)\\:name\\[(?<name>.+?)\\](?:\\:content\\[(?<content>.+?)\\]){0,1}(?:\\:handler\\[(?<handler>.+?)\\]){0,1}");
@@ -114,6 +119,8 @@ public class DeadboltRouteModifierTagsFilter extends AbstractDeadboltFilter
 
     private final F.Tuple<FilterFunction, DeadboltHandler> unknownDeadboltModifierTag;
 
+    private final ConcurrentMap<HandlerDef, RouteConstraints> routeConstraints = new ConcurrentHashMap<>();
+
     @Inject
     public DeadboltRouteModifierTagsFilter(final Materializer mat,
                                            final HandlerCache handlerCache,
@@ -126,9 +133,8 @@ public class DeadboltRouteModifierTagsFilter extends AbstractDeadboltFilter
 
         this.unknownDeadboltModifierTag = new F.Tuple<>((requestHeader, dh, onSuccess) ->
                                                     {
-                                                        LOGGER.error("Unknown Deadbolt route modifier tag in [{}], denying access with default handler",
-                                                                     requestHeader.attrs().get(Router.Attrs.HANDLER_DEF)
-                                                                             .getModifiers().stream().collect(Collectors.joining(" ")));
+                                                        LOGGER.debug("Unknown Deadbolt route modifier tag on [{}], denying access with default handler",
+                                                                     requestHeader.uri());
                                                         return dh.onAuthFailure(requestHeader, Optional.empty());
                                                     }, handler);
     }
@@ -145,15 +151,21 @@ public class DeadboltRouteModifierTagsFilter extends AbstractDeadboltFilter
                                          final Http.RequestHeader requestHeader)
     {
         final HandlerDef handlerDef = requestHeader.attrs().get(Router.Attrs.HANDLER_DEF);
-        final List<String> deadboltModifierTags = handlerDef.getModifiers().stream().filter(mt -> mt != null && mt.startsWith("deadbolt:")).collect(Collectors.toList());
-        return processModifierTags(deadboltModifierTags, 0, requestHeader, next);
+        return routeConstraints.computeIfAbsent(handlerDef,
+                                                this::parseModifierTags)
+                               .apply(0,
+                                      requestHeader,
+                                      next);
     }
 
-    private CompletionStage<Result> processModifierTags(final List<String> deadboltModifierTags, int index, final Http.RequestHeader requestHeader, final Function<Http.RequestHeader, CompletionStage<Result>> lastNext)
+    private RouteConstraints parseModifierTags(final HandlerDef handlerDef)
     {
-        if(index < deadboltModifierTags.size())
+        final List<String> deadboltModifierTags = handlerDef.getModifiers().stream().filter(mt -> mt != null && mt.startsWith("deadbolt:")).collect(Collectors.toList());
+        final FilterFunction[] constraints = new FilterFunction[deadboltModifierTags.size()];
+        final DeadboltHandler[] handlers = new DeadboltHandler[deadboltModifierTags.size()];
+        for (int i = 0; i < constraints.length; i++)
         {
-            final String modifierTag = deadboltModifierTags.get(index);
+            final String modifierTag = deadboltModifierTags.get(i);
             // this is horrible
             final F.Tuple<FilterFunction, DeadboltHandler> tuple = subjectPresent(modifierTag).orElseGet(() -> subjectNotPresent(modifierTag)
                     .orElseGet(() -> dynamic(modifierTag)
@@ -162,14 +174,19 @@ public class DeadboltRouteModifierTagsFilter extends AbstractDeadboltFilter
                                             .orElseGet(() -> pattern(modifierTag)
                                                     .orElseGet(() -> roleBasedPermissions(modifierTag)
                                                             .orElse(unknownDeadboltModifierTag)))))));
-            return tuple._1.apply(requestHeader,
-                                  tuple._2,
-                                  rh -> processModifierTags(deadboltModifierTags, index + 1, rh, lastNext));
-        }
-        else
-        {
-            return lastNext.apply(requestHeader);
+            if (tuple == unknownDeadboltModifierTag)
+            {
+                LOGGER.error("Unknown Deadbolt route modifier tag [{}] in [{}], access to [{}.{}] will be denied with default handler",
+                             modifierTag,
+                             String.join(" ", handlerDef.getModifiers()),
+                             handlerDef.controller(),
+                             handlerDef.method());
+            }
+            constraints[i] = tuple._1;
+            handlers[i] = tuple._2;
         }
+        return new RouteConstraints(constraints,
+                                    handlers);
     }
 
     private Optional<F.Tuple<FilterFunction, DeadboltHandler>> subjectPresent(final String modifierTag)
@@ -251,4 +268,32 @@ public class DeadboltRouteModifierTagsFilter extends AbstractDeadboltFilter
         return namedHandler == null ? handler
                                     : handlerCache.apply(namedHandler);
     }
+
+    /**
+     * The parsed modifier tags of a route, applied in the order they are declared.
+     */
+    private static final class RouteConstraints
+    {
+        private final FilterFunction[] constraints;
+        private final DeadboltHandler[] handlers;
+
+        private RouteConstraints(final FilterFunction[] constraints,
+                                 final DeadboltHandler[] handlers)
+        {
+            this.constraints = constraints;
+            this.handlers = handlers;
+        }
+
+        private CompletionStage<Result> apply(final int index,
+                                              final Http.RequestHeader requestHeader,
+                                              final Function<Http.RequestHeader, CompletionStage<Result>> lastNext)
+        {
+            return index < constraints.length ? constraints[index].apply(requestHeader,
+                                                                         handlers[index],
+                                                                         rh -> apply(index + 1,
+                                                                                     rh,
+                                                                                     lastNext))
+                                              : lastNext.apply(requestHeader);
+        }
+    }
 }
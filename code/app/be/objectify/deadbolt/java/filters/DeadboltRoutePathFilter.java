@@ -49,6 +49,8 @@ public class DeadboltRoutePathFilter extends AbstractDeadboltFilter
         super(mat);
         this.handler = handlerCache.get();
         this.authorizedRoutes = authorizedRoutes.get();
+        // index the routes now, rather than on the first request
+        this.authorizedRoutes.reindex();
     }
 
     /**
@@ -15,6 +15,7 @@
  */
 package be.objectify.deadbolt.java.filters;
 
+import be.objectify.deadbolt.java.CompiledRoleGroups;
 import be.objectify.deadbolt.java.ConstraintLogic;
 import be.objectify.deadbolt.java.ConstraintPoint;
 import be.objectify.deadbolt.java.DeadboltHandler;
@@ -129,7 +130,7 @@ public class FilterConstraints
      *
      * @param roleGroups
      * @return a function that wraps the constraint
-     * @see ConstraintLogic#restrict(Http.RequestHeader, DeadboltHandler, Optional, Supplier, Function, TriFunction, ConstraintPoint)
+     * @see ConstraintLogic#restrict(Http.RequestHeader, DeadboltHandler, Optional, CompiledRoleGroups, Function, TriFunction, ConstraintPoint)
      */
     public FilterFunction restrict(final List<String[]> roleGroups)
     {
@@ -143,11 +144,12 @@ public class FilterConstraints
      * @param roleGroups
      * @param content    is passed to {@link DeadboltHandler#onAuthFailure(Http.RequestHeader, Optional)} if the authorization fails
      * @return a function that wraps the constraint
-     * @see ConstraintLogic#restrict(Http.RequestHeader, DeadboltHandler, Optional, Supplier, Function, TriFunction, ConstraintPoint)
+     * @see ConstraintLogic#restrict(Http.RequestHeader, DeadboltHandler, Optional, CompiledRoleGroups, Function, TriFunction, ConstraintPoint)
      */
     public FilterFunction restrict(final List<String[]> roleGroups,
                                    final Optional<String> content)
     {
+        final CompiledRoleGroups compiledRoleGroups = constraintLogic.compileRoleGroups(roleGroups);
         return (Http.RequestHeader requestHeader,
                 DeadboltHandler handler,
                 Function<Http.RequestHeader, CompletionStage<Result>> next) ->
@@ -156,7 +158,7 @@ public class FilterConstraints
                                                                 .orElseGet(() -> constraintLogic.restrict(maybePreAuth._2,
                                                                                                           handler,
                                                                                                           content,
-                                                                                                          () -> roleGroups,
+                                                                                                          compiledRoleGroups,
                                                                                                           rh -> next.apply(rh),
                                                                                                           (rh, hdlr, cntent) -> hdlr.onAuthFailure(rh,
                                                                                                                                                     cntent),
@@ -164,7 +166,8 @@ public class FilterConstraints
     }
 
     /**
-     * A constraint that checks the permissions of a subject (if using {@link PatternType#EQUALITY} or {@link PatternType#REGEX}) or
+     * A constraint that checks the permissions of a subject (if using {@link PatternType#EQUALITY}, {@link PatternType#REGEX},
+     * {@link PatternType#LINEAR_REGEX} or {@link PatternType#WILDCARD}) or
      * {@link be.objectify.deadbolt.java.DynamicResourceHandler#checkPermission(String, Optional, DeadboltHandler, Http.RequestHeader)} (if
      * using {@link PatternType#CUSTOM}).
      *
@@ -182,7 +185,8 @@ public class FilterConstraints
     }
 
     /**
-     * A constraint that checks the permissions of a subject (if using {@link PatternType#EQUALITY} or {@link PatternType#REGEX}) or
+     * A constraint that checks the permissions of a subject (if using {@link PatternType#EQUALITY}, {@link PatternType#REGEX},
+     * {@link PatternType#LINEAR_REGEX} or {@link PatternType#WILDCARD}) or
      * {@link be.objectify.deadbolt.java.DynamicResourceHandler#checkPermission(String, Optional, DeadboltHandler, Http.RequestHeader)} (if
      * using {@link PatternType#CUSTOM}).
      *
@@ -204,7 +208,8 @@ public class FilterConstraints
     }
 
     /**
-     * A constraint that checks the permissions of a subject (if using {@link PatternType#EQUALITY} or {@link PatternType#REGEX}) or
+     * A constraint that checks the permissions of a subject (if using {@link PatternType#EQUALITY}, {@link PatternType#REGEX},
+     * {@link PatternType#LINEAR_REGEX} or {@link PatternType#WILDCARD}) or
      * {@link be.objectify.deadbolt.java.DynamicResourceHandler#checkPermission(String, Optional, DeadboltHandler, Http.RequestHeader)} (if
      * using {@link PatternType#CUSTOM}).
      *
@@ -226,7 +231,8 @@ public class FilterConstraints
     }
 
     /**
-     * A constraint that checks the permissions of a subject (if using {@link PatternType#EQUALITY} or {@link PatternType#REGEX}) or
+     * A constraint that checks the permissions of a subject (if using {@link PatternType#EQUALITY}, {@link PatternType#REGEX},
+     * {@link PatternType#LINEAR_REGEX} or {@link PatternType#WILDCARD}) or
      * {@link be.objectify.deadbolt.java.DynamicResourceHandler#checkPermission(String, Optional, DeadboltHandler, Http.RequestHeader)} (if
      * using {@link PatternType#CUSTOM}).
      *
@@ -325,11 +331,11 @@ public class FilterConstraints
 
     /**
      * A constraint that uses a {@link Constraint} to determine access.  This may be an arbitrarily complex
-     * tree of constraints.
+     * tree of constraints.  The constraint is looked up in the {@link CompositeCache} each time the function is
+     * applied, so constraints registered or replaced later are used.
      *
      * @param name the name of the composite constraint defined in {@link CompositeCache}.
      * @return a function that wraps the constraint
-     * @throws IllegalStateException if no constraint with the given name is present in the composite cache
      */
     public FilterFunction composite(final String name)
     {
@@ -339,20 +345,27 @@ public class FilterConstraints
 
     /**
      * A constraint that uses a {@link Constraint} to determine access.  This may be an arbitrarily complex
-     * tree of constraints.
+     * tree of constraints.  The constraint is looked up in the {@link CompositeCache} each time the function is
+     * applied, so constraints registered or replaced later are used.  If the cache has no constraint with the name
+     * when the function is applied, an {@link IllegalStateException} is thrown.
      *
      * @param name    the name of the composite constraint defined in {@link CompositeCache}.
      * @param content is passed to {@link DeadboltHandler#onAuthFailure(Http.RequestHeader, Optional)} if the authorization fails
      * @return a function that wraps the constraint
-     * @throws IllegalStateException if no constraint with the given name is present in the composite cache
      */
     public FilterFunction composite(final String name,
                                     final Optional<String> content)
     {
-        return compositeCache.apply(name).map(constraint -> composite(constraint,
-                                                                      content))
-                             .orElseThrow(() -> new IllegalStateException(String.format("No constraint with name [%s] found",
-                                                                                        name)));
+        return (Http.RequestHeader requestHeader,
+                DeadboltHandler handler,
+                Function<Http.RequestHeader, CompletionStage<Result>> next) ->
+                composite(compositeCache.apply(name)
+                                        .orElseThrow(() -> new IllegalStateException(String.format("No constraint with name [%s] found",
+                                                                                                   name))),
+                          content,
+                          requestHeader,
+                          handler,
+                          next);
     }
 
     /**
@@ -382,7 +395,20 @@ public class FilterConstraints
         return (Http.RequestHeader requestHeader,
                 DeadboltHandler handler,
                 Function<Http.RequestHeader, CompletionStage<Result>> next) ->
-                beforeAuthCheckCache.apply(handler, requestHeader, content)
+                composite(constraint,
+                          content,
+                          requestHeader,
+                          handler,
+                          next);
+    }
+
+    private CompletionStage<Result> composite(final Constraint constraint,
+                                              final Optional<String> content,
+                                              final Http.RequestHeader requestHeader,
+                                              final DeadboltHandler handler,
+                                              final Function<Http.RequestHeader, CompletionStage<Result>> next)
+    {
+        return beforeAuthCheckCache.apply(handler, requestHeader, content)
                        .thenCompose(maybePreAuth -> maybePreAuth._1.map(preAuthResult -> (CompletionStage<Result>) CompletableFuture.completedFuture(preAuthResult))
                                                                 .orElseGet(() -> constraint.test(maybePreAuth._2,
                                                                                                  handler)
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.models;
+
+import be.objectify.deadbolt.java.patterns.PermissionTrie;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A read-only view of a {@link Subject} that answers role and permission membership checks without iterating.  Role
+ * names are interned in a {@link RoleRegistry} and held as a bit set; permission values are held in a hash set.
+ * <p>
+ * The view is a snapshot - roles and permissions are read once, when the view is compiled.  The original subject is
+ * available from {@link #unwrap()}.
+ * <p>
+ * Because the permissions cannot change, the outcome of matching a pattern against them can be remembered; see
+ * {@link #decide(PatternType, String, BooleanSupplier)}.  Remembered decisions live and die with the view, so when the
+ * subject is reloaded or removed from a subject cache, its decisions go with it.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public final class CompiledSubject implements Subject
+{
+    private final Subject subject;
+
+    private final RoleRegistry registry;
+
+    private final List<? extends Role> roles;
+
+    private final List<? extends Permission> permissions;
+
+    private final BitSet roleIds = new BitSet();
+
+    // roles that have no id because the registry is full
+    private final Set<String> unregisteredRoles = new HashSet<>(0);
+
+    private final Set<String> permissionValues = new HashSet<>();
+
+    // the number of decisions remembered per pattern type
+    private static final int MAX_DECISIONS = 256;
+
+    // built on first use; a race only results in an identical trie being built twice
+    private volatile PermissionTrie permissionTrie;
+
+    private final Map<PatternType, ConcurrentMap<String, Boolean>> decisions = new EnumMap<>(PatternType.class);
+
+    private CompiledSubject(final Subject subject,
+                            final RoleRegistry registry)
+    {
+        this.subject = subject;
+        this.registry = registry;
+
+        final List<? extends Role> heldRoles = subject.getRoles();
+        this.roles = heldRoles == null ? Collections.emptyList()
+                                       : Collections.unmodifiableList(new ArrayList<>(heldRoles));
+        for (Role role : this.roles)
+        {
+            if (role != null && role.getName() != null)
+            {
+                final int id = registry.intern(role.getName());
+                if (id >= 0)
+                {
+                    roleIds.set(id);
+                }
+                else
+                {
+                    unregisteredRoles.add(role.getName());
+                }
+            }
+        }
+
+        final List<? extends Permission> heldPermissions = subject.getPermissions();
+        this.permissions = heldPermissions == null ? Collections.emptyList()
+                                                   : Collections.unmodifiableList(new ArrayList<>(heldPermissions));
+        for (Permission permission : this.permissions)
+        {
+            if (permission != null && permission.getValue() != null)
+            {
+                permissionValues.add(permission.getValue());
+            }
+        }
+
+        for (PatternType patternType : PatternType.values())
+        {
+            decisions.put(patternType,
+                          new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Compile a view of the subject.  A subject that has already been compiled against the same registry is returned
+     * as-is.
+     *
+     * @param subject  the subject
+     * @param registry the registry used to intern role names
+     * @return the compiled view
+     */
+    public static CompiledSubject of(final Subject subject,
+                                     final RoleRegistry registry)
+    {
+        if (subject instanceof CompiledSubject)
+        {
+            final CompiledSubject compiled = (CompiledSubject) subject;
+            return compiled.registry == registry ? compiled
+                                                 : new CompiledSubject(compiled.subject,
+                                                                       registry);
+        }
+        return new CompiledSubject(subject,
+                                   registry);
+    }
+
+    /**
+     * @param roleName the role name
+     * @return true iff the subject holds the role
+     */
+    public boolean hasRole(final String roleName)
+    {
+        final int id = registry.idOf(roleName);
+        // a role can be given an id by another thread after it was left without one here
+        return (id >= 0 && roleIds.get(id))
+               || unregisteredRoles.contains(roleName);
+    }
+
+    /**
+     * @return true if some of the subject's roles have no id, and so are not seen by {@link #hasRole(int)}
+     */
+    public boolean hasUnregisteredRoles()
+    {
+        return !unregisteredRoles.isEmpty();
+    }
+
+    /**
+     * @param roleId a role id from {@link #registry()}
+     * @return true iff the subject holds the role with an id; see {@link #hasUnregisteredRoles()}
+     */
+    public boolean hasRole(final int roleId)
+    {
+        return roleId >= 0 && roleIds.get(roleId);
+    }
+
+    /**
+     * @param value the permission value
+     * @return true iff the subject holds a permission with exactly this value
+     */
+    public boolean hasPermission(final String value)
+    {
+        return permissionValues.contains(value);
+    }
+
+    /**
+     * @return the permissions of the subject, arranged for checking wildcard permissions
+     */
+    public PermissionTrie permissionTrie()
+    {
+        PermissionTrie trie = permissionTrie;
+        if (trie == null)
+        {
+            trie = PermissionTrie.of(permissionValues);
+            permissionTrie = trie;
+        }
+        return trie;
+    }
+
+    /**
+     * Get the remembered outcome of matching the pattern against this subject, evaluating and remembering it if
+     * there isn't one.  Once {@value #MAX_DECISIONS} decisions have been remembered for a pattern type, further
+     * decisions of that type are evaluated but not remembered.
+     *
+     * @param patternType  the pattern type
+     * @param patternValue the pattern value
+     * @param evaluation   matches the pattern against this subject.  Must depend only on the pattern and the
+     *                     permissions of this subject.
+     * @return the outcome of the evaluation
+     */
+    public boolean decide(final PatternType patternType,
+                          final String patternValue,
+                          final BooleanSupplier evaluation)
+    {
+        final ConcurrentMap<String, Boolean> decisionsForType = decisions.get(patternType);
+        final Boolean decision = decisionsForType.get(patternValue);
+        if (decision != null)
+        {
+            return decision;
+        }
+        final boolean evaluated = evaluation.getAsBoolean();
+        if (decisionsForType.size() < MAX_DECISIONS)
+        {
+            decisionsForType.putIfAbsent(patternValue,
+                                         evaluated);
+        }
+        return evaluated;
+    }
+
+    /**
+     * @return the registry the role ids belong to
+     */
+    public RoleRegistry registry()
+    {
+        return registry;
+    }
+
+    /**
+     * @return the subject this view was compiled from
+     */
+    public Subject unwrap()
+    {
+        return subject;
+    }
+
+    @Override
+    public List<? extends Role> getRoles()
+    {
+        return roles;
+    }
+
+    @Override
+    public List<? extends Permission> getPermissions()
+    {
+        return permissions;
+    }
+
+    @Override
+    public String getIdentifier()
+    {
+        return subject.getIdentifier();
+    }
+}
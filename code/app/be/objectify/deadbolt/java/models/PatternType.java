@@ -30,6 +30,20 @@ public enum PatternType
      */
     REGEX,
 
+    /**
+     * A regular expression that will be evaluated against the permissions of the Subject in time linear in the length
+     * of the permission, so a pathological pattern cannot stall the request.  Only the subset of regular expression
+     * syntax that can be matched without backtracking is supported - see
+     * {@link be.objectify.deadbolt.java.patterns.LinearPattern}.
+     */
+    LINEAR_REGEX,
+
+    /**
+     * A hierarchical permission such as printer:*:print, checked against the permissions of the Subject with
+     * wildcard implication - see {@link be.objectify.deadbolt.java.patterns.WildcardPermission}.
+     */
+    WILDCARD,
+
     /**
      * Perform some custom matching on the pattern.
      */
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.models;
+
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns a small, stable integer id to each role name, so role membership can be held in a bit set.  Ids are
+ * never reused or removed, so at most deadbolt.java.role-registry.max-size role names are given an id.  Role names
+ * seen after that have no id, and are checked by name.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+@Singleton
+public class RoleRegistry
+{
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    private final int maxSize;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    public RoleRegistry()
+    {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    @Inject
+    public RoleRegistry(final Config config)
+    {
+        this(config.hasPath("deadbolt.java.role-registry.max-size") ? config.getInt("deadbolt.java.role-registry.max-size")
+                                                                    : DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize the maximum number of role names given an id
+     */
+    public RoleRegistry(final int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the id of the role name, assigning one if it does not yet have one and the registry is not full.
+     *
+     * @param roleName the role name
+     * @return the id, or -1 if the name has no id and the registry is full
+     */
+    public int intern(final String roleName)
+    {
+        final Integer id = ids.get(roleName);
+        if (id != null)
+        {
+            return id;
+        }
+        if (ids.size() >= maxSize)
+        {
+            return -1;
+        }
+        // racing threads may take the registry slightly over its maximum size
+        return ids.computeIfAbsent(roleName,
+                                   name -> nextId.getAndIncrement());
+    }
+
+    /**
+     * Get the id of the role name without assigning one.
+     *
+     * @param roleName the role name
+     * @return the id, or -1 if the name has never been interned
+     */
+    public int idOf(final String roleName)
+    {
+        final Integer id = ids.get(roleName);
+        return id == null ? -1
+                          : id;
+    }
+
+    /**
+     * @return the number of role names that have been interned
+     */
+    public int size()
+    {
+        return ids.size();
+    }
+}
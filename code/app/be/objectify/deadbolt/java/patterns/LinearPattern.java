@@ -0,0 +1,722 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.patterns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A regular expression that is matched by simulating its automaton rather than by backtracking, so matching takes
+ * time proportional to the length of the input multiplied by the size of the pattern, whatever the pattern.
+ * <p>
+ * The supported syntax is the subset of {@link java.util.regex.Pattern} that can be matched this way: literals and
+ * escaped literals, ., \d \D \w \W \s \S, \t \n \r \f, character classes with ranges and negation, groups (capturing,
+ * non-capturing and named, although nothing is captured), alternation, the greedy and reluctant quantifiers ? * + and
+ * {n}, {n,}, {n,m}, and ^ and $ at the start and end of the pattern.  Anything else - back references, look-around,
+ * possessive quantifiers, inline flags, boundaries - is rejected when the pattern is compiled.
+ * <p>
+ * As with {@link java.util.regex.Matcher#matches()}, the whole input must match.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public final class LinearPattern
+{
+    // counted repetition is expanded, so this guards against patterns like a{1000}{1000}
+    private static final int MAX_PROGRAM_SIZE = 10000;
+
+    private static final int CHAR = 0;
+    private static final int SPLIT = 1;
+    private static final int JUMP = 2;
+    private static final int MATCH = 3;
+
+    private static final IntPredicate DIGIT = c -> c >= '0' && c <= '9';
+    private static final IntPredicate WORD = c -> (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || DIGIT.test(c) || c == '_';
+    private static final IntPredicate SPACE = c -> c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    private static final IntPredicate DOT = c -> c != '\n' && c != '\r' && c != 0x85 && c != 0x2028 && c != 0x2029;
+
+    private final String pattern;
+
+    private final int[] ops;
+    private final int[] x;
+    private final int[] y;
+    private final IntPredicate[] predicates;
+
+    private LinearPattern(final String pattern,
+                          final List<Instruction> program)
+    {
+        this.pattern = pattern;
+        final int size = program.size();
+        this.ops = new int[size];
+        this.x = new int[size];
+        this.y = new int[size];
+        this.predicates = new IntPredicate[size];
+        for (int i = 0; i < size; i++)
+        {
+            final Instruction instruction = program.get(i);
+            ops[i] = instruction.op;
+            x[i] = instruction.x;
+            y[i] = instruction.y;
+            predicates[i] = instruction.predicate;
+        }
+    }
+
+    /**
+     * Compile the pattern.
+     *
+     * @param pattern the pattern
+     * @return the compiled pattern
+     * @throws PatternSyntaxException if the pattern is invalid or uses syntax that cannot be matched in linear time
+     */
+    public static LinearPattern compile(final String pattern)
+    {
+        final Node node = new Parser(pattern).parse();
+        final List<Instruction> program = new ArrayList<>();
+        node.emit(program,
+                  pattern);
+        program.add(new Instruction(MATCH,
+                                    0,
+                                    0,
+                                    null));
+        return new LinearPattern(pattern,
+                                 program);
+    }
+
+    /**
+     * @param input the input
+     * @return true iff the entire input matches the pattern
+     */
+    public boolean matches(final CharSequence input)
+    {
+        final int size = ops.length;
+        int[] current = new int[size];
+        int[] next = new int[size];
+        final int[] marks = new int[size];
+        final int[] stack = new int[size * 2 + 1];
+
+        int generation = 1;
+        int currentCount = add(current,
+                               0,
+                               0,
+                               marks,
+                               generation,
+                               stack);
+        for (int i = 0; i < input.length() && currentCount > 0; i++)
+        {
+            final char c = input.charAt(i);
+            generation++;
+            int nextCount = 0;
+            for (int j = 0; j < currentCount; j++)
+            {
+                final int pc = current[j];
+                if (ops[pc] == CHAR && predicates[pc].test(c))
+                {
+                    nextCount = add(next,
+                                    nextCount,
+                                    pc + 1,
+                                    marks,
+                                    generation,
+                                    stack);
+                }
+            }
+            final int[] swap = current;
+            current = next;
+            next = swap;
+            currentCount = nextCount;
+        }
+
+        for (int j = 0; j < currentCount; j++)
+        {
+            if (ops[current[j]] == MATCH)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String pattern()
+    {
+        return pattern;
+    }
+
+    @Override
+    public String toString()
+    {
+        return pattern;
+    }
+
+    // follow jumps and splits from pc, adding each reachable CHAR or MATCH instruction to the list once
+    private int add(final int[] list,
+                    int count,
+                    final int pc,
+                    final int[] marks,
+                    final int generation,
+                    final int[] stack)
+    {
+        int top = 0;
+        stack[top++] = pc;
+        while (top > 0)
+        {
+            final int target = stack[--top];
+            if (marks[target] == generation)
+            {
+                continue;
+            }
+            marks[target] = generation;
+            switch (ops[target])
+            {
+                case JUMP:
+                    stack[top++] = x[target];
+                    break;
+                case SPLIT:
+                    // push the second branch first so the first is followed first
+                    stack[top++] = y[target];
+                    stack[top++] = x[target];
+                    break;
+                default:
+                    list[count++] = target;
+            }
+        }
+        return count;
+    }
+
+    private static final class Instruction
+    {
+        private final int op;
+        private int x;
+        private int y;
+        private final IntPredicate predicate;
+
+        private Instruction(final int op,
+                            final int x,
+                            final int y,
+                            final IntPredicate predicate)
+        {
+            this.op = op;
+            this.x = x;
+            this.y = y;
+            this.predicate = predicate;
+        }
+    }
+
+    private interface Node
+    {
+        void emit(List<Instruction> program,
+                  String pattern);
+    }
+
+    private static Instruction emit(final List<Instruction> program,
+                                    final int op,
+                                    final IntPredicate predicate,
+                                    final String pattern)
+    {
+        if (program.size() >= MAX_PROGRAM_SIZE)
+        {
+            throw new PatternSyntaxException("Pattern is too large",
+                                             pattern,
+                                             -1);
+        }
+        final Instruction instruction = new Instruction(op,
+                                                        0,
+                                                        0,
+                                                        predicate);
+        program.add(instruction);
+        return instruction;
+    }
+
+    private static final class CharNode implements Node
+    {
+        private final IntPredicate predicate;
+
+        private CharNode(final IntPredicate predicate)
+        {
+            this.predicate = predicate;
+        }
+
+        @Override
+        public void emit(final List<Instruction> program,
+                         final String pattern)
+        {
+            LinearPattern.emit(program,
+                               CHAR,
+                               predicate,
+                               pattern);
+        }
+    }
+
+    private static final class ConcatNode implements Node
+    {
+        private final List<Node> nodes;
+
+        private ConcatNode(final List<Node> nodes)
+        {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public void emit(final List<Instruction> program,
+                         final String pattern)
+        {
+            for (Node node : nodes)
+            {
+                node.emit(program,
+                          pattern);
+            }
+        }
+    }
+
+    private static final class AlternationNode implements Node
+    {
+        private final Node left;
+        private final Node right;
+
+        private AlternationNode(final Node left,
+                                final Node right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public void emit(final List<Instruction> program,
+                         final String pattern)
+        {
+            final Instruction split = LinearPattern.emit(program,
+                                                         SPLIT,
+                                                         null,
+                                                         pattern);
+            split.x = program.size();
+            left.emit(program,
+                      pattern);
+            final Instruction jump = LinearPattern.emit(program,
+                                                        JUMP,
+                                                        null,
+                                                        pattern);
+            split.y = program.size();
+            right.emit(program,
+                       pattern);
+            jump.x = program.size();
+        }
+    }
+
+    private static final class RepeatNode implements Node
+    {
+        private final Node node;
+        private final int min;
+        private final int max; // -1 for unbounded
+
+        private RepeatNode(final Node node,
+                           final int min,
+                           final int max)
+        {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public void emit(final List<Instruction> program,
+                         final String pattern)
+        {
+            for (int i = 0; i < min; i++)
+            {
+                node.emit(program,
+                          pattern);
+            }
+            if (max == -1)
+            {
+                // L1: split L2, L3; L2: node; jump L1; L3:
+                final int loop = program.size();
+                final Instruction split = LinearPattern.emit(program,
+                                                             SPLIT,
+                                                             null,
+                                                             pattern);
+                split.x = program.size();
+                node.emit(program,
+                          pattern);
+                LinearPattern.emit(program,
+                                   JUMP,
+                                   null,
+                                   pattern).x = loop;
+                split.y = program.size();
+            }
+            else
+            {
+                // each optional repetition may be skipped
+                final List<Instruction> splits = new ArrayList<>();
+                for (int i = min; i < max; i++)
+                {
+                    final Instruction split = LinearPattern.emit(program,
+                                                                 SPLIT,
+                                                                 null,
+                                                                 pattern);
+                    split.x = program.size();
+                    splits.add(split);
+                    node.emit(program,
+                              pattern);
+                }
+                for (Instruction split : splits)
+                {
+                    split.y = program.size();
+                }
+            }
+        }
+    }
+
+    private static final class Parser
+    {
+        private final String pattern;
+        private int position;
+
+        private Parser(final String pattern)
+        {
+            this.pattern = pattern;
+        }
+
+        private Node parse()
+        {
+            int end = pattern.length();
+            if (pattern.startsWith("^"))
+            {
+                position = 1;
+            }
+            if (end > position && pattern.charAt(end - 1) == '$' && !isEscaped(end - 1))
+            {
+                end--;
+            }
+            final Node node = alternation(end);
+            if (position != end)
+            {
+                throw error("Unmatched closing ')'");
+            }
+            return node;
+        }
+
+        private boolean isEscaped(final int index)
+        {
+            int backslashes = 0;
+            for (int i = index - 1; i >= 0 && pattern.charAt(i) == '\\'; i--)
+            {
+                backslashes++;
+            }
+            return backslashes % 2 == 1;
+        }
+
+        private Node alternation(final int end)
+        {
+            Node node = concatenation(end);
+            while (position < end && pattern.charAt(position) == '|')
+            {
+                position++;
+                node = new AlternationNode(node,
+                                           concatenation(end));
+            }
+            return node;
+        }
+
+        private Node concatenation(final int end)
+        {
+            final List<Node> nodes = new ArrayList<>();
+            while (position < end && pattern.charAt(position) != '|' && pattern.charAt(position) != ')')
+            {
+                nodes.add(quantified(atom(end),
+                                     end));
+            }
+            return new ConcatNode(nodes);
+        }
+
+        private Node quantified(Node node,
+                                final int end)
+        {
+            while (position < end)
+            {
+                final char c = pattern.charAt(position);
+                final int min;
+                final int max;
+                if (c == '*')
+                {
+                    position++;
+                    min = 0;
+                    max = -1;
+                }
+                else if (c == '+')
+                {
+                    position++;
+                    min = 1;
+                    max = -1;
+                }
+                else if (c == '?')
+                {
+                    position++;
+                    min = 0;
+                    max = 1;
+                }
+                else if (c == '{')
+                {
+                    position++;
+                    min = number(end);
+                    if (position < end && pattern.charAt(position) == ',')
+                    {
+                        position++;
+                        max = position < end && pattern.charAt(position) == '}' ? -1
+                                                                                : number(end);
+                    }
+                    else
+                    {
+                        max = min;
+                    }
+                    if (position >= end || pattern.charAt(position) != '}')
+                    {
+                        throw error("Unclosed counted repetition");
+                    }
+                    position++;
+                    if (max != -1 && max < min)
+                    {
+                        throw error("Illegal repetition range");
+                    }
+                }
+                else
+                {
+                    return node;
+                }
+
+                if (position < end && pattern.charAt(position) == '+')
+                {
+                    throw error("Possessive quantifiers are not supported");
+                }
+                if (position < end && pattern.charAt(position) == '?')
+                {
+                    // reluctance does not change whether the whole input matches
+                    position++;
+                }
+                node = new RepeatNode(node,
+                                      min,
+                                      max);
+            }
+            return node;
+        }
+
+        private int number(final int end)
+        {
+            final int start = position;
+            while (position < end && Character.isDigit(pattern.charAt(position)))
+            {
+                position++;
+            }
+            if (start == position || position - start > 4)
+            {
+                throw error("Illegal repetition count");
+            }
+            return Integer.parseInt(pattern.substring(start,
+                                                      position));
+        }
+
+        private Node atom(final int end)
+        {
+            final char c = pattern.charAt(position);
+            switch (c)
+            {
+                case '(':
+                    position++;
+                    if (pattern.startsWith("?:", position))
+                    {
+                        position += 2;
+                    }
+                    else if (pattern.startsWith("?<", position)
+                             && position + 2 < end
+                             && Character.isLetter(pattern.charAt(position + 2)))
+                    {
+                        final int close = pattern.indexOf('>',
+                                                          position);
+                        if (close == -1)
+                        {
+                            throw error("Unclosed group name");
+                        }
+                        position = close + 1;
+                    }
+                    else if (position < end && pattern.charAt(position) == '?')
+                    {
+                        throw error("Look-around, inline flags and other special groups are not supported");
+                    }
+                    final Node group = alternation(end);
+                    if (position >= end || pattern.charAt(position) != ')')
+                    {
+                        throw error("Unclosed group");
+                    }
+                    position++;
+                    return group;
+                case ')':
+                    throw error("Unmatched closing ')'");
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw error("Dangling meta character '" + c + "'");
+                case '^':
+                case '$':
+                    throw error("Anchors are only supported at the start and end of the pattern");
+                case '.':
+                    position++;
+                    return new CharNode(DOT);
+                case '[':
+                    position++;
+                    return new CharNode(characterClass(end));
+                case '\\':
+                    position++;
+                    return new CharNode(escape(end));
+                default:
+                    position++;
+                    return new CharNode(literal(c));
+            }
+        }
+
+        private IntPredicate characterClass(final int end)
+        {
+            boolean negated = false;
+            if (position < end && pattern.charAt(position) == '^')
+            {
+                negated = true;
+                position++;
+            }
+            IntPredicate predicate = ch -> false;
+            boolean first = true;
+            while (position < end && (first || pattern.charAt(position) != ']'))
+            {
+                first = false;
+                final char c = pattern.charAt(position);
+                if (c == '[' || (c == '&' && pattern.startsWith("&&", position)))
+                {
+                    throw error("Nested classes and intersections are not supported");
+                }
+                final IntPredicate item;
+                if (c == '\\')
+                {
+                    position++;
+                    item = escape(end);
+                }
+                else
+                {
+                    position++;
+                    if (position + 1 < end && pattern.charAt(position) == '-' && pattern.charAt(position + 1) != ']')
+                    {
+                        position++;
+                        char high = pattern.charAt(position);
+                        if (high == '\\')
+                        {
+                            position++;
+                            high = escapedLiteral(end);
+                        }
+                        else
+                        {
+                            position++;
+                        }
+                        if (high < c)
+                        {
+                            throw error("Illegal character range");
+                        }
+                        final char low = c;
+                        final char top = high;
+                        item = ch -> ch >= low && ch <= top;
+                    }
+                    else
+                    {
+                        item = literal(c);
+                    }
+                }
+                predicate = predicate.or(item);
+            }
+            if (position >= end)
+            {
+                throw error("Unclosed character class");
+            }
+            position++;
+            return negated ? predicate.negate()
+                           : predicate;
+        }
+
+        private IntPredicate escape(final int end)
+        {
+            if (position >= end)
+            {
+                throw error("Unexpected end of pattern");
+            }
+            final char c = pattern.charAt(position);
+            switch (c)
+            {
+                case 'd':
+                    position++;
+                    return DIGIT;
+                case 'D':
+                    position++;
+                    return DIGIT.negate();
+                case 'w':
+                    position++;
+                    return WORD;
+                case 'W':
+                    position++;
+                    return WORD.negate();
+                case 's':
+                    position++;
+                    return SPACE;
+                case 'S':
+                    position++;
+                    return SPACE.negate();
+                default:
+                    return literal(escapedLiteral(end));
+            }
+        }
+
+        private char escapedLiteral(final int end)
+        {
+            if (position >= end)
+            {
+                throw error("Unexpected end of pattern");
+            }
+            final char c = pattern.charAt(position++);
+            switch (c)
+            {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                default:
+                    if (Character.isLetterOrDigit(c))
+                    {
+                        throw error("Unsupported escape sequence \\" + c);
+                    }
+                    return c;
+            }
+        }
+
+        private static IntPredicate literal(final char c)
+        {
+            return ch -> ch == c;
+        }
+
+        private PatternSyntaxException error(final String description)
+        {
+            return new PatternSyntaxException(description,
+                                              pattern,
+                                              position);
+        }
+    }
+}
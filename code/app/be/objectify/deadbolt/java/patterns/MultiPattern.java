@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.patterns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Tests a value against a set of regular expressions in one pass, by combining them into a single alternation.
+ * Patterns that cannot safely be combined - those containing back references, whose group numbers would shift, and
+ * those enabling comments mode or quoting, which could swallow the rest of the alternation - are kept separate and tested one by
+ * one after the combined pattern.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public final class MultiPattern
+{
+    private static final Pattern NOT_COMBINABLE = Pattern.compile("\\\\(?:[1-9]|k<|Q)|\\(\\?[a-zA-Z]*x");
+
+    private final Pattern combined;
+
+    private final Pattern[] separate;
+
+    private MultiPattern(final Pattern combined,
+                         final Pattern[] separate)
+    {
+        this.combined = combined;
+        this.separate = separate;
+    }
+
+    /**
+     * Combine the patterns.  Null values are ignored.
+     *
+     * @param patternValues the patterns
+     * @return the combined patterns
+     * @throws PatternSyntaxException if any of the patterns is invalid
+     */
+    public static MultiPattern compile(final List<String> patternValues)
+    {
+        // every pattern is compiled on its own first, so an invalid one is reported rather than changing the meaning
+        // of the alternation, e.g. by closing its group early
+        final List<Pattern> combinable = new ArrayList<>();
+        final List<Pattern> separate = new ArrayList<>();
+        for (String patternValue : patternValues)
+        {
+            if (patternValue != null)
+            {
+                final Pattern pattern = Pattern.compile(patternValue);
+                if (NOT_COMBINABLE.matcher(patternValue).find())
+                {
+                    separate.add(pattern);
+                }
+                else
+                {
+                    combinable.add(pattern);
+                }
+            }
+        }
+
+        Pattern combined = null;
+        if (combinable.size() == 1)
+        {
+            combined = combinable.get(0);
+        }
+        else if (combinable.size() > 1)
+        {
+            final StringBuilder sb = new StringBuilder();
+            for (Pattern pattern : combinable)
+            {
+                if (sb.length() > 0)
+                {
+                    sb.append('|');
+                }
+                sb.append("(?:").append(pattern.pattern()).append(')');
+            }
+            try
+            {
+                combined = Pattern.compile(sb.toString());
+            }
+            catch (PatternSyntaxException e)
+            {
+                // e.g. duplicate group names
+                separate.addAll(combinable);
+            }
+        }
+        return new MultiPattern(combined,
+                                separate.toArray(new Pattern[0]));
+    }
+
+    /**
+     * @param value the value
+     * @return true iff the entire value matches at least one of the patterns
+     */
+    public boolean matchesAny(final CharSequence value)
+    {
+        Objects.requireNonNull(value);
+        boolean matches = combined != null && combined.matcher(value).matches();
+        for (int i = 0; !matches && i < separate.length; i++)
+        {
+            matches = separate[i].matcher(value).matches();
+        }
+        return matches;
+    }
+
+    /**
+     * @return true iff there are no patterns
+     */
+    public boolean isEmpty()
+    {
+        return combined == null && separate.length == 0;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.patterns;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The held permissions of a subject, arranged by part so that checking whether they imply a
+ * {@link WildcardPermission} visits at most the literal and wildcard branch of each part, however many permissions
+ * are held.  Permissions that are not valid wildcard permissions are ignored.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public final class PermissionTrie
+{
+    private final Node root = new Node();
+
+    private PermissionTrie()
+    {
+    }
+
+    /**
+     * Build a trie from the held permission values.
+     *
+     * @param permissionValues the values of the held permissions
+     * @return the trie
+     */
+    public static PermissionTrie of(final Iterable<String> permissionValues)
+    {
+        final PermissionTrie trie = new PermissionTrie();
+        for (String permissionValue : permissionValues)
+        {
+            if (permissionValue != null && !permissionValue.trim().isEmpty())
+            {
+                try
+                {
+                    trie.add(WildcardPermission.split(permissionValue));
+                }
+                catch (IllegalArgumentException e)
+                {
+                    // not a wildcard permission, so it can't imply one
+                }
+            }
+        }
+        return trie;
+    }
+
+    /**
+     * @param required the required permission
+     * @return true iff at least one held permission implies the required permission
+     */
+    public boolean implies(final WildcardPermission required)
+    {
+        boolean implied = true;
+        // every alternative of every required part must be implied
+        final int[] choice = new int[required.length()];
+        while (implied)
+        {
+            implied = implies(root,
+                              required,
+                              choice,
+                              0);
+            if (!next(required,
+                      choice))
+            {
+                break;
+            }
+        }
+        return implied;
+    }
+
+    private void add(final String[][] parts)
+    {
+        add(root,
+            parts,
+            0);
+    }
+
+    private void add(final Node node,
+                     final String[][] parts,
+                     final int index)
+    {
+        if (index == parts.length)
+        {
+            node.terminal = true;
+            return;
+        }
+        for (String subpart : parts[index])
+        {
+            add(node.children.computeIfAbsent(subpart,
+                                              key -> new Node()),
+                parts,
+                index + 1);
+        }
+    }
+
+    private static boolean implies(final Node node,
+                                   final WildcardPermission required,
+                                   final int[] choice,
+                                   final int index)
+    {
+        if (node.terminal)
+        {
+            // missing trailing parts imply anything
+            return true;
+        }
+        if (index == required.length())
+        {
+            // extra held parts must be wildcards
+            final Node wildcard = node.children.get(WildcardPermission.WILDCARD);
+            return wildcard != null && implies(wildcard,
+                                               required,
+                                               choice,
+                                               index);
+        }
+
+        final Node literal = node.children.get(required.part(index)[choice[index]]);
+        if (literal != null && implies(literal,
+                                       required,
+                                       choice,
+                                       index + 1))
+        {
+            return true;
+        }
+        final Node wildcard = node.children.get(WildcardPermission.WILDCARD);
+        return wildcard != null && wildcard != literal && implies(wildcard,
+                                                                  required,
+                                                                  choice,
+                                                                  index + 1);
+    }
+
+    // advance to the next combination of required alternatives, returning false when all have been tried
+    private static boolean next(final WildcardPermission required,
+                                final int[] choice)
+    {
+        for (int i = choice.length - 1; i >= 0; i--)
+        {
+            if (++choice[i] < required.part(i).length)
+            {
+                return true;
+            }
+            choice[i] = 0;
+        }
+        return false;
+    }
+
+    private static final class Node
+    {
+        private final Map<String, Node> children = new HashMap<>(4);
+
+        private boolean terminal;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.patterns;
+
+/**
+ * A hierarchical permission such as printer:lp7200:print.  Parts are separated by :, and a part may list several
+ * alternatives separated by commas, e.g. printer:lp7200,epsoncolor:print.  A part of * matches any value.
+ * <p>
+ * A held permission implies a required one if, part by part, each held part is * or contains the required part.
+ * Missing trailing parts of a held permission match anything, so printer implies printer:lp7200:print; extra parts
+ * must be *, so printer:*:* implies printer.  A required part with several alternatives requires every alternative.
+ * Matching is case-sensitive.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public final class WildcardPermission
+{
+    public static final String WILDCARD = "*";
+
+    static final String PART_DIVIDER = ":";
+
+    static final String SUBPART_DIVIDER = ",";
+
+    private final String value;
+
+    private final String[][] parts;
+
+    private WildcardPermission(final String value,
+                               final String[][] parts)
+    {
+        this.value = value;
+        this.parts = parts;
+    }
+
+    /**
+     * Parse the permission.
+     *
+     * @param value the permission
+     * @return the parsed permission
+     * @throws IllegalArgumentException if the permission is empty or has an empty part
+     */
+    public static WildcardPermission parse(final String value)
+    {
+        return new WildcardPermission(value,
+                                      split(value));
+    }
+
+    static String[][] split(final String value)
+    {
+        if (value == null || value.trim().isEmpty())
+        {
+            throw new IllegalArgumentException("A wildcard permission must not be empty");
+        }
+        final String[] parts = value.split(PART_DIVIDER,
+                                           -1);
+        final String[][] split = new String[parts.length][];
+        for (int i = 0; i < parts.length; i++)
+        {
+            split[i] = parts[i].split(SUBPART_DIVIDER,
+                                      -1);
+            for (int j = 0; j < split[i].length; j++)
+            {
+                split[i][j] = split[i][j].trim();
+                if (split[i][j].isEmpty())
+                {
+                    throw new IllegalArgumentException(String.format("Wildcard permission [%s] has an empty part",
+                                                                     value));
+                }
+            }
+        }
+        return split;
+    }
+
+    /**
+     * @return the number of parts
+     */
+    public int length()
+    {
+        return parts.length;
+    }
+
+    /**
+     * @param index the index of the part
+     * @return the alternatives of the part
+     */
+    String[] part(final int index)
+    {
+        return parts[index];
+    }
+
+    public String value()
+    {
+        return value;
+    }
+
+    @Override
+    public String toString()
+    {
+        return value;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.utils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Convenience methods for batched checks.
+ *
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class BatchUtils
+{
+    /**
+     * Run a single-item check for each distinct key, and combine the results.
+     *
+     * @param keys  the keys
+     * @param check the single-item check
+     * @param <K>   the type of the key
+     * @return a future for the result of each check, in the iteration order of the keys
+     */
+    public static <K> CompletionStage<Map<K, Boolean>> fanOut(final Collection<K> keys,
+                                                              final Function<K, CompletionStage<Boolean>> check)
+    {
+        final Map<K, CompletableFuture<Boolean>> checks = new LinkedHashMap<>();
+        for (K key : keys)
+        {
+            if (!checks.containsKey(key))
+            {
+                checks.put(key,
+                           check.apply(key).toCompletableFuture());
+            }
+        }
+        return CompletableFuture.allOf(checks.values().toArray(new CompletableFuture<?>[0]))
+                                .thenApply(done ->
+                                           {
+                                               final Map<K, Boolean> results = new LinkedHashMap<>();
+                                               checks.forEach((key, result) -> results.put(key,
+                                                                                           result.join()));
+                                               return Collections.unmodifiableMap(results);
+                                           });
+    }
+}
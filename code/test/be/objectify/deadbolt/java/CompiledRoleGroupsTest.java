@@ -0,0 +1,165 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java;
+
+import be.objectify.deadbolt.java.cache.PatternCache;
+import be.objectify.deadbolt.java.cache.SubjectCache;
+import be.objectify.deadbolt.java.models.CompiledSubject;
+import be.objectify.deadbolt.java.models.DefaultSubject;
+import be.objectify.deadbolt.java.models.RoleRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class CompiledRoleGroupsTest
+{
+    private final RoleRegistry registry = new RoleRegistry();
+
+    @Test
+    public void testGroupsAreOred()
+    {
+        final CompiledRoleGroups roleGroups = CompiledRoleGroups.of(Arrays.asList(new String[]{"admin", "editor"},
+                                                                                  new String[]{"support"}),
+                                                                    registry);
+
+        Assert.assertTrue(roleGroups.test(subject("admin", "editor")));
+        Assert.assertTrue(roleGroups.test(subject("support")));
+        Assert.assertFalse(roleGroups.test(subject("admin")));
+        Assert.assertTrue(roleGroups.test(Arrays.asList("admin", "editor")));
+        Assert.assertFalse(roleGroups.test(Collections.singletonList("editor")));
+    }
+
+    @Test
+    public void testNegation()
+    {
+        final CompiledRoleGroups roleGroups = CompiledRoleGroups.of(Collections.singletonList(new String[]{"admin", "!editor"}),
+                                                                    registry);
+
+        Assert.assertTrue(roleGroups.test(subject("admin")));
+        Assert.assertFalse(roleGroups.test(subject("admin", "editor")));
+        Assert.assertFalse(roleGroups.test(Arrays.asList("admin", "editor")));
+    }
+
+    @Test
+    public void testEmptyAndNullGroupsNeverMatch()
+    {
+        final CompiledRoleGroups roleGroups = CompiledRoleGroups.of(Arrays.asList(new String[0],
+                                                                                  null),
+                                                                    registry);
+
+        Assert.assertEquals(1, roleGroups.size());
+        Assert.assertFalse(roleGroups.test(subject("admin")));
+        Assert.assertFalse(roleGroups.test(Collections.emptyList()));
+    }
+
+    @Test
+    public void testSubjectFromAnotherRegistry()
+    {
+        final CompiledRoleGroups roleGroups = CompiledRoleGroups.of(Collections.singletonList(new String[]{"admin", "!editor"}),
+                                                                    registry);
+        final CompiledSubject subject = CompiledSubject.of(new DefaultSubject("1",
+                                                                              Collections.singletonList("admin"),
+                                                                              Collections.emptyList()),
+                                                           new RoleRegistry());
+
+        Assert.assertTrue(roleGroups.test(subject));
+    }
+
+    @Test
+    public void testRolesWithoutIdsAreTestedByName()
+    {
+        final RoleRegistry full = new RoleRegistry(1);
+        final CompiledSubject admin = CompiledSubject.of(new DefaultSubject("1",
+                                                                            Arrays.asList("admin", "editor"),
+                                                                            Collections.emptyList()),
+                                                         full);
+        final CompiledRoleGroups roleGroups = CompiledRoleGroups.of(Arrays.asList(new String[]{"admin", "editor"},
+                                                                                  new String[]{"support"}),
+                                                                    full);
+
+        Assert.assertEquals(1, full.size());
+        Assert.assertEquals(-1, full.intern("support"));
+        Assert.assertTrue(admin.hasRole("editor"));
+        Assert.assertFalse(admin.hasRole("support"));
+        Assert.assertTrue(roleGroups.test(admin));
+        Assert.assertFalse(CompiledRoleGroups.of(Collections.singletonList(new String[]{"admin", "!editor"}),
+                                                 full)
+                                             .test(admin));
+    }
+
+    @Test
+    public void testRoleGivenAnIdAfterTheSubjectWasCompiled()
+    {
+        // as if another thread gave editor an id just after this one found the registry full
+        final AtomicBoolean full = new AtomicBoolean(true);
+        final RoleRegistry racing = new RoleRegistry(1)
+        {
+            @Override
+            public int intern(final String roleName)
+            {
+                final int id = super.intern(roleName);
+                return full.get() ? -1
+                                  : id;
+            }
+        };
+        final CompiledSubject subject = CompiledSubject.of(new DefaultSubject("1",
+                                                                              Collections.singletonList("editor"),
+                                                                              Collections.emptyList()),
+                                                           racing);
+        full.set(false);
+
+        Assert.assertTrue(CompiledRoleGroups.of(Collections.singletonList(new String[]{"editor"}),
+                                                racing)
+                                            .test(subject));
+    }
+
+    @Test
+    public void testCompiledRoleGroupsAreReused()
+    {
+        final ConstraintLogic logic = new ConstraintLogic(new DeadboltAnalyzer(),
+                                                          Mockito.mock(SubjectCache.class),
+                                                          Mockito.mock(PatternCache.class));
+        final List<String[]> roleGroups = Collections.singletonList(new String[]{"admin"});
+
+        Assert.assertSame(logic.compileRoleGroups(roleGroups),
+                          logic.compileRoleGroups(Collections.singletonList(new String[]{"admin"})));
+        Assert.assertNotSame(logic.compileRoleGroups(roleGroups),
+                             logic.compileRoleGroups(Collections.singletonList(new String[]{"editor"})));
+
+        final Object owner = new Object();
+        final CompiledRoleGroups owned = logic.compileRoleGroups(owner,
+                                                                 () -> roleGroups);
+        Assert.assertSame(owned,
+                          logic.compileRoleGroups(owner,
+                                                  () -> { throw new AssertionError("Role groups should not be re-read"); }));
+    }
+
+    private CompiledSubject subject(final String... roles)
+    {
+        return CompiledSubject.of(new DefaultSubject("1",
+                                                     Arrays.asList(roles),
+                                                     Collections.emptyList()),
+                                  registry);
+    }
+}
@@ -15,10 +15,14 @@
  */
 package be.objectify.deadbolt.java;
 
+import be.objectify.deadbolt.java.cache.DecisionCache;
 import be.objectify.deadbolt.java.cache.DefaultPatternCache;
+import be.objectify.deadbolt.java.cache.DefaultRolePermissionsCache;
 import be.objectify.deadbolt.java.cache.HandlerCache;
 import be.objectify.deadbolt.java.cache.SubjectCache;
+import be.objectify.deadbolt.java.models.PatternType;
 import be.objectify.deadbolt.java.models.Permission;
+import be.objectify.deadbolt.java.models.RoleRegistry;
 import be.objectify.deadbolt.java.models.Subject;
 import be.objectify.deadbolt.java.testsupport.TestHandlerCache;
 import be.objectify.deadbolt.java.testsupport.TestPermission;
@@ -30,13 +34,19 @@ import org.mockito.Mockito;
 import play.libs.F;
 import play.mvc.Http;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 /**
@@ -104,6 +114,587 @@ public class ConstraintLogicTest extends AbstractFakeApplicationTest
 
     }
 
+    @Test
+    public void testPattern_completesSynchronouslyWhenSubjectIsAvailable()
+    {
+        final SubjectCache subjectCache = Mockito.mock(SubjectCache.class);
+        Mockito.when(subjectCache.apply(Mockito.any(DeadboltHandler.class),
+                                        Mockito.any(Http.Request.class)))
+               .thenReturn(CompletableFuture.completedFuture(F.Tuple(Optional.of(new TestSubject.Builder().permission(new TestPermission("printer.print")).build()), new Http.RequestBuilder().build())));
+        final ConstraintLogic logic = new ConstraintLogic(new DeadboltAnalyzer(),
+                                                          subjectCache,
+                                                          new DefaultPatternCache());
+
+        final CompletionStage<Boolean> result = logic.pattern(new Http.RequestBuilder().build(),
+                                                              handler(() -> null),
+                                                              Optional.empty(),
+                                                              new String[]{"printer\\..*", "scanner\\..*"},
+                                                              ConstraintMode.OR,
+                                                              PatternType.REGEX,
+                                                              Optional.empty(),
+                                                              false,
+                                                              rh -> CompletableFuture.completedFuture(true),
+                                                              (rh, handler, content) -> CompletableFuture.completedFuture(false),
+                                                              ConstraintPoint.CONTROLLER);
+        Assert.assertTrue(result.toCompletableFuture().isDone());
+        pass.accept(result);
+    }
+
+    @Test
+    public void testPattern_exceptionOnFastPathFailsTheStage()
+    {
+        final SubjectCache subjectCache = Mockito.mock(SubjectCache.class);
+        Mockito.when(subjectCache.apply(Mockito.any(DeadboltHandler.class),
+                                        Mockito.any(Http.Request.class)))
+               .thenReturn(CompletableFuture.completedFuture(F.Tuple(Optional.of(new TestSubject.Builder().permission(new TestPermission("printer.print")).build()), new Http.RequestBuilder().build())));
+        final ConstraintLogic logic = new ConstraintLogic(new DeadboltAnalyzer(),
+                                                          subjectCache,
+                                                          new DefaultPatternCache());
+
+        final CompletionStage<Boolean> result = logic.pattern(new Http.RequestBuilder().build(),
+                                                              handler(() -> null),
+                                                              Optional.empty(),
+                                                              "printer.print",
+                                                              PatternType.EQUALITY,
+                                                              Optional.empty(),
+                                                              false,
+                                                              rh -> { throw new IllegalStateException("pass failed"); },
+                                                              (rh, handler, content) -> CompletableFuture.completedFuture(false),
+                                                              ConstraintPoint.CONTROLLER);
+        Assert.assertTrue(result.toCompletableFuture().isCompletedExceptionally());
+    }
+
+    @Test
+    public void testPattern_manyOrValues()
+    {
+        final String[] values = new String[50];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = "printer.model" + i;
+        }
+        pass.accept(equalityPattern(values,
+                                    ConstraintMode.OR,
+                                    "printer.model49"));
+        fail.accept(equalityPattern(values,
+                                    ConstraintMode.OR,
+                                    "printer.model50"));
+        fail.accept(equalityPattern(values,
+                                    ConstraintMode.AND,
+                                    "printer.model49"));
+        fail.accept(equalityPattern(new String[0],
+                                    ConstraintMode.OR,
+                                    "printer.model49"));
+    }
+
+    private CompletionStage<Boolean> equalityPattern(final String[] values,
+                                                     final ConstraintMode mode,
+                                                     final String permission)
+    {
+        final SubjectCache subjectCache = Mockito.mock(SubjectCache.class);
+        Mockito.when(subjectCache.apply(Mockito.any(DeadboltHandler.class),
+                                        Mockito.any(Http.Request.class)))
+               .thenReturn(CompletableFuture.completedFuture(F.Tuple(Optional.of(new TestSubject.Builder().permission(new TestPermission(permission)).build()), new Http.RequestBuilder().build())));
+        final ConstraintLogic logic = new ConstraintLogic(new DeadboltAnalyzer(),
+                                                          subjectCache,
+                                                          new DefaultPatternCache());
+        return logic.pattern(new Http.RequestBuilder().build(),
+                             handler(() -> null),
+                             Optional.empty(),
+                             values,
+                             mode,
+                             PatternType.EQUALITY,
+                             Optional.empty(),
+                             false,
+                             rh -> CompletableFuture.completedFuture(true),
+                             (rh, handler, content) -> CompletableFuture.completedFuture(false),
+                             ConstraintPoint.CONTROLLER);
+    }
+
+    @Test
+    public void testPattern_customStopsWhenDecided()
+    {
+        final List<String> checked = new ArrayList<>();
+        final DeadboltHandler handler = withDrh(() -> new AbstractDynamicResourceHandler()
+        {
+            @Override
+            public CompletionStage<Boolean> checkPermission(final String permissionValue,
+                                                            final Optional<String> meta,
+                                                            final DeadboltHandler deadboltHandler,
+                                                            final Http.RequestHeader requestHeader)
+            {
+                checked.add(permissionValue);
+                // a mix of already-completed and pending checks
+                return "b".equals(permissionValue) ? CompletableFuture.supplyAsync(() -> false)
+                                                   : CompletableFuture.completedFuture("c".equals(permissionValue));
+            }
+        });
+        final ConstraintLogic logic = new ConstraintLogic(new DeadboltAnalyzer(),
+                                                          Mockito.mock(SubjectCache.class),
+                                                          new DefaultPatternCache());
+
+        pass.accept(logic.pattern(new Http.RequestBuilder().build(),
+                                  handler,
+                                  Optional.empty(),
+                                  new String[]{"a", "b", "c", "d"},
+                                  ConstraintMode.OR,
+                                  PatternType.CUSTOM,
+                                  Optional.empty(),
+                                  false,
+                                  rh -> CompletableFuture.completedFuture(true),
+                                  (rh, h, content) -> CompletableFuture.completedFuture(false),
+                                  ConstraintPoint.CONTROLLER));
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), checked);
+    }
+
+    @Test
+    public void testPattern_concurrentCustomShortCircuits()
+    {
+        final Map<String, CompletableFuture<Boolean>> checks = new ConcurrentHashMap<>();
+        checks.put("a", new CompletableFuture<>());
+        checks.put("b", CompletableFuture.completedFuture(true));
+        checks.put("c", new CompletableFuture<>());
+
+        final CompletionStage<Boolean> result = concurrentCustom(checks,
+                                                                 new String[]{"a", "b", "c"},
+                                                                 ConstraintMode.OR,
+                                                                 2);
+
+        pass.accept(result);
+        Assert.assertTrue(checks.get("a").isCancelled());
+        // c was never started, as b decided the outcome
+        Assert.assertFalse(checks.get("c").isDone());
+    }
+
+    @Test
+    public void testPattern_concurrentCustomAnd()
+    {
+        final Map<String, CompletableFuture<Boolean>> checks = new ConcurrentHashMap<>();
+        checks.put("a", new CompletableFuture<>());
+        checks.put("b", new CompletableFuture<>());
+
+        final CompletionStage<Boolean> result = concurrentCustom(checks,
+                                                                 new String[]{"a", "b"},
+                                                                 ConstraintMode.AND,
+                                                                 4);
+        checks.get("b").complete(true);
+        Assert.assertFalse(result.toCompletableFuture().isDone());
+        checks.get("a").complete(true);
+        pass.accept(result);
+
+        checks.put("a", new CompletableFuture<>());
+        checks.put("b", new CompletableFuture<>());
+        final CompletionStage<Boolean> denied = concurrentCustom(checks,
+                                                                 new String[]{"a", "b"},
+                                                                 ConstraintMode.AND,
+                                                                 4);
+        checks.get("b").complete(false);
+        fail.accept(denied);
+        Assert.assertTrue(checks.get("a").isCancelled());
+    }
+
+    private CompletionStage<Boolean> concurrentCustom(final Map<String, CompletableFuture<Boolean>> checks,
+                                                      final String[] values,
+                                                      final ConstraintMode mode,
+                                                      final int maxConcurrency)
+    {
+        final DynamicResourceHandler drh = new AbstractDynamicResourceHandler()
+        {
+            @Override
+            public CompletionStage<Boolean> checkPermission(final String permissionValue,
+                                                            final Optional<String> meta,
+                                                            final DeadboltHandler deadboltHandler,
+                                                            final Http.RequestHeader requestHeader)
+            {
+                return checks.get(permissionValue);
+            }
+        };
+        final DeadboltHandler handler = new NoPreAuthDeadboltHandler()
+        {
+            @Override
+            public CompletionStage<Optional<DynamicResourceHandler>> getDynamicResourceHandler(final Http.RequestHeader requestHeader)
+            {
+                return CompletableFuture.completedFuture(Optional.of(drh));
+            }
+        };
+        final ConstraintLogic logic = new ConstraintLogic(new DeadboltAnalyzer(),
+                                                          Mockito.mock(SubjectCache.class),
+                                                          new DefaultPatternCache(),
+                                                          new RoleRegistry(),
+                                                          CustomPatternEvaluation.CONCURRENT,
+                                                          maxConcurrency);
+        return logic.pattern(new Http.RequestBuilder().build(),
+                             handler,
+                             Optional.empty(),
+                             values,
+                             mode,
+                             PatternType.CUSTOM,
+                             Optional.empty(),
+                             false,
+                             rh -> CompletableFuture.completedFuture(true),
+                             (rh, h, content) -> CompletableFuture.completedFuture(false),
+                             ConstraintPoint.CONTROLLER);
+    }
+
+    @Test
+    public void testPattern_batchCustom()
+    {
+        final List<Collection<String>> batches = new ArrayList<>();
+        final DynamicResourceHandler drh = new AbstractDynamicResourceHandler()
+        {
+            @Override
+            public CompletionStage<Map<String, Boolean>> checkPermissions(final Collection<String> permissionValues,
+                                                                          final Optional<String> meta,
+                                                                          final DeadboltHandler deadboltHandler,
+                                                                          final Http.RequestHeader requestHeader)
+            {
+                batches.add(permissionValues);
+                final Map<String, Boolean> results = new HashMap<>();
+                permissionValues.forEach(value -> results.put(value,
+                                                              !"b".equals(value)));
+                return CompletableFuture.completedFuture(results);
+            }
+        };
+        final ConstraintLogic logic = new ConstraintLogic(new DeadboltAnalyzer(),
+                                                          Mockito.mock(SubjectCache.class),
+                                                          new DefaultPatternCache(),
+                                                          new RoleRegistry(),
+                                                          CustomPatternEvaluation.BATCH,
+                                                          1);
+
+        fail.accept(logic.pattern(new Http.RequestBuilder().build(),
+                                  withDrh(() -> drh),
+                                  Optional.empty(),
+                                  new String[]{"a", "b", "c"},
+                                  ConstraintMode.AND,
+                                  PatternType.CUSTOM,
+                                  Optional.empty(),
+                                  false,
+                                  rh -> CompletableFuture.completedFuture(true),
+                                  (rh, h, content) -> CompletableFuture.completedFuture(false),
+                                  ConstraintPoint.CONTROLLER));
+        Assert.assertEquals(Collections.singletonList(Arrays.asList("a", "b", "c")), batches);
+    }
+
+    @Test
+    public void testPattern_batchCustomSkipsRememberedValues() throws Exception
+    {
+        final List<Collection<String>> batches = new ArrayList<>();
+        final DynamicResourceHandler drh = new AbstractDynamicResourceHandler()
+        {
+            @Override
+            public CompletionStage<Map<String, Boolean>> checkPermissions(final Collection<String> permissionValues,
+                                                                          final Optional<String> meta,
+                                                                          final DeadboltHandler deadboltHandler,
+                                                                          final Http.RequestHeader requestHeader)
+            {
+                batches.add(new ArrayList<>(permissionValues));
+                final Map<String, Boolean> results = new HashMap<>();
+                permissionValues.forEach(value -> results.put(value,
+                                                              true));
+                return CompletableFuture.completedFuture(results);
+            }
+        };
+        final ConstraintLogic logic = new ConstraintLogic(new DeadboltAnalyzer(),
+                                                          Mockito.mock(SubjectCache.class),
+                                                          new DefaultPatternCache(),
+                                                          new RoleRegistry(),
+                                                          CustomPatternEvaluation.BATCH,
+                                                          1,
+                                                          true,
+                                                          new DecisionCache(),
+                                                          new DefaultRolePermissionsCache(new DefaultPatternCache()));
+        final DeadboltHandler handler = withDrh(() -> drh);
+
+        final Http.RequestHeader request = logic.pattern(new Http.RequestBuilder().build(),
+                                                         handler,
+                                                         Optional.empty(),
+                                                         new String[]{"a", "b"},
+                                                         ConstraintMode.AND,
+                                                         PatternType.CUSTOM,
+                                                         Optional.empty(),
+                                                         false,
+                                                         rh -> CompletableFuture.completedFuture(rh),
+                                                         (rh, h, content) -> CompletableFuture.completedFuture(rh),
+                                                         ConstraintPoint.CONTROLLER)
+                                                .toCompletableFuture()
+                                                .get();
+        pass.accept(logic.pattern(request,
+                                  handler,
+                                  Optional.empty(),
+                                  new String[]{"b", "c", "a"},
+                                  ConstraintMode.AND,
+                                  PatternType.CUSTOM,
+                                  Optional.empty(),
+                                  false,
+                                  rh -> CompletableFuture.completedFuture(true),
+                                  (rh, h, content) -> CompletableFuture.completedFuture(false),
+                                  ConstraintPoint.TEMPLATE));
+
+        Assert.assertEquals(Arrays.asList(Arrays.asList("a", "b"),
+                                          Collections.singletonList("c")),
+                            batches);
+    }
+
+    @Test
+    public void testDynamic_batchSkipsRememberedAndCachedDecisions() throws Exception
+    {
+        final List<Collection<String>> batches = new ArrayList<>();
+        final DynamicResourceHandler drh = new AbstractDynamicResourceHandler()
+        {
+            @Override
+            public CompletionStage<Boolean> isAllowed(final String name,
+                                                      final Optional<String> meta,
+                                                      final DeadboltHandler deadboltHandler,
+                                                      final Http.RequestHeader requestHeader)
+            {
+                return CompletableFuture.completedFuture(true);
+            }
+
+            @Override
+            public CompletionStage<Map<String, Boolean>> areAllowed(final Collection<String> names,
+                                                                    final Optional<String> meta,
+                                                                    final DeadboltHandler deadboltHandler,
+                                                                    final Http.RequestHeader requestHeader)
+            {
+                batches.add(new ArrayList<>(names));
+                final Map<String, Boolean> results = new HashMap<>();
+                names.forEach(name -> results.put(name,
+                                                  !"denied".equals(name)));
+                return CompletableFuture.completedFuture(results);
+            }
+
+            @Override
+            public Optional<DecisionCacheability> cacheability(final String name,
+                                                               final Optional<String> meta)
+            {
+                return "cached".equals(name) ? Optional.of(DecisionCacheability.of(DecisionCacheability.Scope.GLOBAL,
+                                                                                   1,
+                                                                                   TimeUnit.MINUTES))
+                                             : Optional.empty();
+            }
+        };
+        final ConstraintLogic logic = new ConstraintLogic(new DeadboltAnalyzer(),
+                                                          Mockito.mock(SubjectCache.class),
+                                                          new DefaultPatternCache(),
+                                                          new RoleRegistry(),
+                                                          CustomPatternEvaluation.SEQUENTIAL,
+                                                          1,
+                                                          true,
+                                                          new DecisionCache(),
+                                                          new DefaultRolePermissionsCache(new DefaultPatternCache()));
+        final DeadboltHandler handler = withDrh(() -> drh);
+
+        // "cached" is kept between requests, "remembered" only for this request
+        pass.accept(logic.dynamic(new Http.RequestBuilder().build(),
+                                  handler,
+                                  Optional.empty(),
+                                  "cached",
+                                  Optional.empty(),
+                                  rh -> CompletableFuture.completedFuture(true),
+                                  (rh, h, content) -> CompletableFuture.completedFuture(false),
+                                  ConstraintPoint.CONTROLLER));
+        final Http.RequestHeader request = logic.dynamic(new Http.RequestBuilder().build(),
+                                                         handler,
+                                                         Optional.empty(),
+                                                         "remembered",
+                                                         Optional.empty(),
+                                                         rh -> CompletableFuture.completedFuture(rh),
+                                                         (rh, h, content) -> CompletableFuture.completedFuture(rh),
+                                                         ConstraintPoint.CONTROLLER)
+                                                .toCompletableFuture()
+                                                .get();
+        for (int i = 0; i < 2; i++)
+        {
+            final Map<String, Boolean> results = logic.dynamic(request,
+                                                               handler,
+                                                               Arrays.asList("cached", "remembered", "denied", "other", "denied"),
+                                                               Optional.empty(),
+                                                               ConstraintPoint.TEMPLATE)
+                                                      .toCompletableFuture()
+                                                      .get();
+            Assert.assertEquals(Arrays.asList("cached", "remembered", "denied", "other"),
+                                new ArrayList<>(results.keySet()));
+            Assert.assertTrue(results.get("cached"));
+            Assert.assertTrue(results.get("remembered"));
+            Assert.assertFalse(results.get("denied"));
+            Assert.assertTrue(results.get("other"));
+        }
+
+        // the second time, everything was remembered
+        Assert.assertEquals(Collections.singletonList(Arrays.asList("denied", "other")),
+                            batches);
+    }
+
+    @Test
+    public void testDynamic_batch() throws Exception
+    {
+        final ConstraintLogic logic = new ConstraintLogic(new DeadboltAnalyzer(),
+                                                          Mockito.mock(SubjectCache.class),
+                                                          new DefaultPatternCache());
+        final Map<String, Boolean> results = logic.dynamic(new Http.RequestBuilder().build(),
+                                                           withDrh(() -> new AbstractDynamicResourceHandler()
+                                                           {
+                                                               @Override
+                                                               public CompletionStage<Boolean> isAllowed(final String name,
+                                                                                                         final Optional<String> meta,
+                                                                                                         final DeadboltHandler deadboltHandler,
+                                                                                                         final Http.RequestHeader requestHeader)
+                                                               {
+                                                                   return CompletableFuture.completedFuture(name.startsWith("allow"));
+                                                               }
+                                                           }),
+                                                           Arrays.asList("allow.1", "deny.2", "allow.3"),
+                                                           Optional.empty(),
+                                                           ConstraintPoint.TEMPLATE)
+                                                  .toCompletableFuture()
+                                                  .get();
+
+        Assert.assertTrue(results.get("allow.1"));
+        Assert.assertFalse(results.get("deny.2"));
+        Assert.assertTrue(results.get("allow.3"));
+    }
+
+    @Test
+    public void testDynamic_rememberedForTheRequest() throws Exception
+    {
+        final AtomicInteger resolutions = new AtomicInteger();
+        final AtomicInteger checks = new AtomicInteger();
+        final DynamicResourceHandler drh = new AbstractDynamicResourceHandler()
+        {
+            @Override
+            public CompletionStage<Boolean> isAllowed(final String name,
+                                                      final Optional<String> meta,
+                                                      final DeadboltHandler deadboltHandler,
+                                                      final Http.RequestHeader requestHeader)
+            {
+                checks.incrementAndGet();
+                return CompletableFuture.completedFuture(true);
+            }
+        };
+        final DeadboltHandler handler = new NoPreAuthDeadboltHandler()
+        {
+            @Override
+            public CompletionStage<Optional<DynamicResourceHandler>> getDynamicResourceHandler(final Http.RequestHeader requestHeader)
+            {
+                resolutions.incrementAndGet();
+                return CompletableFuture.completedFuture(Optional.of(drh));
+            }
+        };
+        final ConstraintLogic logic = new ConstraintLogic(new DeadboltAnalyzer(),
+                                                          Mockito.mock(SubjectCache.class),
+                                                          new DefaultPatternCache(),
+                                                          new RoleRegistry(),
+                                                          CustomPatternEvaluation.SEQUENTIAL,
+                                                          1,
+                                                          true,
+                                                          new DecisionCache(),
+                                                          new DefaultRolePermissionsCache(new DefaultPatternCache()));
+
+        // e.g. a filter, then the controller, then a template, all with the request passed on by the previous check
+        final Http.RequestHeader request = logic.dynamic(new Http.RequestBuilder().build(),
+                                                         handler,
+                                                         Optional.empty(),
+                                                         "foo",
+                                                         Optional.of("bar"),
+                                                         rh -> CompletableFuture.completedFuture(rh),
+                                                         (rh, h, content) -> CompletableFuture.completedFuture(rh),
+                                                         ConstraintPoint.FILTER)
+                                                .toCompletableFuture()
+                                                .get();
+        for (int i = 0; i < 10; i++)
+        {
+            pass.accept(logic.dynamic(request,
+                                      handler,
+                                      Optional.empty(),
+                                      "foo",
+                                      Optional.of("bar"),
+                                      rh -> CompletableFuture.completedFuture(true),
+                                      (rh, h, content) -> CompletableFuture.completedFuture(false),
+                                      ConstraintPoint.TEMPLATE));
+        }
+
+        Assert.assertEquals(1, resolutions.get());
+        Assert.assertEquals(1, checks.get());
+    }
+
+    @Test
+    public void testDynamic_cacheableDecisionIsReusedAcrossRequests() throws Exception
+    {
+        final AtomicInteger checks = new AtomicInteger();
+        final DynamicResourceHandler drh = new AbstractDynamicResourceHandler()
+        {
+            @Override
+            public CompletionStage<Boolean> isAllowed(final String name,
+                                                      final Optional<String> meta,
+                                                      final DeadboltHandler deadboltHandler,
+                                                      final Http.RequestHeader requestHeader)
+            {
+                checks.incrementAndGet();
+                return CompletableFuture.completedFuture(true);
+            }
+
+            @Override
+            public Optional<DecisionCacheability> cacheability(final String name,
+                                                               final Optional<String> meta)
+            {
+                return "cacheable".equals(name) ? Optional.of(DecisionCacheability.of(DecisionCacheability.Scope.SUBJECT,
+                                                                                      1,
+                                                                                      TimeUnit.MINUTES))
+                                                : Optional.empty();
+            }
+        };
+        final SubjectCache subjectCache = Mockito.mock(SubjectCache.class);
+        final Http.Request subjectRequest = new Http.RequestBuilder().build();
+        Mockito.when(subjectCache.apply(Mockito.any(DeadboltHandler.class),
+                                        Mockito.any(Http.Request.class)))
+               .thenReturn(CompletableFuture.completedFuture(F.Tuple(Optional.of(new TestSubject.Builder().identifier("steve").build()), subjectRequest)));
+        final DecisionCache decisionCache = new DecisionCache();
+        final ConstraintLogic logic = new ConstraintLogic(new DeadboltAnalyzer(),
+                                                          subjectCache,
+                                                          new DefaultPatternCache(),
+                                                          new RoleRegistry(),
+                                                          CustomPatternEvaluation.SEQUENTIAL,
+                                                          1,
+                                                          false,
+                                                          decisionCache,
+                                                          new DefaultRolePermissionsCache(new DefaultPatternCache()));
+
+        final DeadboltHandler handler = withDrh(() -> drh);
+        for (int i = 0; i < 3; i++)
+        {
+            for (String name : Arrays.asList("cacheable", "uncacheable"))
+            {
+                pass.accept(logic.dynamic(new Http.RequestBuilder().build(),
+                                          handler,
+                                          Optional.empty(),
+                                          name,
+                                          Optional.empty(),
+                                          rh -> CompletableFuture.completedFuture(true),
+                                          (rh, h, content) -> CompletableFuture.completedFuture(false),
+                                          ConstraintPoint.CONTROLLER));
+            }
+        }
+
+        Assert.assertEquals(4, checks.get());
+        Assert.assertEquals(2, decisionCache.stats().hits());
+
+        // the request the subject was looked up with is passed on, so it isn't looked up again
+        Assert.assertSame(subjectRequest,
+                          logic.dynamic(new Http.RequestBuilder().build(),
+                                        handler,
+                                        Optional.empty(),
+                                        "cacheable",
+                                        Optional.empty(),
+                                        rh -> CompletableFuture.completedFuture(rh),
+                                        (rh, h, content) -> CompletableFuture.completedFuture(rh),
+                                        ConstraintPoint.CONTROLLER)
+                               .toCompletableFuture()
+                               .get());
+
+        decisionCache.invalidateSubject("steve");
+        Assert.assertEquals(0, decisionCache.stats().size());
+    }
+
     @Test
     public void testDynamic_pass() throws Exception
     {
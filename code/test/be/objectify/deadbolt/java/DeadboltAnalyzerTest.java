@@ -18,6 +18,8 @@ package be.objectify.deadbolt.java;
 import be.objectify.deadbolt.java.models.Permission;
 import be.objectify.deadbolt.java.models.Role;
 import be.objectify.deadbolt.java.models.Subject;
+import be.objectify.deadbolt.java.patterns.PermissionTrie;
+import be.objectify.deadbolt.java.patterns.WildcardPermission;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -461,6 +463,24 @@ public class DeadboltAnalyzerTest
                                                                       Optional.of("printers.edit")));
     }
 
+    @Test
+    public void testPermissionTrieIsReusedForTheSamePermissions()
+    {
+        final DeadboltAnalyzer analyzer = new DeadboltAnalyzer();
+
+        final PermissionTrie trie = analyzer.permissionTrie(new TestSubject.Builder().permissions(Collections.singletonList(new TestPermission("printers:edit")))
+                                                                                     .build());
+        Assert.assertSame(trie,
+                          analyzer.permissionTrie(new TestSubject.Builder().permissions(Collections.singletonList(new TestPermission("printers:edit")))
+                                                                           .build()));
+        Assert.assertNotSame(trie,
+                             analyzer.permissionTrie(new TestSubject.Builder().permissions(Collections.singletonList(new TestPermission("printers:view")))
+                                                                              .build()));
+        Assert.assertTrue(analyzer.checkWildcardPattern(Optional.of(new TestSubject.Builder().permissions(Collections.singletonList(new TestPermission("printers:*")))
+                                                                                              .build()),
+                                                        Optional.of(WildcardPermission.parse("printers:edit"))));
+    }
+
     private static class TestSubject implements Subject
     {
         private final String identifier;
@@ -16,6 +16,7 @@
 package be.objectify.deadbolt.java;
 
 import be.objectify.deadbolt.java.cache.HandlerCache;
+import be.objectify.deadbolt.java.cache.ViewDecisions;
 import be.objectify.deadbolt.java.models.PatternType;
 import be.objectify.deadbolt.java.testsupport.TestHandlerCache;
 import org.junit.Assert;
@@ -23,11 +24,14 @@ import org.junit.Test;
 import org.mockito.Mockito;
 import play.mvc.Http;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Steve Chaloner (steve@objectify.be)
@@ -143,6 +147,136 @@ public class ViewSupportTest extends AbstractFakeApplicationTest
         Assert.assertTrue(result);
     }
 
+    @Test
+    public void testPrefetch() throws Exception
+    {
+        final ViewSupport viewSupport = viewSupport();
+        final Http.Request request = viewSupport.prefetch(new Http.RequestBuilder().build(),
+                                                          Arrays.asList(ViewConstraint.pattern("allow",
+                                                                                               PatternType.CUSTOM,
+                                                                                               Optional.empty(),
+                                                                                               false),
+                                                                        ViewConstraint.pattern("deny",
+                                                                                               PatternType.CUSTOM,
+                                                                                               Optional.empty(),
+                                                                                               false),
+                                                                        ViewConstraint.pattern("allow",
+                                                                                               PatternType.CUSTOM,
+                                                                                               Optional.empty(),
+                                                                                               false)))
+                                                .toCompletableFuture()
+                                                .get();
+
+        final ViewDecisions decisions = request.attrs().get(ViewDecisions.KEY);
+        Assert.assertEquals(2, decisions.size());
+        Assert.assertEquals(Optional.of(true), decisions.get(handlerCache.get(),
+                                                             ViewConstraint.pattern("allow",
+                                                                                    PatternType.CUSTOM,
+                                                                                    Optional.empty(),
+                                                                                    false)));
+
+        // the template uses the prefetched decision instead of checking the constraint again
+        decisions.put(handlerCache.get(),
+                      ViewConstraint.pattern("deny",
+                                             PatternType.CUSTOM,
+                                             Optional.empty(),
+                                             false),
+                      true);
+        Assert.assertTrue(viewSupport.viewPattern("deny",
+                                                  PatternType.CUSTOM,
+                                                  Optional.empty(),
+                                                  false,
+                                                  handlerCache.get(),
+                                                  Optional.empty(),
+                                                  1000L,
+                                                  request));
+    }
+
+    @Test
+    public void testPrefetchLeavesOutFailures() throws Exception
+    {
+        final Http.Request request = viewSupport().prefetch(new Http.RequestBuilder().build(),
+                                                            handlerCache.apply("noDrh"),
+                                                            Collections.singletonList(ViewConstraint.pattern("foo",
+                                                                                                             PatternType.CUSTOM,
+                                                                                                             Optional.empty(),
+                                                                                                             false)))
+                                                  .toCompletableFuture()
+                                                  .get();
+
+        Assert.assertEquals(0, request.attrs().get(ViewDecisions.KEY).size());
+    }
+
+    @Test
+    public void testDecisionsAreRememberedForPrefetchedRequest() throws Exception
+    {
+        final AtomicInteger checks = new AtomicInteger();
+        final DeadboltHandler handler = countingHandler(checks);
+        final ViewSupport viewSupport = viewSupport();
+        final Http.Request request = viewSupport.prefetch(new Http.RequestBuilder().build(),
+                                                          Collections.emptyList())
+                                                .toCompletableFuture()
+                                                .get();
+
+        for (int i = 0; i < 3; i++)
+        {
+            Assert.assertTrue(viewSupport.viewPattern("foo",
+                                                      PatternType.CUSTOM,
+                                                      Optional.empty(),
+                                                      false,
+                                                      handler,
+                                                      Optional.empty(),
+                                                      1000L,
+                                                      request));
+        }
+        Assert.assertEquals(1, checks.get());
+        Assert.assertEquals(2, request.attrs().get(ViewDecisions.KEY).avoidedEvaluations());
+        Assert.assertEquals(2, viewSupport.avoidedEvaluations());
+
+        // without the decisions, every tag checks its constraint
+        final Http.Request plain = new Http.RequestBuilder().build();
+        viewSupport.viewPattern("foo", PatternType.CUSTOM, Optional.empty(), false, handler, Optional.empty(), 1000L, plain);
+        viewSupport.viewPattern("foo", PatternType.CUSTOM, Optional.empty(), false, handler, Optional.empty(), 1000L, plain);
+        Assert.assertEquals(3, checks.get());
+    }
+
+    @Test
+    public void testViewConstraintEquality()
+    {
+        Assert.assertEquals(ViewConstraint.restrict(Collections.singletonList(new String[]{"foo", "bar"})),
+                            ViewConstraint.restrict(Collections.singletonList(new String[]{"foo", "bar"})));
+        Assert.assertNotEquals(ViewConstraint.restrict(Collections.singletonList(new String[]{"foo", "bar"})),
+                               ViewConstraint.restrict(Collections.singletonList(new String[]{"bar", "foo"})));
+        Assert.assertNotEquals(ViewConstraint.dynamic("foo",
+                                                      Optional.empty()),
+                               ViewConstraint.roleBasedPermissions("foo"));
+        Assert.assertNotEquals(ViewConstraint.pattern("foo",
+                                                      PatternType.EQUALITY,
+                                                      Optional.empty(),
+                                                      false),
+                               ViewConstraint.pattern("foo",
+                                                      PatternType.EQUALITY,
+                                                      Optional.empty(),
+                                                      true));
+    }
+
+    private DeadboltHandler countingHandler(final AtomicInteger checks)
+    {
+        final DynamicResourceHandler drh = new AbstractDynamicResourceHandler()
+        {
+            @Override
+            public CompletionStage<Boolean> checkPermission(final String permissionValue,
+                                                            final Optional<String> meta,
+                                                            final DeadboltHandler deadboltHandler,
+                                                            final Http.RequestHeader requestHeader)
+            {
+                checks.incrementAndGet();
+                return CompletableFuture.completedFuture(true);
+            }
+        };
+        return withDrh(() -> drh);
+    }
+
     @Override
     protected HandlerCache handlers()
     {
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.actions;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.cache.BeforeAuthCheckCache;
+import be.objectify.deadbolt.java.cache.HandlerCache;
+import com.typesafe.config.ConfigFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import play.mvc.Action;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class DecisionTimeoutTest
+{
+    private final DecisionTimeout timeout = new DecisionTimeout();
+
+    @After
+    public void tearDown()
+    {
+        timeout.shutdown();
+    }
+
+    @Test
+    public void testDecisionIsPassedThrough() throws Exception
+    {
+        final CompletableFuture<String> decision = timeout.within(new CompletableFuture<>(),
+                                                                  1000);
+        decision.complete("foo");
+
+        Assert.assertEquals("foo", decision.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, timeout.stats().timed());
+        Assert.assertEquals(0, timeout.stats().timeouts());
+    }
+
+    @Test
+    public void testTimeout() throws Exception
+    {
+        final CompletableFuture<String> decision = timeout.within(new CompletableFuture<>(),
+                                                                  10);
+
+        assertFailsWith(TimeoutException.class, decision);
+        Assert.assertEquals(1, timeout.stats().timeouts());
+    }
+
+    @Test
+    public void testTimeoutRunsWithTheCallersClassLoader() throws Exception
+    {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader previous = thread.getContextClassLoader();
+        final ClassLoader classLoader = new ClassLoader(previous) {};
+        final CompletableFuture<ClassLoader> seen = new CompletableFuture<>();
+        thread.setContextClassLoader(classLoader);
+        try
+        {
+            timeout.within(new CompletableFuture<>(),
+                           10)
+                   .whenComplete((result, error) -> seen.complete(Thread.currentThread().getContextClassLoader()));
+        }
+        finally
+        {
+            thread.setContextClassLoader(previous);
+        }
+
+        Assert.assertSame(classLoader, seen.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDecisionsAreNotTimedAfterShutdown() throws Exception
+    {
+        timeout.shutdown();
+
+        final CompletableFuture<String> decision = timeout.within(new CompletableFuture<>(),
+                                                                  10);
+        // well past the timeout
+        Thread.sleep(100);
+        Assert.assertFalse(decision.isDone());
+        Assert.assertEquals(0, timeout.stats().timed());
+    }
+
+    @Test
+    public void testActionTimeoutIsAnAuthFailure() throws Exception
+    {
+        final AbstractDeadboltAction<Object> action = action(new CompletableFuture<>());
+        action.delegate = Mockito.mock(Action.class);
+
+        final Result result = action.call(new Http.RequestBuilder().build())
+                                    .toCompletableFuture()
+                                    .get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(Http.Status.UNAUTHORIZED, result.status());
+        Assert.assertEquals(1, timeout.stats().timeouts());
+        Mockito.verifyZeroInteractions(action.delegate);
+    }
+
+    @Test
+    public void testLateDecisionKeepsTheAuthFailure() throws Exception
+    {
+        final CompletableFuture<Void> decided = new CompletableFuture<>();
+        final AbstractDeadboltAction<Object> action = action(decided);
+        action.delegate = Mockito.mock(Action.class);
+
+        final CompletableFuture<Result> result = action.call(new Http.RequestBuilder().build())
+                                                       .toCompletableFuture();
+        Assert.assertEquals(Http.Status.UNAUTHORIZED, result.get(5, TimeUnit.SECONDS).status());
+        decided.complete(null);
+
+        Assert.assertEquals(Http.Status.UNAUTHORIZED, result.get().status());
+        Mockito.verifyZeroInteractions(action.delegate);
+    }
+
+    @Test
+    public void testSlowDelegateIsNotTimed() throws Exception
+    {
+        final AbstractDeadboltAction<Object> action = action(CompletableFuture.completedFuture(null));
+        action.delegate = Mockito.mock(Action.class);
+        final CompletableFuture<Result> slow = new CompletableFuture<>();
+        Mockito.when(action.delegate.call(Mockito.any(Http.Request.class)))
+               .thenReturn(slow);
+
+        final CompletableFuture<Result> result = action.call(new Http.RequestBuilder().build())
+                                                       .toCompletableFuture();
+        // well past the blocking timeout
+        Thread.sleep(100);
+        Assert.assertFalse(result.isDone());
+        slow.complete(Results.ok());
+
+        Assert.assertEquals(Http.Status.OK, result.get(5, TimeUnit.SECONDS).status());
+        Assert.assertEquals(0, timeout.stats().timeouts());
+    }
+
+    private AbstractDeadboltAction<Object> action(final CompletionStage<Void> decided)
+    {
+        final DeadboltHandler handler = Mockito.mock(DeadboltHandler.class);
+        Mockito.when(handler.onAuthFailure(Mockito.any(Http.RequestHeader.class),
+                                           Mockito.eq(Optional.empty())))
+               .thenReturn(CompletableFuture.completedFuture(Results.unauthorized()));
+        final HandlerCache handlerCache = Mockito.mock(HandlerCache.class);
+        Mockito.when(handlerCache.get())
+               .thenReturn(handler);
+
+        return new AbstractDeadboltAction<Object>(handlerCache,
+                                                  Mockito.mock(BeforeAuthCheckCache.class),
+                                                  ConfigFactory.parseString("deadbolt.java.blocking = true\n" +
+                                                                            "deadbolt.java.blocking-timeout = 10")
+                                                               .withFallback(ConfigFactory.load()),
+                                                  timeout)
+        {
+            @Override
+            public CompletionStage<Result> execute(final Http.RequestHeader request)
+            {
+                return decided.thenCompose(ignored -> authorizeAndExecute(request));
+            }
+
+            @Override
+            protected boolean deferred()
+            {
+                return false;
+            }
+
+            @Override
+            public Optional<String> getContent()
+            {
+                return Optional.empty();
+            }
+
+            @Override
+            public String getHandlerKey()
+            {
+                return null;
+            }
+        };
+    }
+
+    private static void assertFailsWith(final Class<? extends Throwable> expected,
+                                        final CompletionStage<?> stage) throws Exception
+    {
+        try
+        {
+            stage.toCompletableFuture().get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected " + expected.getSimpleName());
+        }
+        catch (ExecutionException e)
+        {
+            Assert.assertTrue(String.valueOf(e.getCause()),
+                              expected.isInstance(e.getCause()));
+        }
+    }
+}
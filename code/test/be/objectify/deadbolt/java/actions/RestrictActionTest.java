@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.actions;
+
+import be.objectify.deadbolt.java.ConstraintLogic;
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.cache.BeforeAuthCheckCache;
+import be.objectify.deadbolt.java.cache.HandlerCache;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+import org.mockito.Mockito;
+import play.mvc.Http;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class RestrictActionTest
+{
+    private static final List<String[]> OVERRIDDEN = Collections.singletonList(new String[]{"editor"});
+
+    @Test
+    public void testRoleGroupsAreCachedAgainstTheAnnotation() throws Exception
+    {
+        final ConstraintLogic constraintLogic = Mockito.mock(ConstraintLogic.class);
+        final Restrict restrict = Mockito.mock(Restrict.class);
+        final RestrictAction action = new RestrictAction(Mockito.mock(HandlerCache.class),
+                                                         Mockito.mock(BeforeAuthCheckCache.class),
+                                                         ConfigFactory.load(),
+                                                         constraintLogic);
+        action.configuration = restrict;
+
+        action.applyRestriction(new Http.RequestBuilder().build(),
+                                Mockito.mock(DeadboltHandler.class));
+
+        Mockito.verify(constraintLogic).compileRoleGroups(Mockito.same(restrict),
+                                                          Mockito.any(Supplier.class));
+    }
+
+    @Test
+    public void testOverriddenRoleGroupsAreUsed() throws Exception
+    {
+        final ConstraintLogic constraintLogic = Mockito.mock(ConstraintLogic.class);
+        final RestrictAction action = new RestrictAction(Mockito.mock(HandlerCache.class),
+                                                         Mockito.mock(BeforeAuthCheckCache.class),
+                                                         ConfigFactory.load(),
+                                                         constraintLogic)
+        {
+            @Override
+            public List<String[]> getRoleGroups()
+            {
+                return OVERRIDDEN;
+            }
+        };
+        action.configuration = Mockito.mock(Restrict.class);
+
+        action.applyRestriction(new Http.RequestBuilder().build(),
+                                Mockito.mock(DeadboltHandler.class));
+
+        Mockito.verify(constraintLogic).compileRoleGroups(OVERRIDDEN);
+        Mockito.verify(constraintLogic,
+                       Mockito.never()).compileRoleGroups(Mockito.any(),
+                                                          Mockito.any(Supplier.class));
+    }
+}
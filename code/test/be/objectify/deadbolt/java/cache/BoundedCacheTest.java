@@ -0,0 +1,157 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class BoundedCacheTest
+{
+    @Test
+    public void testLeastRecentlyUsedIsEvicted()
+    {
+        final AtomicLong time = new AtomicLong();
+        final BoundedCache<String, String> cache = new BoundedCache<>(2,
+                                                                      0,
+                                                                      TimeUnit.MILLISECONDS,
+                                                                      time::incrementAndGet);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.getIfPresent("a");
+        cache.put("c", "3");
+
+        Assert.assertEquals("1", cache.getIfPresent("a"));
+        Assert.assertNull(cache.getIfPresent("b"));
+        Assert.assertEquals("3", cache.getIfPresent("c"));
+        Assert.assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    public void testLargeCacheEvictsInBatches()
+    {
+        final AtomicLong time = new AtomicLong();
+        final BoundedCache<Integer, Integer> cache = new BoundedCache<>(160,
+                                                                        0,
+                                                                        TimeUnit.MILLISECONDS,
+                                                                        time::incrementAndGet);
+        for (int i = 0; i < 160; i++)
+        {
+            cache.put(i, i);
+        }
+        cache.getIfPresent(0);
+        cache.put(160, 160);
+
+        // the excess entry and a sixteenth of the cache are evicted, least-recently used first
+        Assert.assertEquals(150, cache.size());
+        Assert.assertEquals(11, cache.stats().evictions());
+        Assert.assertEquals(Integer.valueOf(0), cache.getIfPresent(0));
+        Assert.assertNull(cache.getIfPresent(1));
+        Assert.assertNull(cache.getIfPresent(11));
+        Assert.assertEquals(Integer.valueOf(12), cache.getIfPresent(12));
+        Assert.assertEquals(Integer.valueOf(160), cache.getIfPresent(160));
+    }
+
+    @Test
+    public void testEntriesExpire()
+    {
+        final AtomicLong time = new AtomicLong();
+        final BoundedCache<String, String> cache = new BoundedCache<>(10,
+                                                                      100,
+                                                                      TimeUnit.NANOSECONDS,
+                                                                      time::get);
+        cache.put("a", "1");
+        time.set(99);
+        Assert.assertEquals("1", cache.getIfPresent("a"));
+        time.set(100);
+        Assert.assertNull(cache.getIfPresent("a"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testStats()
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<>(10,
+                                                                      0,
+                                                                      TimeUnit.MILLISECONDS);
+        cache.computeIfAbsent("a", key -> "1");
+        cache.computeIfAbsent("a", key -> "2");
+        cache.getIfPresent("b");
+
+        final CacheStats stats = cache.stats();
+        Assert.assertEquals(1, stats.hits());
+        Assert.assertEquals(2, stats.misses());
+        Assert.assertEquals(1, stats.size());
+        Assert.assertEquals("1", cache.getIfPresent("a"));
+    }
+
+    @Test
+    public void testInvalidateIf()
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<>(10,
+                                                                      0,
+                                                                      TimeUnit.MILLISECONDS);
+        cache.put("a1", "1");
+        cache.put("a2", "2");
+        cache.put("b1", "3");
+        cache.invalidateIf(key -> key.startsWith("a"));
+
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals("3", cache.getIfPresent("b1"));
+    }
+
+    @Test
+    public void testInvalidateKeepsNewerValue()
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<>(10,
+                                                                      0,
+                                                                      TimeUnit.MILLISECONDS);
+        final String older = new String("1");
+        cache.put("a", older);
+        cache.put("a", "2");
+
+        Assert.assertFalse(cache.invalidate("a", older));
+        Assert.assertEquals("2", cache.getIfPresent("a"));
+        Assert.assertTrue(cache.invalidate("a", "2"));
+        Assert.assertNull(cache.getIfPresent("a"));
+    }
+
+    @Test
+    public void testRecencyFollowsTheTicker()
+    {
+        final AtomicLong time = new AtomicLong();
+        final BoundedCache<String, String> cache = new BoundedCache<>(2,
+                                                                      0,
+                                                                      TimeUnit.MILLISECONDS,
+                                                                      time::get);
+        cache.put("a", "1");
+        time.set(1);
+        cache.put("b", "2");
+        time.set(2);
+        cache.getIfPresent("a");
+        cache.getIfPresent("a");
+        time.set(3);
+        cache.put("c", "3");
+
+        Assert.assertEquals("1", cache.getIfPresent("a"));
+        Assert.assertNull(cache.getIfPresent("b"));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.models.RoleRegistry;
+import be.objectify.deadbolt.java.models.Subject;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import play.libs.F;
+import play.mvc.Http;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class CoalescingSubjectCacheTest
+{
+    private static final SubjectIdentityExtractor IDENTITY = SubjectIdentityExtractor.header("X-Session");
+
+    @Test
+    public void testConcurrentLoadsAreShared() throws Exception
+    {
+        final CompletableFuture<Optional<? extends Subject>> load = new CompletableFuture<>();
+        final DeadboltHandler handler = handler(load);
+        final CoalescingSubjectCache cache = new CoalescingSubjectCache(config(), IDENTITY, new RoleRegistry());
+
+        final CompletionStage<?> first = cache.apply(handler, request("abc"));
+        final CompletionStage<?> second = cache.apply(handler, request("abc"));
+        final Subject subject = Mockito.mock(Subject.class);
+        load.complete(Optional.of(subject));
+
+        Assert.assertSame(subject, cache.apply(handler, request("abc")).toCompletableFuture().get()._1.get());
+        first.toCompletableFuture().get();
+        second.toCompletableFuture().get();
+
+        // the third request starts after the shared load has completed, so it loads again
+        Mockito.verify(handler, Mockito.times(2)).getSubject(Mockito.any(Http.RequestHeader.class));
+        Assert.assertEquals(3, cache.requestedLoads());
+        Assert.assertEquals(2, cache.actualLoads());
+        Assert.assertEquals(1.0 / 3, cache.coalescingRatio(), 0.0001);
+    }
+
+    @Test
+    public void testDifferentIdentitiesAreNotShared() throws Exception
+    {
+        final CompletableFuture<Optional<? extends Subject>> load = new CompletableFuture<>();
+        final DeadboltHandler handler = handler(load);
+        final CoalescingSubjectCache cache = new CoalescingSubjectCache(config(), IDENTITY, new RoleRegistry());
+
+        cache.apply(handler, request("abc"));
+        cache.apply(handler, request("def"));
+
+        Mockito.verify(handler, Mockito.times(2)).getSubject(Mockito.any(Http.RequestHeader.class));
+        Assert.assertEquals(0.0, cache.coalescingRatio(), 0.0001);
+    }
+
+    @Test
+    public void testNoIdentityIsNotShared() throws Exception
+    {
+        final DeadboltHandler handler = handler(new CompletableFuture<>());
+        final CoalescingSubjectCache cache = new CoalescingSubjectCache(config(), IDENTITY, new RoleRegistry());
+
+        cache.apply(handler, new Http.RequestBuilder().build());
+        cache.apply(handler, new Http.RequestBuilder().build());
+
+        Mockito.verify(handler, Mockito.times(2)).getSubject(Mockito.any(Http.RequestHeader.class));
+        Assert.assertEquals(0, cache.requestedLoads());
+    }
+
+    @Test
+    public void testFailureIsSharedAndNotRetained() throws Exception
+    {
+        final CompletableFuture<Optional<? extends Subject>> load = new CompletableFuture<>();
+        final DeadboltHandler handler = handler(load);
+        final CoalescingSubjectCache cache = new CoalescingSubjectCache(config(), IDENTITY, new RoleRegistry());
+
+        final CompletionStage<?> first = cache.apply(handler, request("abc"));
+        final CompletionStage<?> second = cache.apply(handler, request("abc"));
+        load.completeExceptionally(new IllegalStateException("boom"));
+
+        assertFailed(first);
+        assertFailed(second);
+
+        Mockito.when(handler.getSubject(Mockito.any(Http.RequestHeader.class)))
+               .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+        Assert.assertFalse(cache.apply(handler, request("abc")).toCompletableFuture().get()._1.isPresent());
+        Mockito.verify(handler, Mockito.times(2)).getSubject(Mockito.any(Http.RequestHeader.class));
+    }
+
+    @Test
+    public void testCancellingOneCallerDoesNotAffectTheOthers() throws Exception
+    {
+        final CompletableFuture<Optional<? extends Subject>> load = new CompletableFuture<>();
+        final DeadboltHandler handler = handler(load);
+        final CoalescingSubjectCache cache = new CoalescingSubjectCache(config(), IDENTITY, new RoleRegistry());
+        final F.Tuple<Long, String> key = new F.Tuple<>(0L, "abc");
+
+        final CompletableFuture<Optional<? extends Subject>> first = cache.loadCoalesced(key, handler, request("abc")).toCompletableFuture();
+        final CompletableFuture<Optional<? extends Subject>> second = cache.loadCoalesced(key, handler, request("abc")).toCompletableFuture();
+        first.cancel(false);
+        final CompletableFuture<Optional<? extends Subject>> third = cache.loadCoalesced(key, handler, request("abc")).toCompletableFuture();
+        final Subject subject = Mockito.mock(Subject.class);
+        load.complete(Optional.of(subject));
+
+        Assert.assertTrue(first.isCancelled());
+        Assert.assertSame(subject, second.get().get());
+        Assert.assertSame(subject, third.get().get());
+        Assert.assertEquals(1, cache.actualLoads());
+    }
+
+    private static void assertFailed(final CompletionStage<?> stage) throws InterruptedException
+    {
+        try
+        {
+            stage.toCompletableFuture().get();
+            Assert.fail("Expected the load to fail");
+        }
+        catch (ExecutionException e)
+        {
+            // expected
+        }
+    }
+
+    private static Config config()
+    {
+        return ConfigFactory.parseString("deadbolt.java.cache-user = false");
+    }
+
+    private static Http.Request request(final String identity)
+    {
+        return new Http.RequestBuilder().header("X-Session", identity).build();
+    }
+
+    private static DeadboltHandler handler(final CompletableFuture<Optional<? extends Subject>> load)
+    {
+        final DeadboltHandler handler = Mockito.mock(DeadboltHandler.class);
+        Mockito.when(handler.getId()).thenReturn(0L);
+        Mockito.when(handler.getSubject(Mockito.any(Http.RequestHeader.class))).thenReturn(load);
+        return handler;
+    }
+}
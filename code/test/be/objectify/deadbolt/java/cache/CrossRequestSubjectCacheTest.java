@@ -0,0 +1,178 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.DecisionCacheability;
+import be.objectify.deadbolt.java.models.RoleRegistry;
+import be.objectify.deadbolt.java.models.Subject;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import play.mvc.Http;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class CrossRequestSubjectCacheTest
+{
+    private static final SubjectIdentityExtractor IDENTITY = SubjectIdentityExtractor.header("X-Session");
+
+    @Test
+    public void testSubjectIsSharedBetweenRequests() throws Exception
+    {
+        final Subject subject = Mockito.mock(Subject.class);
+        final DeadboltHandler handler = handler(subject);
+        final CrossRequestSubjectCache cache = new CrossRequestSubjectCache(config(), IDENTITY, new RoleRegistry());
+
+        Assert.assertSame(subject, cache.apply(handler, request("abc")).toCompletableFuture().get()._1.get());
+        Assert.assertSame(subject, cache.apply(handler, request("abc")).toCompletableFuture().get()._1.get());
+
+        Mockito.verify(handler, Mockito.times(1)).getSubject(Mockito.any(Http.RequestHeader.class));
+        Assert.assertEquals(1, cache.stats().hits());
+        Assert.assertEquals(1, cache.stats().misses());
+    }
+
+    @Test
+    public void testDifferentIdentitiesAreNotShared() throws Exception
+    {
+        final DeadboltHandler handler = handler(Mockito.mock(Subject.class));
+        final CrossRequestSubjectCache cache = new CrossRequestSubjectCache(config(), IDENTITY, new RoleRegistry());
+
+        cache.apply(handler, request("abc")).toCompletableFuture().get();
+        cache.apply(handler, request("def")).toCompletableFuture().get();
+
+        Mockito.verify(handler, Mockito.times(2)).getSubject(Mockito.any(Http.RequestHeader.class));
+    }
+
+    @Test
+    public void testNoIdentityIsNotCached() throws Exception
+    {
+        final DeadboltHandler handler = handler(Mockito.mock(Subject.class));
+        final CrossRequestSubjectCache cache = new CrossRequestSubjectCache(config(), IDENTITY, new RoleRegistry());
+
+        cache.apply(handler, new Http.RequestBuilder().build()).toCompletableFuture().get();
+        cache.apply(handler, new Http.RequestBuilder().build()).toCompletableFuture().get();
+
+        Mockito.verify(handler, Mockito.times(2)).getSubject(Mockito.any(Http.RequestHeader.class));
+        Assert.assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    public void testAbsentSubjectIsNotCached() throws Exception
+    {
+        final DeadboltHandler handler = handler(null);
+        final CrossRequestSubjectCache cache = new CrossRequestSubjectCache(config(), IDENTITY, new RoleRegistry());
+
+        Assert.assertFalse(cache.apply(handler, request("abc")).toCompletableFuture().get()._1.isPresent());
+        Assert.assertFalse(cache.apply(handler, request("abc")).toCompletableFuture().get()._1.isPresent());
+
+        Mockito.verify(handler, Mockito.times(2)).getSubject(Mockito.any(Http.RequestHeader.class));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception
+    {
+        final DeadboltHandler handler = handler(Mockito.mock(Subject.class));
+        final CrossRequestSubjectCache cache = new CrossRequestSubjectCache(config(), IDENTITY, new RoleRegistry());
+
+        cache.apply(handler, request("abc")).toCompletableFuture().get();
+        cache.invalidate("abc");
+        cache.apply(handler, request("abc")).toCompletableFuture().get();
+
+        Mockito.verify(handler, Mockito.times(2)).getSubject(Mockito.any(Http.RequestHeader.class));
+    }
+
+    @Test
+    public void testInvalidateForgetsDecisions() throws Exception
+    {
+        final Subject subject = Mockito.mock(Subject.class);
+        Mockito.when(subject.getIdentifier()).thenReturn("steve");
+        final DecisionCache decisionCache = new DecisionCache();
+        final DecisionCacheability cacheability = DecisionCacheability.of(DecisionCacheability.Scope.SUBJECT,
+                                                                          1,
+                                                                          TimeUnit.MINUTES);
+        final DecisionCacheability global = DecisionCacheability.of(DecisionCacheability.Scope.GLOBAL,
+                                                                    1,
+                                                                    TimeUnit.MINUTES);
+        final Supplier<CompletionStage<Boolean>> check = () -> CompletableFuture.completedFuture(true);
+        final CrossRequestSubjectCache cache = new CrossRequestSubjectCache(config(), IDENTITY, new RoleRegistry(), decisionCache);
+
+        cache.apply(handler(subject), request("abc")).toCompletableFuture().get();
+        decisionCache.apply(0L, "foo", Optional.empty(), Optional.of("steve"), cacheability, check);
+        decisionCache.apply(0L, "foo", Optional.empty(), Optional.of("mani"), cacheability, check);
+        decisionCache.apply(0L, "foo", Optional.empty(), Optional.empty(), global, check);
+
+        // the subject cached with identity abc has the identifier steve
+        cache.invalidate("abc");
+        Assert.assertEquals(2, decisionCache.stats().size());
+
+        // global decisions are kept
+        cache.invalidateAll();
+        Assert.assertEquals(1, decisionCache.stats().size());
+    }
+
+    @Test
+    public void testRefreshAhead() throws Exception
+    {
+        final Subject first = Mockito.mock(Subject.class);
+        final Subject second = Mockito.mock(Subject.class);
+        final DeadboltHandler handler = handler(first);
+        final CrossRequestSubjectCache cache = new CrossRequestSubjectCache(config().withValue("deadbolt.java.subject-cache.refresh-ahead",
+                                                                                               ConfigFactory.parseString("x = 1").getValue("x")),
+                                                                            IDENTITY,
+                                                                            new RoleRegistry());
+
+        cache.apply(handler, request("abc")).toCompletableFuture().get();
+        Mockito.when(handler.getSubject(Mockito.any(Http.RequestHeader.class)))
+               .thenReturn(CompletableFuture.completedFuture(Optional.of(second)));
+        Thread.sleep(5);
+
+        // the stale subject is returned while the refreshed one is loaded
+        Assert.assertSame(first, cache.apply(handler, request("abc")).toCompletableFuture().get()._1.get());
+        Assert.assertSame(second, cache.apply(handler, request("abc")).toCompletableFuture().get()._1.get());
+    }
+
+    private static Config config()
+    {
+        return ConfigFactory.parseString("deadbolt.java.cache-user = false\n" +
+                                         "deadbolt.java.subject-cache.max-size = 10\n" +
+                                         "deadbolt.java.subject-cache.ttl = 60000\n" +
+                                         "deadbolt.java.subject-cache.refresh-ahead = 0");
+    }
+
+    private static Http.Request request(final String identity)
+    {
+        return new Http.RequestBuilder().header("X-Session", identity).build();
+    }
+
+    private static DeadboltHandler handler(final Subject subject)
+    {
+        final DeadboltHandler handler = Mockito.mock(DeadboltHandler.class);
+        Mockito.when(handler.getId()).thenReturn(0L);
+        Mockito.when(handler.getSubject(Mockito.any(Http.RequestHeader.class)))
+               .thenReturn(CompletableFuture.completedFuture(Optional.ofNullable(subject)));
+        return handler;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DecisionCacheability;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class DecisionCacheTest
+{
+    private final long[] now = {0};
+
+    private final DecisionCache cache = new DecisionCache(10,
+                                                          () -> now[0]);
+
+    private final AtomicInteger checks = new AtomicInteger();
+
+    private final Supplier<CompletionStage<Boolean>> check = () -> CompletableFuture.completedFuture(checks.incrementAndGet() > 0);
+
+    @Test
+    public void testTtl()
+    {
+        final DecisionCacheability cacheability = DecisionCacheability.of(DecisionCacheability.Scope.SUBJECT,
+                                                                          1,
+                                                                          TimeUnit.SECONDS);
+        cache.apply(1L, "foo", Optional.empty(), Optional.of("steve"), cacheability, check);
+        cache.apply(1L, "foo", Optional.empty(), Optional.of("steve"), cacheability, check);
+        Assert.assertEquals(1, checks.get());
+
+        now[0] = 1000;
+        cache.apply(1L, "foo", Optional.empty(), Optional.of("steve"), cacheability, check);
+        Assert.assertEquals(2, checks.get());
+        Assert.assertEquals(1, cache.stats().hits());
+        Assert.assertEquals(2, cache.stats().misses());
+    }
+
+    @Test
+    public void testScopes()
+    {
+        final DecisionCacheability subject = DecisionCacheability.of(DecisionCacheability.Scope.SUBJECT,
+                                                                     1,
+                                                                     TimeUnit.MINUTES);
+        cache.apply(1L, "foo", Optional.of("a"), Optional.of("steve"), subject, check);
+        cache.apply(1L, "foo", Optional.of("b"), Optional.of("steve"), subject, check);
+        cache.apply(1L, "foo", Optional.of("a"), Optional.of("mani"), subject, check);
+        Assert.assertEquals(2, checks.get());
+
+        final DecisionCacheability subjectAndMeta = DecisionCacheability.of(DecisionCacheability.Scope.SUBJECT_AND_META,
+                                                                            1,
+                                                                            TimeUnit.MINUTES);
+        cache.apply(1L, "bar", Optional.of("a"), Optional.of("steve"), subjectAndMeta, check);
+        cache.apply(1L, "bar", Optional.of("b"), Optional.of("steve"), subjectAndMeta, check);
+        Assert.assertEquals(4, checks.get());
+
+        final DecisionCacheability global = DecisionCacheability.of(DecisionCacheability.Scope.GLOBAL,
+                                                                    1,
+                                                                    TimeUnit.MINUTES);
+        cache.apply(1L, "baz", Optional.empty(), Optional.of("steve"), global, check);
+        cache.apply(1L, "baz", Optional.empty(), Optional.empty(), global, check);
+        Assert.assertEquals(5, checks.get());
+    }
+
+    @Test
+    public void testSubjectScopeWithoutSubjectIsNotCached()
+    {
+        final DecisionCacheability cacheability = DecisionCacheability.of(DecisionCacheability.Scope.SUBJECT,
+                                                                          1,
+                                                                          TimeUnit.MINUTES);
+        cache.apply(1L, "foo", Optional.empty(), Optional.empty(), cacheability, check);
+        cache.apply(1L, "foo", Optional.empty(), Optional.empty(), cacheability, check);
+        Assert.assertEquals(2, checks.get());
+        Assert.assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    public void testInvalidation()
+    {
+        final DecisionCacheability cacheability = DecisionCacheability.of(DecisionCacheability.Scope.SUBJECT,
+                                                                          1,
+                                                                          TimeUnit.MINUTES);
+        cache.apply(1L, "foo", Optional.empty(), Optional.of("steve"), cacheability, check);
+        cache.apply(1L, "bar", Optional.empty(), Optional.of("steve"), cacheability, check);
+        cache.apply(1L, "foo", Optional.empty(), Optional.of("mani"), cacheability, check);
+
+        cache.invalidateRule("foo");
+        Assert.assertEquals(1, cache.stats().size());
+        cache.invalidateSubject("steve");
+        Assert.assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    public void testCheckPendingDuringInvalidationIsNotKept() throws Exception
+    {
+        final DecisionCacheability cacheability = DecisionCacheability.of(DecisionCacheability.Scope.SUBJECT,
+                                                                          1,
+                                                                          TimeUnit.MINUTES);
+        final CompletableFuture<Boolean> pending = new CompletableFuture<>();
+        final CompletionStage<Boolean> allowed = cache.apply(1L, "foo", Optional.empty(), Optional.of("steve"), cacheability, () -> pending);
+
+        cache.invalidateSubject("steve");
+        pending.complete(true);
+
+        Assert.assertTrue(allowed.toCompletableFuture().get());
+        Assert.assertEquals(0, cache.stats().size());
+        Assert.assertFalse(cache.apply(1L, "foo", Optional.empty(), Optional.of("steve"), cacheability, () -> CompletableFuture.completedFuture(false))
+                                .toCompletableFuture()
+                                .get());
+    }
+}
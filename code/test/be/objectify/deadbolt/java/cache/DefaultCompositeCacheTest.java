@@ -0,0 +1,125 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.composite.Constraint;
+import be.objectify.deadbolt.java.composite.ConstraintOptimizer;
+import be.objectify.deadbolt.java.composite.ConstraintTree;
+import be.objectify.deadbolt.java.composite.Operator;
+import com.typesafe.config.ConfigFactory;
+import be.objectify.deadbolt.java.composite.ExceptionThrowingConstraint;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class DefaultCompositeCacheTest
+{
+    private final Constraint foo = Mockito.mock(Constraint.class);
+
+    private final Constraint bar = Mockito.mock(Constraint.class);
+
+    @Test
+    public void testRegister()
+    {
+        final DefaultCompositeCache cache = new DefaultCompositeCache();
+        cache.register("foo",
+                       foo);
+
+        Assert.assertSame(foo, cache.apply("foo").get());
+        Assert.assertTrue(cache.apply("bar").get() instanceof ExceptionThrowingConstraint);
+    }
+
+    @Test
+    public void testSnapshotIsNotChangedByLaterRegistrations()
+    {
+        final DefaultCompositeCache cache = new DefaultCompositeCache();
+        cache.register("foo",
+                       foo);
+        final Map<String, Constraint> snapshot = cache.snapshot();
+
+        cache.register("bar",
+                       bar);
+
+        Assert.assertEquals(Collections.singleton("foo"), snapshot.keySet());
+        Assert.assertEquals(2, cache.snapshot().size());
+    }
+
+    @Test
+    public void testReplaceAll()
+    {
+        final DefaultCompositeCache cache = new DefaultCompositeCache();
+        cache.register("foo",
+                       foo);
+        final Map<String, Constraint> replacements = new HashMap<>();
+        replacements.put("bar",
+                         bar);
+
+        cache.replaceAll(replacements);
+        replacements.put("foo",
+                         foo);
+
+        Assert.assertSame(bar, cache.apply("bar").get());
+        Assert.assertTrue(cache.apply("foo").get() instanceof ExceptionThrowingConstraint);
+    }
+
+    @Test
+    public void testReplaceAllRejectsMissingConstraints()
+    {
+        final DefaultCompositeCache cache = new DefaultCompositeCache();
+        cache.register("foo",
+                       foo);
+        final Map<String, Constraint> replacements = new HashMap<>();
+        replacements.put("bar",
+                         null);
+
+        try
+        {
+            cache.replaceAll(replacements);
+            Assert.fail("Expected a NullPointerException");
+        }
+        catch (NullPointerException e)
+        {
+            // the existing constraints are untouched
+            Assert.assertSame(foo, cache.apply("foo").get());
+        }
+    }
+
+    @Test
+    public void testConstraintsAreOptimizedWhenConfigured()
+    {
+        final Constraint tree = new ConstraintTree(Operator.AND,
+                                                   foo,
+                                                   bar);
+
+        final DefaultCompositeCache unoptimized = new DefaultCompositeCache(ConfigFactory.load());
+        unoptimized.register("tree",
+                             tree);
+        Assert.assertSame(tree, unoptimized.apply("tree").get());
+
+        final DefaultCompositeCache optimized = new DefaultCompositeCache(ConstraintOptimizer.Mode.STATIC,
+                                                                          1000);
+        optimized.register("tree",
+                           tree);
+        Assert.assertNotSame(tree, optimized.apply("tree").get());
+    }
+}
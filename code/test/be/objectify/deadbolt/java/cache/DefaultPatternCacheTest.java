@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class DefaultPatternCacheTest
+{
+    @Test
+    public void testPatternIsCompiledOnce()
+    {
+        final DefaultPatternCache cache = new DefaultPatternCache();
+
+        final Pattern pattern = cache.apply("printer\\..*");
+        Assert.assertSame(pattern, cache.apply("printer\\..*"));
+        Assert.assertEquals(1, cache.stats().hits());
+        Assert.assertEquals(1, cache.stats().misses());
+    }
+
+    @Test
+    public void testEviction()
+    {
+        final DefaultPatternCache cache = new DefaultPatternCache(2,
+                                                                  Collections.emptyList());
+
+        cache.apply("a");
+        cache.apply("b");
+        cache.apply("c");
+
+        Assert.assertEquals(2, cache.stats().size());
+        Assert.assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    public void testPrewarm()
+    {
+        final DefaultPatternCache cache = new DefaultPatternCache(ConfigFactory.parseString("deadbolt.java.pattern-cache.max-size = 10\n" +
+                                                                                           "deadbolt.java.pattern-cache.prewarm = [\"a.*\", \"b.*\"]"));
+
+        Assert.assertEquals(2, cache.stats().size());
+        cache.apply("a.*");
+        Assert.assertEquals(1, cache.stats().hits());
+        Assert.assertEquals(0, cache.stats().misses());
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void testInvalidPrewarmPatternFailsFast()
+    {
+        new DefaultPatternCache(10,
+                                Arrays.asList("a.*", "(unclosed"));
+    }
+}
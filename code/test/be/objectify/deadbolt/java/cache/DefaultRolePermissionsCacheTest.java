@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.models.Permission;
+import be.objectify.deadbolt.java.patterns.MultiPattern;
+import be.objectify.deadbolt.java.testsupport.TestPermission;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class DefaultRolePermissionsCacheTest
+{
+    @Test
+    public void testPermissionsAreCached() throws Exception
+    {
+        final DeadboltHandler handler = handler();
+        final DefaultRolePermissionsCache cache = new DefaultRolePermissionsCache(new DefaultPatternCache(),
+                                                                                  10,
+                                                                                  60000);
+
+        final MultiPattern permissions = cache.apply(handler, "admin").toCompletableFuture().get();
+        Assert.assertTrue(permissions.matchesAny("printer.print"));
+        Assert.assertFalse(permissions.matchesAny("scanner.scan"));
+        Assert.assertSame(permissions, cache.apply(handler, "admin").toCompletableFuture().get());
+        Mockito.verify(handler, Mockito.times(1)).getPermissionsForRole("admin");
+    }
+
+    @Test
+    public void testInvalidateRole() throws Exception
+    {
+        final DeadboltHandler handler = handler();
+        final DefaultRolePermissionsCache cache = new DefaultRolePermissionsCache(new DefaultPatternCache(),
+                                                                                  10,
+                                                                                  60000);
+
+        cache.apply(handler, "admin").toCompletableFuture().get();
+        cache.invalidateRole("admin");
+        cache.apply(handler, "admin").toCompletableFuture().get();
+        Mockito.verify(handler, Mockito.times(2)).getPermissionsForRole("admin");
+    }
+
+    @Test
+    public void testDisabled() throws Exception
+    {
+        final DeadboltHandler handler = handler();
+        final DefaultRolePermissionsCache cache = new DefaultRolePermissionsCache(new DefaultPatternCache());
+
+        cache.apply(handler, "admin").toCompletableFuture().get();
+        cache.apply(handler, "admin").toCompletableFuture().get();
+        Mockito.verify(handler, Mockito.times(2)).getPermissionsForRole("admin");
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() throws Exception
+    {
+        final DeadboltHandler handler = Mockito.mock(DeadboltHandler.class);
+        final CompletableFuture<List<? extends Permission>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("no database"));
+        Mockito.when(handler.getPermissionsForRole("admin"))
+               .thenReturn(failed)
+               .thenReturn(CompletableFuture.completedFuture(Collections.singletonList(new TestPermission("printer.print"))));
+        final DefaultRolePermissionsCache cache = new DefaultRolePermissionsCache(new DefaultPatternCache(),
+                                                                                  10,
+                                                                                  60000);
+
+        Assert.assertTrue(cache.apply(handler, "admin").toCompletableFuture().isCompletedExceptionally());
+        Assert.assertTrue(cache.apply(handler, "admin").toCompletableFuture().get().matchesAny("printer.print"));
+    }
+
+    @Test
+    public void testLateFailureKeepsNewerLoad() throws Exception
+    {
+        final DeadboltHandler handler = Mockito.mock(DeadboltHandler.class);
+        final CompletableFuture<List<? extends Permission>> slow = new CompletableFuture<>();
+        Mockito.when(handler.getPermissionsForRole("admin"))
+               .thenReturn(slow)
+               .thenReturn(CompletableFuture.completedFuture(Collections.singletonList(new TestPermission("printer.print"))));
+        final DefaultRolePermissionsCache cache = new DefaultRolePermissionsCache(new DefaultPatternCache(),
+                                                                                  10,
+                                                                                  60000);
+
+        final CompletionStage<MultiPattern> first = cache.apply(handler, "admin");
+        cache.invalidateRole("admin");
+        final MultiPattern second = cache.apply(handler, "admin").toCompletableFuture().get();
+        slow.completeExceptionally(new IllegalStateException("no database"));
+
+        Assert.assertTrue(first.toCompletableFuture().isCompletedExceptionally());
+        Assert.assertSame(second, cache.apply(handler, "admin").toCompletableFuture().get());
+        Mockito.verify(handler, Mockito.times(2)).getPermissionsForRole("admin");
+    }
+
+    @Test
+    public void testCallersGetTheirOwnStage() throws Exception
+    {
+        final DeadboltHandler handler = Mockito.mock(DeadboltHandler.class);
+        final CompletableFuture<List<? extends Permission>> load = new CompletableFuture<>();
+        Mockito.when(handler.getPermissionsForRole("admin"))
+               .thenReturn(load);
+        final DefaultRolePermissionsCache cache = new DefaultRolePermissionsCache(new DefaultPatternCache(),
+                                                                                  10,
+                                                                                  60000);
+
+        cache.apply(handler, "admin").toCompletableFuture().cancel(false);
+        final CompletionStage<MultiPattern> second = cache.apply(handler, "admin");
+        load.complete(Collections.singletonList(new TestPermission("printer.print")));
+
+        Assert.assertTrue(second.toCompletableFuture().get().matchesAny("printer.print"));
+        Assert.assertTrue(cache.apply(handler, "admin").toCompletableFuture().get().matchesAny("printer.print"));
+        Mockito.verify(handler, Mockito.times(1)).getPermissionsForRole("admin");
+    }
+
+    @Test
+    public void testPreload()
+    {
+        final DeadboltHandler handler = handler();
+        final HandlerCache handlerCache = Mockito.mock(HandlerCache.class);
+        Mockito.when(handlerCache.get()).thenReturn(handler);
+
+        final DefaultRolePermissionsCache cache = new DefaultRolePermissionsCache(ConfigFactory.parseString("deadbolt.java.role-permissions-cache.ttl = 60000\n" +
+                                                                                                           "deadbolt.java.role-permissions-cache.preload = [\"admin\", \"editor\"]"),
+                                                                                  new DefaultPatternCache(),
+                                                                                  handlerCache);
+
+        Assert.assertEquals(2, cache.stats().size());
+        cache.apply(handler, "editor");
+        Mockito.verify(handler, Mockito.times(1)).getPermissionsForRole("editor");
+    }
+
+    private DeadboltHandler handler()
+    {
+        final DeadboltHandler handler = Mockito.mock(DeadboltHandler.class);
+        Mockito.when(handler.getPermissionsForRole(Mockito.anyString()))
+               .thenAnswer(invocation -> CompletableFuture.completedFuture(Arrays.asList(new TestPermission("printer\\..*"),
+                                                                                         new TestPermission("admin.*"))));
+        return handler;
+    }
+}
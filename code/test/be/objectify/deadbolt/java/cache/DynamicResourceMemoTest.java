@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.DynamicResourceHandler;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class DynamicResourceMemoTest
+{
+    private final DeadboltHandler handler = Mockito.mock(DeadboltHandler.class);
+
+    @Test
+    public void testDecisionsAreRemembered() throws Exception
+    {
+        final DynamicResourceMemo memo = new DynamicResourceMemo();
+        final AtomicInteger checks = new AtomicInteger();
+        final Supplier<CompletionStage<Boolean>> check = () -> CompletableFuture.completedFuture(checks.incrementAndGet() > 0);
+
+        Assert.assertTrue(memo.isAllowed(handler, "foo", Optional.of("bar"), check).toCompletableFuture().get());
+        Assert.assertTrue(memo.isAllowed(handler, "foo", Optional.of("bar"), check).toCompletableFuture().get());
+        Assert.assertEquals(1, checks.get());
+
+        // different meta, a permission check, or an inverted permission check are separate decisions
+        memo.isAllowed(handler, "foo", Optional.empty(), check);
+        memo.checkPermission(handler, "foo", Optional.of("bar"), false, check);
+        memo.checkPermission(handler, "foo", Optional.of("bar"), true, check);
+        Assert.assertEquals(4, checks.get());
+    }
+
+    @Test
+    public void testFailuresAreNotRemembered()
+    {
+        final DynamicResourceMemo memo = new DynamicResourceMemo();
+        final AtomicInteger checks = new AtomicInteger();
+        final Supplier<CompletionStage<Boolean>> check = () ->
+        {
+            checks.incrementAndGet();
+            final CompletableFuture<Boolean> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("lookup failed"));
+            return failed;
+        };
+
+        memo.checkPermission(handler, "foo", Optional.empty(), false, check);
+        memo.checkPermission(handler, "foo", Optional.empty(), false, check);
+        Assert.assertEquals(2, checks.get());
+    }
+
+    @Test
+    public void testCallersGetTheirOwnStage() throws Exception
+    {
+        final DynamicResourceMemo memo = new DynamicResourceMemo();
+        final CompletableFuture<Boolean> check = new CompletableFuture<>();
+
+        final CompletableFuture<Boolean> first = memo.isAllowed(handler, "foo", Optional.empty(), () -> check).toCompletableFuture();
+        final CompletableFuture<Boolean> second = memo.isAllowed(handler, "foo", Optional.empty(), () -> check).toCompletableFuture();
+        first.cancel(true);
+        check.complete(true);
+
+        Assert.assertFalse(check.isCancelled());
+        Assert.assertTrue(second.get());
+        Assert.assertTrue(memo.isAllowed(handler, "foo", Optional.empty(), () -> check).toCompletableFuture().get());
+    }
+
+    @Test
+    public void testHandlerIsLoadedOnce()
+    {
+        final DynamicResourceMemo memo = new DynamicResourceMemo();
+        final AtomicInteger loads = new AtomicInteger();
+
+        final Supplier<CompletionStage<Optional<DynamicResourceHandler>>> load = () ->
+        {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(Optional.empty());
+        };
+
+        memo.handler(handler, load);
+        memo.handler(handler, load);
+        Assert.assertEquals(1, loads.get());
+    }
+}
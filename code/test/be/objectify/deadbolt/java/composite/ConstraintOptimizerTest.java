@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.composite;
+
+import be.objectify.deadbolt.java.ConstraintLogic;
+import be.objectify.deadbolt.java.DeadboltHandler;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import play.libs.F;
+import play.mvc.Http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class ConstraintOptimizerTest extends AbstractCompositeTest
+{
+    private final DeadboltHandler handler = Mockito.mock(DeadboltHandler.class);
+
+    private final List<String> tested = new ArrayList<>();
+
+    @Test
+    public void testCheapConstraintsAreTestedFirst() throws Exception
+    {
+        final Constraint tree = ConstraintOptimizer.reorder(new ConstraintTree(Operator.AND,
+                                                                               recording("dynamic", true),
+                                                                               subjectPresent(false)));
+
+        Assert.assertFalse(toBoolean(tree.test(Mockito.mock(Http.RequestHeader.class),
+                                               handler)));
+        Assert.assertEquals(Collections.singletonList("subjectPresent"), tested);
+    }
+
+    @Test
+    public void testOtherConstraintsKeepTheirOrder() throws Exception
+    {
+        final Constraint tree = ConstraintOptimizer.reorder(new ConstraintTree(Operator.OR,
+                                                                               recording("b", false),
+                                                                               recording("a", false),
+                                                                               subjectPresent(false)));
+
+        Assert.assertFalse(toBoolean(tree.test(Mockito.mock(Http.RequestHeader.class),
+                                               handler)));
+        Assert.assertEquals(Arrays.asList("subjectPresent", "b", "a"), tested);
+    }
+
+    @Test
+    public void testMarkedConstraintsAreMoved() throws Exception
+    {
+        final Constraint tree = ConstraintOptimizer.reorder(new ConstraintTree(Operator.OR,
+                                                                               recording("dynamic", false),
+                                                                               ConstraintOptimizer.sideEffectFree(recording("cheap", true),
+                                                                                                                  1)));
+
+        Assert.assertTrue(toBoolean(tree.test(Mockito.mock(Http.RequestHeader.class),
+                                              handler)));
+        Assert.assertEquals(Collections.singletonList("cheap"), tested);
+    }
+
+    @Test
+    public void testNestedAndNegatedTrees() throws Exception
+    {
+        final Constraint tree = ConstraintOptimizer.reorder(new ConstraintTree(Operator.AND,
+                                                                               recording("dynamic", true),
+                                                                               new ConstraintTree(Operator.AND,
+                                                                                                  recording("nested", true),
+                                                                                                  subjectPresent(false)).negate()));
+
+        Assert.assertTrue(toBoolean(tree.test(Mockito.mock(Http.RequestHeader.class),
+                                              handler)));
+        // the nested tree isn't side-effect free, so it stays after the dynamic constraint
+        Assert.assertEquals(Arrays.asList("dynamic", "subjectPresent"), tested);
+    }
+
+    @Test
+    public void testAdaptiveOrderFollowsPassRate() throws Exception
+    {
+        final Constraint tree = ConstraintOptimizer.adaptive(new ConstraintTree(Operator.OR,
+                                                                                ConstraintOptimizer.sideEffectFree(recording("rarely", false),
+                                                                                                                   1),
+                                                                                ConstraintOptimizer.sideEffectFree(recording("usually", true),
+                                                                                                                   1)),
+                                                             10);
+        for (int i = 0; i < 20; i++)
+        {
+            Assert.assertTrue(toBoolean(tree.test(Mockito.mock(Http.RequestHeader.class),
+                                                  handler)));
+        }
+        tested.clear();
+
+        Assert.assertTrue(toBoolean(tree.test(Mockito.mock(Http.RequestHeader.class),
+                                              handler)));
+        Assert.assertEquals(Collections.singletonList("usually"), tested);
+    }
+
+    @Test
+    public void testOnlyAndAndOrTreesAreReordered()
+    {
+        final Constraint constraint = recording("dynamic", true);
+
+        Assert.assertSame(constraint, ConstraintOptimizer.reorder(constraint));
+        Assert.assertSame(constraint, ConstraintOptimizer.adaptive(constraint, 10));
+    }
+
+    private Constraint recording(final String name,
+                                 final boolean result)
+    {
+        return (rh, h, gmd, fnM) -> {
+            tested.add(name);
+            return CompletableFuture.completedFuture(F.Tuple(result, rh));
+        };
+    }
+
+    private Constraint subjectPresent(final boolean result)
+    {
+        return new SubjectPresentConstraint(Optional.empty(),
+                                            Mockito.mock(ConstraintLogic.class))
+        {
+            @Override
+            public CompletionStage<F.Tuple<Boolean, Http.RequestHeader>> test(final Http.RequestHeader requestHeader,
+                                                                              final DeadboltHandler handler,
+                                                                              final Optional<String> globalMetaData,
+                                                                              final BiFunction<Optional<String>, Optional<String>, Optional<String>> metaFn)
+            {
+                tested.add("subjectPresent");
+                return CompletableFuture.completedFuture(F.Tuple(result, requestHeader));
+            }
+        };
+    }
+}
@@ -22,9 +22,13 @@ import org.mockito.Mockito;
 import play.libs.F;
 import play.mvc.Http;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
 
 /**
@@ -185,6 +189,176 @@ public class ConstraintTreeTest extends AbstractConstraintTest
         Assert.assertTrue(toBoolean(rightResult));
     }
 
+    @Test
+    public void testNestedTreesMatchChainedConstraints() throws Exception
+    {
+        final Constraint pass = (c, h, gmd, fnM) -> CompletableFuture.completedFuture(F.Tuple(true, c));
+        final Constraint fail = (c, h, gmd, fnM) -> CompletableFuture.completedFuture(F.Tuple(false, c));
+        final Constraint[] leaves = {pass, fail};
+        for (Constraint a : leaves)
+        {
+            for (Constraint b : leaves)
+            {
+                for (Constraint c : leaves)
+                {
+                    // (a OR NOT(b AND c)) AND NOT(empty)
+                    final Constraint tree = new ConstraintTree(Operator.AND,
+                                                               new ConstraintTree(Operator.OR,
+                                                                                  a,
+                                                                                  new ConstraintTree(Operator.AND,
+                                                                                                     b,
+                                                                                                     c).negate()),
+                                                               new ConstraintTree(Operator.OR).negate());
+                    final Constraint chained = a.or(b.and(c).negate());
+                    Assert.assertEquals(toBoolean(chained.test(Mockito.mock(Http.RequestHeader.class),
+                                                               handler)),
+                                        toBoolean(tree.test(Mockito.mock(Http.RequestHeader.class),
+                                                            handler)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEvaluationShortCircuitsAndThreadsRequestHeader() throws Exception
+    {
+        final Http.RequestHeader rh1 = Mockito.mock(Http.RequestHeader.class);
+        final Http.RequestHeader rh2 = Mockito.mock(Http.RequestHeader.class);
+        final Http.RequestHeader rh3 = Mockito.mock(Http.RequestHeader.class);
+        final List<Http.RequestHeader> seen = new ArrayList<>();
+        final Constraint failAsync = (c, h, gmd, fnM) -> {
+            seen.add(c);
+            return CompletableFuture.supplyAsync(() -> F.Tuple(false, rh2));
+        };
+        final Constraint pass = (c, h, gmd, fnM) -> {
+            seen.add(c);
+            return CompletableFuture.completedFuture(F.Tuple(true, rh3));
+        };
+        final Constraint neverTested = (c, h, gmd, fnM) -> {
+            throw new AssertionError("Should have short-circuited");
+        };
+        final Constraint tree = new ConstraintTree(Operator.OR,
+                                                   new ConstraintTree(Operator.AND,
+                                                                      failAsync,
+                                                                      neverTested),
+                                                   pass,
+                                                   neverTested);
+
+        final F.Tuple<Boolean, Http.RequestHeader> result = tree.test(rh1,
+                                                                      handler)
+                                                                .toCompletableFuture()
+                                                                .get();
+        Assert.assertTrue(result._1);
+        Assert.assertSame(rh3, result._2);
+        Assert.assertEquals(Arrays.asList(rh1, rh2), seen);
+    }
+
+    @Test
+    public void testEmptyTree() throws Exception
+    {
+        final Http.RequestHeader rh = Mockito.mock(Http.RequestHeader.class);
+        final F.Tuple<Boolean, Http.RequestHeader> result = new ConstraintTree(Operator.AND).test(rh,
+                                                                                                  handler)
+                                                                                            .toCompletableFuture()
+                                                                                            .get();
+        Assert.assertFalse(result._1);
+        Assert.assertSame(rh, result._2);
+        Assert.assertTrue(toBoolean(new ConstraintTree(Operator.AND).negate().test(rh,
+                                                                                   handler)));
+    }
+
+    @Test
+    public void testParallelOr_firstPassDecides() throws Exception
+    {
+        final Http.RequestHeader rh1 = Mockito.mock(Http.RequestHeader.class);
+        final Http.RequestHeader rh2 = Mockito.mock(Http.RequestHeader.class);
+        final CompletableFuture<F.Tuple<Boolean, Http.RequestHeader>> slow = new CompletableFuture<>();
+        final List<Http.RequestHeader> seen = new ArrayList<>();
+        final Constraint pending = (c, h, gmd, fnM) -> {
+            seen.add(c);
+            return slow;
+        };
+        final Constraint pass = (c, h, gmd, fnM) -> {
+            seen.add(c);
+            return CompletableFuture.completedFuture(F.Tuple(true, rh2));
+        };
+        final Constraint tree = new ConstraintTree(Operator.PARALLEL_OR,
+                                                   pending,
+                                                   pass);
+
+        final F.Tuple<Boolean, Http.RequestHeader> result = tree.test(rh1,
+                                                                      handler)
+                                                                .toCompletableFuture()
+                                                                .get();
+        Assert.assertTrue(result._1);
+        Assert.assertSame(rh2, result._2);
+        // both were started with the same request header, and the one that didn't decide was cancelled
+        Assert.assertEquals(Arrays.asList(rh1, rh1), seen);
+        Assert.assertTrue(slow.isCancelled());
+    }
+
+    @Test
+    public void testParallelAnd_firstFailDecides() throws Exception
+    {
+        final CompletableFuture<F.Tuple<Boolean, Http.RequestHeader>> slow = new CompletableFuture<>();
+        final Constraint fail = (c, h, gmd, fnM) -> CompletableFuture.supplyAsync(() -> F.Tuple(false, c));
+        final Constraint tree = new ConstraintTree(Operator.PARALLEL_AND,
+                                                   (c, h, gmd, fnM) -> slow,
+                                                   fail);
+
+        Assert.assertFalse(toBoolean(tree.test(Mockito.mock(Http.RequestHeader.class),
+                                               handler)));
+        Assert.assertTrue(slow.isCancelled());
+        Assert.assertTrue(toBoolean(new ConstraintTree(Operator.PARALLEL_AND,
+                                                       (c, h, gmd, fnM) -> CompletableFuture.completedFuture(F.Tuple(true, c)),
+                                                       fail).negate()
+                                                            .test(Mockito.mock(Http.RequestHeader.class),
+                                                                  handler)));
+    }
+
+    @Test
+    public void testParallelOr_undecided() throws Exception
+    {
+        final Http.RequestHeader rh2 = Mockito.mock(Http.RequestHeader.class);
+        final Http.RequestHeader rh3 = Mockito.mock(Http.RequestHeader.class);
+        final Constraint tree = new ConstraintTree(Operator.PARALLEL_OR,
+                                                   (c, h, gmd, fnM) -> CompletableFuture.completedFuture(F.Tuple(false, rh2)),
+                                                   (c, h, gmd, fnM) -> CompletableFuture.supplyAsync(() -> F.Tuple(false, rh3)));
+
+        final F.Tuple<Boolean, Http.RequestHeader> result = tree.test(Mockito.mock(Http.RequestHeader.class),
+                                                                      handler)
+                                                                .toCompletableFuture()
+                                                                .get();
+        Assert.assertFalse(result._1);
+        Assert.assertSame(rh3, result._2);
+    }
+
+    @Test
+    public void testParallelOr_failureOnlyCountsIfUndecided() throws Exception
+    {
+        final Constraint broken = (c, h, gmd, fnM) -> {
+            throw new IllegalStateException("broken");
+        };
+        Assert.assertTrue(toBoolean(new ConstraintTree(Operator.PARALLEL_OR,
+                                                       broken,
+                                                       (c, h, gmd, fnM) -> CompletableFuture.completedFuture(F.Tuple(true, c))).test(Mockito.mock(Http.RequestHeader.class),
+                                                                                                                                      handler)));
+        try
+        {
+            new ConstraintTree(Operator.PARALLEL_OR,
+                               broken,
+                               (c, h, gmd, fnM) -> CompletableFuture.completedFuture(F.Tuple(false, c))).test(Mockito.mock(Http.RequestHeader.class),
+                                                                                                               handler)
+                                                                                                         .toCompletableFuture()
+                                                                                                         .get();
+            Assert.fail("Expected the failure of the broken constraint");
+        }
+        catch (ExecutionException e)
+        {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
     @Override
     protected F.Tuple<Constraint, Function<Constraint, CompletionStage<F.Tuple<Boolean, Http.RequestHeader>>>> satisfy()
     {
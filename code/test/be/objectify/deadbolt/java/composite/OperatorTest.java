@@ -15,8 +15,16 @@
  */
 package be.objectify.deadbolt.java.composite;
 
+import be.objectify.deadbolt.java.DeadboltHandler;
+import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
+import play.libs.F;
+import play.mvc.Http;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
 
 /**
  * @author Steve Chaloner (steve@objectify.be)
@@ -48,4 +56,34 @@ public class OperatorTest
         Mockito.verifyNoMoreInteractions(c1,
                                          c2);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParallelOr() throws Exception
+    {
+        final Constraint c1 = Mockito.mock(Constraint.class);
+        final Constraint c2 = Mockito.mock(Constraint.class);
+        Mockito.when(c1.test(Mockito.any(Http.RequestHeader.class),
+                             Mockito.any(DeadboltHandler.class),
+                             Mockito.any(Optional.class),
+                             Mockito.any(BiFunction.class)))
+               .thenReturn(CompletableFuture.completedFuture(F.Tuple(false, Mockito.mock(Http.RequestHeader.class))));
+        Mockito.when(c2.test(Mockito.any(Http.RequestHeader.class),
+                             Mockito.any(DeadboltHandler.class),
+                             Mockito.any(Optional.class),
+                             Mockito.any(BiFunction.class)))
+               .thenReturn(CompletableFuture.completedFuture(F.Tuple(true, Mockito.mock(Http.RequestHeader.class))));
+
+        Assert.assertTrue(Operator.PARALLEL_OR.apply(c1,
+                                                     c2)
+                                              .test(Mockito.mock(Http.RequestHeader.class),
+                                                    Mockito.mock(DeadboltHandler.class))
+                                              .toCompletableFuture()
+                                              .get()._1);
+        Assert.assertFalse(Operator.PARALLEL_AND.apply(c1,
+                                                       c2)
+                                                .test(Mockito.mock(Http.RequestHeader.class),
+                                                      Mockito.mock(DeadboltHandler.class))
+                                                .toCompletableFuture()
+                                                .get()._1);
+    }
+}
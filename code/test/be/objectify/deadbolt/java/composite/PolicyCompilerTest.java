@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.composite;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.models.PatternType;
+import be.objectify.deadbolt.java.models.Subject;
+import be.objectify.deadbolt.java.testsupport.TestPermission;
+import be.objectify.deadbolt.java.testsupport.TestRole;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import play.mvc.Http;
+
+import java.util.Map;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class PolicyCompilerTest extends AbstractCompositeTest implements ConstraintLogicMixin
+{
+    @Test
+    public void testOrOfSubjectNotPresentAndPattern() throws Exception
+    {
+        final String policies = "curatorOrSubjectNotPresent {\n" +
+                                "  or = [\n" +
+                                "    { subjectNotPresent = {} },\n" +
+                                "    { pattern { value = \"curator.museum.*\", type = REGEX } }\n" +
+                                "  ]\n" +
+                                "}";
+
+        Assert.assertTrue(test(policies, "curatorOrSubjectNotPresent", null));
+        Assert.assertTrue(test(policies, "curatorOrSubjectNotPresent", subject(new TestPermission("curator.museum.insects"))));
+        Assert.assertFalse(test(policies, "curatorOrSubjectNotPresent", subject(new TestPermission("visitor.museum"))));
+    }
+
+    @Test
+    public void testAndOfRestrictAndNotRestrict() throws Exception
+    {
+        final String policies = "editorButNotGuest {\n" +
+                                "  and = [\n" +
+                                "    { restrict = [[\"editor\"]] },\n" +
+                                "    { not { restrict = [[\"guest\"]] } }\n" +
+                                "  ]\n" +
+                                "}";
+
+        Assert.assertTrue(test(policies, "editorButNotGuest", subject(new TestRole("editor"))));
+        Assert.assertFalse(test(policies, "editorButNotGuest", subject(new TestRole("editor"), new TestRole("guest"))));
+        Assert.assertFalse(test(policies, "editorButNotGuest", null));
+    }
+
+    @Test
+    public void testAllTypesCompile()
+    {
+        final Map<String, Constraint> constraints = compiler(null).compile(ConfigFactory.parseString("a { subjectPresent { content = \"foo\" } }\n" +
+                                                                                                     "b { dynamic = \"niceName\" }\n" +
+                                                                                                     "c { dynamic { name = \"niceName\", meta = \"bar\" } }\n" +
+                                                                                                     "d { pattern { value = \"printer.print\", invert = true } }\n" +
+                                                                                                     "e { pattern { value = \"printer\\\\..*\", type = linear_regex } }"));
+
+        Assert.assertEquals(5, constraints.size());
+        Assert.assertTrue(constraints.get("a") instanceof SubjectPresentConstraint);
+        Assert.assertTrue(constraints.get("b") instanceof DynamicConstraint);
+        Assert.assertTrue(constraints.get("c") instanceof DynamicConstraint);
+        Assert.assertEquals(PatternType.EQUALITY, ((PatternConstraint) constraints.get("d")).patternType());
+        Assert.assertEquals(PatternType.LINEAR_REGEX, ((PatternConstraint) constraints.get("e")).patternType());
+    }
+
+    @Test
+    public void testInvalidPolicies()
+    {
+        assertInvalid("a { unknown = {} }", "Unknown constraint type");
+        assertInvalid("a { subjectPresent = {}, subjectNotPresent = {} }", "exactly one");
+        assertInvalid("a { and = [] }", "non-empty list");
+        assertInvalid("a { restrict = [\"admin\"] }", "role group");
+        assertInvalid("a { pattern { type = REGEX } }", "needs a value");
+        assertInvalid("a { pattern { value = \"foo\", type = GLOB } }", "Unknown pattern type");
+        assertInvalid("a { pattern { value = \"[foo\", type = REGEX } }", "Invalid pattern");
+        assertInvalid("a { or = [ { subjectPresent = {} }, { dynamic {} } ] }", "needs a name");
+    }
+
+    private boolean test(final String policies,
+                         final String name,
+                         final Subject subject) throws Exception
+    {
+        final DeadboltHandler handler = withSubject(() -> subject);
+        return toBoolean(compiler(handler).compile(ConfigFactory.parseString(policies))
+                                          .get(name)
+                                          .test(Mockito.mock(Http.RequestHeader.class),
+                                                handler));
+    }
+
+    private PolicyCompiler compiler(final DeadboltHandler handler)
+    {
+        return new PolicyCompiler(new ConstraintBuilders(logic(handler != null ? handler
+                                                                               : withSubject(() -> null))));
+    }
+
+    private void assertInvalid(final String policies,
+                               final String message)
+    {
+        try
+        {
+            compiler(null).compile(ConfigFactory.parseString(policies));
+            Assert.fail("Expected [" + policies + "] to be invalid");
+        }
+        catch (ConfigException e)
+        {
+            Assert.assertTrue(e.getMessage(),
+                              e.getMessage().contains(message));
+        }
+    }
+}
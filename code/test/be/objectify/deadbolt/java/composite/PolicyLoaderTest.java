@@ -0,0 +1,180 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.composite;
+
+import be.objectify.deadbolt.java.ConstraintLogic;
+import be.objectify.deadbolt.java.cache.CompositeCache;
+import be.objectify.deadbolt.java.cache.DefaultCompositeCache;
+import com.typesafe.config.ConfigException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class PolicyLoaderTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final PolicyCompiler compiler = new PolicyCompiler(new ConstraintBuilders(Mockito.mock(ConstraintLogic.class)));
+
+    private final DefaultCompositeCache compositeCache = new DefaultCompositeCache();
+
+    @Test
+    public void testLoadReplacesPreviousPolicies() throws Exception
+    {
+        final Constraint registeredInCode = Mockito.mock(Constraint.class);
+        compositeCache.register("inCode",
+                                registeredInCode);
+        final File file = write("a { subjectPresent = {} }\n" +
+                                "b { subjectNotPresent = {} }");
+
+        final PolicyLoader loader = new PolicyLoader(file,
+                                                     compiler,
+                                                     compositeCache);
+        Assert.assertTrue(compositeCache.apply("a").get() instanceof SubjectPresentConstraint);
+        Assert.assertTrue(compositeCache.apply("b").get() instanceof SubjectNotPresentConstraint);
+
+        write("a { subjectNotPresent = {} }");
+        loader.load();
+        Assert.assertTrue(compositeCache.apply("a").get() instanceof SubjectNotPresentConstraint);
+        Assert.assertTrue(compositeCache.apply("b").get() instanceof ExceptionThrowingConstraint);
+        Assert.assertSame(registeredInCode, compositeCache.apply("inCode").get());
+    }
+
+    @Test
+    public void testInvalidChangeKeepsCurrentPolicies() throws Exception
+    {
+        final File file = write("a { subjectPresent = {} }");
+        final PolicyLoader loader = new PolicyLoader(file,
+                                                     compiler,
+                                                     compositeCache);
+
+        write("a { subjectPresent = {} }\n" +
+              "b { pattern { value = \"[foo\", type = REGEX } }");
+        try
+        {
+            loader.load();
+            Assert.fail("Expected the policy file to be invalid");
+        }
+        catch (ConfigException e)
+        {
+            Assert.assertEquals(1, compositeCache.snapshot().size());
+            Assert.assertTrue(compositeCache.apply("a").get() instanceof SubjectPresentConstraint);
+        }
+    }
+
+    @Test
+    public void testNameRegisteredInCodeIsRejected() throws Exception
+    {
+        final Constraint registeredInCode = Mockito.mock(Constraint.class);
+        compositeCache.register("a",
+                                registeredInCode);
+        try
+        {
+            new PolicyLoader(write("a { subjectPresent = {} }"),
+                             compiler,
+                             compositeCache);
+            Assert.fail("Expected the name clash to be rejected");
+        }
+        catch (ConfigException e)
+        {
+            Assert.assertSame(registeredInCode, compositeCache.apply("a").get());
+        }
+    }
+
+    @Test
+    public void testConstraintRegisteredAgainInCodeIsKept() throws Exception
+    {
+        final PolicyLoader loader = new PolicyLoader(write("a { subjectPresent = {} }\n" +
+                                                           "b { subjectPresent = {} }"),
+                                                     compiler,
+                                                     compositeCache);
+        final Constraint registeredInCode = Mockito.mock(Constraint.class);
+        compositeCache.register("b",
+                                registeredInCode);
+
+        write("a { subjectNotPresent = {} }");
+        loader.load();
+        Assert.assertTrue(compositeCache.apply("a").get() instanceof SubjectNotPresentConstraint);
+        Assert.assertSame(registeredInCode, compositeCache.apply("b").get());
+    }
+
+    @Test
+    public void testCacheWithoutAtomicReplace() throws Exception
+    {
+        final Map<String, Constraint> registered = new HashMap<>();
+        final CompositeCache minimal = new CompositeCache()
+        {
+            @Override
+            public void register(final String name,
+                                 final Constraint constraint)
+            {
+                registered.put(name,
+                               constraint);
+            }
+
+            @Override
+            public Optional<Constraint> apply(final String name)
+            {
+                return Optional.ofNullable(registered.get(name));
+            }
+        };
+        final PolicyLoader loader = new PolicyLoader(write("a { subjectPresent = {} }\n" +
+                                                           "b { subjectPresent = {} }"),
+                                                     compiler,
+                                                     minimal);
+        Assert.assertTrue(registered.get("a") instanceof SubjectPresentConstraint);
+
+        write("a { subjectNotPresent = {} }");
+        loader.load();
+        Assert.assertTrue(registered.get("a") instanceof SubjectNotPresentConstraint);
+        Assert.assertTrue(registered.get("b") instanceof ExceptionThrowingConstraint);
+
+        // b was removed, so it can be declared again
+        write("b { subjectPresent = {} }");
+        loader.load();
+        Assert.assertTrue(registered.get("b") instanceof SubjectPresentConstraint);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testMissingFile()
+    {
+        new PolicyLoader(new File(folder.getRoot(), "missing.conf"),
+                         compiler,
+                         compositeCache);
+    }
+
+    private File write(final String content) throws Exception
+    {
+        final File file = new File(folder.getRoot(),
+                                   "policies.conf");
+        Files.write(file.toPath(),
+                    content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -19,9 +19,12 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Steve Chaloner (steve@objectify.be)
@@ -128,4 +131,71 @@ public class AuthorizedRoutesTest
                                                                       "/foo/bar");
         Assert.assertFalse(maybeRoute.isPresent());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFirstMatchingRouteIsUsed()
+    {
+        final AuthorizedRoute anyFoo = new AuthorizedRoute(Methods.ANY,
+                                                           "/foo",
+                                                           Mockito.mock(FilterFunction.class));
+        final AuthorizedRoute getFoo = new AuthorizedRoute(Methods.GET,
+                                                           "/foo",
+                                                           Mockito.mock(FilterFunction.class));
+        final AuthorizedRoute getBar = new AuthorizedRoute(Methods.GET,
+                                                           "/bar",
+                                                           Mockito.mock(FilterFunction.class));
+        final AuthorizedRoute secondGetBar = new AuthorizedRoute(Methods.GET,
+                                                                 "/bar",
+                                                                 Mockito.mock(FilterFunction.class));
+        final AuthorizedRoute anyBar = new AuthorizedRoute(Methods.ANY,
+                                                           "/bar",
+                                                           Mockito.mock(FilterFunction.class));
+        final AuthorizedRoutes authRoutes = new AuthorizedRoutes(() -> Mockito.mock(FilterConstraints.class))
+        {
+            @Override
+            public List<AuthorizedRoute> routes()
+            {
+                return Arrays.asList(anyFoo,
+                                     getFoo,
+                                     getBar,
+                                     secondGetBar,
+                                     anyBar);
+            }
+        };
+
+        Assert.assertSame(anyFoo, authRoutes.apply("GET", "/foo").get());
+        Assert.assertSame(getBar, authRoutes.apply("GET", "/bar").get());
+        Assert.assertSame(anyBar, authRoutes.apply("POST", "/bar").get());
+    }
+
+    @Test
+    public void testRoutesAreIndexedOnce()
+    {
+        final List<AuthorizedRoute> routes = new ArrayList<>();
+        routes.add(new AuthorizedRoute(Methods.GET,
+                                       "/foo",
+                                       Mockito.mock(FilterFunction.class)));
+        final AtomicInteger calls = new AtomicInteger();
+        final AuthorizedRoutes authRoutes = new AuthorizedRoutes(() -> Mockito.mock(FilterConstraints.class))
+        {
+            @Override
+            public List<AuthorizedRoute> routes()
+            {
+                calls.incrementAndGet();
+                return routes;
+            }
+        };
+
+        Assert.assertTrue(authRoutes.apply("GET", "/foo").isPresent());
+        Assert.assertFalse(authRoutes.apply("GET", "/bar").isPresent());
+        Assert.assertEquals(1, calls.get());
+
+        routes.add(new AuthorizedRoute(Methods.GET,
+                                       "/bar",
+                                       Mockito.mock(FilterFunction.class)));
+        Assert.assertFalse(authRoutes.apply("GET", "/bar").isPresent());
+        authRoutes.reindex();
+        Assert.assertTrue(authRoutes.apply("GET", "/bar").isPresent());
+        Assert.assertEquals(2, calls.get());
+    }
+}
@@ -1150,6 +1150,42 @@ public class DeadboltRouteModifierTagsFilterTest extends AbstractDeadboltFilterT
         Mockito.verifyZeroInteractions(defaultHandler);
     }
 
+    @Test
+    public void testModifierTagsAreParsedOncePerRoute() throws ExecutionException, InterruptedException
+    {
+        Mockito.when(subjectCache.apply(Mockito.any(DeadboltHandler.class),
+                                        Mockito.any(Http.RequestHeader.class)))
+               .thenReturn(CompletableFuture.completedFuture(F.Tuple(Optional.of(Mockito.mock(Subject.class)), Mockito.mock(Http.RequestHeader.class))));
+
+        final HandlerCache handlerCache = Mockito.mock(HandlerCache.class);
+        final DeadboltHandler handler = Mockito.mock(DeadboltHandler.class);
+        Mockito.when(handlerCache.get())
+               .thenReturn(handler);
+        Mockito.when(handler.beforeAuthCheck(Mockito.any(Http.RequestHeader.class), Mockito.any(Optional.class)))
+               .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+        final FilterConstraints spiedConstraints = Mockito.spy(filterConstraints);
+        final Filter filter = new DeadboltRouteModifierTagsFilter(Mockito.mock(Materializer.class),
+                                                                  handlerCache,
+                                                                  spiedConstraints);
+        final int[] calls = {0};
+        for (int i = 0; i < 3; i++)
+        {
+            final CompletableFuture<Result> eventualResult = filter.apply(rh ->
+                                                                          {
+                                                                              calls[0]++;
+                                                                              return CompletableFuture.completedFuture(Results.ok());
+                                                                          },
+                                                                          request("deadbolt:subjectPresent"))
+                                                                   .toCompletableFuture();
+            await().until(eventualResult::isDone);
+        }
+        Assert.assertEquals(3, calls[0]);
+        Mockito.verify(spiedConstraints,
+                       Mockito.times(1))
+               .subjectPresent(Optional.empty());
+    }
+
     private Http.RequestImpl request(final String modifierTags) {
         return Helpers.fakeRequest("GET", "http://localhost/foo")
                       .attr(Router.Attrs.HANDLER_DEF,
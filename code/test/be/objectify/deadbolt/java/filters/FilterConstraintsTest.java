@@ -1405,6 +1405,31 @@ public class FilterConstraintsTest
         Assert.assertTrue(flag[0]);
     }
 
+    @Test
+    public void testComposite_byName_isLookedUpWhenApplied() throws Exception
+    {
+        final CompositeCache compositeCache = Mockito.mock(CompositeCache.class);
+        final FilterFunction filterFunction = new FilterConstraints(constraintLogic,
+                                                                    compositeCache,
+                                                                    new DefaultBeforeAuthCheckCache(ConfigFactory.load())).composite("late");
+        Mockito.verifyZeroInteractions(compositeCache);
+
+        Mockito.when(compositeCache.apply("late"))
+               .thenReturn(Optional.of(new SubjectPresentConstraint(Optional.empty(),
+                                                                    constraintLogic)));
+        Mockito.when(handler.getSubject(requestHeader))
+               .thenReturn(CompletableFuture.completedFuture(Optional.of(Mockito.mock(Subject.class))));
+        final boolean[] flag = {false};
+        ((CompletableFuture) filterFunction.apply(requestHeader,
+                                                  handler,
+                                                  rh ->
+                                                  {
+                                                      flag[0] = true;
+                                                      return CompletableFuture.completedFuture(Results.ok());
+                                                  })).get();
+        Assert.assertTrue(flag[0]);
+    }
+
     @Test
     public void testComposite_byName_withContent_pass() throws Exception
     {
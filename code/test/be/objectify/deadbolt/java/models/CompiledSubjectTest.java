@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.models;
+
+import be.objectify.deadbolt.java.DeadboltAnalyzer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class CompiledSubjectTest
+{
+    private final RoleRegistry registry = new RoleRegistry();
+
+    private final Subject subject = new DefaultSubject("9876",
+                                                       Arrays.asList("admin", "support"),
+                                                       Arrays.asList("printer.print", "printer.configure"));
+
+    @Test
+    public void testRoles()
+    {
+        final CompiledSubject compiled = CompiledSubject.of(subject,
+                                                            registry);
+
+        Assert.assertTrue(compiled.hasRole("admin"));
+        Assert.assertTrue(compiled.hasRole("support"));
+        Assert.assertFalse(compiled.hasRole("editor"));
+        Assert.assertTrue(compiled.hasRole(registry.idOf("admin")));
+        Assert.assertFalse(compiled.hasRole(-1));
+        Assert.assertEquals(2, compiled.getRoles().size());
+    }
+
+    @Test
+    public void testRoleGivenAnIdAfterCompiling()
+    {
+        // as if another thread gave admin an id just after this one found the registry full
+        final RoleRegistry racing = new RoleRegistry(1)
+        {
+            @Override
+            public int intern(final String roleName)
+            {
+                super.intern(roleName);
+                return -1;
+            }
+        };
+        final CompiledSubject compiled = CompiledSubject.of(subject,
+                                                            racing);
+
+        Assert.assertTrue(racing.idOf("admin") >= 0);
+        Assert.assertTrue(compiled.hasUnregisteredRoles());
+        Assert.assertTrue(compiled.hasRole("admin"));
+        Assert.assertTrue(compiled.hasRole("support"));
+        Assert.assertFalse(compiled.hasRole("editor"));
+    }
+
+    @Test
+    public void testPermissions()
+    {
+        final CompiledSubject compiled = CompiledSubject.of(subject,
+                                                            registry);
+
+        Assert.assertTrue(compiled.hasPermission("printer.print"));
+        Assert.assertFalse(compiled.hasPermission("printer"));
+        Assert.assertEquals(2, compiled.getPermissions().size());
+    }
+
+    @Test
+    public void testNullRolesAndPermissions()
+    {
+        final Subject empty = Mockito.mock(Subject.class);
+        final CompiledSubject compiled = CompiledSubject.of(empty,
+                                                            registry);
+
+        Assert.assertFalse(compiled.hasRole("admin"));
+        Assert.assertFalse(compiled.hasPermission("printer.print"));
+        Assert.assertTrue(compiled.getRoles().isEmpty());
+        Assert.assertTrue(compiled.getPermissions().isEmpty());
+    }
+
+    @Test
+    public void testCompilingTwice()
+    {
+        final CompiledSubject compiled = CompiledSubject.of(subject,
+                                                            registry);
+
+        Assert.assertSame(compiled, CompiledSubject.of(compiled, registry));
+        final CompiledSubject recompiled = CompiledSubject.of(compiled,
+                                                              new RoleRegistry());
+        Assert.assertNotSame(compiled, recompiled);
+        Assert.assertSame(subject, recompiled.unwrap());
+        Assert.assertTrue(recompiled.hasRole("admin"));
+    }
+
+    @Test
+    public void testAnalyzerUsesCompiledView()
+    {
+        final DeadboltAnalyzer analyzer = new DeadboltAnalyzer();
+        final Optional<CompiledSubject> compiled = Optional.of(CompiledSubject.of(subject,
+                                                                                  registry));
+
+        Assert.assertTrue(analyzer.checkRole(compiled, new String[]{"admin", "support"}));
+        Assert.assertTrue(analyzer.checkRole(compiled, new String[]{"admin", "!editor"}));
+        Assert.assertFalse(analyzer.checkRole(compiled, new String[]{"admin", "!support"}));
+        Assert.assertFalse(analyzer.checkRole(compiled, new String[0]));
+        Assert.assertTrue(analyzer.hasRole(compiled, "support"));
+        Assert.assertFalse(analyzer.hasRole(compiled, "editor"));
+        Assert.assertTrue(analyzer.checkPatternEquality(compiled, Optional.of("printer.configure")));
+        Assert.assertFalse(analyzer.checkPatternEquality(compiled, Optional.of("printer.scan")));
+        Assert.assertFalse(analyzer.checkPatternEquality(compiled, Optional.empty()));
+    }
+
+    @Test
+    public void testDecisionsAreRemembered()
+    {
+        final CompiledSubject compiled = CompiledSubject.of(subject,
+                                                            registry);
+        final int[] evaluations = {0};
+
+        Assert.assertTrue(compiled.decide(PatternType.REGEX, "printer\\..*", () -> ++evaluations[0] > 0));
+        Assert.assertTrue(compiled.decide(PatternType.REGEX, "printer\\..*", () -> ++evaluations[0] > 0));
+        Assert.assertEquals(1, evaluations[0]);
+
+        // decisions are per pattern type
+        Assert.assertFalse(compiled.decide(PatternType.LINEAR_REGEX, "printer\\..*", () -> ++evaluations[0] < 0));
+        Assert.assertEquals(2, evaluations[0]);
+    }
+
+    @Test
+    public void testAnalyzerRemembersRegexDecisions()
+    {
+        final DeadboltAnalyzer analyzer = new DeadboltAnalyzer();
+        final Optional<CompiledSubject> compiled = Optional.of(CompiledSubject.of(subject,
+                                                                                  registry));
+
+        Assert.assertTrue(analyzer.checkRegexPattern(compiled, Optional.of(Pattern.compile("printer\\.c.*"))));
+        Assert.assertTrue(analyzer.checkRegexPattern(compiled, Optional.of(Pattern.compile("printer\\.c.*"))));
+        Assert.assertFalse(analyzer.checkRegexPattern(compiled, Optional.of(Pattern.compile("PRINTER\\.c.*"))));
+        // a remembered decision is not used for a pattern with the same value but different flags
+        Assert.assertTrue(analyzer.checkRegexPattern(compiled, Optional.of(Pattern.compile("PRINTER\\.c.*", Pattern.CASE_INSENSITIVE))));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.patterns;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class LinearPatternTest
+{
+    private static final List<String> PATTERNS = Arrays.asList("printer",
+                                                               "printer\\..*",
+                                                               "(.)*\\.printer",
+                                                               "^printer\\.(print|scan)$",
+                                                               "(?:a|b)+c?",
+                                                               "[a-c]{2,3}",
+                                                               "[^.]+\\.[^.]+",
+                                                               "\\w+:\\d{1,3}",
+                                                               "a*?b",
+                                                               "(?<name>x)y|z",
+                                                               "[a\\-z]x",
+                                                               "",
+                                                               "a{2}|b{1,}",
+                                                               "(a*)*b");
+
+    private static final List<String> INPUTS = Arrays.asList("",
+                                                             "printer",
+                                                             "printer.print",
+                                                             "printer.scan",
+                                                             "color.printer",
+                                                             "abba",
+                                                             "ababc",
+                                                             "ab",
+                                                             "abcd",
+                                                             "foo.bar",
+                                                             "foo.bar.baz",
+                                                             "user:123",
+                                                             "user:1234",
+                                                             "aaab",
+                                                             "b",
+                                                             "xy",
+                                                             "z",
+                                                             "-x",
+                                                             "aa",
+                                                             "bbb");
+
+    @Test
+    public void testMatchesLikePattern()
+    {
+        for (String pattern : PATTERNS)
+        {
+            final Pattern expected = Pattern.compile(pattern);
+            final LinearPattern actual = LinearPattern.compile(pattern);
+            for (String input : INPUTS)
+            {
+                Assert.assertEquals(String.format("[%s] against [%s]", pattern, input),
+                                    expected.matcher(input).matches(),
+                                    actual.matches(input));
+            }
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testPathologicalPattern()
+    {
+        final StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+        {
+            input.append('a');
+        }
+        input.append('!');
+
+        Assert.assertFalse(LinearPattern.compile("(a+)+b").matches(input));
+        Assert.assertFalse(LinearPattern.compile("(a|aa)*c").matches(input));
+    }
+
+    @Test
+    public void testUnsupportedSyntaxIsRejected()
+    {
+        for (String pattern : Arrays.asList("(a)\\1", "(?=a)a", "(?i)a", "a*+", "\\bword", "a^b", "[a[b]]", "(a", "a)", "*a"))
+        {
+            try
+            {
+                LinearPattern.compile(pattern);
+                Assert.fail("Expected [" + pattern + "] to be rejected");
+            }
+            catch (PatternSyntaxException e)
+            {
+                // expected
+            }
+        }
+    }
+}
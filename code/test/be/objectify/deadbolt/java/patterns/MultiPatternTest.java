@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.patterns;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class MultiPatternTest
+{
+    @Test
+    public void testMatchesAny()
+    {
+        final MultiPattern patterns = MultiPattern.compile(Arrays.asList("printer\\..*", "(?i)SCANNER", null));
+
+        Assert.assertTrue(patterns.matchesAny("printer.print"));
+        Assert.assertTrue(patterns.matchesAny("scanner"));
+        Assert.assertFalse(patterns.matchesAny("printer"));
+        // the inline flag is scoped to its own pattern
+        Assert.assertFalse(MultiPattern.compile(Arrays.asList("(?i)a", "b")).matchesAny("B"));
+    }
+
+    @Test
+    public void testPatternsThatCannotBeCombined()
+    {
+        final MultiPattern patterns = MultiPattern.compile(Arrays.asList("(a)b", "(x)\\1", "(?<n>c)", "(?<n>d)", "\\Qe|f"));
+
+        Assert.assertTrue(patterns.matchesAny("ab"));
+        Assert.assertTrue(patterns.matchesAny("xx"));
+        Assert.assertTrue(patterns.matchesAny("c"));
+        Assert.assertTrue(patterns.matchesAny("d"));
+        Assert.assertTrue(patterns.matchesAny("e|f"));
+        Assert.assertFalse(patterns.matchesAny("x"));
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        Assert.assertTrue(MultiPattern.compile(Collections.emptyList()).isEmpty());
+        Assert.assertFalse(MultiPattern.compile(Collections.emptyList()).matchesAny("a"));
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void testInvalidPattern()
+    {
+        MultiPattern.compile(Arrays.asList("a", "(b"));
+    }
+
+    @Test
+    public void testPatternThatClosesTheGroupEarly()
+    {
+        try
+        {
+            MultiPattern.compile(Arrays.asList("x)|(?:.*", "admin"));
+            Assert.fail("Expected the pattern closing the group early to be rejected");
+        }
+        catch (PatternSyntaxException e)
+        {
+            Assert.assertEquals("x)|(?:.*", e.getPattern());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010-2016 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.patterns;
+
+import be.objectify.deadbolt.java.DeadboltAnalyzer;
+import be.objectify.deadbolt.java.models.CompiledSubject;
+import be.objectify.deadbolt.java.models.DefaultSubject;
+import be.objectify.deadbolt.java.models.RoleRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class PermissionTrieTest
+{
+    @Test
+    public void testWildcardPart()
+    {
+        final PermissionTrie trie = PermissionTrie.of(Collections.singletonList("printer:*:print"));
+
+        Assert.assertTrue(trie.implies(WildcardPermission.parse("printer:lp7200:print")));
+        Assert.assertTrue(trie.implies(WildcardPermission.parse("printer:*:print")));
+        Assert.assertFalse(trie.implies(WildcardPermission.parse("printer:lp7200:configure")));
+        Assert.assertFalse(trie.implies(WildcardPermission.parse("scanner:lp7200:print")));
+    }
+
+    @Test
+    public void testMissingPartsImplyEverything()
+    {
+        final PermissionTrie trie = PermissionTrie.of(Collections.singletonList("printer"));
+
+        Assert.assertTrue(trie.implies(WildcardPermission.parse("printer:lp7200:print")));
+        Assert.assertTrue(trie.implies(WildcardPermission.parse("printer")));
+        Assert.assertFalse(trie.implies(WildcardPermission.parse("scanner")));
+    }
+
+    @Test
+    public void testExtraPartsMustBeWildcards()
+    {
+        Assert.assertTrue(PermissionTrie.of(Collections.singletonList("printer:*:*"))
+                                        .implies(WildcardPermission.parse("printer")));
+        Assert.assertFalse(PermissionTrie.of(Collections.singletonList("printer:lp7200"))
+                                         .implies(WildcardPermission.parse("printer")));
+    }
+
+    @Test
+    public void testAlternatives()
+    {
+        final PermissionTrie trie = PermissionTrie.of(Arrays.asList("printer:lp7200,epsoncolor:print",
+                                                                    "printer:lp7200:configure"));
+
+        Assert.assertTrue(trie.implies(WildcardPermission.parse("printer:epsoncolor:print")));
+        Assert.assertTrue(trie.implies(WildcardPermission.parse("printer:lp7200:print,configure")));
+        Assert.assertFalse(trie.implies(WildcardPermission.parse("printer:epsoncolor:print,configure")));
+    }
+
+    @Test
+    public void testCaseSensitive()
+    {
+        Assert.assertFalse(PermissionTrie.of(Collections.singletonList("printer:*:print"))
+                                         .implies(WildcardPermission.parse("Printer:lp7200:print")));
+    }
+
+    @Test
+    public void testInvalidPermissionsAreIgnored()
+    {
+        final PermissionTrie trie = PermissionTrie.of(Arrays.asList(null, "", "printer::print", "scanner"));
+
+        Assert.assertFalse(trie.implies(WildcardPermission.parse("printer:lp7200:print")));
+        Assert.assertTrue(trie.implies(WildcardPermission.parse("scanner:a4")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyPartIsRejected()
+    {
+        WildcardPermission.parse("printer::print");
+    }
+
+    @Test
+    public void testAnalyzer()
+    {
+        final DeadboltAnalyzer analyzer = new DeadboltAnalyzer();
+        final DefaultSubject subject = new DefaultSubject("1",
+                                                          Collections.emptyList(),
+                                                          Collections.singletonList("printer:*:print"));
+        final Optional<WildcardPermission> required = Optional.of(WildcardPermission.parse("printer:lp7200:print"));
+
+        Assert.assertTrue(analyzer.checkWildcardPattern(Optional.of(subject), required));
+        Assert.assertTrue(analyzer.checkWildcardPattern(Optional.of(CompiledSubject.of(subject,
+                                                                                       new RoleRegistry())),
+                                                        required));
+        Assert.assertFalse(analyzer.checkWildcardPattern(Optional.empty(), required));
+        Assert.assertFalse(analyzer.checkWildcardPattern(Optional.of(subject), Optional.empty()));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author Steve Chaloner (steve@objectify.be)
+ */
+public class BatchUtilsTest
+{
+    @Test
+    public void testFanOut() throws Exception
+    {
+        final List<String> checked = new ArrayList<>();
+        final Map<String, Boolean> results = BatchUtils.fanOut(Arrays.asList("a", "b", "a"),
+                                                               key ->
+                                                               {
+                                                                   checked.add(key);
+                                                                   return CompletableFuture.completedFuture("a".equals(key));
+                                                               })
+                                                       .toCompletableFuture()
+                                                       .get();
+
+        // duplicates are only checked once
+        Assert.assertEquals(Arrays.asList("a", "b"), checked);
+        Assert.assertEquals(Arrays.asList("a", "b"), new ArrayList<>(results.keySet()));
+        Assert.assertTrue(results.get("a"));
+        Assert.assertFalse(results.get("b"));
+    }
+
+    @Test
+    public void testFanOut_noKeys() throws Exception
+    {
+        Assert.assertTrue(BatchUtils.fanOut(Collections.<String>emptyList(),
+                                            key -> CompletableFuture.completedFuture(true))
+                                    .toCompletableFuture()
+                                    .get()
+                                    .isEmpty());
+    }
+
+    @Test
+    public void testFanOut_failedCheck()
+    {
+        final CompletableFuture<Boolean> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("lookup failed"));
+
+        Assert.assertTrue(BatchUtils.fanOut(Arrays.asList("a", "b"),
+                                            key -> "a".equals(key) ? failed
+                                                                   : CompletableFuture.completedFuture(true))
+                                    .toCompletableFuture()
+                                    .isCompletedExceptionally());
+    }
+}